@@ -0,0 +1,268 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.Algorithms;
+
+import ptrman.Datastructures.IBoolMap2d;
+import ptrman.Datastructures.IntMap2d;
+import ptrman.misc.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import static ptrman.misc.ParallelHelper.calcPartBegin;
+import static ptrman.misc.ParallelHelper.invokeAllAndWait;
+
+/**
+ * labels the connected components of the set pixels of a binary image
+ *
+ * two pass algorithm with union-find, the provisional label of a pixel is its index
+ * the first pass can be split into horizontal strips which are labeled in parallel, the strips are merged along their borders afterwards
+ *
+ * the components are numbered in the order of their first pixel in raster order, so the result doesn't depend on the number of strips
+ */
+public class ConnectedComponentLabeling {
+    public ConnectedComponentLabeling(final int width, final int length) {
+        this.width = width;
+        this.length = length;
+
+        parents = new int[width * length];
+        labels = new IntMap2d(width, length);
+    }
+
+    /**
+     * labels the components of the pixels which are set
+     *
+     * \param image must have the same size as the labeling
+     * \param cross are the diagonal neighbors connected?
+     */
+    public void label(final IBoolMap2d image, final boolean cross) {
+        Assert.Assert(image.getWidth() == width && image.getLength() == length, "size of image must match");
+
+        labelStrip(image, cross, 0, length);
+        calcFinalLabelsAndStatistics();
+    }
+
+    /**
+     * labels the components of the pixels which are set
+     *
+     * splits the first pass into numberOfParts strips which are executed by the executor
+     *
+     * \param image must have the same size as the labeling
+     * \param cross are the diagonal neighbors connected?
+     * \param executor executes the parts, can be a ForkJoinPool
+     */
+    public void label(final IBoolMap2d image, final boolean cross, final ExecutorService executor, final int numberOfParts) {
+        Assert.Assert(image.getWidth() == width && image.getLength() == length, "size of image must match");
+        Assert.Assert(numberOfParts >= 1, "numberOfParts must be at least 1");
+
+        if( numberOfParts == 1 ) {
+            label(image, cross);
+            return;
+        }
+
+        List<Callable<Void>> stripTasks = new ArrayList<>();
+        for( int partI = 0; partI < numberOfParts; partI++ ) {
+            final int beginY = calcPartBegin(length, numberOfParts, partI);
+            final int endY = calcPartBegin(length, numberOfParts, partI+1);
+
+            stripTasks.add(() -> {
+                labelStrip(image, cross, beginY, endY);
+                return null;
+            });
+        }
+        invokeAllAndWait(executor, stripTasks);
+
+        // merge the components which touch the border between the strips
+        for( int partI = 1; partI < numberOfParts; partI++ ) {
+            final int y = calcPartBegin(length, numberOfParts, partI);
+            if( y > 0 && y < length ) {
+                mergeWithRowAbove(image, cross, y);
+            }
+        }
+
+        calcFinalLabelsAndStatistics();
+    }
+
+    /**
+     * \return labels of the pixels, -1 for pixels which are not set
+     */
+    public IntMap2d getLabels() {
+        return labels;
+    }
+
+    public int getNumberOfComponents() {
+        return numberOfComponents;
+    }
+
+    public int getPixelCount(final int component) {
+        return pixelCounts[component];
+    }
+
+    public int getMinX(final int component) {
+        return minXs[component];
+    }
+
+    public int getMinY(final int component) {
+        return minYs[component];
+    }
+
+    public int getMaxX(final int component) {
+        return maxXs[component];
+    }
+
+    public int getMaxY(final int component) {
+        return maxYs[component];
+    }
+
+    private void labelStrip(final IBoolMap2d image, final boolean cross, final int beginY, final int endY) {
+        for( int y = beginY; y < endY; y++ ) {
+            for( int x = 0; x < width; x++ ) {
+                final int index = x + y * width;
+
+                if( !image.get(x, y) ) {
+                    parents[index] = BACKGROUND;
+                    continue;
+                }
+
+                parents[index] = index;
+
+                // neighbors which are already labeled
+                if( x > 0 && image.get(x-1, y) ) {
+                    union(index, index - 1);
+                }
+
+                if( y > beginY ) {
+                    unionWithRowAbove(image, cross, x, y, index);
+                }
+            }
+        }
+    }
+
+    private void mergeWithRowAbove(final IBoolMap2d image, final boolean cross, final int y) {
+        for( int x = 0; x < width; x++ ) {
+            if( image.get(x, y) ) {
+                unionWithRowAbove(image, cross, x, y, x + y * width);
+            }
+        }
+    }
+
+    private void unionWithRowAbove(final IBoolMap2d image, final boolean cross, final int x, final int y, final int index) {
+        if( image.get(x, y-1) ) {
+            union(index, index - width);
+        }
+
+        if( cross ) {
+            if( x > 0 && image.get(x-1, y-1) ) {
+                union(index, index - width - 1);
+            }
+            if( x < width - 1 && image.get(x+1, y-1) ) {
+                union(index, index - width + 1);
+            }
+        }
+    }
+
+    private int find(int index) {
+        while( parents[index] != index ) {
+            parents[index] = parents[parents[index]]; // path halving
+            index = parents[index];
+        }
+        return index;
+    }
+
+    /**
+     * the root with the smaller index becomes the root of both
+     */
+    private void union(final int a, final int b) {
+        final int rootA = find(a);
+        final int rootB = find(b);
+
+        if( rootA < rootB ) {
+            parents[rootB] = rootA;
+        }
+        else if( rootB < rootA ) {
+            parents[rootA] = rootB;
+        }
+    }
+
+    /**
+     * second pass, numbers the roots in raster order and calculates the pixel counts and the bounding boxes
+     */
+    private void calcFinalLabelsAndStatistics() {
+        numberOfComponents = 0;
+
+        for( int y = 0; y < length; y++ ) {
+            for( int x = 0; x < width; x++ ) {
+                final int index = x + y * width;
+
+                if( parents[index] == BACKGROUND ) {
+                    labels.data[index] = -1;
+                    continue;
+                }
+
+                final int root = find(index);
+
+                final int component;
+                if( root == index ) {
+                    // the root is the first pixel of the component in raster order
+                    component = numberOfComponents++;
+                    ensureCapacityOfStatistics(numberOfComponents);
+
+                    pixelCounts[component] = 0;
+                    minXs[component] = x;
+                    minYs[component] = y;
+                    maxXs[component] = x;
+                    maxYs[component] = y;
+                }
+                else {
+                    component = labels.data[root];
+                }
+
+                labels.data[index] = component;
+
+                pixelCounts[component]++;
+                minXs[component] = Math.min(minXs[component], x);
+                maxXs[component] = Math.max(maxXs[component], x);
+                maxYs[component] = y;
+            }
+        }
+    }
+
+    private void ensureCapacityOfStatistics(final int capacity) {
+        if( pixelCounts.length >= capacity ) {
+            return;
+        }
+
+        final int newCapacity = Math.max(capacity, pixelCounts.length * 2);
+        pixelCounts = Arrays.copyOf(pixelCounts, newCapacity);
+        minXs = Arrays.copyOf(minXs, newCapacity);
+        minYs = Arrays.copyOf(minYs, newCapacity);
+        maxXs = Arrays.copyOf(maxXs, newCapacity);
+        maxYs = Arrays.copyOf(maxYs, newCapacity);
+    }
+
+    private static final int BACKGROUND = -1;
+
+    private final int width;
+    private final int length;
+
+    private final int[] parents; // union-find forest over the pixel indices, BACKGROUND for pixels which are not set
+    private final IntMap2d labels;
+
+    private int numberOfComponents = 0;
+
+    private int[] pixelCounts = new int[16];
+    private int[] minXs = new int[16];
+    private int[] minYs = new int[16];
+    private int[] maxXs = new int[16];
+    private int[] maxYs = new int[16];
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.Algorithms;
+
+import ptrman.Datastructures.FastBooleanMap2d;
+import ptrman.meter.event.DurationStartMeter;
+import ptrman.misc.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import static ptrman.misc.ParallelHelper.calcPartBegin;
+import static ptrman.misc.ParallelHelper.invokeAllAndWait;
+
+/**
+ * exact euclidean distance transform
+ *
+ * separable algorithm of Meijster, Roerdink, Hesselink: "A General Algorithm for Computing Distance Transforms in Linear Time"
+ * (the row pass is the lower envelope of parabolas as in Felzenszwalb, Huttenlocher, but with integer arithmetic)
+ *
+ * calculates for every pixel the squared distance to the nearest pixel where the map has the searched value
+ *
+ * both passes are independent for each column/row, so they can be split into parts which are processed in parallel
+ */
+public class DistanceTransform {
+    public DistanceTransform(final int width, final int length) {
+        this.width = width;
+        this.length = length;
+
+        infinity = width + length;
+
+        columnDistances = new int[width * length];
+        squaredDistances = new int[width * length];
+
+        envelopeSites = new int[width];
+        envelopeStarts = new int[width];
+    }
+
+    /**
+     * calculates the distances of all pixels to the nearest pixel where map is value
+     *
+     * \param map must have the same size as the distance transform
+     */
+    public void calculate(final FastBooleanMap2d map, final boolean value) {
+        Assert.Assert(map.getWidth() == width && map.getLength() == length, "size of map must match");
+
+        durationColumnPass.start();
+        calculateColumns(map, value, 0, width);
+        durationColumnPass.stop();
+
+        durationRowPass.start();
+        calculateRows(0, length, envelopeSites, envelopeStarts);
+        durationRowPass.stop();
+    }
+
+    /**
+     * calculates the distances of all pixels to the nearest pixel where map is value
+     *
+     * splits the column pass and the row pass into numberOfParts parts which are executed by the executor
+     *
+     * \param map must have the same size as the distance transform
+     * \param executor executes the parts, can be a ForkJoinPool
+     */
+    public void calculate(final FastBooleanMap2d map, final boolean value, final ExecutorService executor, final int numberOfParts) {
+        Assert.Assert(map.getWidth() == width && map.getLength() == length, "size of map must match");
+        Assert.Assert(numberOfParts >= 1, "numberOfParts must be at least 1");
+
+        if( numberOfParts == 1 ) {
+            calculate(map, value);
+            return;
+        }
+
+        allocateScratchBuffersOfParts(numberOfParts);
+
+        List<Callable<Void>> columnTasks = new ArrayList<>(numberOfParts);
+        for( int partI = 0; partI < numberOfParts; partI++ ) {
+            final int x0 = calcPartBegin(width, numberOfParts, partI);
+            final int x1 = calcPartBegin(width, numberOfParts, partI + 1);
+
+            columnTasks.add(() -> {
+                calculateColumns(map, value, x0, x1);
+                return null;
+            });
+        }
+
+        List<Callable<Void>> rowTasks = new ArrayList<>(numberOfParts);
+        for( int partI = 0; partI < numberOfParts; partI++ ) {
+            final int y0 = calcPartBegin(length, numberOfParts, partI);
+            final int y1 = calcPartBegin(length, numberOfParts, partI + 1);
+            final int[] sites = sitesOfParts[partI];
+            final int[] starts = startsOfParts[partI];
+
+            rowTasks.add(() -> {
+                calculateRows(y0, y1, sites, starts);
+                return null;
+            });
+        }
+
+        // the row pass depends on the complete result of the column pass
+        durationColumnPass.start();
+        invokeAllAndWait(executor, columnTasks);
+        durationColumnPass.stop();
+
+        durationRowPass.start();
+        invokeAllAndWait(executor, rowTasks);
+        durationRowPass.stop();
+    }
+
+    private void allocateScratchBuffersOfParts(final int numberOfParts) {
+        if( sitesOfParts != null && sitesOfParts.length == numberOfParts ) {
+            return;
+        }
+
+        sitesOfParts = new int[numberOfParts][width];
+        startsOfParts = new int[numberOfParts][width];
+    }
+
+    /**
+     * first pass, calculates the distance to the nearest pixel in the same column
+     *
+     * only touches the columns [x0, x1)
+     */
+    protected void calculateColumns(final FastBooleanMap2d map, final boolean value, final int x0, final int x1) {
+        // scan down
+        for( int x = x0; x < x1; x++ ) {
+            columnDistances[x] = map.get(x, 0) == value ? 0 : infinity;
+        }
+
+        for( int y = 1; y < length; y++ ) {
+            final int rowOffset = y * width;
+
+            for( int x = x0; x < x1; x++ ) {
+                columnDistances[rowOffset + x] = map.get(x, y) == value ? 0 : Math.min(infinity, columnDistances[rowOffset - width + x] + 1);
+            }
+        }
+
+        // scan up
+        for( int y = length - 2; y >= 0; y-- ) {
+            final int rowOffset = y * width;
+
+            for( int x = x0; x < x1; x++ ) {
+                final int distanceBelow = columnDistances[rowOffset + width + x] + 1;
+                if( distanceBelow < columnDistances[rowOffset + x] ) {
+                    columnDistances[rowOffset + x] = distanceBelow;
+                }
+            }
+        }
+    }
+
+    /**
+     * second pass, calculates the lower envelope of the parabolas of the column distances of each row
+     *
+     * only touches the rows [y0, y1)
+     *
+     * \param sites scratch buffer with at least width elements
+     * \param starts scratch buffer with at least width elements
+     */
+    protected void calculateRows(final int y0, final int y1, final int[] sites, final int[] starts) {
+        for( int y = y0; y < y1; y++ ) {
+            final int rowOffset = y * width;
+
+            int q = 0;
+            sites[0] = 0;
+            starts[0] = 0;
+
+            for( int u = 1; u < width; u++ ) {
+                while( q >= 0 && f(rowOffset, starts[q], sites[q]) > f(rowOffset, starts[q], u) ) {
+                    q--;
+                }
+
+                if( q < 0 ) {
+                    q = 0;
+                    sites[0] = u;
+                }
+                else {
+                    final int w = 1 + separator(rowOffset, sites[q], u);
+                    if( w < width ) {
+                        q++;
+                        sites[q] = u;
+                        starts[q] = w;
+                    }
+                }
+            }
+
+            for( int u = width - 1; u >= 0; u-- ) {
+                squaredDistances[rowOffset + u] = f(rowOffset, u, sites[q]);
+                if( u == starts[q] ) {
+                    q--;
+                }
+            }
+        }
+    }
+
+    public int readSquaredDistanceAt(final int x, final int y) {
+        return squaredDistances[x + y * width];
+    }
+
+    public double readDistanceAt(final int x, final int y) {
+        return Math.sqrt(readSquaredDistanceAt(x, y));
+    }
+
+    /**
+     * \return false if no pixel with the searched value was found in the map
+     */
+    public boolean isDistanceValidAt(final int x, final int y) {
+        return readSquaredDistanceAt(x, y) < infinity * infinity;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    private int f(final int rowOffset, final int x, final int i) {
+        final int g = columnDistances[rowOffset + i];
+        return (x - i) * (x - i) + g * g;
+    }
+
+    private int separator(final int rowOffset, final int i, final int u) {
+        final int gI = columnDistances[rowOffset + i];
+        final int gU = columnDistances[rowOffset + u];
+        return Math.floorDiv(u * u - i * i + gU * gU - gI * gI, 2 * (u - i));
+    }
+
+    private final int width;
+    private final int length;
+
+    // is bigger than any possible distance inside the map
+    private final int infinity;
+
+    private final int[] columnDistances;
+    private final int[] squaredDistances;
+
+    // scratch buffers for the row pass
+    private final int[] envelopeSites;
+    private final int[] envelopeStarts;
+
+    // scratch buffers for the row pass of each part when run in parallel
+    private int[][] sitesOfParts;
+    private int[][] startsOfParts;
+
+    public final DurationStartMeter durationColumnPass = new DurationStartMeter("distanceTransformColumnPass", true, 1.0, false);
+    public final DurationStartMeter durationRowPass = new DurationStartMeter("distanceTransformRowPass", true, 1.0, false);
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.Algorithms;
+
+import ptrman.misc.Assert;
+
+/**
+ * iterative radix-2 fast fourier transform of complex values
+ *
+ * the values are stored as separate arrays of the real and imaginary parts
+ * the transform is not normalized, the inverse transform must be divided by the number of values by the caller
+ *
+ * holds only the precomputed tables, so one instance can be used by multiple threads
+ */
+public class Fft {
+    public Fft(final int size) {
+        Assert.Assert(size >= 1 && Integer.bitCount(size) == 1, "size must be a power of two");
+
+        this.size = size;
+
+        bitReversedIndices = new int[size];
+        final int numberOfBits = Integer.numberOfTrailingZeros(size);
+        for( int i = 0; i < size; i++ ) {
+            bitReversedIndices[i] = numberOfBits == 0 ? 0 : Integer.reverse(i) >>> (32 - numberOfBits);
+        }
+
+        cosTable = new double[Math.max(size / 2, 1)];
+        sinTable = new double[Math.max(size / 2, 1)];
+        for( int i = 0; i < size / 2; i++ ) {
+            cosTable[i] = Math.cos(2.0 * Math.PI * i / size);
+            sinTable[i] = Math.sin(2.0 * Math.PI * i / size);
+        }
+    }
+
+    /**
+     * transforms size values in place, the values are at offset, offset + stride, offset + 2*stride, ...
+     */
+    public void transform(final double[] re, final double[] im, final int offset, final int stride, final boolean inverse) {
+        // permutation
+        for( int i = 0; i < size; i++ ) {
+            final int j = bitReversedIndices[i];
+            if( j > i ) {
+                final int indexI = offset + i * stride;
+                final int indexJ = offset + j * stride;
+
+                final double tempRe = re[indexI];
+                re[indexI] = re[indexJ];
+                re[indexJ] = tempRe;
+
+                final double tempIm = im[indexI];
+                im[indexI] = im[indexJ];
+                im[indexJ] = tempIm;
+            }
+        }
+
+        final double sinSign = inverse ? 1.0 : -1.0;
+
+        // butterflies
+        for( int halfSpan = 1; halfSpan < size; halfSpan *= 2 ) {
+            final int tableStep = size / (halfSpan * 2);
+
+            for( int begin = 0; begin < size; begin += halfSpan * 2 ) {
+                for( int k = 0; k < halfSpan; k++ ) {
+                    final double twiddleRe = cosTable[k * tableStep];
+                    final double twiddleIm = sinSign * sinTable[k * tableStep];
+
+                    final int indexA = offset + (begin + k) * stride;
+                    final int indexB = offset + (begin + k + halfSpan) * stride;
+
+                    final double productRe = re[indexB] * twiddleRe - im[indexB] * twiddleIm;
+                    final double productIm = re[indexB] * twiddleIm + im[indexB] * twiddleRe;
+
+                    re[indexB] = re[indexA] - productRe;
+                    im[indexB] = im[indexA] - productIm;
+                    re[indexA] += productRe;
+                    im[indexA] += productIm;
+                }
+            }
+        }
+    }
+
+    /**
+     * transforms a row major 2d array in place, the width is the size of fftOfRows and the length the size of fftOfColumns
+     */
+    public static void transform2d(final Fft fftOfRows, final Fft fftOfColumns, final double[] re, final double[] im, final boolean inverse) {
+        final int width = fftOfRows.getSize();
+        final int length = fftOfColumns.getSize();
+
+        for( int y = 0; y < length; y++ ) {
+            fftOfRows.transform(re, im, y * width, 1, inverse);
+        }
+
+        for( int x = 0; x < width; x++ ) {
+            fftOfColumns.transform(re, im, x, width, inverse);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public static int calcNextPowerOfTwo(final int value) {
+        int result = 1;
+        while( result < value ) {
+            result *= 2;
+        }
+        return result;
+    }
+
+    private final int size;
+
+    private final int[] bitReversedIndices;
+    private final double[] cosTable;
+    private final double[] sinTable;
+}
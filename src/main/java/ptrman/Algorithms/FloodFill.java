@@ -19,7 +19,7 @@ public enum FloodFill {
         void seted(Vector2d<Integer> position);
     }
 
-    private static class SpecificExecutor<Type> implements GeneralizedFloodFill.IFillExecutor {
+    private static class SpecificExecutor<Type> implements GeneralizedFloodFill.ISpanFillExecutor {
         public SpecificExecutor(IPixelSetListener pixelSetListener, IMap2d<Type> map, final Type targetColor, final Type replacementColor) {
             this.pixelSetListener = pixelSetListener;
             this.map = map;
@@ -28,24 +28,21 @@ public enum FloodFill {
         }
 
         @Override
-        public void fillAt(Vector2d<Integer> position, Vector2d<Integer> fromDirection) {
-            map.setAt(position.x, position.y, replacementColor);
-
-            pixelSetListener.seted(position);
-        }
-
-        @Override
-        public boolean canAndShouldBeFilled(Vector2d<Integer> position) {
+        public boolean canAndShouldBeFilled(final int x, final int y) {
             if( targetColor.equals(replacementColor) ) {
                 return false;
             }
 
-            return map.readAt(position.x, position.y).equals(targetColor);
+            return map.readAt(x, y).equals(targetColor);
         }
 
         @Override
-        public boolean inRange(Vector2d<Integer> position) {
-            return map.inBounds(position);
+        public void fillSpan(final int y, final int xLeft, final int xRight) {
+            for( int x = xLeft; x <= xRight; x++ ) {
+                map.setAt(x, y, replacementColor);
+
+                pixelSetListener.seted(new Vector2d<>(x, y));
+            }
         }
 
         private final Type replacementColor;
@@ -53,9 +50,9 @@ public enum FloodFill {
         private final IMap2d<Type> map;
         private final IPixelSetListener pixelSetListener;
     }
-    
+
     public static <Type> void fill(IMap2d<Type> map, Vector2d<Integer> centerPosition, final Type targetColor, final Type replacementColor, final boolean cross, IPixelSetListener pixelSetListener) {
-        GeneralizedFloodFill.IFillExecutor fillExecutor = new SpecificExecutor<>(pixelSetListener, map, targetColor, replacementColor);
-        GeneralizedFloodFill.fill(centerPosition, cross, fillExecutor);
+        GeneralizedFloodFill.ISpanFillExecutor fillExecutor = new SpecificExecutor<>(pixelSetListener, map, targetColor, replacementColor);
+        GeneralizedFloodFill.fillScanline(centerPosition.x, centerPosition.y, map.getWidth(), map.getLength(), cross, fillExecutor);
     }
 }
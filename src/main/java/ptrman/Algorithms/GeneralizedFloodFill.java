@@ -12,6 +12,7 @@ package ptrman.Algorithms;
 import ptrman.Datastructures.Vector2d;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 
 /**
@@ -28,6 +29,18 @@ public enum GeneralizedFloodFill {
         boolean inRange(final Vector2d<Integer> position);
     }
 
+    /**
+     * executor of the scanline fill, addresses the pixels by coordinates
+     */
+    public interface ISpanFillExecutor {
+        boolean canAndShouldBeFilled(final int x, final int y);
+
+        /**
+         * fills the pixels xLeft to xRight (inclusive) of the row y, after that they must not be fillable anymore
+         */
+        void fillSpan(final int y, final int xLeft, final int xRight);
+    }
+
     private static class QueueElement {
         public QueueElement(final Vector2d<Integer> position, final Vector2d<Integer> fromDirection) {
             this.position = position;
@@ -76,4 +89,77 @@ public enum GeneralizedFloodFill {
 
         queue.push(new QueueElement(position, fromDirection));
     }
+
+    /**
+     * scanline flood fill, fills the horizontal spans of the region which contains the start position
+     *
+     * the rows which have to be scanned are pushed as (y, xLeft, xRight) triples on a stack of ints
+     *
+     * \param width the pixels with 0 <= x < width and 0 <= y < length are in range
+     * \param cross are the diagonal neighbors connected?
+     */
+    public static void fillScanline(final int startX, final int startY, final int width, final int length, final boolean cross, ISpanFillExecutor fillExecutor) {
+        if( startX < 0 || startX >= width || startY < 0 || startY >= length ) {
+            return;
+        }
+
+        int[] stack = new int[3 * 64];
+        int stackSize = 0;
+
+        stack[stackSize++] = startY;
+        stack[stackSize++] = startX;
+        stack[stackSize++] = startX;
+
+        final int diagonalExtension = cross ? 1 : 0;
+
+        while( stackSize > 0 ) {
+            final int xRightOfRange = stack[--stackSize];
+            final int xLeftOfRange = stack[--stackSize];
+            final int y = stack[--stackSize];
+
+            int x = xLeftOfRange;
+            while( x <= xRightOfRange ) {
+                if( !fillExecutor.canAndShouldBeFilled(x, y) ) {
+                    x++;
+                    continue;
+                }
+
+                // extend the span to both sides
+                int xLeft = x;
+                while( xLeft > 0 && fillExecutor.canAndShouldBeFilled(xLeft - 1, y) ) {
+                    xLeft--;
+                }
+
+                int xRight = x;
+                while( xRight < width - 1 && fillExecutor.canAndShouldBeFilled(xRight + 1, y) ) {
+                    xRight++;
+                }
+
+                fillExecutor.fillSpan(y, xLeft, xRight);
+
+                // the rows above and below are scanned over the range which touches the span
+                final int xLeftOfNeighborRange = Math.max(xLeft - diagonalExtension, 0);
+                final int xRightOfNeighborRange = Math.min(xRight + diagonalExtension, width - 1);
+
+                if( stackSize + 6 > stack.length ) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+
+                if( y > 0 ) {
+                    stack[stackSize++] = y - 1;
+                    stack[stackSize++] = xLeftOfNeighborRange;
+                    stack[stackSize++] = xRightOfNeighborRange;
+                }
+
+                if( y < length - 1 ) {
+                    stack[stackSize++] = y + 1;
+                    stack[stackSize++] = xLeftOfNeighborRange;
+                    stack[stackSize++] = xRightOfNeighborRange;
+                }
+
+                // the pixel after the span can't be filled
+                x = xRight + 2;
+            }
+        }
+    }
 }
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.Datastructures;
+
+import java.util.Arrays;
+
+/**
+ * map of boolean values, stored row major in one array
+ *
+ * the values are initialized to false
+ */
+public class BoolMap2d implements IBoolMap2d {
+    public final boolean[] data; // the value at x, y is at x + y*width
+
+    public BoolMap2d(int width, int length) {
+        this.width = width;
+        this.length = length;
+        this.data = new boolean[width * length];
+    }
+
+    public BoolMap2d(BoolMap2d other) {
+        this.width = other.width;
+        this.length = other.length;
+        this.data = other.data.clone();
+    }
+
+    @Override
+    public boolean get(int x, int y) {
+        return data[x + y * width];
+    }
+
+    @Override
+    public void set(int x, int y, boolean value) {
+        data[x + y * width] = value;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(data, false);
+    }
+
+    @Override
+    public BoolMap2d copy() {
+        return new BoolMap2d(this);
+    }
+
+    private final int width;
+    private final int length;
+}
@@ -16,7 +16,7 @@ import java.util.Arrays;
 /**
  *
  */
-public class FastBooleanMap2d implements IMap2d<Boolean> {
+public class FastBooleanMap2d implements IBoolMap2d {
     public FastBooleanMap2d(int width, int length) {
         Assert.Assert((width % 64) == 0, "width is not divisable by 64 (for 64 bit)");
 
@@ -47,8 +47,18 @@ public class FastBooleanMap2d implements IMap2d<Boolean> {
         return (nativeValueAtPosition & (1L << (x % 64))) != 0;
     }
 
+    @Override
+    public boolean get(final int x, final int y) {
+        return (readLongAtInt(x, y) & (1L << (x % 64))) != 0;
+    }
+
     @Override
     public void setAt(final int x, final int y, final Boolean value) {
+        set(x, y, value);
+    }
+
+    @Override
+    public void set(final int x, final int y, final boolean value) {
         //Assert.Assert(inBounds(new Vector2d<>(x, y)), "");
 
         final int indexX = x / 64;
@@ -93,6 +103,78 @@ public class FastBooleanMap2d implements IMap2d<Boolean> {
         return (int)((longAt >>> ((x / 8) % (64/8))) & 0xff);
     }
 
+    /**
+     * \return the 64 bit word with the pixels [wordX*64, wordX*64+64) of the row y, bit i is the pixel wordX*64+i
+     */
+    public long readWord(final int wordX, final int y) {
+        return array[wordX + y * width/64];
+    }
+
+    public void writeWord(final int wordX, final int y, final long value) {
+        array[wordX + y * width/64] = value;
+    }
+
+    public int getWordsPerRow() {
+        return width/64;
+    }
+
+    /**
+     * creates a copy of a map where the width is rounded up to the next multiple of 64, the added pixels are false
+     */
+    public static FastBooleanMap2d createRoundedUpCopy(final IMap2d<Boolean> map) {
+        return createRoundedUpCopy(map, null);
+    }
+
+    /**
+     * copies the map into target if it has the rounded up size of the map
+     *
+     * \param target map of a previous copy, can be null
+     * \return target or a new copy if target is null or of another size
+     */
+    public static FastBooleanMap2d createRoundedUpCopy(final IMap2d<Boolean> map, final FastBooleanMap2d target) {
+        final int roundUpWidth = ((map.getWidth() + 63) / 64) * 64;
+        final boolean reuseTarget = target != null && target.width == roundUpWidth && target.length == map.getLength();
+
+        if( map instanceof FastBooleanMap2d ) {
+            if( reuseTarget && map.getWidth() == roundUpWidth ) {
+                System.arraycopy(((FastBooleanMap2d)map).array, 0, target.array, 0, target.array.length);
+                return target;
+            }
+            return ((FastBooleanMap2d)map).copy();
+        }
+
+        FastBooleanMap2d fastMap;
+        if( reuseTarget ) {
+            fastMap = target;
+            fastMap.clear();
+        }
+        else {
+            fastMap = new FastBooleanMap2d(roundUpWidth, map.getLength());
+        }
+
+        if( map instanceof IBoolMap2d ) {
+            final IBoolMap2d boolMap = (IBoolMap2d)map;
+            for( int y = 0; y < map.getLength(); y++ ) {
+                for( int x = 0; x < map.getWidth(); x++ ) {
+                    if( boolMap.get(x, y) ) {
+                        fastMap.set(x, y, true);
+                    }
+                }
+            }
+        }
+        else {
+            for( int y = 0; y < map.getLength(); y++ ) {
+                for( int x = 0; x < map.getWidth(); x++ ) {
+                    if( map.readAt(x, y) ) {
+                        fastMap.set(x, y, true);
+                    }
+                }
+            }
+        }
+
+        return fastMap;
+    }
+
     final long readLongAtInt(final int x, final int y) {
         //Assert.Assert(inBounds(new Vector2d<>(x, y)), "");
 
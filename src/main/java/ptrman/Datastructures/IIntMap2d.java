@@ -0,0 +1,43 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.Datastructures;
+
+/**
+ * map of int values with unboxed access
+ *
+ * the values of a row are stored consecutively, the value at x, y is row(y)[rowOffset(y) + x]
+ */
+public interface IIntMap2d extends IMap2d<Integer> {
+    int get(int x, int y);
+    void set(int x, int y, int value);
+
+    /**
+     * \return array which holds the values of the row y
+     */
+    int[] row(int y);
+
+    /**
+     * \return index of the value at x = 0 of the row y in the array of the row
+     */
+    int rowOffset(int y);
+
+    @Override
+    default Integer readAt(int x, int y) {
+        return get(x, y);
+    }
+
+    @Override
+    default void setAt(int x, int y, Integer value) {
+        set(x, y, value);
+    }
+
+    @Override
+    IIntMap2d copy();
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.Datastructures;
+
+import java.util.Arrays;
+
+/**
+ * map of int values, stored row major in one array
+ */
+public class IntMap2d implements IIntMap2d {
+    public final int[] data; // the value at x, y is at x + y*width
+
+    public IntMap2d(int width, int length) {
+        this.width = width;
+        this.length = length;
+        this.data = new int[width * length];
+    }
+
+    public IntMap2d(IntMap2d other) {
+        this.width = other.width;
+        this.length = other.length;
+        this.data = other.data.clone();
+    }
+
+    @Override
+    public int get(int x, int y) {
+        return data[x + y * width];
+    }
+
+    @Override
+    public void set(int x, int y, int value) {
+        data[x + y * width] = value;
+    }
+
+    @Override
+    public int[] row(int y) {
+        return data;
+    }
+
+    @Override
+    public int rowOffset(int y) {
+        return y * width;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(data, 0);
+    }
+
+    @Override
+    public IntMap2d copy() {
+        return new IntMap2d(this);
+    }
+
+    private final int width;
+    private final int length;
+}
@@ -42,7 +42,7 @@ public class Map2d<Type> implements IMap2d<Type> {
     }
     
     public void setAt(int x, int y, Type value) {
-        if( !inBounds(new Vector2d<>(x, y)) ) {
+        if( !inBounds(x, y) ) {
             throw new RuntimeException("access error");
         }
         
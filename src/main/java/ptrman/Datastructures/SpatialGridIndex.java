@@ -0,0 +1,478 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.Datastructures;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import ptrman.misc.Assert;
+
+import java.util.Arrays;
+
+/**
+ * uniform grid over points which are addressed by their index, for nearest neighbor and radius queries
+ *
+ * the points are sorted by cell (compressed sparse row layout), cellStart[cell] .. cellEnd[cell] is the range of the cell in pointIndices
+ * doesn't allocate after the buffers have grown to the number of points
+ *
+ * points can be inserted and removed after the build, a removed point leaves a free slot at the end of the range of its cell
+ * which is used by the next point which is inserted into the cell, the points which don't fit are stored in the overflow of the cell
+ */
+public class SpatialGridIndex {
+    /**
+     * bounded max-heap of the nearest neighbors, the root is the neighbor with the largest distance
+     *
+     * neighbors with the same distance are ordered by their index, so the content doesn't depend on the order in which the neighbors are offered
+     */
+    public static class NeighborHeap {
+        public NeighborHeap(final int capacity) {
+            Assert.Assert(capacity >= 1, "capacity must be at least 1");
+
+            distances = new double[capacity];
+            indices = new int[capacity];
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getCapacity() {
+            return distances.length;
+        }
+
+        public boolean isFull() {
+            return size == distances.length;
+        }
+
+        /**
+         * \return largest distance of the neighbors in the heap
+         */
+        public double peekMaxDistance() {
+            return distances[0];
+        }
+
+        public double distanceAt(final int heapIndex) {
+            return distances[heapIndex];
+        }
+
+        /**
+         * \return index of the point at the position heapIndex in the heap, the neighbors are not sorted
+         */
+        public int indexAt(final int heapIndex) {
+            return indices[heapIndex];
+        }
+
+        /**
+         * \return position in the heap of the neighbor with the distance, -1 if there is none
+         */
+        public int findDistance(final double distance) {
+            for( int i = 0; i < size; i++ ) {
+                if( distances[i] == distance ) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * adds the neighbor if the heap is not full or if it is nearer than the farthest neighbor, which is removed
+         */
+        public void offer(final double distance, final int index) {
+            if( size < distances.length ) {
+                // sift up
+                int child = size++;
+                while( child > 0 ) {
+                    final int parent = (child - 1) / 2;
+                    if( !isFarther(distance, index, distances[parent], indices[parent]) ) {
+                        break;
+                    }
+                    distances[child] = distances[parent];
+                    indices[child] = indices[parent];
+                    child = parent;
+                }
+                distances[child] = distance;
+                indices[child] = index;
+                return;
+            }
+
+            if( !isFarther(distances[0], indices[0], distance, index) ) {
+                return;
+            }
+
+            siftDown(0, distance, index);
+        }
+
+        /**
+         * replaces the index of the neighbor at the position heapIndex by a smaller index of a neighbor with the same distance
+         */
+        public void replaceBySmallerIndex(final int heapIndex, final int index) {
+            Assert.Assert(index < indices[heapIndex], "index must be smaller");
+            siftDown(heapIndex, distances[heapIndex], index);
+        }
+
+        private void siftDown(int parent, final double distance, final int index) {
+            for(;;) {
+                int child = 2 * parent + 1;
+                if( child >= size ) {
+                    break;
+                }
+                if( child + 1 < size && isFarther(distances[child + 1], indices[child + 1], distances[child], indices[child]) ) {
+                    child++;
+                }
+                if( !isFarther(distances[child], indices[child], distance, index) ) {
+                    break;
+                }
+                distances[parent] = distances[child];
+                indices[parent] = indices[child];
+                parent = child;
+            }
+            distances[parent] = distance;
+            indices[parent] = index;
+        }
+
+        private static boolean isFarther(final double distanceA, final int indexA, final double distanceB, final int indexB) {
+            return distanceA > distanceB || (distanceA == distanceB && indexA > indexB);
+        }
+
+        private final double[] distances;
+        private final int[] indices;
+        private int size = 0;
+    }
+
+    public SpatialGridIndex(final int width, final int length, final int gridsize) {
+        Assert.Assert(gridsize > 0, "gridsize must be greater than zero");
+
+        this.gridsize = gridsize;
+        this.gridWidth = Math.max((width + gridsize - 1) / gridsize, 1);
+        this.gridLength = Math.max((length + gridsize - 1) / gridsize, 1);
+
+        cellStart = new int[gridWidth * gridLength + 1];
+        cellEnd = new int[gridWidth * gridLength];
+        overflowOfCells = new IntArrayList[gridWidth * gridLength];
+    }
+
+    /**
+     * sorts the points into the cells (counting sort)
+     *
+     * the arrays are referenced until the next call of build
+     *
+     * \param enabled can be null, points where it is false are not inserted
+     */
+    public void build(final int[] xs, final int[] ys, final boolean[] enabled, final int numberOfPoints) {
+        this.xs = xs;
+        this.ys = ys;
+
+        if( pointIndices.length < numberOfPoints ) {
+            pointIndices = new int[numberOfPoints];
+        }
+        if( cellOfPoint.length < numberOfPoints ) {
+            cellOfPoint = new int[numberOfPoints];
+        }
+
+        Arrays.fill(cellStart, 0);
+        Arrays.fill(cellOfPoint, -1);
+        for( final IntArrayList iterationOverflow : overflowOfCells ) {
+            if( iterationOverflow != null ) {
+                iterationOverflow.clear();
+            }
+        }
+
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            if( enabled != null && !enabled[i] ) {
+                continue;
+            }
+            cellStart[calcCellIndex(xs[i], ys[i]) + 1]++;
+        }
+
+        final int numberOfCells = gridWidth * gridLength;
+        for( int cellI = 0; cellI < numberOfCells; cellI++ ) {
+            cellStart[cellI+1] += cellStart[cellI];
+        }
+
+        // cellStart[cell] is used as the insertion position and is restored afterwards
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            if( enabled != null && !enabled[i] ) {
+                continue;
+            }
+            final int cellIndex = calcCellIndex(xs[i], ys[i]);
+            pointIndices[cellStart[cellIndex]++] = i;
+            cellOfPoint[i] = cellIndex;
+        }
+
+        for( int cellI = numberOfCells; cellI > 0; cellI-- ) {
+            cellStart[cellI] = cellStart[cellI-1];
+        }
+        cellStart[0] = 0;
+
+        System.arraycopy(cellStart, 1, cellEnd, 0, numberOfCells);
+    }
+
+    /**
+     * inserts a point after the build, the point must not be in the index
+     *
+     * \param xs replaces the referenced array, must contain the coordinates of all points of the index
+     * \param ys replaces the referenced array, must contain the coordinates of all points of the index
+     */
+    public void insert(final int[] xs, final int[] ys, final int pointIndex) {
+        this.xs = xs;
+        this.ys = ys;
+
+        if( cellOfPoint.length <= pointIndex ) {
+            final int oldLength = cellOfPoint.length;
+            cellOfPoint = Arrays.copyOf(cellOfPoint, Math.max(pointIndex + 1, oldLength * 2));
+            Arrays.fill(cellOfPoint, oldLength, cellOfPoint.length, -1);
+        }
+
+        Assert.Assert(cellOfPoint[pointIndex] == -1, "point is already in the index");
+
+        final int cellIndex = calcCellIndex(xs[pointIndex], ys[pointIndex]);
+        cellOfPoint[pointIndex] = cellIndex;
+
+        if( cellEnd[cellIndex] < cellStart[cellIndex+1] ) {
+            pointIndices[cellEnd[cellIndex]++] = pointIndex;
+            return;
+        }
+
+        if( overflowOfCells[cellIndex] == null ) {
+            overflowOfCells[cellIndex] = new IntArrayList();
+        }
+        overflowOfCells[cellIndex].add(pointIndex);
+    }
+
+    /**
+     * removes a point, does nothing if the point is not in the index
+     *
+     * the point is searched in the cell where it was inserted, so its coordinates may already be overwritten
+     */
+    public void remove(final int pointIndex) {
+        if( pointIndex >= cellOfPoint.length || cellOfPoint[pointIndex] == -1 ) {
+            return;
+        }
+
+        final int cellIndex = cellOfPoint[pointIndex];
+        cellOfPoint[pointIndex] = -1;
+
+        // the last point of the range of the cell is moved into the slot of the removed point
+        for( int i = cellStart[cellIndex]; i < cellEnd[cellIndex]; i++ ) {
+            if( pointIndices[i] == pointIndex ) {
+                cellEnd[cellIndex]--;
+                pointIndices[i] = pointIndices[cellEnd[cellIndex]];
+                return;
+            }
+        }
+
+        final IntArrayList overflow = overflowOfCells[cellIndex];
+        final int overflowI = overflow.indexOf(pointIndex);
+        overflow.set(overflowI, overflow.getLast());
+        overflow.removeAtIndex(overflow.size() - 1);
+    }
+
+    /**
+     * \return is the point in the index?
+     */
+    public boolean contains(final int pointIndex) {
+        return pointIndex < cellOfPoint.length && cellOfPoint[pointIndex] != -1;
+    }
+
+    /**
+     * searches the nearest neighbors of the position
+     *
+     * scans the rings of cells around the cell of the position until no unscanned cell can contain a nearer point
+     * the result doesn't depend on the order of the points in the cells, of the points with the same distance the ones with the smaller index are taken
+     *
+     * \param excludedIndex index of a point which is ignored, -1 if no point is ignored
+     * \param distinctDistances if true then a neighbor with an already present distance is not added
+     * \param result is cleared and filled with the nearest neighbors
+     */
+    public void queryNearest(final int px, final int py, final int excludedIndex, final boolean distinctDistances, NeighborHeap result) {
+        result.clear();
+
+        final int cellX = clampCellX(px / gridsize);
+        final int cellY = clampCellY(py / gridsize);
+        final int maxGridRadius = Math.max(gridWidth, gridLength);
+
+        for( int gridRadius = 0; gridRadius <= maxGridRadius; gridRadius++ ) {
+            // all points which are not yet scanned are at least this far away
+            if( result.isFull() && result.peekMaxDistance() <= (gridRadius - 1) * gridsize ) {
+                break;
+            }
+
+            for( int cy = cellY - gridRadius; cy <= cellY + gridRadius; cy++ ) {
+                if( cy < 0 || cy >= gridLength ) {
+                    continue;
+                }
+
+                final boolean isBorderRow = cy == cellY - gridRadius || cy == cellY + gridRadius;
+                final int cxStep = isBorderRow ? 1 : Math.max(2 * gridRadius, 1);
+
+                for( int cx = cellX - gridRadius; cx <= cellX + gridRadius; cx += cxStep ) {
+                    if( cx < 0 || cx >= gridWidth ) {
+                        continue;
+                    }
+
+                    final int cellIndex = cx + cy * gridWidth;
+                    for( int i = cellStart[cellIndex]; i < cellEnd[cellIndex]; i++ ) {
+                        offerNearest(pointIndices[i], px, py, excludedIndex, distinctDistances, result);
+                    }
+
+                    final IntArrayList overflow = overflowOfCells[cellIndex];
+                    if( overflow != null ) {
+                        for( int i = 0; i < overflow.size(); i++ ) {
+                            offerNearest(overflow.get(i), px, py, excludedIndex, distinctDistances, result);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void offerNearest(final int pointIndex, final int px, final int py, final int excludedIndex, final boolean distinctDistances, NeighborHeap result) {
+        if( pointIndex == excludedIndex ) {
+            return;
+        }
+
+        final double dx = xs[pointIndex] - px;
+        final double dy = ys[pointIndex] - py;
+        final double distance = Math.sqrt(dx*dx + dy*dy);
+
+        if( result.isFull() && distance > result.peekMaxDistance() ) {
+            return;
+        }
+        if( distinctDistances ) {
+            // the neighbor with the smallest index is kept of the neighbors with the same distance
+            final int heapIndexOfDistance = result.findDistance(distance);
+            if( heapIndexOfDistance != -1 ) {
+                if( pointIndex < result.indexAt(heapIndexOfDistance) ) {
+                    result.replaceBySmallerIndex(heapIndexOfDistance, pointIndex);
+                }
+                return;
+            }
+        }
+
+        result.offer(distance, pointIndex);
+    }
+
+    /**
+     * appends the indices of all points which are inside the radius around the position to result
+     */
+    public void queryRadius(final double px, final double py, final double radius, IntArrayList result) {
+        final int minCellX = clampCellX((int)Math.floor((px - radius) / gridsize));
+        final int maxCellX = clampCellX((int)Math.floor((px + radius) / gridsize));
+        final int minCellY = clampCellY((int)Math.floor((py - radius) / gridsize));
+        final int maxCellY = clampCellY((int)Math.floor((py + radius) / gridsize));
+
+        final double radiusSquared = radius * radius;
+
+        for( int cy = minCellY; cy <= maxCellY; cy++ ) {
+            for( int cx = minCellX; cx <= maxCellX; cx++ ) {
+                final int cellIndex = cx + cy * gridWidth;
+                for( int i = cellStart[cellIndex]; i < cellEnd[cellIndex]; i++ ) {
+                    addIfInRadius(pointIndices[i], px, py, radiusSquared, result);
+                }
+
+                final IntArrayList overflow = overflowOfCells[cellIndex];
+                if( overflow != null ) {
+                    for( int i = 0; i < overflow.size(); i++ ) {
+                        addIfInRadius(overflow.get(i), px, py, radiusSquared, result);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addIfInRadius(final int pointIndex, final double px, final double py, final double radiusSquared, IntArrayList result) {
+        final double dx = xs[pointIndex] - px;
+        final double dy = ys[pointIndex] - py;
+        if( dx*dx + dy*dy <= radiusSquared ) {
+            result.add(pointIndex);
+        }
+    }
+
+    /**
+     * appends the indices of all points to result which have at most maxDistance orthogonal distance to the line y = m*x + n
+     *
+     * only the cells which are touched by the corridor around the line are scanned
+     * points outside of the size of the grid may be missed
+     *
+     * \param m must be finite
+     */
+    public void queryNearLine(final double m, final double n, final double maxDistance, IntArrayList result) {
+        final double lengthOfNormal = Math.sqrt(1.0 + m*m);
+        final double verticalHalfWidth = maxDistance * lengthOfNormal;
+
+        for( int cx = 0; cx < gridWidth; cx++ ) {
+            // range of y of the corridor over the x range of the points of the cell column
+            final double yAtBegin = m * (cx * gridsize) + n;
+            final double yAtEnd = m * (cx * gridsize + gridsize - 1) + n;
+            final double minY = Math.min(yAtBegin, yAtEnd) - verticalHalfWidth;
+            final double maxY = Math.max(yAtBegin, yAtEnd) + verticalHalfWidth;
+
+            if( maxY < 0.0 || minY >= gridLength * gridsize ) {
+                continue;
+            }
+
+            final int minCellY = clampCellY((int)Math.floor(minY / gridsize));
+            final int maxCellY = clampCellY((int)Math.floor(maxY / gridsize));
+
+            for( int cy = minCellY; cy <= maxCellY; cy++ ) {
+                final int cellIndex = cx + cy * gridWidth;
+                for( int i = cellStart[cellIndex]; i < cellEnd[cellIndex]; i++ ) {
+                    addIfNearLine(pointIndices[i], m, n, maxDistance, lengthOfNormal, result);
+                }
+
+                final IntArrayList overflow = overflowOfCells[cellIndex];
+                if( overflow != null ) {
+                    for( int i = 0; i < overflow.size(); i++ ) {
+                        addIfNearLine(overflow.get(i), m, n, maxDistance, lengthOfNormal, result);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addIfNearLine(final int pointIndex, final double m, final double n, final double maxDistance, final double lengthOfNormal, IntArrayList result) {
+        final double distance = Math.abs(m * xs[pointIndex] - ys[pointIndex] + n) / lengthOfNormal;
+        if( distance <= maxDistance ) {
+            result.add(pointIndex);
+        }
+    }
+
+    public int getGridsize() {
+        return gridsize;
+    }
+
+    private int calcCellIndex(final int x, final int y) {
+        return clampCellX(x / gridsize) + clampCellY(y / gridsize) * gridWidth;
+    }
+
+    private int clampCellX(final int cellX) {
+        return Math.min(Math.max(cellX, 0), gridWidth - 1);
+    }
+
+    private int clampCellY(final int cellY) {
+        return Math.min(Math.max(cellY, 0), gridLength - 1);
+    }
+
+    private final int gridsize;
+    private final int gridWidth;
+    private final int gridLength;
+
+    private final int[] cellStart;
+    private final int[] cellEnd; // end of the used range of the cell, is less than the start of the next cell if points were removed
+    private int[] pointIndices = new int[0];
+    private final IntArrayList[] overflowOfCells; // inserted points which didn't fit into the range of the cell, the lists are allocated on demand
+    private int[] cellOfPoint = new int[0]; // cell of each point, -1 if the point is not in the index
+
+    // coordinates of the points of the last build or insertion
+    private int[] xs;
+    private int[] ys;
+}
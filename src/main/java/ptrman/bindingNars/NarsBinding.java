@@ -9,7 +9,7 @@
  */
 package ptrman.bindingNars;
 
-import ptrman.levels.retina.Intersection;
+import ptrman.levels.retina.IntersectionGraph;
 import ptrman.levels.retina.RetinaPrimitive;
 
 import java.util.List;
@@ -21,25 +21,14 @@ public class NarsBinding {
         this.consumer = consumer;
     }
 
-    /**
-     * returns -1 if not found
-     * @param primitives
-     * @param primitive
-     * @return
-     */
-    private static int retIdxOf(List<RetinaPrimitive> primitives, RetinaPrimitive primitive) {
-        int idx = 0;
-        for(RetinaPrimitive iPrim : primitives) {
-            if (iPrim.equals(primitive)) {
-                return idx;
-            }
-            idx++;
-        }
-
-        return -1;
+    public void emitRetinaPrimitives(List<RetinaPrimitive> primitives) {
+        emitRetinaPrimitives(primitives, IntersectionGraph.build(primitives));
     }
 
-    public void emitRetinaPrimitives(List<RetinaPrimitive> primitives) {
+    /**
+     * @param intersectionGraph graph of the intersections of the primitives, the indices of the lines are the indices of the primitives
+     */
+    public void emitRetinaPrimitives(List<RetinaPrimitive> primitives, IntersectionGraph intersectionGraph) {
         int primnitiveIdCntr = 0;
 
         for (RetinaPrimitive iPrimitive : primitives) {
@@ -55,20 +44,14 @@ public class NarsBinding {
         }
 
         // emit line intersections
+        // the graph contains only line-line intersections
         {
-            for (RetinaPrimitive iPrimitive : primitives) {
-                if (iPrimitive.line == null)
-                    continue;
-
-                for(Intersection iIntersection :                 iPrimitive.line.intersections) {
-                    int idxA = retIdxOf(primitives, iIntersection.p0.primitive);
-                    if (primitives.get(idxA).line != null) {
-                        int idxB = retIdxOf(primitives, iIntersection.p1.primitive);
-                        if (primitives.get(idxB).line != null) {
-                            // we only care about line-line intersections
-                            consumer.emitLineIntersection("line" + idxA, "line" + idxB);
-                        }
-                    }
+            for (int idx = 0; idx < intersectionGraph.getNumberOfLines(); idx++) {
+                for (int iEntry = intersectionGraph.getEntriesBegin(idx); iEntry < intersectionGraph.getEntriesEnd(idx); iEntry++) {
+                    int idxOther = intersectionGraph.getOtherLine(iEntry);
+                    int idxA = intersectionGraph.isFirstPartner(iEntry) ? idx : idxOther;
+                    int idxB = intersectionGraph.isFirstPartner(iEntry) ? idxOther : idx;
+                    consumer.emitLineIntersection("line" + idxA, "line" + idxB);
                 }
             }
         }
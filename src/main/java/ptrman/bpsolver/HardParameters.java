@@ -52,6 +52,7 @@ public enum HardParameters
     {
 		;
 		public final static int NEIGHTBORHOODSEARCHRADIUS = 2;
+		public final static int BROADPHASEGRIDSIZE = 8; // size of the cells of the grid which finds the candidate pairs of lines
     }
     
     public enum ProcessH
@@ -152,10 +152,8 @@ public class Solver {
 
         final int processzNumberOfPixelsToMagnifyThreshold = 8;
 
-        final int processZGridsize = 8;
-
         processZFacade.setImageSize(getImageSize());
-        processZFacade.preSetupSet(processZGridsize, processzNumberOfPixelsToMagnifyThreshold);
+        processZFacade.preSetupSet(processzNumberOfPixelsToMagnifyThreshold);
         processZFacade.setup();
 
         processZFacade.set(image); // image doesn't need to be copied
@@ -356,7 +354,7 @@ public class Solver {
         *###
 
         if( enableProcessE ) {
-            processE.process(lineDetectors, image);
+            processE.process(lineDetectors, image).registerIntersectionsOnLines();
 
             if( debugLineIntersections ) {
                 lineIntersections = getAllLineIntersections(lineDetectors);
@@ -9,22 +9,39 @@
  */
 package ptrman.bpsolver;
 
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import ptrman.Datastructures.BoolMap2d;
 import ptrman.Datastructures.Dag;
+import ptrman.Datastructures.IBoolMap2d;
 import ptrman.Datastructures.IMap2d;
 import ptrman.Datastructures.Vector2d;
 import ptrman.bindingNars.NarsBinding;
 import ptrman.bindingNars.OpenNarsNarseseConsumer;
 import ptrman.levels.retina.*;
 import ptrman.levels.retina.helper.ProcessConnector;
+import ptrman.levels.retina.helper.ProcessPipeline;
 import ptrman.levels.visual.*;
+import ptrman.misc.ParallelHelper;
 
 import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 /**
  * new solver which is incomplete but should be in a working state
+ *
+ * a frame can be processed step by step with preFrame(), frameStep() and postFrame()
+ * or a stream of frames can be processed by the pipeline which is created with createPipeline()
  */
 public class Solver2 {
-    public ProcessFi processFi = new ProcessFi();
+    // processes and connectors of the frame which is processed with preFrame(), frameStep() and postFrame()
+    public ProcessFi processFi;
     public ProcessD processD;
     public ProcessD[] processDEdge;
     public ProcessConnector<ProcessA.Sample> connectorSamplesForEndosceleton;
@@ -37,6 +54,8 @@ public class Solver2 {
 
     // connector for final processing
     public ProcessConnector<RetinaPrimitive> cntrFinalProcessing;
+    // intersections of the primitives of cntrFinalProcessing
+    public IntersectionGraph intersectionGraph;
 
     public NarsBinding narsBinding;
 
@@ -47,40 +66,435 @@ public class Solver2 {
 
     public IMap2d<Boolean> mapBoolean; // boolean "main" map
 
-    private Vector2d<Integer> imageSize;
+    // are the edge channels and the endosceleton processed in parallel?
+    // each channel owns its processes and connectors, the results are joined before postFrame
+    public boolean processChannelsInParallel = false;
+    // executor of the parallel processing, the common ForkJoinPool is used if it is null
+    public ExecutorService executor = null;
+    // the objects are distributed to this many parts which are processed in parallel by process-H and process-E
+    public int numberOfObjectThreads = 1;
 
-    public Solver2() {
-        processD = new ProcessD();
-        processD.maximalDistanceOfPositions = 5000.0;
-        processD.onlyEndoskeleton = true;
-        processD.processDLineSamplesForProximity = 2;
+    // are only the 4x4 blocks of the endosceleton sampled which changed since the last image of the frame?
+    // the samples of the other blocks are kept, process-C and D only process the samples which can be affected by the changed blocks
+    // each frame has its own last image, so the frames should be released before the next frame is created
+    public boolean temporalSampling = false;
+
+    // draws the seeds of the processes of each frame, the processes are seeded randomly if it is null
+    private SplittableRandom seedRandom = null;
 
-        connectorSamplesForEndosceleton = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+    // edge detectors of the edge channels, the kernels and their transforms are reused by all frames
+    private final GaborFilterBank edgeFilterBank = new GaborFilterBank(8, 8, 10.0f/64.0f, (float)Math.PI*0.5f, 0.4f);
 
-        cntrFinalProcessing = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+    // frame which is processed with preFrame(), frameStep() and postFrame()
+    private Frame currentFrame;
 
-        processFi.outputSampleConnector = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+    // released frames, their processes and buffers are reused by the next frames of the same size
+    private final Deque<Frame> framePool = new ArrayDeque<>();
+
+    /**
+     * processes, connectors and intermediate results of one frame
+     *
+     * the frames don't share state, so multiple frames can be processed at the same time by the stages of the pipeline
+     * a released frame is reset and reused for a later image of the same size, so the maps and processes are allocated only once for each frame in flight
+     */
+    public static class Frame {
+        private Frame(final int numberOfEdgeDetectorDirections) {
+            processFi.outputSampleConnector = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+
+            processD.maximalDistanceOfPositions = 5000.0;
+            processD.onlyEndoskeleton = true;
+            processD.processDLineSamplesForProximity = 2;
+
+            processB.altitudeMode = ProcessB.EnumAltitudeMode.DISTANCETRANSFORM;
+
+            processAEdge = new ProcessA[numberOfEdgeDetectorDirections];
+            processDEdge = new ProcessD[numberOfEdgeDetectorDirections];
+            processHEdge = new ProcessH[numberOfEdgeDetectorDirections];
+            for(int i=0; i<numberOfEdgeDetectorDirections;i++) { // create processors for edges
+                processAEdge[i] = new ProcessA();
+                processDEdge[i] = new ProcessD();
+                processHEdge[i] = new ProcessH();
+                processDEdge[i].maximalDistanceOfPositions = 3.0;
+                processDEdge[i].overwriteObjectId = 0; // we want to overwrite the id of the detectors, because some parts of the program still assume object id's and we can't provide it in general case
+                processDEdge[i].processDSampleByProximityProximity = 6.0;
+            }
+
+            connectorDetectorsFromProcessDForEdge = new ProcessConnector[numberOfEdgeDetectorDirections];
+            connectorSamplesFromProcessAForEdge = new ProcessConnector[numberOfEdgeDetectorDirections];
+            connectorDetectorsFromProcessHForEdge = new ProcessConnector[numberOfEdgeDetectorDirections];
+            for(int i=0; i<numberOfEdgeDetectorDirections;i++) { // create connectors for edges
+                connectorDetectorsFromProcessHForEdge[i] = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+                connectorDetectorsFromProcessDForEdge[i] = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+                connectorSamplesFromProcessAForEdge[i] = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+            }
+        }
+
+        /**
+         * prepares the frame for the next image, the processes and the buffers are kept
+         *
+         * \param temporalSampling are the samples of the endosceleton of the last image kept for the temporal sampling?
+         */
+        private void reset(final BufferedImage image, final boolean temporalSampling) {
+            this.image = image;
+            annealingStep = 0;
+            intersectionGraph = null;
+
+            processFi.outputSampleConnector.flush();
+            processD.annealedCandidates.clear();
+
+            processA.temporalSampling = temporalSampling;
+            if( temporalSampling ) {
+                // the kept samples are not referenced by the lines of the last image anymore
+                for( final ProcessA.Sample iterationSample : connectorSamplesForEndosceleton.getOut() ) {
+                    iterationSample.refCount = 0;
+                }
+            }
+            else {
+                processA.resetTemporal();
+                sampleBufferEndosceleton.clear();
+                connectorSamplesForEndosceleton.flush();
+            }
+
+            connectorDetectorsEndosceletonFromProcessD.flush();
+            connectorDetectorsEndosceletonFromProcessH.flush();
+
+            for(int i=0; i<processDEdge.length;i++) {
+                processDEdge[i].annealedCandidates.clear();
+
+                connectorSamplesFromProcessAForEdge[i].flush();
+                connectorDetectorsFromProcessDForEdge[i].flush();
+                connectorDetectorsFromProcessHForEdge[i].flush();
+            }
+        }
+
+        /**
+         * allocates the maps of the size of the image, is only done for the first image of the frame
+         */
+        private void allocateBuffers(final Vector2d<Integer> imageSize) {
+            this.imageSize = imageSize;
+
+            mapColor = new RgbMap2d(imageSize.x, imageSize.y);
+            processingChain = createProcessingChain(imageSize);
+            mapGrayscale = ((VisualProcessor.ProcessingChain.ApplyChainElement) processingChain.filterChainDag.elements.get(processingChain.filterChainDag.elements.size()-1).content).result; // get from last element in the chain
+
+            mapBoolean = new BoolMap2d(imageSize.x, imageSize.y);
+
+            edgesOfChannels = new FloatMap2d[processAEdge.length];
+            edgeMapsOfChannels = new BoolMap2d[processAEdge.length];
+            for(int i=0; i<processAEdge.length;i++) {
+                edgesOfChannels[i] = new FloatMap2d(imageSize.x, imageSize.y);
+                edgeMapsOfChannels[i] = new BoolMap2d(imageSize.x, imageSize.y);
+            }
+        }
+
+        /**
+         * gives the samples of the endosceleton to process-D
+         *
+         * only the changed samples are given to process-D if the temporal sampling provides the delta to the last image,
+         * the sample objects of the kept samples are reused. A kept sample whose type was changed by process-C is replaced by a new sample object
+         */
+        private void emitEndosceletonSamples(final boolean isSampleDelta) {
+            if( !processA.temporalSampling ) {
+                sampleBufferEndosceleton.writeTo(connectorSamplesForEndosceleton); // process-D still works with sample objects
+                return;
+            }
+
+            if( sampleObjectsOfEndosceleton.length < sampleBufferEndosceleton.size() ) {
+                sampleObjectsOfEndosceleton = Arrays.copyOf(sampleObjectsOfEndosceleton, Math.max(sampleBufferEndosceleton.size(), sampleObjectsOfEndosceleton.length * 2));
+            }
+
+            if( !isSampleDelta ) {
+                connectorSamplesForEndosceleton.flush();
+                Arrays.fill(sampleObjectsOfEndosceleton, null);
+
+                for( int i = 0; i < sampleBufferEndosceleton.size(); i++ ) {
+                    if( sampleBufferEndosceleton.isAlive(i) ) {
+                        sampleObjectsOfEndosceleton[i] = sampleBufferEndosceleton.toSample(i);
+                        connectorSamplesForEndosceleton.add(sampleObjectsOfEndosceleton[i]);
+                    }
+                }
+                return;
+            }
+
+            removedSamplesOfEndosceleton.clear();
+            addedSamplesOfEndosceleton.clear();
+
+            // the removed samples are looked up before the index is reused by an added sample
+            for( int i = 0; i < processA.removedSampleIds.size(); i++ ) {
+                removeSampleObjectOfEndosceleton(processA.removedSampleIds.get(i));
+            }
+
+            for( int i = 0; i < sampleBufferEndosceleton.size(); i++ ) {
+                final ProcessA.Sample keptSample = sampleObjectsOfEndosceleton[i];
+                if( keptSample != null ) {
+                    if( !sampleBufferEndosceleton.isAlive(i) || keptSample.type != sampleBufferEndosceleton.readType(i) ) { // removed by process-B or classified again by process-C
+                        removeSampleObjectOfEndosceleton(i);
+                    }
+                    else {
+                        keptSample.altitude = sampleBufferEndosceleton.altitude[i]; // is refreshed by process-B
+                    }
+                }
+
+                if( sampleObjectsOfEndosceleton[i] == null && sampleBufferEndosceleton.isAlive(i) ) {
+                    sampleObjectsOfEndosceleton[i] = sampleBufferEndosceleton.toSample(i);
+                    addedSamplesOfEndosceleton.add(sampleObjectsOfEndosceleton[i]);
+                }
+            }
+
+            processD.updateInputSamples(removedSamplesOfEndosceleton, addedSamplesOfEndosceleton);
+        }
+
+        private void removeSampleObjectOfEndosceleton(final int sampleId) {
+            if( sampleObjectsOfEndosceleton[sampleId] != null ) {
+                removedSamplesOfEndosceleton.add(sampleObjectsOfEndosceleton[sampleId]);
+                sampleObjectsOfEndosceleton[sampleId] = null;
+            }
+        }
+
+        private boolean hasSizeOf(final BufferedImage otherImage) {
+            return image != null && image.getWidth() == otherImage.getWidth() && image.getHeight() == otherImage.getHeight();
+        }
+
+        public BufferedImage image;
+
+        public Vector2d<Integer> imageSize;
+        public IMap2d<Float> mapGrayscale;
+        public IBoolMap2d mapBoolean; // boolean "main" map
+        public FloatMap2d[] edgesOfChannels;
+
+        // pixels of the image, input of processingChain
+        private RgbMap2d mapColor;
+        // conversion to grayscale, its result is mapGrayscale
+        private VisualProcessor.ProcessingChain processingChain;
+        // thresholded edges of the channels
+        private BoolMap2d[] edgeMapsOfChannels;
+
+        public final ProcessFi processFi = new ProcessFi();
+        public final ProcessZFacade processZFacade = new ProcessZFacade();
+        public final ProcessA processA = new ProcessA();
+        public final ProcessB processB = new ProcessB();
+        public final ProcessC processC = new ProcessC();
+        public final ProcessD processD = new ProcessD();
+        public final ProcessA[] processAEdge;
+        public final ProcessD[] processDEdge;
+        public final ProcessH[] processHEdge;
+        public final ProcessH processHEndosceleton = new ProcessH();
+
+        // samples of the endosceleton are stored in a sample buffer while they are processed by process-A, B and C
+        public final SampleBuffer sampleBufferEndosceleton = new SampleBuffer();
+        // sample objects of the indices of sampleBufferEndosceleton which were given to process-D, only used by the temporal sampling
+        private ProcessA.Sample[] sampleObjectsOfEndosceleton = new ProcessA.Sample[0];
+        // delta of the sample objects which is given to process-D, are reused
+        private final List<ProcessA.Sample> removedSamplesOfEndosceleton = new ArrayList<>();
+        private final List<ProcessA.Sample> addedSamplesOfEndosceleton = new ArrayList<>();
+
+        public final ProcessConnector<ProcessA.Sample> connectorSamplesForEndosceleton = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+        public final ProcessConnector<RetinaPrimitive> connectorDetectorsEndosceletonFromProcessD = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+        public final ProcessConnector<RetinaPrimitive> connectorDetectorsEndosceletonFromProcessH = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+
+        public final ProcessConnector<ProcessA.Sample>[] connectorSamplesFromProcessAForEdge;
+        public final ProcessConnector<RetinaPrimitive>[] connectorDetectorsFromProcessDForEdge;
+        public final ProcessConnector<RetinaPrimitive>[] connectorDetectorsFromProcessHForEdge;
+
+        // connector for final processing, is the output of process-H of the endosceleton
+        public final ProcessConnector<RetinaPrimitive> cntrFinalProcessing = connectorDetectorsEndosceletonFromProcessH;
+
+        // intersections of the primitives of cntrFinalProcessing, is built by process-E
+        public IntersectionGraph intersectionGraph = null;
+
+        public int annealingStep = 0;
+    }
+
+    public Solver2() {
+        publish(new Frame(edgeFilterBank.getNumberOfOrientations()));
 
         // create NARS-binding
         narsBinding = new NarsBinding(new OpenNarsNarseseConsumer());
     }
 
+    /**
+     * makes the processing of the frames reproducible, independent of processChannelsInParallel and the scheduling of the threads
+     */
+    public void setSeed(long seed) {
+        seedRandom = new SplittableRandom(seed);
+    }
+
+    /**
+     * creates the processes of a frame or reuses a released frame of the same size
+     *
+     * the seeds of the processes are drawn in the order of the calls, so the frames must be created by one thread in the order of their processing
+     */
+    public Frame createFrame(final BufferedImage image) {
+        Frame frame = takeReleasedFrame(image);
+        if( frame == null ) {
+            frame = new Frame(edgeFilterBank.getNumberOfOrientations());
+        }
+        frame.reset(image, temporalSampling);
+
+        // seeds are drawn in a fixed order before anything runs in parallel
+        if( seedRandom != null ) {
+            for(int i=0; i<frame.processAEdge.length;i++) {
+                frame.processAEdge[i].setSeed(seedRandom.nextLong());
+                frame.processDEdge[i].setSeed(seedRandom.nextLong());
+            }
+
+            frame.processFi.rng.setSeed(seedRandom.nextLong());
+            frame.processA.setSeed(seedRandom.nextLong());
+            frame.processC.setSeed(seedRandom.nextLong());
+            frame.processD.setSeed(seedRandom.nextLong());
+        }
+
+        return frame;
+    }
+
+    /**
+     * returns a processed frame to the solver, it is reused by createFrame()
+     *
+     * the frame and its results must not be used after it was released
+     */
+    public void releaseFrame(final Frame frame) {
+        synchronized(framePool) {
+            framePool.add(frame);
+        }
+    }
+
+    /**
+     * \return released frame for an image of the size, null if there is none
+     */
+    private Frame takeReleasedFrame(final BufferedImage image) {
+        synchronized(framePool) {
+            while( !framePool.isEmpty() ) {
+                final Frame frame = framePool.poll();
+                if( frame.hasSizeOf(image) ) {
+                    return frame;
+                }
+                // the buffers and processes of frames of another size can't be reused
+            }
+        }
+        return null;
+    }
+
+    /**
+     * creates and starts a pipeline which processes a stream of frames, each stage runs on its own thread
+     *
+     * the frames are created with createFrame() and submitted to the pipeline, the processed frames are returned by take() in the same order
+     * the primitives of a processed frame are in cntrFinalProcessing of the frame and are emitted to narsBinding
+     * the taken frames should be released with releaseFrame() when they aren't used anymore, so their buffers are reused
+     * preFrame(), frameStep() and postFrame() must not be used while the pipeline is running
+     *
+     * \param capacity number of frames which can wait in front of each stage
+     * \param numberOfAnnealingSteps number of annealing steps of process-D for each frame
+     */
+    public ProcessPipeline<Frame> createPipeline(final int capacity, final int numberOfAnnealingSteps) {
+        ProcessPipeline<Frame> pipeline = new ProcessPipeline<>(capacity);
+        pipeline.addStage("preprocess", this::preprocessFrame);
+        pipeline.addStage("sampling", this::sampleFrame);
+        pipeline.addStage("annealing", frame -> {
+            for( int i = 0; i < numberOfAnnealingSteps; i++ ) {
+                stepFrame(frame);
+            }
+        });
+        pipeline.addStage("process-H", this::fuseFrame);
+        pipeline.addStage("process-E", this::intersectFrame);
+        pipeline.addStage("emit", this::emitFrame);
+        pipeline.start();
+        return pipeline;
+    }
+
     /**
      * must be called before the frame method family
      */
     public void preFrame() {
-        annealingStep = 0;
+        // the results of the previous frame are overwritten
+        if( currentFrame != null ) {
+            releaseFrame(currentFrame);
+        }
+        currentFrame = createFrame(imageDrawer.apply(null));
 
+        preprocessFrame(currentFrame);
+        sampleFrame(currentFrame);
 
-        IMap2d<ColorRgb> mapColor = Map2dImageConverter.convertImageToMap(imageDrawer.apply(null));
+        publish(currentFrame);
+    }
 
-        imageSize = new Vector2d<>(mapColor.getWidth(), mapColor.getLength());
+    /**
+     * does one processing step for the processing of the frame
+     */
+    public void frameStep() {
+        stepFrame(currentFrame);
 
+        annealingStep = currentFrame.annealingStep;
+    }
 
+    /**
+     * must be called to "finilize" the processing of a frame
+     */
+    public void postFrame() {
+        fuseFrame(currentFrame);
+        intersectFrame(currentFrame);
+        emitFrame(currentFrame);
 
+        publish(currentFrame);
+    }
 
-        // setup the processing chain
+    /**
+     * makes the processes and connectors of the frame visible in the fields of the solver
+     */
+    private void publish(final Frame frame) {
+        processFi = frame.processFi;
+        processD = frame.processD;
+        processDEdge = frame.processDEdge;
+        connectorSamplesForEndosceleton = frame.connectorSamplesForEndosceleton;
+        connectorDetectorsEndosceletonFromProcessD = frame.connectorDetectorsEndosceletonFromProcessD;
+        connectorDetectorsEndosceletonFromProcessH = frame.connectorDetectorsEndosceletonFromProcessH;
+        connectorSamplesFromProcessAForEdge = frame.connectorSamplesFromProcessAForEdge;
+        connectorDetectorsFromProcessDForEdge = frame.connectorDetectorsFromProcessDForEdge;
+        connectorDetectorsFromProcessHForEdge = frame.connectorDetectorsFromProcessHForEdge;
+        cntrFinalProcessing = frame.cntrFinalProcessing;
+        intersectionGraph = frame.intersectionGraph;
+        mapBoolean = frame.mapBoolean;
+        annealingStep = frame.annealingStep;
+    }
 
+    /**
+     * conversion to grayscale, edge detection, process-Fi and process-Z
+     */
+    private void preprocessFrame(final Frame frame) {
+        if( frame.processingChain == null ) {
+            frame.allocateBuffers(new Vector2d<>(frame.image.getWidth(), frame.image.getHeight()));
+        }
+
+        frame.mapColor.setFromImage(frame.image);
+        frame.processingChain.filterChain(frame.mapColor);
+
+        // detect edges of all directions with one transform of the image
+        edgeFilterBank.processInParallel = processChannelsInParallel;
+        edgeFilterBank.executor = executor;
+        edgeFilterBank.process(frame.mapGrayscale, frame.edgesOfChannels);
+
+        Map2dBinary.threshold(frame.mapGrayscale, 0.1f, frame.mapBoolean); // convert from edges[0]
+
+        frame.processFi.workingImage = frame.mapGrayscale;
+        frame.processFi.preProcess();
+        frame.processFi.process(); // sample image with process-Fi
+
+        final int processzNumberOfPixelsToMagnifyThreshold = 8;
+
+        frame.processZFacade.setImageSize(frame.imageSize);
+        frame.processZFacade.preSetupSet(processzNumberOfPixelsToMagnifyThreshold);
+        frame.processZFacade.setup();
+
+        frame.processZFacade.set(frame.mapBoolean);
+
+        frame.processZFacade.preProcessData();
+        frame.processZFacade.processData();
+        frame.processZFacade.postProcessData();
+    }
+
+    /**
+     * \return chain which converts the color image to the grayscale image
+     */
+    private static VisualProcessor.ProcessingChain createProcessingChain(final Vector2d<Integer> imageSize) {
         VisualProcessor.ProcessingChain processingChain = new VisualProcessor.ProcessingChain();
 
         Dag.Element newDagElement = new Dag.Element(
@@ -106,170 +520,164 @@ public class Solver2 {
             processingChain.filterChainDag.elements.add(newDagElement);
              */
 
+        return processingChain;
+    }
 
-        processingChain.filterChain(mapColor);
-
-        IMap2d<Float> mapGrayscale = ((VisualProcessor.ProcessingChain.ApplyChainElement) processingChain.filterChainDag.elements.get(processingChain.filterChainDag.elements.size()-1).content).result; // get from last element in the chain
-
-        int numberOfEdgeDetectorDirections = 8;
-
-        // convolution
-        Map2dApplyConvolution[] edgeDetectors = new Map2dApplyConvolution[numberOfEdgeDetectorDirections];
-        for(int i=0; i<numberOfEdgeDetectorDirections;i++) {
-            edgeDetectors[i] = new Map2dApplyConvolution(Convolution2dHelper.calcGaborKernel(8, (float)i/(float)numberOfEdgeDetectorDirections * 2.0f * (float)Math.PI, 10.0f/64.0f, (float)Math.PI*0.5f, 0.4f));
-        }
-
-        IMap2d<Float>[] edges = new IMap2d[numberOfEdgeDetectorDirections];
-        for(int i=0; i<numberOfEdgeDetectorDirections;i++) { // detect edges with filters
-            edges[i] = edgeDetectors[i].process(mapGrayscale);
-        }
-
-        ProcessA[] processAEdge = new ProcessA[numberOfEdgeDetectorDirections];
-        processDEdge = new ProcessD[numberOfEdgeDetectorDirections];
-        for(int i=0; i<numberOfEdgeDetectorDirections;i++) { // create processors for edges
-            processAEdge[i] = new ProcessA();
-            processDEdge[i] = new ProcessD();
-            processDEdge[i].maximalDistanceOfPositions = 3.0;
-            processDEdge[i].overwriteObjectId = 0; // we want to overwrite the id of the detectors, because some parts of the program still assume object id's and we can't provide it in general case
-            processDEdge[i].processDSampleByProximityProximity = 6.0;
-        }
-
-        connectorDetectorsFromProcessDForEdge = new ProcessConnector[numberOfEdgeDetectorDirections];
-        connectorSamplesFromProcessAForEdge = new ProcessConnector[numberOfEdgeDetectorDirections];
-        connectorDetectorsFromProcessHForEdge = new ProcessConnector[numberOfEdgeDetectorDirections];
-        for(int i=0; i<numberOfEdgeDetectorDirections;i++) { // create connectors for edges
-            connectorDetectorsFromProcessHForEdge[i] = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
-            connectorDetectorsFromProcessDForEdge[i] = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
-            connectorSamplesFromProcessAForEdge[i] = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
-        }
-
-        for(int i=0; i<numberOfEdgeDetectorDirections;i++) {
-            // copy image because processA changes the image
-
-            IMap2d<Boolean> mapBoolean = Map2dBinary.threshold(edges[i], 0.01f); // convert from edges[0]
-
-            ProcessConnector<ProcessA.Sample> connectorSamplesFromProcessA = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
-            processAEdge[i].set(mapBoolean.copy(), null, connectorSamplesFromProcessAForEdge[i]);
-
-            processAEdge[i].setup(imageSize);
-
-            processDEdge[i].setImageSize(imageSize);
-            processDEdge[i].set(connectorSamplesFromProcessAForEdge[i], connectorDetectorsFromProcessDForEdge[i]);
-
-            processAEdge[i].preProcessData();
-            processAEdge[i].processData(0.12f);
-            processAEdge[i].postProcessData();
-
-            processDEdge[i].preProcessData();
-            processDEdge[i].processData(1.0f);
-            processDEdge[i].postProcessData();
+    /**
+     * process-A and process-D of the edge channels and the endosceleton chain A, B, C, D
+     */
+    private void sampleFrame(final Frame frame) {
+        List<Callable<Void>> channelTasks = new ArrayList<>();
+        for(int i=0; i<frame.processAEdge.length;i++) {
+            final int channelIndex = i;
+
+            channelTasks.add(() -> {
+                processEdgeChannel(frame, channelIndex);
+                return null;
+            });
         }
+        channelTasks.add(() -> {
+            processEndosceleton(frame);
+            return null;
+        });
 
-        mapBoolean = Map2dBinary.threshold(mapGrayscale, 0.1f); // convert from edges[0]
-
-        processFi.workingImage = mapGrayscale;
-        processFi.preProcess();
-        processFi.process(); // sample image with process-Fi
+        runTasks(channelTasks);
+    }
 
-        ProcessZFacade processZFacade = new ProcessZFacade();
+    /**
+     * thresholding, process-A and process-D of one edge channel
+     *
+     * only touches the processes and connectors of the channel
+     */
+    private static void processEdgeChannel(final Frame frame, final int channelIndex) {
+        IBoolMap2d mapBoolean = frame.edgeMapsOfChannels[channelIndex];
+        Map2dBinary.threshold(frame.edgesOfChannels[channelIndex], 0.01f, mapBoolean); // convert from edges
 
-        final int processzNumberOfPixelsToMagnifyThreshold = 8;
+        ProcessA processAEdge = frame.processAEdge[channelIndex];
+        ProcessD processDEdge = frame.processDEdge[channelIndex];
 
-        final int processZGridsize = 8;
+        processAEdge.set(mapBoolean, null, frame.connectorSamplesFromProcessAForEdge[channelIndex]); // is copied by process-A because it changes the image
 
-        connectorSamplesForEndosceleton.out.clear();
-        processD.annealedCandidates.clear(); // TODO< cleanup in process with method >
+        processAEdge.setup(frame.imageSize);
 
-        processZFacade.setImageSize(imageSize);
-        processZFacade.preSetupSet(processZGridsize, processzNumberOfPixelsToMagnifyThreshold);
-        processZFacade.setup();
+        processDEdge.setImageSize(frame.imageSize);
+        processDEdge.set(frame.connectorSamplesFromProcessAForEdge[channelIndex], frame.connectorDetectorsFromProcessDForEdge[channelIndex]);
 
-        processZFacade.set(mapBoolean); // image doesn't need to be copied
+        processAEdge.preProcessData();
+        processAEdge.processData(0.12f);
+        processAEdge.postProcessData();
 
-        processZFacade.preProcessData();
-        processZFacade.processData();
-        processZFacade.postProcessData();
+        processDEdge.preProcessData();
+        processDEdge.processData(1.0f);
+        processDEdge.postProcessData();
+    }
 
-        IMap2d<Integer> notMagnifiedOutputObjectIdsMapDebug = processZFacade.getNotMagnifiedOutputObjectIds();
+    /**
+     * the endosceleton chain A, B, C, D
+     */
+    private static void processEndosceleton(final Frame frame) {
+        final Vector2d<Integer> imageSize = frame.imageSize;
 
-        ProcessA processA = new ProcessA();
-        ProcessB processB = new ProcessB();
-        ProcessC processC = new ProcessC();
+        // the image is copied by process-A because it changes the image
+        frame.processA.set(frame.mapBoolean, frame.processZFacade.getNotMagnifiedOutputObjectIds(), frame.sampleBufferEndosceleton);
+        frame.processA.setup(imageSize);
 
-        // copy image because processA changes the image
-        ProcessConnector<ProcessA.Sample> connectorSamplesFromProcessA = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
-        processA.set(mapBoolean.copy(), processZFacade.getNotMagnifiedOutputObjectIds(), connectorSamplesFromProcessA);
-        processA.setup(imageSize);
+        frame.processA.preProcessData();
+        frame.processA.processData(0.03f);
+        frame.processA.postProcessData();
 
-        ProcessConnector<ProcessA.Sample> conntrSamplesFromProcessB = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
-        processB.set(mapBoolean.copy(), connectorSamplesFromProcessA, conntrSamplesFromProcessB);
-        processB.setup(imageSize);
+        // process-C and D only process the changed samples if the temporal sampling provides the delta to the last image, process-B refreshes the altitudes of all samples
+        final boolean isSampleDelta = frame.processA.temporalSampling && frame.processA.isSampleDeltaOfPreviousFrame;
+        final IntArrayList addedSampleIds = isSampleDelta ? frame.processA.addedSampleIds : null;
+        final IntArrayList removedSampleIds = isSampleDelta ? frame.processA.removedSampleIds : null;
 
+        frame.processB.set(frame.mapBoolean, frame.sampleBufferEndosceleton);
+        frame.processB.setup(imageSize);
 
-        ProcessConnector<ProcessA.Sample> conntrSamplesFromProcessC0 = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
-        ProcessConnector<ProcessA.Sample> conntrSamplesFromProcessC1 = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
-        processC.set(conntrSamplesFromProcessB, conntrSamplesFromProcessC0, conntrSamplesFromProcessC1);
-        processC.setup(imageSize);
+        frame.processC.set(frame.sampleBufferEndosceleton, addedSampleIds, removedSampleIds);
+        frame.processC.setup(imageSize);
 
-        connectorDetectorsEndosceletonFromProcessD = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+        frame.processD.setImageSize(imageSize);
+        frame.processD.set(frame.connectorSamplesForEndosceleton, frame.connectorDetectorsEndosceletonFromProcessD);
 
-        connectorDetectorsEndosceletonFromProcessH = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+        frame.processB.preProcessData();
+        frame.processB.processData();
+        frame.processB.postProcessData();
 
+        frame.processC.preProcessData();
+        frame.processC.processData();
+        frame.processC.postProcessData();
 
-        processD.setImageSize(imageSize);
-        connectorSamplesForEndosceleton = conntrSamplesFromProcessC0;
-        processD.set(connectorSamplesForEndosceleton, connectorDetectorsEndosceletonFromProcessD);
+        frame.emitEndosceletonSamples(isSampleDelta);
 
-        processA.preProcessData();
-        processA.processData(0.03f);
-        processA.postProcessData();
+        frame.processD.preProcessData();
+        frame.processD.processData(1.0f);
+        frame.processD.postProcessData();
+    }
 
-        processB.preProcessData();
-        processB.processData();
-        processB.postProcessData();
+    /**
+     * annealing step of the processes D of the frame
+     */
+    private void stepFrame(final Frame frame) {
+        List<Callable<Void>> stepTasks = new ArrayList<>(frame.processDEdge.length + 1);
+
+        stepTasks.add(() -> {
+            frame.processD.step();
+            return null;
+        });
+
+        for (ProcessD d : frame.processDEdge) {
+            stepTasks.add(() -> {
+                d.step();
+                return null;
+            });
+        }
 
-        processC.preProcessData();
-        processC.processData();
-        processC.postProcessData();
+        runTasks(stepTasks);
 
-        processD.preProcessData();
-        processD.processData(1.0f);
-        processD.postProcessData();
+        frame.annealingStep++;
     }
 
     /**
-     * does one processing step for the processing of the frame
+     * runs the tasks in parallel if processChannelsInParallel is true, otherwise in order
      */
-    public void frameStep() {
-        // do annealing step of process D
-
-        processD.step();
-
-        for (ProcessD d : processDEdge) {
-            d.step();
+    private void runTasks(List<Callable<Void>> tasks) {
+        if( processChannelsInParallel ) {
+            ParallelHelper.invokeAllAndWait(ParallelHelper.getExecutorOrDefault(executor), tasks);
+            return;
         }
 
-        annealingStep++;
+        try {
+            for( final Callable<Void> iterationTask : tasks ) {
+                iterationTask.call();
+            }
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /**
-     * must be called to "finilize" the processing of a frame
+     * splits the line detectors into primitives and runs process-H for the edges and the endosceleton
      */
-    public void postFrame() {
-        // * emit narsese to narsese consumer
+    private void fuseFrame(final Frame frame) {
+        frame.processD.commitLineDetectors(); // split line detectors into "real" primitives
 
-        processD.commitLineDetectors(); // split line detectors into "real" primitives
-
-        for (ProcessD iD : processDEdge) {
+        for (ProcessD iD : frame.processDEdge) {
             iD.commitLineDetectors();
         }
 
         // * process-H for edges
-        for (int i = 0, processDEdgeLength = processDEdge.length; i < processDEdgeLength; i++) {
+        for (int i = 0, processDEdgeLength = frame.processDEdge.length; i < processDEdgeLength; i++) {
             //ProcessD iD = processDEdge[i];
-            ProcessH processH = new ProcessH();
-            processH.setImageSize(imageSize);
-            processH.set(connectorDetectorsFromProcessDForEdge[i], connectorDetectorsFromProcessHForEdge[i]);
+            ProcessH processH = frame.processHEdge[i];
+            processH.numberOfThreads = numberOfObjectThreads;
+            processH.executor = executor;
+            processH.setImageSize(frame.imageSize);
+            processH.set(frame.connectorDetectorsFromProcessDForEdge[i], frame.connectorDetectorsFromProcessHForEdge[i]);
             processH.setup();
 
             processH.preProcessData();
@@ -277,22 +685,31 @@ public class Solver2 {
             processH.postProcessData();
         }
 
-        // * process-H and process-E
+        // * process-H of the endosceleton
 
-        ProcessH processH = new ProcessH();
-        processH.setImageSize(imageSize);
-        processH.set(connectorDetectorsEndosceletonFromProcessD, connectorDetectorsEndosceletonFromProcessH);
+        ProcessH processH = frame.processHEndosceleton;
+        processH.numberOfThreads = numberOfObjectThreads;
+        processH.executor = executor;
+        processH.setImageSize(frame.imageSize);
+        processH.set(frame.connectorDetectorsEndosceletonFromProcessD, frame.connectorDetectorsEndosceletonFromProcessH);
         processH.setup();
 
         processH.preProcessData();
         processH.processData();
         processH.postProcessData();
+    }
 
-        cntrFinalProcessing = connectorDetectorsEndosceletonFromProcessH; // connect the connector for final processing to output from process-H
-
-        // intersect line primitives
-        ProcessE.process(cntrFinalProcessing.out, mapBoolean);
+    /**
+     * intersect line primitives with process-E
+     */
+    private void intersectFrame(final Frame frame) {
+        frame.intersectionGraph = ProcessE.process(frame.cntrFinalProcessing.out, frame.mapBoolean, ProcessE.EnumMode.BROADPHASE, numberOfObjectThreads, executor);
+    }
 
-        narsBinding.emitRetinaPrimitives(cntrFinalProcessing.out); // emit all collected primitives from process D
+    /**
+     * emit narsese to narsese consumer
+     */
+    private void emitFrame(final Frame frame) {
+        narsBinding.emitRetinaPrimitives(frame.cntrFinalProcessing.out, frame.intersectionGraph); // emit all collected primitives from process D
     }
 }
@@ -0,0 +1,280 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.retina;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.eclipse.collections.impl.list.mutable.primitive.ByteArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.DoubleArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * intersections of the lines of a frame as a compact adjacency graph
+ *
+ * the intersections of line i are the entries [getEntriesBegin(i), getEntriesEnd(i)), in the order in which they were found
+ * each entry stores the index of the other line, the endpoint types of both lines and the position of the intersection in flat arrays
+ * the graph is a snapshot, intersections which are added or removed later on the lines are not reflected
+ */
+public class IntersectionGraph {
+    /**
+     * builds the graph of the intersections which are registered on the lines, the entries are in the same order as in line.intersections
+     *
+     * intersections with primitives which are not in the collection or which are not lines are ignored
+     *
+     * \param primitives the lines, the index of a line is its position in the collection
+     */
+    public static IntersectionGraph build(Collection<RetinaPrimitive> primitives) {
+        List<RetinaPrimitive> lines = new ArrayList<>(primitives);
+
+        ObjectIntHashMap<RetinaPrimitive> indexByPrimitive = new ObjectIntHashMap<>(lines.size());
+        int numberOfEntries = 0;
+        for( int lineI = 0; lineI < lines.size(); lineI++ ) {
+            indexByPrimitive.put(lines.get(lineI), lineI);
+
+            if( lines.get(lineI).line != null ) {
+                numberOfEntries += lines.get(lineI).line.intersections.size();
+            }
+        }
+
+        IntersectionGraph graph = new IntersectionGraph(lines, numberOfEntries);
+
+        // entry of the first line of an intersection which was added, to find the entry of the other line
+        ObjectIntHashMap<Intersection> entryByIntersection = new ObjectIntHashMap<>(numberOfEntries);
+
+        int entryI = 0;
+        for( int lineI = 0; lineI < lines.size(); lineI++ ) {
+            graph.entriesStart[lineI] = entryI;
+
+            final RetinaPrimitive iterationPrimitive = lines.get(lineI);
+            if( iterationPrimitive.line == null ) {
+                continue;
+            }
+
+            for( final Intersection iterationIntersection : iterationPrimitive.line.intersections ) {
+                final boolean isFirstPartner = iterationIntersection.p0.primitive == iterationPrimitive;
+                final Intersection.IntersectionPartner partner = isFirstPartner ? iterationIntersection.p0 : iterationIntersection.p1;
+                final Intersection.IntersectionPartner otherPartner = isFirstPartner ? iterationIntersection.p1 : iterationIntersection.p0;
+
+                final int otherLineI = indexByPrimitive.getIfAbsent(otherPartner.primitive, -1);
+                if( otherLineI == -1 || otherPartner.primitive.line == null ) {
+                    continue;
+                }
+
+                final double[] positionData = iterationIntersection.intersectionPosition.getDataRef();
+
+                graph.otherLines[entryI] = otherLineI;
+                graph.isFirstPartner[entryI] = isFirstPartner;
+                graph.endpointTypes[entryI] = (byte)partner.intersectionEndpointType.ordinal();
+                graph.otherEndpointTypes[entryI] = (byte)otherPartner.intersectionEndpointType.ordinal();
+                graph.positions[entryI*2] = positionData[0];
+                graph.positions[entryI*2 + 1] = positionData[1];
+
+                final int partnerEntryI = entryByIntersection.removeKeyIfAbsent(iterationIntersection, -1);
+                if( partnerEntryI == -1 ) {
+                    entryByIntersection.put(iterationIntersection, entryI);
+                }
+                else {
+                    graph.partnerEntries[entryI] = partnerEntryI;
+                    graph.partnerEntries[partnerEntryI] = entryI;
+                }
+                entryI++;
+            }
+        }
+        graph.entriesStart[lines.size()] = entryI;
+
+        return graph;
+    }
+
+    /**
+     * builds the graph of the found intersections without registering them on the lines
+     *
+     * the entries of a line are in the order of the intersections in the hits, the hits of one line must be in one Hits
+     *
+     * \param lines the index of a line is its position in the list
+     */
+    static IntersectionGraph build(List<RetinaPrimitive> lines, List<Hits> hitsOfParts) {
+        int numberOfHits = 0;
+        for( final Hits iterationHits : hitsOfParts ) {
+            numberOfHits += iterationHits.size();
+        }
+
+        IntersectionGraph graph = new IntersectionGraph(lines, numberOfHits * 2);
+
+        // each hit is an entry of both lines
+        for( final Hits iterationHits : hitsOfParts ) {
+            for( int hitI = 0; hitI < iterationHits.size(); hitI++ ) {
+                graph.entriesStart[iterationHits.firstLines.get(hitI) + 1]++;
+                graph.entriesStart[iterationHits.secondLines.get(hitI) + 1]++;
+            }
+        }
+        for( int lineI = 0; lineI < lines.size(); lineI++ ) {
+            graph.entriesStart[lineI + 1] += graph.entriesStart[lineI];
+        }
+
+        int[] fillPosition = Arrays.copyOf(graph.entriesStart, lines.size());
+        for( final Hits iterationHits : hitsOfParts ) {
+            for( int hitI = 0; hitI < iterationHits.size(); hitI++ ) {
+                final int firstLineI = iterationHits.firstLines.get(hitI);
+                final int secondLineI = iterationHits.secondLines.get(hitI);
+                final int firstEntryI = fillPosition[firstLineI]++;
+                final int secondEntryI = fillPosition[secondLineI]++;
+
+                graph.setEntry(firstEntryI, secondLineI, true, iterationHits.firstEndpointTypes.get(hitI), iterationHits.secondEndpointTypes.get(hitI), iterationHits.xs.get(hitI), iterationHits.ys.get(hitI));
+                graph.setEntry(secondEntryI, firstLineI, false, iterationHits.secondEndpointTypes.get(hitI), iterationHits.firstEndpointTypes.get(hitI), iterationHits.xs.get(hitI), iterationHits.ys.get(hitI));
+                graph.partnerEntries[firstEntryI] = secondEntryI;
+                graph.partnerEntries[secondEntryI] = firstEntryI;
+            }
+        }
+
+        return graph;
+    }
+
+    private IntersectionGraph(final List<RetinaPrimitive> lines, final int numberOfEntries) {
+        this.lines = lines;
+        entriesStart = new int[lines.size() + 1];
+        otherLines = new int[numberOfEntries];
+        isFirstPartner = new boolean[numberOfEntries];
+        endpointTypes = new byte[numberOfEntries];
+        otherEndpointTypes = new byte[numberOfEntries];
+        positions = new double[numberOfEntries * 2];
+        partnerEntries = new int[numberOfEntries];
+        Arrays.fill(partnerEntries, -1);
+    }
+
+    private void setEntry(final int entry, final int otherLine, final boolean isFirstPartner, final byte endpointType, final byte otherEndpointType, final double x, final double y) {
+        otherLines[entry] = otherLine;
+        this.isFirstPartner[entry] = isFirstPartner;
+        endpointTypes[entry] = endpointType;
+        otherEndpointTypes[entry] = otherEndpointType;
+        positions[entry*2] = x;
+        positions[entry*2 + 1] = y;
+    }
+
+    /**
+     * adds the intersections of the graph to line.intersections of the lines, for the code which works with the intersection objects
+     *
+     * both lines of an intersection share one intersection object, the intersections are added in the order of the entries
+     */
+    public void registerIntersectionsOnLines() {
+        Intersection[] intersectionsOfEntries = new Intersection[otherLines.length];
+
+        for( int lineI = 0; lineI < lines.size(); lineI++ ) {
+            final RetinaPrimitive primitive = lines.get(lineI);
+
+            for( int entry = getEntriesBegin(lineI); entry < getEntriesEnd(lineI); entry++ ) {
+                if( intersectionsOfEntries[entry] == null ) {
+                    final RetinaPrimitive otherPrimitive = lines.get(otherLines[entry]);
+                    final Intersection.IntersectionPartner partner = new Intersection.IntersectionPartner(primitive, getEndpointType(entry));
+                    final Intersection.IntersectionPartner otherPartner = new Intersection.IntersectionPartner(otherPrimitive, getOtherEndpointType(entry));
+                    final ArrayRealVector position = new ArrayRealVector(new double[]{getPositionX(entry), getPositionY(entry)}, false);
+
+                    intersectionsOfEntries[entry] = isFirstPartner[entry] ? new Intersection(position, partner, otherPartner) : new Intersection(position, otherPartner, partner);
+                    if( partnerEntries[entry] != -1 ) {
+                        intersectionsOfEntries[partnerEntries[entry]] = intersectionsOfEntries[entry];
+                    }
+                }
+
+                primitive.line.intersections.add(intersectionsOfEntries[entry]);
+            }
+        }
+    }
+
+    public int getNumberOfLines() {
+        return lines.size();
+    }
+
+    public RetinaPrimitive getPrimitive(final int lineIndex) {
+        return lines.get(lineIndex);
+    }
+
+    public int getEntriesBegin(final int lineIndex) {
+        return entriesStart[lineIndex];
+    }
+
+    public int getEntriesEnd(final int lineIndex) {
+        return entriesStart[lineIndex + 1];
+    }
+
+    /**
+     * \return index of the other line of the intersection
+     */
+    public int getOtherLine(final int entry) {
+        return otherLines[entry];
+    }
+
+    /**
+     * \return is the line of the entry the partner p0 of the intersection?
+     */
+    public boolean isFirstPartner(final int entry) {
+        return isFirstPartner[entry];
+    }
+
+    public Intersection.IntersectionPartner.EnumIntersectionEndpointType getEndpointType(final int entry) {
+        return ENDPOINTTYPES[endpointTypes[entry]];
+    }
+
+    public Intersection.IntersectionPartner.EnumIntersectionEndpointType getOtherEndpointType(final int entry) {
+        return ENDPOINTTYPES[otherEndpointTypes[entry]];
+    }
+
+    public double getPositionX(final int entry) {
+        return positions[entry*2];
+    }
+
+    public double getPositionY(final int entry) {
+        return positions[entry*2 + 1];
+    }
+
+    private static final Intersection.IntersectionPartner.EnumIntersectionEndpointType[] ENDPOINTTYPES = Intersection.IntersectionPartner.EnumIntersectionEndpointType.values();
+
+    private final List<RetinaPrimitive> lines;
+
+    // first entry of each line, the entries of the last line end at entriesStart[lines.size()]
+    private final int[] entriesStart;
+
+    // properties of the entries
+    private final int[] otherLines;
+    private final boolean[] isFirstPartner;
+    private final byte[] endpointTypes;
+    private final byte[] otherEndpointTypes;
+    private final double[] positions; // x and y of each entry
+    private final int[] partnerEntries; // entry of the other line of the intersection, -1 if the other line has no entry of it
+
+    /**
+     * intersections which were found between the lines, the endpoint types are the ordinals of EnumIntersectionEndpointType
+     */
+    static final class Hits {
+        public void add(final int firstLine, final int secondLine, final double x, final double y, final byte firstEndpointType, final byte secondEndpointType) {
+            firstLines.add(firstLine);
+            secondLines.add(secondLine);
+            xs.add(x);
+            ys.add(y);
+            firstEndpointTypes.add(firstEndpointType);
+            secondEndpointTypes.add(secondEndpointType);
+        }
+
+        public int size() {
+            return firstLines.size();
+        }
+
+        // the first line is the partner p0 of the intersection
+        public final IntArrayList firstLines = new IntArrayList();
+        public final IntArrayList secondLines = new IntArrayList();
+        public final DoubleArrayList xs = new DoubleArrayList();
+        public final DoubleArrayList ys = new DoubleArrayList();
+        public final ByteArrayList firstEndpointTypes = new ByteArrayList();
+        public final ByteArrayList secondEndpointTypes = new ByteArrayList();
+    }
+}
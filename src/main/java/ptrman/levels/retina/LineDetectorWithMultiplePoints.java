@@ -14,6 +14,8 @@ import static ptrman.math.ArrayRealVectorHelper.getScaled;
 public class LineDetectorWithMultiplePoints {
     public List<ProcessA.Sample> samples = new ArrayList<>(); // actual samples which are "included" in the line
 
+    public final LineFitStatistics fitStatistics = new LineFitStatistics(); // running sums of the positions of the samples, must be updated with addSample() and removeSample()
+
     public double cachedConf = 0.0; // cached confidence of this line detector
 
     public double m, n;
@@ -137,6 +139,27 @@ public class LineDetectorWithMultiplePoints {
         }
     }
 
+    public void addSample(ProcessA.Sample sample) {
+        samples.add(sample);
+        fitStatistics.add(sample.position.getOne(), sample.position.getTwo());
+    }
+
+    public void removeSample(ProcessA.Sample sample) {
+        if( samples.remove(sample) ) {
+            fitStatistics.remove(sample.position.getOne(), sample.position.getTwo());
+        }
+    }
+
+    /**
+     * calculates m, n and mse from the running sums of the samples
+     */
+    public void recalcFit(LineFitStatistics.EnumFitMode fitMode) {
+        fitStatistics.calcFit(fitMode);
+        m = fitStatistics.m;
+        n = fitStatistics.n;
+        mse = fitStatistics.mse;
+    }
+
     // must be called before removal in process-D
     public void cleanup() {
         for(ProcessA.Sample iSample : samples)
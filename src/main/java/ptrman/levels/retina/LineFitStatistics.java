@@ -0,0 +1,163 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.retina;
+
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+
+/**
+ * running sums of the points of a line for fitting the line in O(1) after each added or removed point
+ *
+ * the sums are exact because the points have integer coordinates
+ *
+ * LEASTSQUARES fits y over x or x over y, depending on which axis has less "overlapping" coordinates (coordinates which are shared by more than one point)
+ * TOTALLEASTSQUARES minimizes the orthogonal distances and needs no switching of the axis
+ */
+public class LineFitStatistics {
+    public enum EnumFitMode {
+        LEASTSQUARES,
+        TOTALLEASTSQUARES
+    }
+
+    // result of the last fit, m and n are NaN if the line is not defined, mse is NaN for less than three points
+    public double m, n;
+    public double mse;
+
+    public void add(final int x, final int y) {
+        count++;
+        sumX += x;
+        sumY += y;
+        sumXX += (long)x * x;
+        sumXY += (long)x * y;
+        sumYY += (long)y * y;
+
+        if( countsOfX.addToValue(x, 1) == 2 ) {
+            overlappingOnX++;
+        }
+        if( countsOfY.addToValue(y, 1) == 2 ) {
+            overlappingOnY++;
+        }
+    }
+
+    /**
+     * removes a point which was added before
+     */
+    public void remove(final int x, final int y) {
+        count--;
+        sumX -= x;
+        sumY -= y;
+        sumXX -= (long)x * x;
+        sumXY -= (long)x * y;
+        sumYY -= (long)y * y;
+
+        if( countsOfX.addToValue(x, -1) == 1 ) {
+            overlappingOnX--;
+        }
+        if( countsOfY.addToValue(y, -1) == 1 ) {
+            overlappingOnY--;
+        }
+    }
+
+    public void clear() {
+        count = 0;
+        sumX = sumY = 0;
+        sumXX = sumXY = sumYY = 0;
+
+        countsOfX.clear();
+        countsOfY.clear();
+        overlappingOnX = overlappingOnY = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getMeanX() {
+        return (double)sumX / count;
+    }
+
+    public double getMeanY() {
+        return (double)sumY / count;
+    }
+
+    /**
+     * \return number of x coordinates which are shared by more than one point
+     */
+    public int getOverlappingOnX() {
+        return overlappingOnX;
+    }
+
+    /**
+     * \return number of y coordinates which are shared by more than one point
+     */
+    public int getOverlappingOnY() {
+        return overlappingOnY;
+    }
+
+    /**
+     * calculates m, n and mse of the points
+     */
+    public void calcFit(final EnumFitMode mode) {
+        // centered sums multiplied by count, are exact
+        final long scaledSxx = count * sumXX - sumX * sumX;
+        final long scaledSxy = count * sumXY - sumX * sumY;
+        final long scaledSyy = count * sumYY - sumY * sumY;
+
+        final double sxx = (double)scaledSxx / count;
+        final double sxy = (double)scaledSxy / count;
+        final double syy = (double)scaledSyy / count;
+
+        final double meanX = getMeanX();
+        final double meanY = getMeanY();
+
+        final double sumOfSquaredErrors;
+
+        if( mode == EnumFitMode.TOTALLEASTSQUARES ) {
+            // direction of the line is the eigenvector of the largest eigenvalue of the scatter matrix
+            final double angle = 0.5 * Math.atan2(2.0 * sxy, sxx - syy);
+
+            m = Math.tan(angle);
+            n = meanY - m * meanX;
+
+            // smallest eigenvalue is the sum of the squared orthogonal distances
+            final double halfDifference = (sxx - syy) * 0.5;
+            sumOfSquaredErrors = Math.max(0.0, (sxx + syy) * 0.5 - Math.sqrt(halfDifference * halfDifference + sxy * sxy));
+        }
+        else if( overlappingOnX <= overlappingOnY ) {
+            // regression on x axis
+            final double slope = sxx == 0.0 ? Double.NaN : sxy / sxx;
+
+            m = slope;
+            n = meanY - slope * meanX;
+            sumOfSquaredErrors = Math.max(0.0, syy - sxy * sxy / sxx);
+        }
+        else {
+            // regression on y axis
+            // we switch x and y and calculate m and n from the regression result
+            final double regressionM = syy == 0.0 ? Double.NaN : sxy / syy;
+            final double regressionN = meanX - regressionM * meanY;
+
+            m = 1.0 / regressionM;
+            n = -m * regressionN;
+            sumOfSquaredErrors = Math.max(0.0, sxx - sxy * sxy / syy);
+        }
+
+        mse = count < 3 ? Double.NaN : sumOfSquaredErrors / (count - 2);
+    }
+
+    private int count = 0;
+    private long sumX, sumY;
+    private long sumXX, sumXY, sumYY;
+
+    // number of points for each coordinate
+    private final IntIntHashMap countsOfX = new IntIntHashMap();
+    private final IntIntHashMap countsOfY = new IntIntHashMap();
+    private int overlappingOnX = 0;
+    private int overlappingOnY = 0;
+}
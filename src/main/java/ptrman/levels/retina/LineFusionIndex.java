@@ -0,0 +1,199 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.retina;
+
+import org.eclipse.collections.impl.list.mutable.primitive.BooleanArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.DoubleArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import ptrman.misc.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * index of line detectors by their quantized angle and normal offset, like the cells of a hough transform
+ *
+ * the offset of a line is measured along the normal of the center angle of its angle bucket, so the lines of one angle bucket have comparable offsets
+ * a query returns the lines of the neighbouring angle buckets whose offsets are close enough and whose x extent overlaps, these are the candidates for a fusion
+ */
+public class LineFusionIndex {
+    /**
+     * \param numberOfAngleBuckets number of buckets of the angles between 0 and pi, must be at least 3
+     * \param offsetBucketSize size of the buckets of the normal offset
+     * \param maxDistance maximal distance of an endpoint to the other line of a fusion
+     */
+    public LineFusionIndex(final int numberOfAngleBuckets, final double offsetBucketSize, final double maxDistance) {
+        Assert.Assert(numberOfAngleBuckets >= 3, "at least three angle buckets are required");
+        Assert.Assert(offsetBucketSize > 0.0, "offsetBucketSize must be greater than zero");
+
+        this.numberOfAngleBuckets = numberOfAngleBuckets;
+        this.offsetBucketSize = offsetBucketSize;
+        this.maxDistance = maxDistance;
+
+        angleBucketSize = Math.PI / numberOfAngleBuckets;
+        // the angles of lines in neighbouring buckets differ by less than two buckets
+        sinOfMaximalAngleDifference = Math.sin(Math.min(2.0 * angleBucketSize, Math.PI * 0.5));
+    }
+
+    /**
+     * \return id of the line
+     */
+    public int add(final SingleLineDetector line) {
+        final int id = lines.size();
+
+        final double[] aData = line.a.getDataRef();
+        final double[] bData = line.b.getDataRef();
+
+        final double centerX = (aData[0] + bData[0]) * 0.5;
+        final double centerY = (aData[1] + bData[1]) * 0.5;
+        final double halfLength = Math.sqrt((bData[0] - aData[0]) * (bData[0] - aData[0]) + (bData[1] - aData[1]) * (bData[1] - aData[1])) * 0.5;
+
+        double angle = Math.atan2(bData[1] - aData[1], bData[0] - aData[0]);
+        if( angle < 0.0 ) {
+            angle += Math.PI;
+        }
+        final int angleBucket = Math.min((int)(angle / angleBucketSize), numberOfAngleBuckets - 1);
+        final int offsetBucket = calcOffsetBucket(calcOffset(angleBucket, centerX, centerY));
+
+        lines.add(line);
+        centersX.add(centerX);
+        centersY.add(centerY);
+        halfLengths.add(halfLength);
+        angleBuckets.add(angleBucket);
+        offsetBuckets.add(offsetBucket);
+        isAlive.add(true);
+
+        maxHalfLength = Math.max(maxHalfLength, halfLength);
+
+        final long key = calcKey(angleBucket, offsetBucket);
+        IntArrayList bucket = buckets.get(key);
+        if( bucket == null ) {
+            bucket = new IntArrayList();
+            buckets.put(key, bucket);
+        }
+        bucket.add(id);
+
+        return id;
+    }
+
+    public void remove(final int id) {
+        Assert.Assert(isAlive.get(id), "line is already removed");
+
+        isAlive.set(id, false);
+        buckets.get(calcKey(angleBuckets.get(id), offsetBuckets.get(id))).remove(id);
+    }
+
+    /**
+     * removes all lines, the buckets are kept for the lines which are added next
+     */
+    public void clear() {
+        lines.clear();
+        centersX.clear();
+        centersY.clear();
+        halfLengths.clear();
+        angleBuckets.clear();
+        offsetBuckets.clear();
+        isAlive.clear();
+        maxHalfLength = 0.0;
+
+        buckets.forEachValue(IntArrayList::clear);
+    }
+
+    public SingleLineDetector getLine(final int id) {
+        return lines.get(id);
+    }
+
+    public boolean isAlive(final int id) {
+        return isAlive.get(id);
+    }
+
+    /**
+     * \return number of added lines, including the removed lines
+     */
+    public int size() {
+        return lines.size();
+    }
+
+    /**
+     * adds the ids of the lines in the neighbouring buckets of the line whose x extent overlaps with the line
+     *
+     * \param result the ids are appended, each id once
+     */
+    public void queryCandidates(final int id, IntArrayList result) {
+        final SingleLineDetector line = lines.get(id);
+        final double minX = line.a.getDataRef()[0];
+        final double maxX = line.b.getDataRef()[0];
+
+        // the offset of the centers along the normal grows with the distance of the centers along the lines if the angles differ
+        final double offsetRadius = maxDistance + (halfLengths.get(id) + maxHalfLength) * sinOfMaximalAngleDifference;
+
+        for( int deltaAngle = -1; deltaAngle <= 1; deltaAngle++ ) {
+            final int angleBucket = Math.floorMod(angleBuckets.get(id) + deltaAngle, numberOfAngleBuckets);
+            final double offset = calcOffset(angleBucket, centersX.get(id), centersY.get(id));
+
+            final int offsetBucketBegin = calcOffsetBucket(offset - offsetRadius);
+            final int offsetBucketEnd = calcOffsetBucket(offset + offsetRadius);
+            for( int offsetBucket = offsetBucketBegin; offsetBucket <= offsetBucketEnd; offsetBucket++ ) {
+                final IntArrayList bucket = buckets.get(calcKey(angleBucket, offsetBucket));
+                if( bucket == null ) {
+                    continue;
+                }
+
+                for( int i = 0; i < bucket.size(); i++ ) {
+                    final int otherId = bucket.get(i);
+                    if( otherId == id ) {
+                        continue;
+                    }
+
+                    // the x extents must overlap for both kinds of fusion
+                    final SingleLineDetector otherLine = lines.get(otherId);
+                    if( otherLine.a.getDataRef()[0] <= maxX && minX <= otherLine.b.getDataRef()[0] ) {
+                        result.add(otherId);
+                    }
+                }
+            }
+        }
+    }
+
+    // offset of the point along the normal of the center angle of the bucket
+    private double calcOffset(final int angleBucket, final double x, final double y) {
+        final double centerAngle = (angleBucket + 0.5) * angleBucketSize;
+        return -Math.sin(centerAngle) * x + Math.cos(centerAngle) * y;
+    }
+
+    private int calcOffsetBucket(final double offset) {
+        return (int)Math.floor(offset / offsetBucketSize);
+    }
+
+    private static long calcKey(final int angleBucket, final int offsetBucket) {
+        return ((long)angleBucket << 32) | (offsetBucket & 0xffffffffL);
+    }
+
+    private final int numberOfAngleBuckets;
+    private final double angleBucketSize;
+    private final double offsetBucketSize;
+    private final double maxDistance;
+    private final double sinOfMaximalAngleDifference;
+
+    private double maxHalfLength = 0.0;
+
+    // properties of the lines by id
+    private final List<SingleLineDetector> lines = new ArrayList<>();
+    private final DoubleArrayList centersX = new DoubleArrayList();
+    private final DoubleArrayList centersY = new DoubleArrayList();
+    private final DoubleArrayList halfLengths = new DoubleArrayList();
+    private final IntArrayList angleBuckets = new IntArrayList();
+    private final IntArrayList offsetBuckets = new IntArrayList();
+    private final BooleanArrayList isAlive = new BooleanArrayList();
+
+    // ids of the alive lines by the key of their angle and offset bucket
+    private final LongObjectHashMap<IntArrayList> buckets = new LongObjectHashMap<>();
+}
@@ -13,6 +13,11 @@ import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomAdaptor;
 import org.eclipse.collections.api.tuple.primitive.IntIntPair;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.Datastructures.FastBooleanMap2d;
+import ptrman.Datastructures.IBoolMap2d;
+import ptrman.Datastructures.IIntMap2d;
 import ptrman.Datastructures.IMap2d;
 import ptrman.Datastructures.Vector2d;
 import ptrman.levels.retina.helper.ProcessConnector;
@@ -22,6 +27,8 @@ import java.awt.*;
 import java.util.Random;
 
 import static org.eclipse.collections.impl.tuple.primitive.PrimitiveTuples.pair;
+import static ptrman.levels.visual.Map2dConverter.copyAsBoolMap;
+import static ptrman.levels.visual.Map2dConverter.toIntMap;
 
 /**
  *
@@ -60,7 +67,28 @@ public class ProcessA implements IProcess {
         //new RandomAdaptor( new MersenneTwister() ); //<- expensive
         new Random();
 
+    // sample with the word parallel algorithm on the 64 bit words of a FastBooleanMap2d?
+    public boolean wordParallelSampling = false;
+
+    // sample only the blocks which changed since the last frame? uses the word parallel algorithm
+    public boolean temporalSampling = false;
+
+    // delta of the last frame of the temporal sampling, indices of the samples in the output sample buffer
+    public final IntArrayList addedSampleIds = new IntArrayList();
+    public final IntArrayList removedSampleIds = new IntArrayList();
+    // are addedSampleIds and removedSampleIds the delta to the previous frame? is false if all blocks were sampled again, the downstream processes have to process all samples then
+    public boolean isSampleDeltaOfPreviousFrame = false;
+
     public void processData(float throttle) {
+        if( temporalSampling ) {
+            processDataTemporal(throttle);
+            return;
+        }
+        if( wordParallelSampling ) {
+            processDataWordParallel(throttle);
+            return;
+        }
+
         int H = workingImage.getLength() / 4;
         int W = workingImage.getWidth() / 4;
         for(int blockY = 0; blockY < H; blockY++ ) {
@@ -68,15 +96,15 @@ public class ProcessA implements IProcess {
                 int hitCount = 0;
 
                 for( int y = blockY*4; y < (blockY+1)*4; y++ ) {
-                    for (int x = blockX; x < (blockX+1)*4; x++) {
+                    for (int x = blockX*4; x < (blockX+1)*4; x++) {
                         if (throttle < 1f && rng.nextDouble() > throttle) continue;
 
                         if( sampleMaskAtPosition(x, y, MaskDetail0) ) {
-                            if( workingImage.readAt(x, y) ) {
+                            if( workingImage.get(x, y) ) {
                                 hitCount++;
-                                workingImage.setAt(x, y, false);
+                                workingImage.set(x, y, false);
 
-                                final int objectId = idMap != null ? idMap.readAt(x, y) : -1;
+                                final int objectId = idMap != null ? idMap.get(x, y) : -1;
                                 //Assert.Assert(objectId  != -1, "");
                                 /*if( objectId != -1 ) {
                                     int d = 0;
@@ -93,15 +121,15 @@ public class ProcessA implements IProcess {
 
                 // sample it a second time for nearly all of the missing pixels
                 for( int y = blockY*4; y < (blockY+1)*4; y++ ) {
-                    for (int x = blockX; x < (blockX+1)*4; x++) {
+                    for (int x = blockX*4; x < (blockX+1)*4; x++) {
                         if (throttle < 1f && rng.nextDouble() > throttle) continue;
 
                         if( sampleMaskAtPosition(x, y, MaskDetail1) ) {
-                            if( workingImage.readAt(x, y) ) {
+                            if( workingImage.get(x, y) ) {
                                 hitCount++;
-                                workingImage.setAt(x, y, false);
+                                workingImage.set(x, y, false);
 
-                                final int objectId = idMap != null ? idMap.readAt(x, y) : -1;
+                                final int objectId = idMap != null ? idMap.get(x, y) : -1;
                                 //Assert.Assert(objectId  != -1, "");
                                 /*if( objectId != -1 ) {
                                     int d = 0;
@@ -116,6 +144,230 @@ public class ProcessA implements IProcess {
         }
     }
 
+    /**
+     * samples 16 4x4 blocks at once by masking the 64 bit words of the rows of the image with the 64 bit versions of the masks
+     *
+     * throttling is done by skipping a geometric distributed number of candidate pixels, which is equivalent to keeping each candidate with the probability throttle
+     */
+    private void processDataWordParallel(float throttle) {
+        if( !(workingImage instanceof FastBooleanMap2d) ) {
+            convertedImage = FastBooleanMap2d.createRoundedUpCopy(workingImage, convertedImage);
+        }
+        final FastBooleanMap2d image = workingImage instanceof FastBooleanMap2d ? (FastBooleanMap2d)workingImage : convertedImage;
+        workingImage = image; // the sampled pixels are set to false in the converted image
+
+        final int wordsPerRow = image.getWordsPerRow();
+        final int numberOfBlockRows = image.getLength() / 4;
+
+        skipRemaining = drawNumberOfSkippedCandidates(throttle);
+
+        for( int blockY = 0; blockY < numberOfBlockRows; blockY++ ) {
+            for( int wordX = 0; wordX < wordsPerRow; wordX++ ) {
+                sampleBlocksOfWord(image, wordX, blockY, ~0L, throttle);
+            }
+        }
+    }
+
+    /**
+     * samples the 16 4x4 blocks which are covered by the word wordX of the rows of the block row blockY
+     *
+     * \param blockMask all bits of the nibbles of the blocks which are sampled are set
+     */
+    private void sampleBlocksOfWord(final FastBooleanMap2d image, final int wordX, final int blockY, final long blockMask, final float throttle) {
+        if( ((image.readWord(wordX, blockY*4) | image.readWord(wordX, blockY*4+1) | image.readWord(wordX, blockY*4+2) | image.readWord(wordX, blockY*4+3)) & blockMask) == 0 ) {
+            return; // fast path for empty blocks
+        }
+
+        long hitCountsOfBlocks = 0; // hit count of each block in the nibbles
+
+        for( int row = 0; row < 4; row++ ) {
+            final int y = blockY*4 + row;
+            final long word = image.readWord(wordX, y);
+            final long sampled = sampleBitsOfWord(word & MaskDetail0Words[row] & blockMask, wordX, y, throttle);
+            image.writeWord(wordX, y, word & ~sampled);
+
+            hitCountsOfBlocks += countBitsOfNibbles(sampled);
+        }
+
+        // MaskDetail0 has 8 pixels, the blocks where all of them were hit are not sampled a second time
+        final long fullBlocks = ((hitCountsOfBlocks >>> 3) & 0x1111111111111111L) * 0xF;
+
+        // sample it a second time for nearly all of the missing pixels
+        for( int row = 0; row < 4; row++ ) {
+            final int y = blockY*4 + row;
+            final long word = image.readWord(wordX, y);
+            final long sampled = sampleBitsOfWord(word & MaskDetail1Words[row] & blockMask & ~fullBlocks, wordX, y, throttle);
+            image.writeWord(wordX, y, word & ~sampled);
+        }
+    }
+
+    /**
+     * samples only the 4x4 blocks which changed since the last frame
+     *
+     * the samples of the blocks which didn't change are kept in the output sample buffer, the samples of the changed blocks are removed and the blocks are sampled again
+     * the indices of the added and removed samples are stored in addedSampleIds and removedSampleIds for the downstream processes
+     *
+     * the samples of unchanged blocks keep the object id of the frame where they were sampled
+     */
+    private void processDataTemporal(float throttle) {
+        Assert.Assert(outputSampleBuffer != null, "temporal sampling needs a sample buffer as output");
+
+        if( !(workingImage instanceof FastBooleanMap2d) ) {
+            convertedImage = FastBooleanMap2d.createRoundedUpCopy(workingImage, convertedImage);
+        }
+        final FastBooleanMap2d image = workingImage instanceof FastBooleanMap2d ? (FastBooleanMap2d)workingImage : convertedImage;
+        workingImage = image; // the sampled pixels are set to false in the converted image
+
+        final FastBooleanMap2d unsampledImage = image.copy();
+
+        final int wordsPerRow = image.getWordsPerRow();
+        final int numberOfBlockRows = image.getLength() / 4;
+
+        addedSampleIds.clear();
+        removedSampleIds.clear();
+
+        final boolean isEverythingDirty = previousImage == null || previousImage.getWidth() != image.getWidth() || previousImage.getLength() != image.getLength();
+        isSampleDeltaOfPreviousFrame = !isEverythingDirty;
+        if( isEverythingDirty ) {
+            removeAllTemporalSamples();
+
+            blocksPerRow = image.getWidth() / 4;
+            sampleIdsOfBlocks = new IntArrayList[blocksPerRow * numberOfBlockRows];
+            for( int i = 0; i < sampleIdsOfBlocks.length; i++ ) {
+                sampleIdsOfBlocks[i] = new IntArrayList();
+            }
+        }
+
+        skipRemaining = drawNumberOfSkippedCandidates(throttle);
+
+        for( int blockY = 0; blockY < numberOfBlockRows; blockY++ ) {
+            for( int wordX = 0; wordX < wordsPerRow; wordX++ ) {
+                final long dirtyBlocks = isEverythingDirty ? ~0L : calcDirtyBlocksOfWord(image, previousImage, wordX, blockY);
+                if( dirtyBlocks == 0 ) {
+                    continue;
+                }
+
+                // remove the samples of the dirty blocks
+                long remainingDirtyNibbles = dirtyBlocks & 0x1111111111111111L;
+                while( remainingDirtyNibbles != 0 ) {
+                    final int blockX = wordX*16 + Long.numberOfTrailingZeros(remainingDirtyNibbles) / 4;
+                    remainingDirtyNibbles &= remainingDirtyNibbles - 1;
+
+                    IntArrayList sampleIdsOfBlock = sampleIdsOfBlocks[blockX + blockY * blocksPerRow];
+                    for( int i = 0; i < sampleIdsOfBlock.size(); i++ ) {
+                        removeSampleOfBlock(sampleIdsOfBlock.get(i), blockX, blockY);
+                    }
+                    sampleIdsOfBlock.clear();
+                }
+
+                sampleBlocksOfWord(image, wordX, blockY, dirtyBlocks, throttle);
+            }
+        }
+
+        previousImage = unsampledImage;
+    }
+
+    /**
+     * \return all bits of the nibbles of the blocks are set where a pixel differs between the images
+     */
+    static long calcDirtyBlocksOfWord(final FastBooleanMap2d image, final FastBooleanMap2d previousImage, final int wordX, final int blockY) {
+        long difference = 0;
+        for( int row = 0; row < 4; row++ ) {
+            difference |= image.readWord(wordX, blockY*4 + row) ^ previousImage.readWord(wordX, blockY*4 + row);
+        }
+
+        final long dirtyNibbles = (difference | (difference >>> 1) | (difference >>> 2) | (difference >>> 3)) & 0x1111111111111111L;
+        return dirtyNibbles * 0xF;
+    }
+
+    private void removeAllTemporalSamples() {
+        if( sampleIdsOfBlocks == null ) {
+            return;
+        }
+
+        for( int blockI = 0; blockI < sampleIdsOfBlocks.length; blockI++ ) {
+            final IntArrayList iterationSampleIdsOfBlock = sampleIdsOfBlocks[blockI];
+            for( int i = 0; i < iterationSampleIdsOfBlock.size(); i++ ) {
+                removeSampleOfBlock(iterationSampleIdsOfBlock.get(i), blockI % blocksPerRow, blockI / blocksPerRow);
+            }
+        }
+    }
+
+    /**
+     * removes the sample from the output sample buffer if it still belongs to the block
+     *
+     * a downstream process can remove a sample (for example process-B if it has no altitude), its index can be reused by a sample of another block
+     */
+    private void removeSampleOfBlock(final int sampleId, final int blockX, final int blockY) {
+        if( !outputSampleBuffer.isAlive(sampleId) || outputSampleBuffer.x[sampleId] / 4 != blockX || outputSampleBuffer.y[sampleId] / 4 != blockY ) {
+            return;
+        }
+
+        outputSampleBuffer.remove(sampleId);
+        removedSampleIds.add(sampleId);
+    }
+
+    /**
+     * forgets the last frame and its samples, the next frame of the temporal sampling samples all blocks
+     *
+     * the samples of the last frame are not removed from the output sample buffer, it has to be cleared by the caller
+     */
+    public void resetTemporal() {
+        previousImage = null;
+        sampleIdsOfBlocks = null;
+    }
+
+    /**
+     * outputs the candidate pixels which are not skipped by the throttling
+     *
+     * \return the bits of the sampled pixels
+     */
+    private long sampleBitsOfWord(long candidates, final int wordX, final int y, final float throttle) {
+        long sampled = 0;
+
+        while( candidates != 0 ) {
+            final int bitIndex = Long.numberOfTrailingZeros(candidates);
+            candidates &= candidates - 1; // clear lowest set bit
+
+            if( skipRemaining > 0 ) {
+                skipRemaining--;
+                continue;
+            }
+            skipRemaining = drawNumberOfSkippedCandidates(throttle);
+
+            sampled |= 1L << bitIndex;
+
+            final int x = wordX*64 + bitIndex;
+            final int objectId = idMap != null ? idMap.get(x, y) : -1;
+            output(x, y, objectId);
+        }
+
+        return sampled;
+    }
+
+    /**
+     * draws the number of failed bernoulli trials before the first success with the probability throttle
+     */
+    private long drawNumberOfSkippedCandidates(final float throttle) {
+        if( throttle >= 1f ) {
+            return 0;
+        }
+        if( throttle <= 0f ) {
+            return Long.MAX_VALUE;
+        }
+
+        final double u = 1.0 - rng.nextDouble(); // in (0, 1]
+        return (long)Math.floor(Math.log(u) / Math.log(1.0 - throttle));
+    }
+
+    /**
+     * \return count of the set bits of each nibble, stored in the nibble
+     */
+    private static long countBitsOfNibbles(long v) {
+        v = v - ((v >>> 1) & 0x5555555555555555L);
+        return (v & 0x3333333333333333L) + ((v >>> 2) & 0x3333333333333333L);
+    }
+
     @Override
     public void postProcessData() {
 
@@ -206,13 +458,50 @@ public class ProcessA implements IProcess {
     
     
     public void set(IMap2d<Boolean> image, IMap2d<Integer> idMap, ProcessConnector<Sample> outputSampleConnector) {
-        workingImage = image.copy();
-        this.idMap = idMap;
+        setWorkingImage(image);
+        this.idMap = idMap != null ? toIntMap(idMap) : null;
 
         this.outputSampleConnector = outputSampleConnector;
+        this.outputSampleBuffer = null;
+    }
+
+    /**
+     * samples are written into the buffer instead of a connector, no Sample objects are allocated
+     */
+    public void set(IMap2d<Boolean> image, IMap2d<Integer> idMap, SampleBuffer outputSampleBuffer) {
+        setWorkingImage(image);
+        this.idMap = idMap != null ? toIntMap(idMap) : null;
+
+        this.outputSampleConnector = null;
+        this.outputSampleBuffer = outputSampleBuffer;
+    }
+
+    // copies the image into the buffer of the last frame if it has the same size
+    private void setWorkingImage(IMap2d<Boolean> image) {
+        workingImage = copyAsBoolMap(image, copiedImage);
+        if( workingImage instanceof BoolMap2d ) {
+            copiedImage = (BoolMap2d)workingImage;
+        }
+    }
+
+    /**
+     * makes the sampling deterministic
+     */
+    public void setSeed(long seed) {
+        rng.setSeed(seed);
     }
 
     private void output(final int x, final int y, final int objectId) {
+        if( outputSampleBuffer != null ) {
+            final int sampleId = outputSampleBuffer.add(x, y, objectId, (float)defaultSampleConf);
+
+            if( temporalSampling ) {
+                sampleIdsOfBlocks[x/4 + (y/4) * blocksPerRow].add(sampleId);
+                addedSampleIds.add(sampleId);
+            }
+            return;
+        }
+
         Sample createdSample = new Sample(x, y);
         createdSample.objectId = objectId;
         createdSample.conf = defaultSampleConf;
@@ -227,9 +516,20 @@ public class ProcessA implements IProcess {
         return mask4by4[modX + modY * 4];
     }
 
-    private IMap2d<Boolean> workingImage;
-    private IMap2d<Integer> idMap;
+    private IBoolMap2d workingImage;
+    // buffers of the copied and the converted image, are reused by the next frame of the same size
+    private BoolMap2d copiedImage;
+    private FastBooleanMap2d convertedImage;
+    private IIntMap2d idMap;
     private ProcessConnector<Sample> outputSampleConnector;
+    private SampleBuffer outputSampleBuffer;
+
+    // state of the temporal sampling
+    private FastBooleanMap2d previousImage; // image of the last frame before it was sampled
+    private IntArrayList[] sampleIdsOfBlocks; // indices of the samples in the output sample buffer for each 4x4 block
+    private int blocksPerRow;
+
+    private long skipRemaining = 0; // number of candidate pixels which are still skipped by the throttling of the word parallel sampling
 
     private static final boolean[] MaskDetail0 =
             {
@@ -247,5 +547,23 @@ public class ProcessA implements IProcess {
                     false, false, true, false
             };
 
+    // 64 bit versions of the masks, one word for each row of a 4x4 block
+    private static final long[] MaskDetail0Words = convertMaskToWords(MaskDetail0);
+    private static final long[] MaskDetail1Words = convertMaskToWords(MaskDetail1);
+
+    private static long[] convertMaskToWords(final boolean[] mask4by4) {
+        long[] result = new long[4];
+
+        for( int row = 0; row < 4; row++ ) {
+            for( int bitIndex = 0; bitIndex < 64; bitIndex++ ) {
+                if( sampleMaskAtPosition(bitIndex, row, mask4by4) ) {
+                    result[row] |= 1L << bitIndex;
+                }
+            }
+        }
+
+        return result;
+    }
+
 
 }
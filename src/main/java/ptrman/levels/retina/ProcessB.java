@@ -11,6 +11,7 @@ package ptrman.levels.retina;
 
 import org.eclipse.collections.api.tuple.primitive.IntIntPair;
 import org.eclipse.collections.impl.set.mutable.UnifiedSet;
+import ptrman.Algorithms.DistanceTransform;
 import ptrman.Datastructures.*;
 import ptrman.levels.retina.helper.ProcessConnector;
 import ptrman.math.ArrayRealVectorHelper;
@@ -19,11 +20,14 @@ import ptrman.misc.Assert;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.eclipse.collections.impl.tuple.primitive.PrimitiveTuples.pair;
+import static ptrman.levels.visual.Map2dConverter.toBoolMap;
 
 
 /**
@@ -31,20 +35,51 @@ import static org.eclipse.collections.impl.tuple.primitive.PrimitiveTuples.pair;
  * computation of altitude of points
  */
 public class ProcessB extends AbstractProcessB {
+    /**
+     * how is the altitude of the samples calculated?
+     */
+    public enum EnumAltitudeMode {
+        NEARESTSEARCH, // search for the nearest pixel for each sample with the help of the spatial acceleration map
+        DISTANCETRANSFORM // calculate the distance transform of the whole map once and look up the altitude of each sample
+    }
+
+    public EnumAltitudeMode altitudeMode = EnumAltitudeMode.NEARESTSEARCH;
+
+    // number of threads the passes of the distance transform are split into, 1 disables parallel execution
+    public int distanceTransformThreads = 1;
+    // executor of the parallel distance transform, the common ForkJoinPool is used if it is null
+    public ExecutorService distanceTransformExecutor = null;
+
     private SpatialAcceleratedMap2d spatialAcceleratedMap2d;
     private FastBooleanMap2d map;
+    private DistanceTransform distanceTransform;
 
     private int counterCellPositiveCandidates;
     private int counterCellCandidates;
     public IMap2d<Boolean> inputMap;
     public ProcessConnector<ProcessA.Sample> inputSampleConnector;
     public ProcessConnector<ProcessA.Sample> outputSampleConnector;
+    public SampleBuffer sampleBuffer;
 
     @Override
     public void set(IMap2d<Boolean> map, ProcessConnector<ProcessA.Sample> inputSampleConnector, ProcessConnector<ProcessA.Sample> outputSampleConnector) {
         this.inputMap = map;
         this.inputSampleConnector = inputSampleConnector;
         this.outputSampleConnector = outputSampleConnector;
+        this.sampleBuffer = null;
+    }
+
+    /**
+     * the altitude is written in place into the sample buffer
+     *
+     * the altitude of all samples is calculated again, also of the samples which were kept by the temporal sampling of process-A, because a changed block can change the altitude of samples outside of it
+     * samples for which no altitude could be found are removed from the buffer, as the connector path doesn't forward them
+     */
+    public void set(IMap2d<Boolean> map, SampleBuffer sampleBuffer) {
+        this.inputMap = map;
+        this.inputSampleConnector = null;
+        this.outputSampleConnector = null;
+        this.sampleBuffer = sampleBuffer;
     }
 
     @Override
@@ -61,28 +96,44 @@ public class ProcessB extends AbstractProcessB {
      */
     @Override
     public void processData() {
-        List<ProcessA.Sample> samples = inputSampleConnector.getOut();
-
         final int MAXRADIUS = (int)Math.ceil( Math.sqrt( imageSize.x*imageSize.x + imageSize.y*imageSize.y) ); // (int)Math.sqrt(squaredDistance(new double[]{(double)imageSize.x, (double)imageSize.y}));
 
-        final int GRIDSIZE_FOR_SPATIALACCELERATEDMAP2D = 8;
+        final FastBooleanMap2d convertedMap = convertMapToFastBooleanMap2d(inputMap, map);
+        if( convertedMap != map ) {
+            // the acceleration structure refers to the map of the previous size
+            spatialAcceleratedMap2d = null;
+        }
+        this.map = convertedMap;
 
-        counterCellPositiveCandidates = 0;
-        counterCellCandidates = 0;
+        if( sampleBuffer != null ) {
+            if( altitudeMode == EnumAltitudeMode.DISTANCETRANSFORM ) {
+                processBufferByDistanceTransform();
+            }
+            else {
+                processBufferByNearestSearch(MAXRADIUS);
+            }
+
+            return;
+        }
 
-        this.map = convertMapToFastBooleanMap2d(inputMap);
+        List<ProcessA.Sample> samples = inputSampleConnector.getOut();
+
+        if( altitudeMode == EnumAltitudeMode.DISTANCETRANSFORM ) {
+            processDataByDistanceTransform(samples, MAXRADIUS);
+        }
+        else {
+            processDataByNearestSearch(samples, MAXRADIUS);
+        }
+    }
+
+    private void processDataByNearestSearch(List<ProcessA.Sample> samples, final int MAXRADIUS) {
+        prepareNearestSearch();
 
-        spatialAcceleratedMap2d = new SpatialAcceleratedMap2d(map, GRIDSIZE_FOR_SPATIALACCELERATEDMAP2D);
-        spatialAcceleratedMap2d.recalculateGridCellStateMap();
-        
         for( ProcessA.Sample iterationSample : samples ) {
 
             Tuple2<IntIntPair, Double> nearestResult = findNearestPositionWhereMapIs(false, iterationSample.position, map, MAXRADIUS);
             if( nearestResult == null ) {
-                iterationSample.altitude =
-                    //TODO CHECK
-                    //((MAXRADIUS+1)*2)*((MAXRADIUS+1)*2);
-                    Math.sqrt( Math.pow(((MAXRADIUS+1)*2),2) + Math.pow(((MAXRADIUS+1)*2),2 ));
+                iterationSample.altitude = calcAltitudeOfNotFound(MAXRADIUS);
             } else {
                 // create a new sample to the output connector
                 ProcessA.Sample outputSample = iterationSample.getClone();
@@ -94,17 +145,125 @@ public class ProcessB extends AbstractProcessB {
         System.out.println("cell acceleration (positive cases): " + ((float) counterCellPositiveCandidates / (float) counterCellCandidates) * 100.0f + "%" );
     }
 
+    private void processBufferByNearestSearch(final int MAXRADIUS) {
+        prepareNearestSearch();
+
+        for( int i = 0; i < sampleBuffer.size(); i++ ) {
+            if( !sampleBuffer.isAlive(i) ) {
+                continue;
+            }
+
+            Tuple2<IntIntPair, Double> nearestResult = findNearestPositionWhereMapIs(false, pair(sampleBuffer.x[i], sampleBuffer.y[i]), map, MAXRADIUS);
+            if( nearestResult == null ) {
+                sampleBuffer.remove(i);
+            } else {
+                sampleBuffer.altitude[i] = nearestResult.e1.floatValue();
+            }
+        }
+    }
+
+    private void prepareNearestSearch() {
+        final int GRIDSIZE_FOR_SPATIALACCELERATEDMAP2D = 8;
+
+        counterCellPositiveCandidates = 0;
+        counterCellCandidates = 0;
+
+        if( spatialAcceleratedMap2d == null ) {
+            spatialAcceleratedMap2d = new SpatialAcceleratedMap2d(map, GRIDSIZE_FOR_SPATIALACCELERATEDMAP2D);
+        }
+        spatialAcceleratedMap2d.recalculateGridCellStateMap();
+    }
+
+    /**
+     * calculates the distance transform of the map once and looks up the altitude of each sample in O(1)
+     */
+    private void processDataByDistanceTransform(List<ProcessA.Sample> samples, final int MAXRADIUS) {
+        calculateDistanceTransform();
+
+        for( ProcessA.Sample iterationSample : samples ) {
+            final int x = iterationSample.position.getOne();
+            final int y = iterationSample.position.getTwo();
+
+            if( !distanceTransform.isDistanceValidAt(x, y) ) {
+                iterationSample.altitude = calcAltitudeOfNotFound(MAXRADIUS);
+            } else {
+                // create a new sample to the output connector
+                ProcessA.Sample outputSample = iterationSample.getClone();
+                outputSample.altitude = distanceTransform.readDistanceAt(x, y);
+                outputSampleConnector.add(outputSample);
+            }
+        }
+    }
+
+    private void processBufferByDistanceTransform() {
+        calculateDistanceTransform();
+
+        for( int i = 0; i < sampleBuffer.size(); i++ ) {
+            if( !sampleBuffer.isAlive(i) ) {
+                continue;
+            }
+
+            final int x = sampleBuffer.x[i];
+            final int y = sampleBuffer.y[i];
+
+            if( !distanceTransform.isDistanceValidAt(x, y) ) {
+                sampleBuffer.remove(i);
+            } else {
+                sampleBuffer.altitude[i] = (float)distanceTransform.readDistanceAt(x, y);
+            }
+        }
+    }
+
+    private void calculateDistanceTransform() {
+        if( distanceTransform == null || distanceTransform.getWidth() != map.getWidth() || distanceTransform.getLength() != map.getLength() ) {
+            distanceTransform = new DistanceTransform(map.getWidth(), map.getLength());
+        }
+
+        if( distanceTransformThreads > 1 ) {
+            final ExecutorService executor = distanceTransformExecutor != null ? distanceTransformExecutor : ForkJoinPool.commonPool();
+            distanceTransform.calculate(map, false, executor, distanceTransformThreads);
+        }
+        else {
+            distanceTransform.calculate(map, false);
+        }
+    }
+
+    /**
+     * \return the distance transform of the last frame, is null if no frame was processed in the DISTANCETRANSFORM mode
+     *         exposes the timing meters of the passes
+     */
+    public DistanceTransform getDistanceTransform() {
+        return distanceTransform;
+    }
+
+    private static double calcAltitudeOfNotFound(final int MAXRADIUS) {
+        //TODO CHECK
+        //((MAXRADIUS+1)*2)*((MAXRADIUS+1)*2);
+        return Math.sqrt( Math.pow(((MAXRADIUS+1)*2),2) + Math.pow(((MAXRADIUS+1)*2),2 ));
+    }
+
     @Override
     public void postProcessData() {
     }
 
-    private static FastBooleanMap2d convertMapToFastBooleanMap2d(IMap2d<Boolean> map) {
+    /**
+     * \param target map of the previous frame, is reused if it has the same size, can be null
+     */
+    private static FastBooleanMap2d convertMapToFastBooleanMap2d(IMap2d<Boolean> map, FastBooleanMap2d target) {
         final int roundUpWidth = 64 + map.getWidth() - (map.getWidth() % 64);
-        FastBooleanMap2d fastMap = new FastBooleanMap2d(roundUpWidth, map.getLength());
+        FastBooleanMap2d fastMap;
+        if( target != null && target.getWidth() == roundUpWidth && target.getLength() == map.getLength() ) {
+            fastMap = target;
+            fastMap.clear();
+        }
+        else {
+            fastMap = new FastBooleanMap2d(roundUpWidth, map.getLength());
+        }
 
+        final IBoolMap2d boolMap = toBoolMap(map);
         for( int y = 0; y < map.getLength(); y++ ) {
             for( int x = 0; x < map.getWidth(); x++ ) {
-                fastMap.setAt(x, y, map.readAt(x, y));
+                fastMap.set(x, y, boolMap.get(x, y));
             }
         }
 
@@ -124,12 +283,7 @@ public class ProcessB extends AbstractProcessB {
         }
         */
 
-        IMap2d<Boolean> debugMap = new Map2d<>(spatialAcceleratedMap2d.getSize().x, spatialAcceleratedMap2d.getSize().y);
-        for( int y = 0; y < debugMap.getLength(); y++ ) {
-            for( int x = 0; x < debugMap.getWidth(); x++ ) {
-                debugMap.setAt(x, y, false);
-            }
-        }
+        BoolMap2d debugMap = new BoolMap2d(spatialAcceleratedMap2d.getSize().x, spatialAcceleratedMap2d.getSize().y);
 
 //        final ArrayRealVector positionReal = ptrman.math.ArrayRealVectorHelper.integerToArrayRealVector(position);
 
@@ -167,13 +321,13 @@ public class ProcessB extends AbstractProcessB {
             for( final Vector2d<Integer> iterationGridCellPosition : gridCellsToScan ) {
                 //System.out.println("gridCell position " + Integer.toString(iterationGridCellPosition.x) + " " + Integer.toString(iterationGridCellPosition.y));
 
-                debugMap.setAt(iterationGridCellPosition.x, iterationGridCellPosition.y, true);
+                debugMap.set(iterationGridCellPosition.x, iterationGridCellPosition.y, true);
             }
 
             // debug display map
             for( int y = 0; y < debugMap.getLength(); y++ ) {
                 for( int x = 0; x < debugMap.getWidth(); x++ ) {
-                    boolean valueRead = debugMap.readAt(x, y);
+                    boolean valueRead = debugMap.get(x, y);
 
                     if( valueRead ) {
                         System.out.print("x");
@@ -228,7 +382,7 @@ public class ProcessB extends AbstractProcessB {
         int py = cellPosition.getTwo();
         return IntStream.range(py * gridsize, (py + 1) * gridsize).mapToObj((int y) ->
             IntStream.range(x0, x1)
-                .filter((int x) -> !map.readAt(x, y))
+                .filter((int x) -> !map.get(x, y))
                 .mapToObj((int x) -> pair(x,y))
         ).flatMap(x -> x);
 
@@ -255,7 +409,7 @@ public class ProcessB extends AbstractProcessB {
 
         for( int y = cellPosition.y * gridsize; y < (cellPosition.y+1) * gridsize; y++ ) {
             for( int x = cellPosition.x * gridsize; x < (cellPosition.x+1) * gridsize; x++ ) {
-                if( map.readAt(x, y) == value ) {
+                if( map.get(x, y) == value ) {
                     result.add(new Vector2d<>(x, y));
                 }
             }
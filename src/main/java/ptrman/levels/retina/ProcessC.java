@@ -10,20 +10,20 @@
 package ptrman.levels.retina;
 
 
-import org.eclipse.collections.api.tuple.primitive.IntIntPair;
-import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import ptrman.Datastructures.SpatialGridIndex;
 import ptrman.Datastructures.Vector2d;
 import ptrman.bpsolver.HardParameters;
 import ptrman.levels.retina.helper.ProcessConnector;
-import ptrman.levels.retina.helper.SpatialDrawer;
-import ptrman.levels.retina.helper.SpatialListMap2d;
 import ptrman.misc.Assert;
+import ptrman.misc.ParallelHelper;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-
-import static org.eclipse.collections.impl.tuple.primitive.PrimitiveTuples.pair;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 /**
  *
@@ -31,41 +31,61 @@ import static org.eclipse.collections.impl.tuple.primitive.PrimitiveTuples.pair;
  */
 public class ProcessC implements IProcess {
 
-    private SpatialListMap2d<ProcessA.Sample> accelerationMap;
+    // index of the samples for the nearest neighbor search
+    private SpatialGridIndex spatialIndex;
+    private int spatialIndexWidth;
+    private int spatialIndexLength;
+    private SampleBuffer indexedSampleBuffer; // sample buffer of the samples in the spatial index, the index is updated by the delta of the samples if it is the current sample buffer
+    private int maxSortedSamplesOfIndexedSamples; // number of the nearest neighbors of the classification of the indexed samples
 
     public int maxSortedSamples = 8;
 
     public int gridsize = 8;
     private Vector2d<Integer> imageSize;
 
-    private final Random random = new Random();
+    // the samples are split into this many parts which are classified in parallel
+    public int numberOfThreads = 1;
+    // executor of the parallel classification, the common ForkJoinPool is used if it is null
+    public ExecutorService executor = null;
+
+    // the random value of a sample for the selection of the candidates for process-F is derived from the seed and the index of the sample
+    private long seed = new SplittableRandom().nextLong();
 
     public ProcessConnector<ProcessA.Sample> inputSampleConnector;
     public ProcessConnector<ProcessA.Sample> resultSamplesToProcessF;
     public ProcessConnector<ProcessA.Sample> resultSampleConnector;
-    final FastList<SampleWithDistance> sortedSamples = new FastList();
-
-    /** sort order: lowest distance first */
-    private static class SampleWithDistance implements Comparable<SampleWithDistance> {
-
-
-        public SampleWithDistance(ProcessA.Sample sample, double distance) {
-            this.sample = sample;
-            this.distance = distance;
-            used = true;
-        }
-        
 
-        public final ProcessA.Sample sample;
-        public final double distance;
-
-        public boolean used = false; // used for the sorted array
-
-        @Override
-        public int compareTo(SampleWithDistance o) {
-            return Double.compare(distance, o.distance);
-        }
-    }
+    // used when the samples are read from and written to a sample buffer
+    public SampleBuffer sampleBuffer;
+    public final IntArrayList resultSampleIndicesToProcessF = new IntArrayList(); // indices of the samples in the sample buffer which are candidates for process-F
+    // delta of the samples of the sample buffer since the last call, all samples are processed if they are null
+    public IntArrayList addedSampleIds;
+    public IntArrayList removedSampleIds;
+
+    // nearest neighbors of the current sample, one heap for each part
+    private SpatialGridIndex.NeighborHeap[] neighborsOfParts = new SpatialGridIndex.NeighborHeap[0];
+
+    // is true for the samples which were selected as candidates for process-F, by index
+    private boolean[] isCandidateForProcessF = new boolean[0];
+
+    // state of the last classification of each sample, by index, is used to find the samples which have to be classified again for the delta of the samples
+    private int[] indexedPositionsX = new int[0]; // position of the sample when it was inserted into the spatial index
+    private int[] indexedPositionsY = new int[0];
+    private float[] classifiedAltitudes = new float[0];
+    private double[] neighborRadii = new double[0]; // distance of the farthest nearest neighbor, is infinite if less than maxSortedSamples neighbors were found
+    private boolean[] isMarkedForClassification = new boolean[0];
+
+    // buffers of the delta, are reused
+    private final IntArrayList sampleIdsToClassify = new IntArrayList();
+    private final IntArrayList dirtyPositionsX = new IntArrayList(); // positions of the samples which were removed, added or whose altitude changed
+    private final IntArrayList dirtyPositionsY = new IntArrayList();
+    private final IntArrayList samplesNearDirtyPosition = new IntArrayList();
+
+    // samples of the input connector, are reused
+    private int[] samplePositionsX = new int[0];
+    private int[] samplePositionsY = new int[0];
+    private float[] sampleAltitudes = new float[0];
+    private byte[] sampleTypes = new byte[0];
 
     public ProcessC() {
 
@@ -79,6 +99,43 @@ public class ProcessC implements IProcess {
         this.inputSampleConnector = inputSampleConnector;
         this.resultSamplesToProcessF = resultSamplesToProcessF;
         this.resultSampleConnector = resultSampleConnector;
+        this.sampleBuffer = null;
+        this.addedSampleIds = null;
+        this.removedSampleIds = null;
+    }
+
+    /**
+     * the type of the samples is written in place into the sample buffer
+     */
+    public void set(SampleBuffer sampleBuffer) {
+        set(sampleBuffer, null, null);
+    }
+
+    /**
+     * only the samples are classified again whose nearest neighbors or altitudes can have changed since the last call, the other samples keep their type
+     *
+     * these are the added samples, the samples whose altitude changed and the samples which have one of them or a removed sample within the distance of their farthest nearest neighbor.
+     * All samples are classified if the spatial index doesn't contain the samples of the sample buffer yet
+     *
+     * \param addedSampleIds indices of the added samples as provided by the temporal sampling of process-A, all samples are processed if it is null
+     * \param removedSampleIds indices of the removed samples, an index can be reused by an added sample. Samples which were removed by process-B are found by their alive flag
+     */
+    public void set(SampleBuffer sampleBuffer, IntArrayList addedSampleIds, IntArrayList removedSampleIds) {
+        this.inputSampleConnector = null;
+        this.resultSamplesToProcessF = null;
+        this.resultSampleConnector = null;
+        this.sampleBuffer = sampleBuffer;
+        this.addedSampleIds = addedSampleIds;
+        this.removedSampleIds = removedSampleIds;
+    }
+
+    /**
+     * makes the selection of the candidates for process-F deterministic
+     *
+     * the selection depends only on the seed and the index of the sample, it doesn't depend on numberOfThreads
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
     }
 
     @Override
@@ -90,7 +147,13 @@ public class ProcessC implements IProcess {
     public void setup() {
         Assert.Assert(imageSize != null, "imagesize is null");
 
-        accelerationMap = new SpatialListMap2d<>(imageSize, gridsize);
+        // the index is reused by the next frame of the same size
+        if( spatialIndex == null || spatialIndex.getGridsize() != gridsize || spatialIndexWidth != imageSize.x || spatialIndexLength != imageSize.y ) {
+            spatialIndex = new SpatialGridIndex(imageSize.x, imageSize.y, gridsize);
+            spatialIndexWidth = imageSize.x;
+            spatialIndexLength = imageSize.y;
+            indexedSampleBuffer = null;
+        }
     }
 
     @Override
@@ -104,182 +167,306 @@ public class ProcessC implements IProcess {
     }
 
     public void processData(float throttle) {
+        if( sampleBuffer != null ) {
+            processBuffer(throttle);
+            return;
+        }
+
+        indexedSampleBuffer = null;
 
-        // clean acceleration map
-        accelerationMap.clear();
+        final List<ProcessA.Sample> samples = inputSampleConnector.getOut();
+        final int numberOfSamples = samples.size();
 
-        // fill
-        for( final ProcessA.Sample iterationSample : inputSampleConnector.getOut()  ) {
-            final IntIntPair p = accelerationMap.getCellPositionOfIntegerPosition(iterationSample.position);
-            List<ProcessA.Sample> samplesOfCell = accelerationMap.addAt(p.getOne(), p.getTwo(), iterationSample);
+        if( samplePositionsX.length < numberOfSamples ) {
+            samplePositionsX = new int[numberOfSamples];
+            samplePositionsY = new int[numberOfSamples];
+            sampleAltitudes = new float[numberOfSamples];
+            sampleTypes = new byte[numberOfSamples];
         }
 
+        for( int i = 0; i < numberOfSamples; i++ ) {
+            final ProcessA.Sample iterationSample = samples.get(i);
+            samplePositionsX[i] = iterationSample.position.getOne();
+            samplePositionsY[i] = iterationSample.position.getTwo();
+            sampleAltitudes[i] = (float)iterationSample.altitude;
+        }
 
-        int maxSortedSamples = (int)Math.ceil( this.maxSortedSamples * throttle );
+        classify(samplePositionsX, samplePositionsY, sampleAltitudes, null, sampleTypes, null, numberOfSamples, throttle);
+        selectCandidatesForProcessF(sampleAltitudes, null, sampleTypes, numberOfSamples);
 
-        for(int outerI = 0; outerI < inputSampleConnector.getOut().size(); outerI++ ) {
+        // written sequentially to keep the order of the samples
+        for( int i = 0; i < numberOfSamples; i++ ) {
+            ProcessA.Sample iterationSample = samples.get(i);
+            iterationSample.type = sampleTypes[i] == SampleBuffer.TYPE_ENDOSCELETON ? ProcessA.Sample.EnumType.ENDOSCELETON : ProcessA.Sample.EnumType.EXOSCELETON;
 
+            if( isCandidateForProcessF[i] ) {
+                resultSamplesToProcessF.add(iterationSample);
+            }
 
+            resultSampleConnector.add(iterationSample);
+        }
+    }
 
-            //SampleWithDistance[] sortedArray = createSortedArray();
+    @Override
+    public void postProcessData() {
 
-            ProcessA.Sample outerSample = inputSampleConnector.getOut().get(outerI);
+    }
 
-            int numberOfConsideredSamples = 0;
+    /**
+     * classifies the samples of the sample buffer by index, doesn't allocate objects for the samples
+     */
+    private void processBuffer(float throttle) {
+        final boolean isIndexValid = indexedSampleBuffer == sampleBuffer && maxSortedSamplesOfIndexedSamples == calcMaxSortedSamples(throttle);
+        if( addedSampleIds == null || removedSampleIds == null || !isIndexValid || !processBufferDelta(throttle) ) {
+            classify(sampleBuffer.x, sampleBuffer.y, sampleBuffer.altitude, sampleBuffer.alive, sampleBuffer.type, null, sampleBuffer.size(), throttle);
+
+            for( int i = 0; i < sampleBuffer.size(); i++ ) {
+                indexedPositionsX[i] = sampleBuffer.x[i];
+                indexedPositionsY[i] = sampleBuffer.y[i];
+            }
+            indexedSampleBuffer = sampleBuffer;
+            maxSortedSamplesOfIndexedSamples = calcMaxSortedSamples(throttle);
+        }
 
-            int maxRadius = (int)java.lang.Math.sqrt(imageSize.x*imageSize.y);
+        selectCandidatesForProcessF(sampleBuffer.altitude, sampleBuffer.alive, sampleBuffer.type, sampleBuffer.size());
 
-            for( int currentRadius = 0; currentRadius < maxRadius; currentRadius++ ) {
-                if( numberOfConsideredSamples >= 8 ) {
-                    maxRadius = Math.min(currentRadius + 2, maxRadius);
-                }
+        resultSampleIndicesToProcessF.clear();
+        for( int i = 0; i < sampleBuffer.size(); i++ ) {
+            if( isCandidateForProcessF[i] ) {
+                resultSampleIndicesToProcessF.add(i);
+            }
+        }
+    }
 
-                List<IntIntPair> cellPositionsToScan;
+    /**
+     * updates the spatial index by the delta of the samples and classifies the samples which can be affected by it
+     *
+     * the types are the same as if all samples were classified, because the nearest neighbors don't depend on the order of the samples in the index
+     *
+     * \return false if all samples have to be classified because a sample has less than maxSortedSamples neighbors, the spatial index is updated anyways
+     */
+    private boolean processBufferDelta(float throttle) {
+        ensureCapacityOfSampleState(sampleBuffer.size());
+
+        dirtyPositionsX.clear();
+        dirtyPositionsY.clear();
+        sampleIdsToClassify.clear();
+
+        for( int i = 0; i < removedSampleIds.size(); i++ ) {
+            removeFromIndex(removedSampleIds.get(i));
+        }
 
-                if( currentRadius == 0 ) {
-                    cellPositionsToScan = new FastList<>(1);
-                    cellPositionsToScan.add(accelerationMap.getCellPositionOfIntegerPosition(outerSample.position));
-                }
-                else {
-                    cellPositionsToScan = SpatialDrawer.getPositionsOfCellsOfCircleBound(accelerationMap.getCellPositionOfIntegerPosition(outerSample.position), currentRadius, pair(accelerationMap.getWidth(), accelerationMap.getLength()));
-                }
+        for( int i = 0; i < addedSampleIds.size(); i++ ) {
+            final int sampleId = addedSampleIds.get(i);
+            if( sampleBuffer.isAlive(sampleId) && !spatialIndex.contains(sampleId) ) { // the samples can already be removed by process-B
+                spatialIndex.insert(sampleBuffer.x, sampleBuffer.y, sampleId);
+                indexedPositionsX[sampleId] = sampleBuffer.x[sampleId];
+                indexedPositionsY[sampleId] = sampleBuffer.y[sampleId];
 
-                for( final IntIntPair currentCellPosition : cellPositionsToScan ) {
-                    final List<ProcessA.Sample> samplesOfCurrentCell = accelerationMap.readAt(currentCellPosition.getOne(), currentCellPosition.getTwo());
-                    if (samplesOfCurrentCell!=null) {
-
-                        for (final ProcessA.Sample iterationSample : samplesOfCurrentCell) {
-                            // we don't want to calculate it for the same sample
-                            if (iterationSample.equals(outerSample)) {
-                                continue;
-                            }
-
-                            final double distance = calculateDistanceBetweenSamples(outerSample, iterationSample);
-
-                            numberOfConsideredSamples++;
-
-
-                            if (sortedSamples.size() < maxSortedSamples || distance < sortedSamples.getLast().distance) {
-                                SampleWithDistance sd = new SampleWithDistance(iterationSample, distance);
-
-                                /** binary insertion sort: sort order: lowest distance first */
-                                int index = Collections.binarySearch(sortedSamples, sd);
-                                if (index < 0) {
-                                    index = -(index + 1);
-                                    if (index < maxSortedSamples) {
-                                        sortedSamples.add(index, sd);
-                                        while (sortedSamples.size() > maxSortedSamples)
-                                            sortedSamples.remove(sortedSamples.size() - 1);
-                                    }
-                                }
-                            }
-
-                            //sortedSamples.add(sd);
-
-//                            putSampleWithDistanceIntoSortedArray(, sortedArray);
-//                            Arrays.sort(sortedArray, new Comparator<SampleWithDistance>() {
-//                                @Override public int compare(SampleWithDistance a, SampleWithDistance b) {
-//                                    return Double.compare(a.distance, b.distance);
-//                                }
-//                            });
-                        }
-                    }
-                }
+                addDirtyPosition(sampleId);
+                markForClassification(sampleId);
+            }
+        }
+
+        double maxNeighborRadius = 0.0;
+        for( int i = 0; i < sampleBuffer.size(); i++ ) {
+            if( !sampleBuffer.isAlive(i) ) {
+                removeFromIndex(i); // removed by process-B
+                continue;
+            }
+            if( isMarkedForClassification[i] ) {
+                continue;
             }
 
+            if( Float.compare(sampleBuffer.altitude[i], classifiedAltitudes[i]) != 0 ) {
+                addDirtyPosition(i);
+                markForClassification(i);
+                continue;
+            }
 
+            maxNeighborRadius = Math.max(maxNeighborRadius, neighborRadii[i]);
+        }
 
-            if( noMoreThanTwoNeightborsWithAltidudeStrictlyGreaterThan(sortedSamples, outerSample) ) {
-                outerSample.type = ProcessA.Sample.EnumType.ENDOSCELETON;
+        if( Double.isInfinite(maxNeighborRadius) ) {
+            unmarkSamplesToClassify();
+            return false;
+        }
 
-                if( outerSample.altitude >= HardParameters.ProcessC.FILLEDREGIONALTITUDETHRESHOLD ) {
-                    if( random.nextFloat() < HardParameters.ProcessC.FILLEDREGIONCANDIDATEPROPABILITY ) {
-                        resultSamplesToProcessF.add(outerSample);
-                    }
+        // the samples which have a dirty position within the distance of their farthest neighbor
+        for( int dirtyI = 0; dirtyI < dirtyPositionsX.size(); dirtyI++ ) {
+            final int dirtyX = dirtyPositionsX.get(dirtyI);
+            final int dirtyY = dirtyPositionsY.get(dirtyI);
+
+            samplesNearDirtyPosition.clear();
+            spatialIndex.queryRadius(dirtyX, dirtyY, maxNeighborRadius, samplesNearDirtyPosition);
+
+            for( int i = 0; i < samplesNearDirtyPosition.size(); i++ ) {
+                final int sampleId = samplesNearDirtyPosition.get(i);
+                if( isMarkedForClassification[sampleId] ) {
+                    continue;
+                }
+
+                final double dx = sampleBuffer.x[sampleId] - dirtyX;
+                final double dy = sampleBuffer.y[sampleId] - dirtyY;
+                if( Math.sqrt(dx*dx + dy*dy) <= neighborRadii[sampleId] ) {
+                    markForClassification(sampleId);
                 }
             }
-            else {
-                outerSample.type = ProcessA.Sample.EnumType.EXOSCELETON;
-            }
+        }
 
-            resultSampleConnector.add(outerSample);
+        classify(sampleBuffer.x, sampleBuffer.y, sampleBuffer.altitude, sampleBuffer.alive, sampleBuffer.type, sampleIdsToClassify, sampleBuffer.size(), throttle);
 
-            sortedSamples.clear();
+        unmarkSamplesToClassify();
+        return true;
+    }
+
+    private void removeFromIndex(final int sampleId) {
+        if( !spatialIndex.contains(sampleId) ) {
+            return;
         }
+
+        dirtyPositionsX.add(indexedPositionsX[sampleId]);
+        dirtyPositionsY.add(indexedPositionsY[sampleId]);
+        spatialIndex.remove(sampleId);
     }
 
-    @Override
-    public void postProcessData() {
+    private void addDirtyPosition(final int sampleId) {
+        dirtyPositionsX.add(sampleBuffer.x[sampleId]);
+        dirtyPositionsY.add(sampleBuffer.y[sampleId]);
+    }
 
+    private void markForClassification(final int sampleId) {
+        isMarkedForClassification[sampleId] = true;
+        sampleIdsToClassify.add(sampleId);
+    }
+
+    private void unmarkSamplesToClassify() {
+        for( int i = 0; i < sampleIdsToClassify.size(); i++ ) {
+            isMarkedForClassification[sampleIdsToClassify.get(i)] = false;
+        }
     }
 
-//    /**
-//     *
-//     * \param sortedArray lower values are more left
-//     */
-//    private static void putSampleWithDistanceIntoSortedArray(SampleWithDistance newElement, SampleWithDistance[] sortedArray) {
-//
-//
-//        for( int i = 0; i < sortedArray.length; i++ ) {
-//            if( !sortedArray[i].used ) {
-//                // array element is not set, its save to set it to the newElement
-//                sortedArray[i] = newElement;
-//                sortedArray[i].used = true;
-//
-//                return;
-//            }
-//
-//            if( newElement.distance < sortedArray[i].distance ) {
-//                // shift one to the back
-//                arraycopy(
-//                    sortedArray,
-//                    i,
-//                    sortedArray,
-//                    i+1,
-//                    sortedArray.length-1-i
-//                );
-//
-//                // add
-//                sortedArray[i] = newElement;
-//                sortedArray[i].used = true;
-//
-//                return;
-//            }
-//        }
-//
-//
-//    }
-
-    
-    private static double calculateDistanceBetweenSamples(ProcessA.Sample a, ProcessA.Sample b) {
-        if (a==b) return 0;
-
-        //a.position.getDistance(b.position);
-        double dx = b.position.getOne() - a.position.getOne();
-        double dy = b.position.getTwo() - a.position.getTwo();
-        return Math.sqrt(dx*dx+dy*dy);
+    /**
+     * classifies the samples given as arrays
+     *
+     * the samples are split into numberOfThreads parts, each part has its own neighbor heap
+     *
+     * \param alive can be null, samples where it is false are ignored
+     * \param types the type of each sample is written into it
+     * \param sampleIds indices of the samples which are classified, the spatial index has to contain all samples then. All samples are classified and indexed if it is null
+     */
+    private void classify(final int[] xs, final int[] ys, final float[] altitudes, final boolean[] alive, final byte[] types, final IntArrayList sampleIds, final int numberOfSamples, final float throttle) {
+        final int numberOfSamplesToClassify = sampleIds != null ? sampleIds.size() : numberOfSamples;
+        final int numberOfParts = Math.max(Math.min(numberOfThreads, numberOfSamplesToClassify), 1);
+
+        allocateBuffers(numberOfParts, numberOfSamples, throttle);
+
+        if( sampleIds == null ) {
+            spatialIndex.build(xs, ys, alive, numberOfSamples);
+        }
+
+        if( numberOfParts == 1 ) {
+            classifyRange(xs, ys, altitudes, alive, types, sampleIds, 0, numberOfSamplesToClassify, neighborsOfParts[0]);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(numberOfParts);
+        for( int partI = 0; partI < numberOfParts; partI++ ) {
+            final int begin = ParallelHelper.calcPartBegin(numberOfSamplesToClassify, numberOfParts, partI);
+            final int end = ParallelHelper.calcPartBegin(numberOfSamplesToClassify, numberOfParts, partI + 1);
+            final SpatialGridIndex.NeighborHeap neighbors = neighborsOfParts[partI];
+
+            tasks.add(() -> {
+                classifyRange(xs, ys, altitudes, alive, types, sampleIds, begin, end, neighbors);
+                return null;
+            });
+        }
+
+        ParallelHelper.invokeAllAndWait(ParallelHelper.getExecutorOrDefault(executor), tasks);
     }
-    
-    private static boolean noMoreThanTwoNeightborsWithAltidudeStrictlyGreaterThan(Iterable<SampleWithDistance> neightborArray, ProcessA.Sample compareSample) {
-        int numberOfNeightborsWithAltitudeStrictlyGreaterThan = 0;
 
-        for (SampleWithDistance s : neightborArray) {
-            if( !s.used ) {
-                return true;
+    /**
+     * classifies the samples [begin, end) of sampleIds or of all samples if it is null, only reads the spatial index and writes to the elements of the range
+     */
+    private void classifyRange(final int[] xs, final int[] ys, final float[] altitudes, final boolean[] alive, final byte[] types, final IntArrayList sampleIds, final int begin, final int end, SpatialGridIndex.NeighborHeap neighbors) {
+        for( int classifiedI = begin; classifiedI < end; classifiedI++ ) {
+            final int sampleI = sampleIds != null ? sampleIds.get(classifiedI) : classifiedI;
+
+            if( alive != null && !alive[sampleI] ) {
+                continue;
             }
-            // else here
 
-            if( s.sample.altitude > compareSample.altitude ) {
-                numberOfNeightborsWithAltitudeStrictlyGreaterThan++;
+            // samples with an already present distance are ignored, as the former binary insertion did
+            spatialIndex.queryNearest(xs[sampleI], ys[sampleI], sampleI, true, neighbors);
 
-                if( numberOfNeightborsWithAltitudeStrictlyGreaterThan > 2 ) {
-                    return false;
+            int numberOfNeighborsWithAltitudeStrictlyGreaterThan = 0;
+            for( int i = 0; i < neighbors.size(); i++ ) {
+                if( altitudes[neighbors.indexAt(i)] > altitudes[sampleI] ) {
+                    numberOfNeighborsWithAltitudeStrictlyGreaterThan++;
                 }
             }
+
+            types[sampleI] = numberOfNeighborsWithAltitudeStrictlyGreaterThan <= 2 ? SampleBuffer.TYPE_ENDOSCELETON : SampleBuffer.TYPE_EXOSCELETON;
+
+            classifiedAltitudes[sampleI] = altitudes[sampleI];
+            neighborRadii[sampleI] = neighbors.isFull() ? neighbors.peekMaxDistance() : Double.POSITIVE_INFINITY;
         }
-        
-        return true;
     }
 
+    /**
+     * selects the samples of the endosceleton of filled regions with a probability as candidates for process-F
+     */
+    private void selectCandidatesForProcessF(final float[] altitudes, final boolean[] alive, final byte[] types, final int numberOfSamples) {
+        for( int i = 0; i < numberOfSamples; i++ ) {
+            isCandidateForProcessF[i] =
+                (alive == null || alive[i]) &&
+                types[i] == SampleBuffer.TYPE_ENDOSCELETON &&
+                altitudes[i] >= HardParameters.ProcessC.FILLEDREGIONALTITUDETHRESHOLD &&
+                calcRandomOfSample(i) < HardParameters.ProcessC.FILLEDREGIONCANDIDATEPROPABILITY;
+        }
+    }
 
+    /**
+     * \return random value in [0, 1) which depends only on the seed and the index of the sample
+     */
+    private double calcRandomOfSample(final int sampleIndex) {
+        // finalizer of SplitMix64
+        long z = seed + (sampleIndex + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53;
+    }
+
+    private int calcMaxSortedSamples(final float throttle) {
+        return Math.max((int)Math.ceil( this.maxSortedSamples * throttle ), 1);
+    }
+
+    private void allocateBuffers(final int numberOfParts, final int numberOfSamples, final float throttle) {
+        final int maxSortedSamples = calcMaxSortedSamples(throttle);
+
+        if( neighborsOfParts.length != numberOfParts || neighborsOfParts[0].getCapacity() != maxSortedSamples ) {
+            neighborsOfParts = new SpatialGridIndex.NeighborHeap[numberOfParts];
+            for( int partI = 0; partI < numberOfParts; partI++ ) {
+                neighborsOfParts[partI] = new SpatialGridIndex.NeighborHeap(maxSortedSamples);
+            }
+        }
+
+        if( isCandidateForProcessF.length < numberOfSamples ) {
+            isCandidateForProcessF = new boolean[numberOfSamples];
+        }
+        ensureCapacityOfSampleState(numberOfSamples);
+    }
+
+    // the state of the samples which are not classified again is kept
+    private void ensureCapacityOfSampleState(final int numberOfSamples) {
+        if( classifiedAltitudes.length < numberOfSamples ) {
+            final int capacity = Math.max(numberOfSamples, classifiedAltitudes.length * 2);
+            indexedPositionsX = Arrays.copyOf(indexedPositionsX, capacity);
+            indexedPositionsY = Arrays.copyOf(indexedPositionsY, capacity);
+            classifiedAltitudes = Arrays.copyOf(classifiedAltitudes, capacity);
+            neighborRadii = Arrays.copyOf(neighborRadii, capacity);
+            isMarkedForClassification = Arrays.copyOf(isMarkedForClassification, capacity);
+        }
+    }
 }
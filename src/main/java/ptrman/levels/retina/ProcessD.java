@@ -12,22 +12,21 @@ package ptrman.levels.retina;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.random.MersenneTwister;
 import org.apache.commons.math3.random.RandomAdaptor;
-import org.apache.commons.math3.stat.regression.SimpleRegression;
 import org.eclipse.collections.api.IntIterable;
 import org.eclipse.collections.api.list.primitive.IntList;
 import org.eclipse.collections.api.tuple.primitive.IntIntPair;
 import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+import ptrman.Datastructures.SpatialGridIndex;
 import ptrman.Datastructures.Vector2d;
 import ptrman.bpsolver.HardParameters;
 import ptrman.bpsolver.Parameters;
 import ptrman.levels.retina.helper.ProcessConnector;
-import ptrman.math.ArrayRealVectorHelper;
 import ptrman.misc.Assert;
 
 import java.util.*;
 
 import static ptrman.levels.retina.LineDetectorWithMultiplePoints.real;
-import static ptrman.math.ArrayRealVectorHelper.distance;
 import static ptrman.math.ArrayRealVectorHelper.getAverage;
 import static ptrman.math.Maths.getRandomElements;
 import static ptrman.math.Maths.squaredDistance;
@@ -66,12 +65,44 @@ public class ProcessD implements IProcess {
 
     public final Random rng = new RandomAdaptor(new MersenneTwister());
 
+    public LineFitStatistics.EnumFitMode fitMode = LineFitStatistics.EnumFitMode.LEASTSQUARES; // how are the lines fitted to the samples?
+
+    private final LineFitStatistics candidateFitStatistics = new LineFitStatistics(); // used to fit the samples of a not yet created line detector
+
+    public int spatialIndexGridsize = 8;
+
+    // index of the input samples which are usable by this process (filtered by type), is rebuilt when the input samples change
+    // referenced samples stay in the index and are filtered out of the query results
+    // the index is updated incrementally if the input samples are changed with updateInputSamples()
+    private SpatialGridIndex spatialIndex;
+    private List<ProcessA.Sample> indexedSamples = null;
+    private int numberOfIndexedSamples = 0;
+    private int[] samplePositionsX = new int[0];
+    private int[] samplePositionsY = new int[0];
+    private boolean[] isSampleIndexed = new boolean[0];
+
+    // position of each input sample in the input samples, is only maintained after the input samples were updated with updateInputSamples()
+    private final ObjectIntHashMap<ProcessA.Sample> positionOfInputSample = new ObjectIntHashMap<>();
+    private boolean isPositionOfInputSampleValid = false;
+    private boolean wereInputSamplesUpdated = false; // were the input samples updated since the last preProcessData()? the spatial index is up to date then
+
+    private final IntArrayList queriedSampleIndices = new IntArrayList(); // result of the queries of the spatial index, is reused
+    private final List<ProcessA.Sample> unreferencedSamples = new ArrayList<>(); // candidates of the random selection of the samples of a new line detector, is reused
+    private final IntArrayList candidateSampleIndices = new IntArrayList(); // is reused by selectRandomSamples()
+
 
     public void set(ProcessConnector<ProcessA.Sample> inputSampleConnector, ProcessConnector<RetinaPrimitive> outputLineDetectorConnector) {
         this.inputSampleConnector = inputSampleConnector;
         this.outputLineDetectorConnector = outputLineDetectorConnector;
     }
 
+    /**
+     * makes the sampling and widening deterministic
+     */
+    public void setSeed(long seed) {
+        rng.setSeed(seed);
+    }
+
     @Override
     public void setImageSize(final Vector2d<Integer> imageSize) {
         this.imageSize = imageSize;
@@ -83,6 +114,151 @@ public class ProcessD implements IProcess {
 
     @Override
     public void preProcessData() {
+        if( !wereInputSamplesUpdated ) {
+            rebuildSpatialIndex();
+        }
+        wereInputSamplesUpdated = false;
+    }
+
+    /**
+     * removes and adds input samples, is used instead of replacing all input samples by the temporal sampling
+     *
+     * only the changed samples are removed from and inserted into the spatial index, the removed samples are removed from the line detectors
+     * a removed sample is replaced by the last input sample, so the order of the input samples changes
+     */
+    public void updateInputSamples(final List<ProcessA.Sample> removedSamples, final List<ProcessA.Sample> addedSamples) {
+        final List<ProcessA.Sample> workingSamples = inputSampleConnector.getOut();
+
+        if( spatialIndex == null || workingSamples != indexedSamples || workingSamples.size() != numberOfIndexedSamples || !isPositionOfInputSampleValid ) {
+            rebuildSpatialIndex();
+
+            positionOfInputSample.clear();
+            isPositionOfInputSampleValid = true;
+            for( int i = 0; i < workingSamples.size(); i++ ) {
+                positionOfInputSample.put(workingSamples.get(i), i);
+            }
+        }
+
+        removeSamplesFromLineDetectors(removedSamples);
+
+        for( final ProcessA.Sample iterationSample : removedSamples ) {
+            final int position = positionOfInputSample.removeKeyIfAbsent(iterationSample, -1);
+            if( position == -1 ) {
+                continue;
+            }
+
+            final int lastPosition = workingSamples.size() - 1;
+            spatialIndex.remove(position);
+            if( position != lastPosition ) {
+                // move the last sample into the position of the removed sample
+                final ProcessA.Sample movedSample = workingSamples.get(lastPosition);
+                spatialIndex.remove(lastPosition);
+
+                workingSamples.set(position, movedSample);
+                samplePositionsX[position] = samplePositionsX[lastPosition];
+                samplePositionsY[position] = samplePositionsY[lastPosition];
+                isSampleIndexed[position] = isSampleIndexed[lastPosition];
+                positionOfInputSample.put(movedSample, position);
+
+                if( isSampleIndexed[position] ) {
+                    spatialIndex.insert(samplePositionsX, samplePositionsY, position);
+                }
+            }
+            workingSamples.remove(lastPosition);
+        }
+
+        ensureCapacityOfSamplePositions(workingSamples.size() + addedSamples.size());
+
+        for( final ProcessA.Sample iterationSample : addedSamples ) {
+            final int position = workingSamples.size();
+            workingSamples.add(iterationSample);
+
+            samplePositionsX[position] = iterationSample.position.getOne();
+            samplePositionsY[position] = iterationSample.position.getTwo();
+            isSampleIndexed[position] = !(onlyEndoskeleton && iterationSample.type != ProcessA.Sample.EnumType.ENDOSCELETON);
+            positionOfInputSample.put(iterationSample, position);
+
+            if( isSampleIndexed[position] ) {
+                spatialIndex.insert(samplePositionsX, samplePositionsY, position);
+            }
+        }
+
+        numberOfIndexedSamples = workingSamples.size();
+        wereInputSamplesUpdated = true;
+    }
+
+    /**
+     * removes the samples from the line detectors which contain them, the detectors with less than three remaining samples are removed
+     */
+    private void removeSamplesFromLineDetectors(final List<ProcessA.Sample> removedSamples) {
+        for( final ProcessA.Sample iterationSample : removedSamples ) {
+            for( int detectorI = annealedCandidates.size() - 1; iterationSample.refCount > 0 && detectorI >= 0; detectorI-- ) {
+                final LineDetectorWithMultiplePoints iterationDetector = annealedCandidates.get(detectorI);
+                if( !iterationDetector.samples.contains(iterationSample) ) {
+                    continue;
+                }
+
+                iterationDetector.removeSample(iterationSample);
+                iterationSample.refCount--;
+
+                if( iterationDetector.samples.size() < 3 ) {
+                    iterationDetector.cleanup();
+                    annealedCandidates.remove(detectorI);
+                    continue;
+                }
+
+                iterationDetector.recalcFit(fitMode);
+                iterationDetector.recalcConf();
+            }
+        }
+    }
+
+    /**
+     * rebuilds the spatial index of the input samples if the input samples changed since the last build
+     */
+    private void updateSpatialIndex() {
+        final List<ProcessA.Sample> workingSamples = inputSampleConnector.getOut();
+        if( spatialIndex == null || workingSamples != indexedSamples || workingSamples.size() != numberOfIndexedSamples ) {
+            rebuildSpatialIndex();
+        }
+    }
+
+    private void rebuildSpatialIndex() {
+        final List<ProcessA.Sample> workingSamples = inputSampleConnector.getOut();
+        final int numberOfSamples = workingSamples.size();
+
+        if( spatialIndex == null ) {
+            spatialIndex = new SpatialGridIndex(imageSize.x, imageSize.y, spatialIndexGridsize);
+        }
+
+        if( samplePositionsX.length < numberOfSamples ) {
+            samplePositionsX = new int[numberOfSamples];
+            samplePositionsY = new int[numberOfSamples];
+            isSampleIndexed = new boolean[numberOfSamples];
+        }
+        isPositionOfInputSampleValid = false;
+
+        for( int i = 0; i < numberOfSamples; i++ ) {
+            final ProcessA.Sample iterationSample = workingSamples.get(i);
+            samplePositionsX[i] = iterationSample.position.getOne();
+            samplePositionsY[i] = iterationSample.position.getTwo();
+            isSampleIndexed[i] = !(onlyEndoskeleton && iterationSample.type != ProcessA.Sample.EnumType.ENDOSCELETON);
+        }
+
+        spatialIndex.build(samplePositionsX, samplePositionsY, isSampleIndexed, numberOfSamples);
+
+        indexedSamples = workingSamples;
+        numberOfIndexedSamples = numberOfSamples;
+    }
+
+    // keeps the positions of the indexed samples, the spatial index refers to the arrays after the next insertion
+    private void ensureCapacityOfSamplePositions(final int numberOfSamples) {
+        if( samplePositionsX.length < numberOfSamples ) {
+            final int newCapacity = Math.max(numberOfSamples, samplePositionsX.length * 2);
+            samplePositionsX = Arrays.copyOf(samplePositionsX, newCapacity);
+            samplePositionsY = Arrays.copyOf(samplePositionsY, newCapacity);
+            isSampleIndexed = Arrays.copyOf(isSampleIndexed, newCapacity);
+        }
     }
 
     @Override
@@ -123,14 +299,12 @@ public class ProcessD implements IProcess {
         }
 
         // pick out rng points
-        int sampleIndex = 0; // NOTE< index in endosceletonPoint / workingSamples >
-        IntArrayList allCandidateSampleIndices = new IntArrayList();
-        for (final ProcessA.Sample iterationSample : source) {
-            allCandidateSampleIndices.add(sampleIndex);
-            sampleIndex++;
+        candidateSampleIndices.clear(); // NOTE< index in endosceletonPoint / workingSamples >
+        for (int sampleIndex = 0; sampleIndex < source.size(); sampleIndex++) {
+            candidateSampleIndices.add(sampleIndex);
         }
 
-        IntList chosenCandidateSampleIndices = getRandomElements(allCandidateSampleIndices, 3, rng);
+        IntList chosenCandidateSampleIndices = getRandomElements(candidateSampleIndices, 3, rng);
         return getSamplesByIndices(source, chosenCandidateSampleIndices);
     }
 
@@ -143,16 +317,16 @@ public class ProcessD implements IProcess {
         final List<ProcessA.Sample> workingSamples = inputSampleConnector.getOut();
 
         // filter valid points
-        List<ProcessA.Sample> filteredSamples = new ArrayList<>();
+        unreferencedSamples.clear();
         for (final ProcessA.Sample iterationSample : workingSamples) {
             boolean onlyAddEndoskeletonEnable = !(onlyEndoskeleton && iterationSample.type != ProcessA.Sample.EnumType.ENDOSCELETON);
             boolean isReferenced = iterationSample.refCount != 0;
             if(!isReferenced && onlyAddEndoskeletonEnable ) {
-                filteredSamples.add(iterationSample);
+                unreferencedSamples.add(iterationSample);
             }
         }
 
-        List<ProcessA.Sample> selectedSamples = selectRandomSamples(filteredSamples);
+        List<ProcessA.Sample> selectedSamples = selectRandomSamples(unreferencedSamples);
         tryCreateMultiLineDetector(maxLength, selectedSamples);
     }
 
@@ -174,22 +348,22 @@ public class ProcessD implements IProcess {
         IntIntPair centerPointPos = workingSamples.get(centerPointIdx).position;
 
         // find all points in proximity
-        List<ProcessA.Sample> proximitySamples = new ArrayList<>();
-        for(ProcessA.Sample iSample : workingSamples) {
-            double dist = ArrayRealVectorHelper.distance(centerPointPos, iSample.position);
-            if (dist > processDSampleByProximityProximity) {
-                continue;
-            }
+        updateSpatialIndex();
+        queriedSampleIndices.clear();
+        spatialIndex.queryRadius(centerPointPos.getOne(), centerPointPos.getTwo(), processDSampleByProximityProximity, queriedSampleIndices);
+
+        unreferencedSamples.clear();
+        for(int i = 0; i < queriedSampleIndices.size(); i++) {
+            ProcessA.Sample iSample = workingSamples.get(queriedSampleIndices.get(i));
 
-            boolean onlyAddEndoskeletonEnable = !(onlyEndoskeleton && iSample.type != ProcessA.Sample.EnumType.ENDOSCELETON);
             boolean isReferenced = iSample.refCount != 0;
-            if(!isReferenced && onlyAddEndoskeletonEnable ) {
-                proximitySamples.add(iSample);
+            if(!isReferenced) {
+                unreferencedSamples.add(iSample);
             }
         }
 
         // try to create line detector by selecting rng points from candidates
-        List<ProcessA.Sample> selectedSamples = selectRandomSamples(proximitySamples);
+        List<ProcessA.Sample> selectedSamples = selectRandomSamples(unreferencedSamples);
         tryCreateMultiLineDetector(maxLength, selectedSamples);
     }
 
@@ -223,7 +397,12 @@ public class ProcessD implements IProcess {
         }
         // else we are here
 
-        final RegressionForLineResult regressionResult = calcRegressionResultOfSamples(selectedSamples);
+        candidateFitStatistics.clear();
+        for (final ProcessA.Sample iterationSample : selectedSamples) {
+            candidateFitStatistics.add(iterationSample.position.getOne(), iterationSample.position.getTwo());
+        }
+        candidateFitStatistics.calcFit(fitMode);
+        final LineFitStatistics regressionResult = candidateFitStatistics;
 
         if (regressionResult.mse > Parameters.getProcessdMaxMse()) {
             return;
@@ -237,7 +416,9 @@ public class ProcessD implements IProcess {
 
         // create new line detector
         LineDetectorWithMultiplePoints createdLineDetector = new LineDetectorWithMultiplePoints(lineDetectorInitialXStep);
-        createdLineDetector.samples = selectedSamples;
+        for (final ProcessA.Sample iterationSample : selectedSamples) {
+            createdLineDetector.addSample(iterationSample);
+        }
 
         Assert.Assert(areObjectIdsTheSameOfSamples(selectedSamples), "");
         createdLineDetector.commonObjectId = selectedSamples.get(0).objectId;
@@ -283,10 +464,6 @@ public class ProcessD implements IProcess {
         }
     }
 
-    private static RegressionForLineResult calcRegressionResultOfSamples(Iterable<ProcessA.Sample> samples) {
-        return calcRegressionForPoints(getPositionsOfSamples(samples));
-    }
-
     public void processData(float throttle) {
 
         for(int i = 0; i < 9; i++) {
@@ -305,10 +482,10 @@ public class ProcessD implements IProcess {
      */
     public void commitLineDetectors() {
         // split the detectors into one or many lines
-        final List<RetinaPrimitive> resultSingleDetectors = splitDetectorsIntoLines(annealedCandidates);
-
-        for (final RetinaPrimitive iterationPrimitive : resultSingleDetectors) {
-            outputLineDetectorConnector.add(iterationPrimitive);
+        for (final LineDetectorWithMultiplePoints iterationDetector : annealedCandidates) {
+            for (final RetinaPrimitive iterationPrimitive : splitDetectorIntoLines(iterationDetector)) {
+                outputLineDetectorConnector.add(iterationPrimitive);
+            }
         }
     }
 
@@ -377,41 +554,47 @@ public class ProcessD implements IProcess {
 
     /**
      * tries to add points to existing lines
+     *
+     * the candidates are queried from the corridor of widenSampleMaxDistance around the line
      */
     public void tryWiden() {
+        updateSpatialIndex();
+
         for (LineDetectorWithMultiplePoints iLinedetector : annealedCandidates) {
+            if (iLinedetector.isYAxisSingularity() || Double.isNaN(iLinedetector.m)) {
+                continue; // ignore because we can't project
+            }
+
+            queriedSampleIndices.clear();
+            spatialIndex.queryNearLine(iLinedetector.m, iLinedetector.n, widenSampleMaxDistance, queriedSampleIndices);
+
+            // only samples which are not in use are candidates, so referenced samples don't use up the sampling attempts
+            int numberOfCandidates = compactToUnreferencedSamples(queriedSampleIndices);
 
-            // sample samples and project to line, check distance if it is below threshold
-            for (int iSamplingAttempt=0;iSamplingAttempt<widenSamplesPerTrial;iSamplingAttempt++) {
-                int sampleIdx = rng.nextInt(inputSampleConnector.out.size());
+            // pick random candidates, a picked candidate is removed from the candidates by swapping it with the last one
+            for (int iSamplingAttempt=0;iSamplingAttempt<widenSamplesPerTrial && numberOfCandidates > 0;iSamplingAttempt++) {
+                final int candidateIdx = rng.nextInt(numberOfCandidates);
+                final int sampleIdx = queriedSampleIndices.get(candidateIdx);
+                queriedSampleIndices.set(candidateIdx, queriedSampleIndices.get(numberOfCandidates-1));
+                numberOfCandidates--;
 
                 ProcessA.Sample sample = inputSampleConnector.out.get(sampleIdx);
-                if(onlyEndoskeleton && sample.type != ProcessA.Sample.EnumType.ENDOSCELETON) {
-                    continue;
-                }
-                if (sample.refCount > 0) {
-                    continue; // sample is already in use
-                }
 
-                // * project on line, check
-                if (iLinedetector.isYAxisSingularity()) {
-                    continue; // ignore because we can't project
+                // * check distance to the line, the line moves after each added sample
+                if (iLinedetector.isYAxisSingularity() || Double.isNaN(iLinedetector.m)) {
+                    break;
                 }
-                ArrayRealVector projectedPosition = iLinedetector.projectPointOntoLine(sample.position);
-                double dist = distance(sample.position, projectedPosition);
+                final double dist = Math.abs(iLinedetector.m * sample.position.getOne() - sample.position.getTwo() + iLinedetector.n) / Math.sqrt(1.0 + iLinedetector.m * iLinedetector.m);
                 if (dist > widenSampleMaxDistance) {
                     continue;
                 }
 
                 // * add to line
-                iLinedetector.samples.add(sample);
+                iLinedetector.addSample(sample);
                 sample.refCount++;
 
-                // * recompute line and mse
-                RegressionForLineResult regressionResult = calcRegressionResultOfSamples(iLinedetector.samples);
-                iLinedetector.m = regressionResult.m;
-                iLinedetector.n = regressionResult.n;
-                iLinedetector.mse = regressionResult.mse;
+                // * recompute line and mse, is O(1) because the detector keeps the sums of the positions
+                iLinedetector.recalcFit(fitMode);
 
                 iLinedetector.x = 0.0;
                 iLinedetector.x += iLinedetector.samples.size() * processDNumberOfPointsToActivationScale; // more fitting points -> better activation
@@ -423,6 +606,26 @@ public class ProcessD implements IProcess {
         }
     }
 
+    /**
+     * moves the indices of the not referenced samples to the front, keeps their order
+     *
+     * \return number of the not referenced samples
+     */
+    private int compactToUnreferencedSamples(IntArrayList sampleIndices) {
+        final List<ProcessA.Sample> workingSamples = inputSampleConnector.getOut();
+
+        int numberOfUnreferenced = 0;
+        for (int i = 0; i < sampleIndices.size(); i++) {
+            final int sampleIdx = sampleIndices.get(i);
+            if (workingSamples.get(sampleIdx).refCount == 0) {
+                sampleIndices.set(numberOfUnreferenced, sampleIdx);
+                numberOfUnreferenced++;
+            }
+        }
+
+        return numberOfUnreferenced;
+    }
+
     @Override
     public void postProcessData() {
 
@@ -485,86 +688,6 @@ public class ProcessD implements IProcess {
         return resultPositions;
     }
 
-    /**
-     * works by counting the "overlapping" pixel coordinates, chooses the axis with the less overlappings
-     */
-    private static RegressionForLineResult calcRegressionForPoints(Iterable<ArrayRealVector> positions) {
-
-        int overlappingPixelsOnX = calcCountOfOverlappingPixelsForAxis(positions, EnumAxis.X);
-        int overlappingPixelsOnY = calcCountOfOverlappingPixelsForAxis(positions, EnumAxis.Y);
-
-        SimpleRegression regression = new SimpleRegression();
-
-        RegressionForLineResult regressionResultForLine = new RegressionForLineResult();
-
-        if (overlappingPixelsOnX <= overlappingPixelsOnY) {
-            // regression on x axis
-
-            for (ArrayRealVector iterationPosition : positions) {
-                regression.addData(iterationPosition.getDataRef()[0], iterationPosition.getDataRef()[1]);
-            }
-
-            regressionResultForLine.mse = regression.getMeanSquareError();
-            regressionResultForLine.n = regression.getIntercept();
-            regressionResultForLine.m = regression.getSlope();
-        } else {
-            // regression on y axis
-            // we switch x and y and calculate m and n from the regression result
-
-            for (ArrayRealVector iterationPosition : positions) {
-                regression.addData(iterationPosition.getDataRef()[1], iterationPosition.getDataRef()[0]);
-            }
-
-            // calculate m and n
-            double regressionM = regression.getSlope();
-            double regressionN = regression.getIntercept();
-
-            double m = 1.0f / regressionM;
-            ArrayRealVector pointOnRegressionLine = new ArrayRealVector(new double[]{regressionN, 0.0});
-            double n = pointOnRegressionLine.getDataRef()[1] - m * pointOnRegressionLine.getDataRef()[0];
-
-            regressionResultForLine.mse = regression.getMeanSquareError();
-            regressionResultForLine.n = n;
-            regressionResultForLine.m = m;
-        }
-
-        return regressionResultForLine;
-    }
-
-    private static int calcCountOfOverlappingPixelsForAxis(Iterable<ArrayRealVector> positions, EnumAxis axis) {
-        double maxCoordinatOnAxis = getMaximalCoordinateForPoints(positions, axis);
-        int arraysizeOfDimension = Math.round((float) maxCoordinatOnAxis) + 1;
-        int[] dimensionCounter = new int[arraysizeOfDimension];
-
-        for (ArrayRealVector iterationPosition : positions) {
-            int dimensionCounterIndex = Math.round((float) Helper.getAxis(iterationPosition, axis));
-
-            dimensionCounter[dimensionCounterIndex]++;
-        }
-
-        // count the "rows" where the count is greater than 1
-        int overlappingCounter = 0;
-
-        for (int i : dimensionCounter) {
-            if (i > 1) {
-                overlappingCounter++;
-            }
-        }
-
-        return overlappingCounter;
-    }
-
-    // used to calculate the arraysize
-    private static double getMaximalCoordinateForPoints(Iterable<ArrayRealVector> positions, EnumAxis axis) {
-        double max = 0;
-
-        for (ArrayRealVector iterationPosition : positions) {
-            max = Math.max(max, Helper.getAxis(iterationPosition, axis));
-        }
-
-        return max;
-    }
-
     public static List<ArrayRealVector> getSortedSamplePositions(LineDetectorWithMultiplePoints lineDetectorWithMultiplePoints) {
         List<ArrayRealVector> samplePositions = new ArrayList<>();
 
@@ -669,12 +792,6 @@ public class ProcessD implements IProcess {
         private final EnumAxis axis;
     }
 
-    private static class RegressionForLineResult {
-        public double mse;
-
-        public double m, n;
-    }
-
     private enum EnumAxis {
         X,
         Y
@@ -10,44 +10,137 @@
 package ptrman.levels.retina;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
+import org.eclipse.collections.impl.list.mutable.primitive.DoubleArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import ptrman.Datastructures.IBoolMap2d;
 import ptrman.Datastructures.IMap2d;
+import ptrman.bpsolver.HardParameters;
 import ptrman.math.ArrayRealVectorHelper;
+import ptrman.math.Maths;
 import ptrman.misc.Assert;
+import ptrman.misc.ParallelHelper;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Deque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
-import static ptrman.bpsolver.Helper.createMapByObjectIdsFromListOfRetinaPrimitives;
 import static ptrman.bpsolver.Helper.isNeightborhoodPixelSet;
+import static ptrman.levels.visual.Map2dConverter.toBoolMap;
 import static ptrman.math.ArrayRealVectorHelper.arrayRealVectorToInteger;
 
 /**
  * finds line intersections
- * 
+ *
+ * the lines are intersected as infinite lines, an intersection is kept if a pixel in the neighborhood of its position is set
  */
 public class ProcessE {
     // TODO< sort out only the line detectors or make sure only linedetectors get in, remove asserts if its made sure >
 
-    public static void process(Collection<RetinaPrimitive> lineDetectors, IMap2d<Boolean> image) {
+    public enum EnumMode {
+        EXHAUSTIVE, // tests all ordered pairs of lines
+        BROADPHASE // tests only the pairs of lines which pass through a common cell of a grid where pixels are set, has the same result as EXHAUSTIVE
+    }
+
+    public static IntersectionGraph process(Collection<RetinaPrimitive> lineDetectors, IMap2d<Boolean> image) {
+        return process(lineDetectors, image, EnumMode.BROADPHASE);
+    }
+
+    public static IntersectionGraph process(Collection<RetinaPrimitive> lineDetectors, IMap2d<Boolean> image, EnumMode mode) {
+        return process(lineDetectors, image, mode, 1, null);
+    }
+
+    /**
+     * finds the intersections of the lines of each object
+     *
+     * the intersections are written into the graph, they are not registered on the lines, see IntersectionGraph.registerIntersectionsOnLines()
+     *
+     * \param numberOfThreads the objects are distributed to this many parts which are processed in parallel, the largest objects are distributed first
+     * \param executor executor of the parallel processing, the common ForkJoinPool is used if it is null
+     * \return graph of the intersections, the index of a line is its position in lineDetectors
+     */
+    public static IntersectionGraph process(Collection<RetinaPrimitive> lineDetectors, IMap2d<Boolean> image, EnumMode mode, final int numberOfThreads, final ExecutorService executor) {
         // we examine ALL possible intersections of all lines
         // this is only possible if we have the whole image at an instance
         // we assume here that this is the case
 
-        IntObjectHashMap<Deque<RetinaPrimitive>> objectIdToRetinaPrimitivesMap = createMapByObjectIdsFromListOfRetinaPrimitives(lineDetectors);
+        final List<RetinaPrimitive> lines = new ArrayList<>(lineDetectors);
+
+        // indices of the lines of each object, in the order of the lines
+        IntObjectHashMap<IntArrayList> lineIndicesByObjectId = new IntObjectHashMap<>(lines.size());
+        for( int lineI = 0; lineI < lines.size(); lineI++ ) {
+            final RetinaPrimitive iterationPrimitive = lines.get(lineI);
+            Assert.Assert(iterationPrimitive.hasValidObjectId(), "RetinaPrimitive has no valid objectId");
+
+            IntArrayList lineIndicesOfObject = lineIndicesByObjectId.get(iterationPrimitive.objectId);
+            if( lineIndicesOfObject == null ) {
+                lineIndicesOfObject = new IntArrayList();
+                lineIndicesByObjectId.put(iterationPrimitive.objectId, lineIndicesOfObject);
+            }
+            lineIndicesOfObject.add(lineI);
+        }
+        final List<IntArrayList> lineIndicesOfObjects = new ArrayList<>(lineIndicesByObjectId.values());
+
+        final NeighborhoodGrid grid = mode == EnumMode.BROADPHASE ? new NeighborhoodGrid(image, HardParameters.ProcessE.BROADPHASEGRIDSIZE) : null;
+
+        final int numberOfParts = Math.max(Math.min(numberOfThreads, lineIndicesOfObjects.size()), 1);
+
+        if( numberOfParts == 1 ) {
+            // detect line intersections only per object
+            IntersectionGraph.Hits hits = new IntersectionGraph.Hits();
+            for( final IntArrayList iterationLineIndices : lineIndicesOfObjects ) {
+                findIntersectionsOfObject(lines, iterationLineIndices, image, grid, hits);
+            }
+            return IntersectionGraph.build(lines, Collections.singletonList(hits));
+        }
+
+        // the lines of an object only intersect with the lines of the object, so the objects can be processed in parallel
+        int[] numberOfPrimitivesOfObjects = new int[lineIndicesOfObjects.size()];
+        for( int i = 0; i < lineIndicesOfObjects.size(); i++ ) {
+            numberOfPrimitivesOfObjects[i] = lineIndicesOfObjects.get(i).size();
+        }
+
+        List<IntersectionGraph.Hits> hitsOfParts = new ArrayList<>(numberOfParts);
+        List<Callable<Void>> tasks = new ArrayList<>(numberOfParts);
+        for( final int[] iterationIndicesOfPart : ParallelHelper.distributeLargestFirst(numberOfPrimitivesOfObjects, numberOfParts) ) {
+            final IntersectionGraph.Hits hitsOfPart = new IntersectionGraph.Hits();
+            hitsOfParts.add(hitsOfPart);
+
+            tasks.add(() -> {
+                for( final int iterationIndex : iterationIndicesOfPart ) {
+                    findIntersectionsOfObject(lines, lineIndicesOfObjects.get(iterationIndex), image, grid, hitsOfPart);
+                }
+                return null;
+            });
+        }
+
+        ParallelHelper.invokeAllAndWait(ParallelHelper.getExecutorOrDefault(executor), tasks);
+
+        return IntersectionGraph.build(lines, hitsOfParts);
+    }
 
-        // detect line intersections only per object
-        for( Deque<RetinaPrimitive> primitivesOfObject : objectIdToRetinaPrimitivesMap.values() ) {
-            findIntersectionOfLineDetectors(primitivesOfObject, image);
+    // the grid is only read, it is null for the exhaustive search
+    private static void findIntersectionsOfObject(List<RetinaPrimitive> lines, IntArrayList lineIndicesOfObject, IMap2d<Boolean> image, NeighborhoodGrid grid, IntersectionGraph.Hits hits) {
+        if( grid == null ) {
+            findIntersectionOfLineDetectors(lines, lineIndicesOfObject, image, hits);
+        }
+        else {
+            findIntersectionOfLineDetectorsBroadPhase(lines, lineIndicesOfObject, grid, hits);
         }
     }
 
-    private static void findIntersectionOfLineDetectors(Iterable<RetinaPrimitive> lineDetectors, IMap2d<Boolean> image) {
-        for (RetinaPrimitive lowLinePrimitive : lineDetectors) {
+    private static void findIntersectionOfLineDetectors(List<RetinaPrimitive> lines, IntArrayList lineIndicesOfObject, IMap2d<Boolean> image, IntersectionGraph.Hits hits) {
+        for( int lowI = 0; lowI < lineIndicesOfObject.size(); lowI++ ) {
+            final RetinaPrimitive lowLinePrimitive = lines.get(lineIndicesOfObject.get(lowI));
             //commented because we don't consider object id
             //Assert.Assert(lowLinePrimitive.hasValidObjectId(), "line detector RetinaPrimitive has no valid object id!");
 
-            for (RetinaPrimitive highLinePrimitive : lineDetectors) {
+            for( int highI = 0; highI < lineIndicesOfObject.size(); highI++ ) {
+                final RetinaPrimitive highLinePrimitive = lines.get(lineIndicesOfObject.get(highI));
 
                 Assert.Assert(lowLinePrimitive.type == RetinaPrimitive.EnumType.LINESEGMENT, "");
                 Assert.Assert(highLinePrimitive.type == RetinaPrimitive.EnumType.LINESEGMENT, "");
@@ -77,21 +170,277 @@ public class ProcessE {
                     continue;
                 }
 
-                // create entry and register stuff ...
-                // TODO< register it on the line itself? >
-                Intersection createdIntersection = new Intersection(intersectionPosition,
-                        new Intersection.IntersectionPartner(lowLinePrimitive, lowLinePrimitive.line.getIntersectionEndpoint(intersectionPosition)),
-                        new Intersection.IntersectionPartner(highLinePrimitive, highLinePrimitive.line.getIntersectionEndpoint(intersectionPosition))
-                        );
+                final double[] positionData = intersectionPosition.getDataRef();
+                addHit(lines, lineIndicesOfObject.get(lowI), lineIndicesOfObject.get(highI), positionData[0], positionData[1], hits);
+            }
+        }
+    }
+
+    /**
+     * finds the same intersections as findIntersectionOfLineDetectors() in the same order
+     *
+     * each line is registered in the cells of the grid where pixels are set near the line, only lines which share a cell are intersected
+     * each unordered pair is tested once, the position is calculated for both orders because it is rounded differently
+     * the intersections are added in the order of the ordered pairs of the exhaustive search
+     */
+    private static void findIntersectionOfLineDetectorsBroadPhase(List<RetinaPrimitive> lines, IntArrayList lineIndicesOfObject, NeighborhoodGrid grid, IntersectionGraph.Hits hits) {
+        final int numberOfLines = lineIndicesOfObject.size();
+
+        double[] ms = new double[numberOfLines];
+        double[] ns = new double[numberOfLines];
+        boolean[] isSingular = new boolean[numberOfLines];
+        boolean[] isWide = new boolean[numberOfLines];
+        IntArrayList wideLineIndices = new IntArrayList();
+
+        int[] cellsOfLinesStart = new int[numberOfLines + 1];
+        IntArrayList cellsOfLines = new IntArrayList();
+
+        for( int lineI = 0; lineI < numberOfLines; lineI++ ) {
+            final RetinaPrimitive iterationPrimitive = lines.get(lineIndicesOfObject.get(lineI));
+            Assert.Assert(iterationPrimitive.type == RetinaPrimitive.EnumType.LINESEGMENT, "");
+
+            // singular lines don't intersect with any line
+            isSingular[lineI] = iterationPrimitive.line.isYAxisSingularity();
+
+            if( !isSingular[lineI] ) {
+                ms[lineI] = iterationPrimitive.line.getM();
+                ns[lineI] = iterationPrimitive.line.getN();
+
+                // the rounding error of the position of intersections with steep lines can exceed the margin of the cells, these lines are tested with all lines
+                isWide[lineI] = !(Math.abs(ms[lineI]) <= MAXIMALREGISTEREDM && Math.abs(ns[lineI]) <= MAXIMALREGISTEREDN);
+                if( isWide[lineI] ) {
+                    wideLineIndices.add(lineI);
+                }
+                else {
+                    grid.collectCellsOfLine(ms[lineI], ns[lineI], cellsOfLines);
+                }
+            }
+
+            cellsOfLinesStart[lineI + 1] = cellsOfLines.size();
+        }
+
+        // lines of the cells, sorted by the cells with a counting sort
+        int[] linesOfCellsStart = new int[grid.getNumberOfCells() + 1];
+        for( int i = 0; i < cellsOfLines.size(); i++ ) {
+            linesOfCellsStart[cellsOfLines.get(i) + 1]++;
+        }
+        for( int cellI = 0; cellI < grid.getNumberOfCells(); cellI++ ) {
+            linesOfCellsStart[cellI + 1] += linesOfCellsStart[cellI];
+        }
+
+        int[] linesOfCells = new int[cellsOfLines.size()];
+        int[] fillPosition = Arrays.copyOf(linesOfCellsStart, grid.getNumberOfCells());
+        for( int lineI = 0; lineI < numberOfLines; lineI++ ) {
+            for( int i = cellsOfLinesStart[lineI]; i < cellsOfLinesStart[lineI + 1]; i++ ) {
+                linesOfCells[fillPosition[cellsOfLines.get(i)]++] = lineI;
+            }
+        }
+
+        FoundIntersections foundIntersections = new FoundIntersections();
+
+        // the partners which are already tested with the current line are marked with its index
+        int[] lastTestedWith = new int[numberOfLines];
+        Arrays.fill(lastTestedWith, -1);
+
+        for( int lineI = 0; lineI < numberOfLines; lineI++ ) {
+            if( isSingular[lineI] ) {
+                continue;
+            }
+
+            if( isWide[lineI] ) {
+                for( int otherI = lineI + 1; otherI < numberOfLines; otherI++ ) {
+                    if( !isSingular[otherI] ) {
+                        intersectPair(lineI, otherI, ms, ns, grid, foundIntersections);
+                    }
+                }
+                continue;
+            }
+
+            for( int i = 0; i < wideLineIndices.size(); i++ ) {
+                final int otherI = wideLineIndices.get(i);
+                if( otherI > lineI ) {
+                    lastTestedWith[otherI] = lineI;
+                    intersectPair(lineI, otherI, ms, ns, grid, foundIntersections);
+                }
+            }
+
+            for( int i = cellsOfLinesStart[lineI]; i < cellsOfLinesStart[lineI + 1]; i++ ) {
+                final int cellI = cellsOfLines.get(i);
+
+                for( int j = linesOfCellsStart[cellI]; j < linesOfCellsStart[cellI + 1]; j++ ) {
+                    final int otherI = linesOfCells[j];
+                    if( otherI <= lineI || lastTestedWith[otherI] == lineI ) {
+                        continue;
+                    }
+
+                    lastTestedWith[otherI] = lineI;
+                    intersectPair(lineI, otherI, ms, ns, grid, foundIntersections);
+                }
+            }
+        }
+
+        // the found intersections are sorted by the low index and then by the high index
+        int[] foundOfLowStart = new int[numberOfLines + 1];
+        for( int i = 0; i < foundIntersections.size(); i++ ) {
+            foundOfLowStart[foundIntersections.lowIndices.get(i) + 1]++;
+        }
+        for( int lineI = 0; lineI < numberOfLines; lineI++ ) {
+            foundOfLowStart[lineI + 1] += foundOfLowStart[lineI];
+        }
+
+        // high index and index of the found intersection, so the intersections of a low index are sorted by the high index
+        long[] sortKeys = new long[foundIntersections.size()];
+        int[] fillPositionOfLow = Arrays.copyOf(foundOfLowStart, numberOfLines);
+        for( int i = 0; i < foundIntersections.size(); i++ ) {
+            sortKeys[fillPositionOfLow[foundIntersections.lowIndices.get(i)]++] = ((long)foundIntersections.highIndices.get(i) << 32) | i;
+        }
+
+        for( int lowI = 0; lowI < numberOfLines; lowI++ ) {
+            Arrays.sort(sortKeys, foundOfLowStart[lowI], foundOfLowStart[lowI + 1]);
 
-                lowLinePrimitive.line.intersections.add(createdIntersection);
-                highLinePrimitive.line.intersections.add(createdIntersection);
+            for( int j = foundOfLowStart[lowI]; j < foundOfLowStart[lowI + 1]; j++ ) {
+                final int foundI = (int)sortKeys[j];
+                addHit(lines, lineIndicesOfObject.get(lowI), lineIndicesOfObject.get(foundIntersections.highIndices.get(foundI)), foundIntersections.xs.get(foundI), foundIntersections.ys.get(foundI), hits);
             }
         }
     }
-    
+
+    /**
+     * intersects the lines in both orders with the same calculation as SingleLineDetector.intersectLinesMN()
+     */
+    private static void intersectPair(final int lineI, final int otherI, final double[] ms, final double[] ns, final NeighborhoodGrid grid, FoundIntersections foundIntersections) {
+        // parallel check
+        if( Maths.equals(ms[lineI], ms[otherI], SingleLineDetector.EPSILON) ) {
+            return;
+        }
+
+        intersectOrderedPair(lineI, otherI, ms, ns, grid, foundIntersections);
+        intersectOrderedPair(otherI, lineI, ms, ns, grid, foundIntersections);
+    }
+
+    private static void intersectOrderedPair(final int lowIndex, final int highIndex, final double[] ms, final double[] ns, final NeighborhoodGrid grid, FoundIntersections foundIntersections) {
+        final double x = (ns[lowIndex] - ns[highIndex])/(ms[highIndex] - ms[lowIndex]);
+        final double y = ns[lowIndex] + ms[lowIndex] * x;
+
+        if( grid.isNeighborhoodPixelSet((int)Math.floor(x), (int)Math.floor(y)) ) {
+            foundIntersections.add(lowIndex, highIndex, x, y);
+        }
+    }
+
+    private static void addHit(final List<RetinaPrimitive> lines, final int lowLineI, final int highLineI, final double x, final double y, IntersectionGraph.Hits hits) {
+        final byte lowEndpointType = (byte)lines.get(lowLineI).line.getIntersectionEndpoint(x, y).ordinal();
+        final byte highEndpointType = (byte)lines.get(highLineI).line.getIntersectionEndpoint(x, y).ordinal();
+        hits.add(lowLineI, highLineI, x, y, lowEndpointType, highEndpointType);
+    }
+
     public static ArrayRealVector intersectLineDetectors(SingleLineDetector lineA, SingleLineDetector lineB) {
         ArrayRealVector intersectionPosition = SingleLineDetector.intersectLineDetectors(lineA, lineB);
         return intersectionPosition;
     }
+
+    // intersections of the ordered pairs of lines of an object, the indices are the indices of the lines of the object
+    private static final class FoundIntersections {
+        public void add(final int lowIndex, final int highIndex, final double x, final double y) {
+            lowIndices.add(lowIndex);
+            highIndices.add(highIndex);
+            xs.add(x);
+            ys.add(y);
+        }
+
+        public int size() {
+            return lowIndices.size();
+        }
+
+        public final IntArrayList lowIndices = new IntArrayList();
+        public final IntArrayList highIndices = new IntArrayList();
+        public final DoubleArrayList xs = new DoubleArrayList();
+        public final DoubleArrayList ys = new DoubleArrayList();
+    }
+
+    /**
+     * pixels of the image which have a set pixel in the neighborhood of isNeightborhoodPixelSet() and the cells which contain such pixels
+     */
+    private static final class NeighborhoodGrid {
+        public NeighborhoodGrid(final IMap2d<Boolean> image, final int gridsize) {
+            width = image.getWidth();
+            length = image.getLength();
+            this.gridsize = gridsize;
+            gridWidth = (width + gridsize - 1) / gridsize;
+            gridLength = (length + gridsize - 1) / gridsize;
+
+            final int radius = HardParameters.ProcessE.NEIGHTBORHOODSEARCHRADIUS;
+            final IBoolMap2d boolImage = toBoolMap(image);
+
+            // the square neighborhood is dilated along the rows and then along the columns
+            boolean[] isRowNeighborhoodSet = new boolean[width * length];
+            for( int y = 0; y < length; y++ ) {
+                for( int x = 0; x < width; x++ ) {
+                    if( boolImage.get(x, y) ) {
+                        for( int ix = Math.max(0, x - radius); ix <= Math.min(width - 1, x + radius); ix++ ) {
+                            isRowNeighborhoodSet[ix + y * width] = true;
+                        }
+                    }
+                }
+            }
+
+            isNeighborhoodSet = new boolean[width * length];
+            isCellSet = new boolean[gridWidth * gridLength];
+            for( int y = 0; y < length; y++ ) {
+                for( int x = 0; x < width; x++ ) {
+                    if( isRowNeighborhoodSet[x + y * width] ) {
+                        for( int iy = Math.max(0, y - radius); iy <= Math.min(length - 1, y + radius); iy++ ) {
+                            isNeighborhoodSet[x + iy * width] = true;
+                            isCellSet[x / gridsize + (iy / gridsize) * gridWidth] = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * same result as the bounds check and isNeightborhoodPixelSet() for the position
+         */
+        public boolean isNeighborhoodPixelSet(final int x, final int y) {
+            return x >= 0 && y >= 0 && x < width && y < length && isNeighborhoodSet[x + y * width];
+        }
+
+        /**
+         * adds the set cells where the line y = m*x + n comes closer than the margin
+         */
+        public void collectCellsOfLine(final double m, final double n, IntArrayList result) {
+            for( int cellX = 0; cellX < gridWidth; cellX++ ) {
+                final double yAtBegin = m * (cellX * gridsize - CELLMARGIN) + n;
+                final double yAtEnd = m * ((cellX + 1) * gridsize + CELLMARGIN) + n;
+
+                final int cellYBegin = Math.max(0, (int)Math.floor((Math.min(yAtBegin, yAtEnd) - CELLMARGIN) / gridsize));
+                final int cellYEnd = Math.min(gridLength - 1, (int)Math.floor((Math.max(yAtBegin, yAtEnd) + CELLMARGIN) / gridsize));
+
+                for( int cellY = cellYBegin; cellY <= cellYEnd; cellY++ ) {
+                    if( isCellSet[cellX + cellY * gridWidth] ) {
+                        result.add(cellX + cellY * gridWidth);
+                    }
+                }
+            }
+        }
+
+        public int getNumberOfCells() {
+            return gridWidth * gridLength;
+        }
+
+        private final int width;
+        private final int length;
+        private final int gridsize;
+        private final int gridWidth;
+        private final int gridLength;
+
+        private final boolean[] isNeighborhoodSet;
+        private final boolean[] isCellSet;
+    }
+
+    // margin in pixels around the cells, covers the rounding of the positions of the intersections
+    private static final double CELLMARGIN = 1.0;
+
+    // bounds of the parameters of the lines which are registered in the cells, the rounding error of the intersections of these lines is far below the margin
+    private static final double MAXIMALREGISTEREDM = 1.0e4;
+    private static final double MAXIMALREGISTEREDN = 1.0e7;
 }
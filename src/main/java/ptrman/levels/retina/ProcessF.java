@@ -12,6 +12,7 @@ package ptrman.levels.retina;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.eclipse.collections.api.tuple.primitive.IntIntPair;
 import org.eclipse.collections.impl.list.mutable.FastList;
+import ptrman.Datastructures.IBoolMap2d;
 import ptrman.Datastructures.IMap2d;
 import ptrman.Datastructures.Vector2d;
 import ptrman.levels.retina.helper.ProcessConnector;
@@ -19,6 +20,7 @@ import ptrman.levels.retina.helper.ProcessConnector;
 import java.util.List;
 
 import static ptrman.levels.retina.LineDetectorWithMultiplePoints.real;
+import static ptrman.levels.visual.Map2dConverter.toBoolMap;
 
 /**
  * Sends traces in imagespace for samples which are deeper than a threshold
@@ -26,7 +28,7 @@ import static ptrman.levels.retina.LineDetectorWithMultiplePoints.real;
  * * works only on rasterized input
  */
 public class ProcessF implements IProcess {
-    public IMap2d<Boolean> map;
+    public IBoolMap2d map;
 
     public ProcessConnector<ProcessA.Sample> inputSampleConnector;
     public ProcessConnector<ProcessA.Sample> outputSampleConnector;
@@ -70,7 +72,7 @@ public class ProcessF implements IProcess {
     }
 
     public void set(IMap2d<Boolean> map) {
-        this.map = map;
+        this.map = toBoolMap(map);
     }
 
     private ArrayRealVector[] processSample(ProcessA.Sample sample, ArrayRealVector[] resultPositions, List<Ray> active) {
@@ -109,7 +111,7 @@ public class ProcessF implements IProcess {
         //int x = (int) dr[0], y = (int) dr[1]; //default rounding
         int x = (int)Math.round(dr[0]), y = (int)Math.round(dr[1]);
 
-        return map.inBounds(x, y) && map.readAt(x, y);
+        return map.inBounds(x, y) && map.get(x, y);
     }
 
 //    private static List<ProcessA.Sample> createSamplesWithPositions(ArrayRealVector[] positions) {
@@ -9,17 +9,21 @@
  */
 package ptrman.levels.retina;
 
-import com.google.common.collect.ImmutableSet;
-import org.apache.commons.math3.linear.*;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
 import ptrman.Datastructures.IMap2d;
+import ptrman.Datastructures.SpatialGridIndex;
 import ptrman.bpsolver.HardParameters;
 import ptrman.math.ArrayRealVectorHelper;
 import ptrman.misc.Assert;
+import ptrman.misc.ParallelHelper;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import static ptrman.bpsolver.Helper.isNeightborhoodPixelSet;
 import static ptrman.levels.retina.LineDetectorWithMultiplePoints.real;
@@ -30,6 +34,11 @@ import static ptrman.math.ArrayRealVectorHelper.*;
  * 
  */
 public class ProcessG {
+    // the protocurves are split into this many parts which are fitted in parallel
+    public int numberOfThreads = 1;
+    // executor of the parallel fitting, the common ForkJoinPool is used if it is null
+    public ExecutorService executor = null;
+
     public static class Curve {
         public Curve(List<CurveElement> curveElements) {
             this.curveElements = curveElements;
@@ -76,7 +85,7 @@ public class ProcessG {
         testPoints.add(new ArrayRealVector(new double[]{2.0f, 7.0f}));
 
         // works fine
-        Curve resultCurve = calculatePolynominalsAndReturnCurve(testPoints);
+        Curve resultCurve = calculatePolynominalsAndReturnCurve(testPoints, new SplineCurveFitter());
     }
     
     
@@ -123,6 +132,14 @@ public class ProcessG {
     }
     
     public void process(ArrayList<SingleLineDetector> lineDetectors, Iterable<ProcessM.LineParsing> lineParsings, Iterable<ProcessA.Sample> samples, IMap2d<Boolean> image) {
+        process(lineDetectors, lineParsings, samples, image, null);
+    }
+
+    /**
+     * \param intersectionGraph intersections of the lines as built by process-E, is used to look up the neighbor lines,
+     *        the intersections of the lines are still updated. The intersections of the lines are iterated if it is null
+     */
+    public void process(ArrayList<SingleLineDetector> lineDetectors, Iterable<ProcessM.LineParsing> lineParsings, Iterable<ProcessA.Sample> samples, IMap2d<Boolean> image, IntersectionGraph intersectionGraph) {
         resultCurves.clear();
         
         rerateLineParsings(lineParsings);
@@ -136,6 +153,11 @@ public class ProcessG {
         // for now we do this for *all* curves
         // TODO< select by rng >
 
+        buildVicinityIndex(samples, image);
+
+        // the protocurves of all lineparsings are fitted in one pass
+        List<List<ArrayRealVector>> protocurves = new ArrayList<>();
+
         for (ProcessM.LineParsing lineParsing : lineParsings) {
 
             ProcessM.LineParsing currentLineParsing = lineParsing;
@@ -143,11 +165,10 @@ public class ProcessG {
 
             // try to covert (at least) a part of the lineParsing to a curve
 
-            Collection<List<ArrayRealVector>> protocurves = new ArrayList<>();
             List<ArrayRealVector> currentProtocurve = null;
 
             for (int pointIndex = 1; pointIndex < currentLineParsing.lineParsing.size() - 1; pointIndex++) {
-                boolean atLeastOneSampleNotNearAdjacentLines = examineVincityOfSegmentPoint(pointIndex, currentLineParsing, samples);
+                boolean atLeastOneSampleNotNearAdjacentLines = examineVincityOfSegmentPoint(pointIndex, currentLineParsing);
 
                 boolean IsParsingACurve = currentProtocurve != null;
 
@@ -183,19 +204,19 @@ public class ProcessG {
                 currentProtocurve = null;
                 IsParsingACurve = false;
             }
-
-            // convert protocurves to real curves
-
-            for (List<ArrayRealVector> iterationProtoCurve : protocurves) {
-
-                Curve createdCurve = calculatePolynominalsAndReturnCurve(iterationProtoCurve);
-                resultCurves.add(createdCurve);
-            }
         }
+
+        // convert protocurves to real curves
+        resultCurves.addAll(fitCurves(protocurves));
         
         // remove segments which are part of curves
         // we don't touch the lineparsings here, because they are not visible from the cognitive layer
-        removeLinedetectorsWhichWereUsedInCurves(lineDetectors);
+        if( intersectionGraph != null ) {
+            removeLinedetectorsWhichWereUsedInCurves(lineDetectors, intersectionGraph);
+        }
+        else {
+            removeLinedetectorsWhichWereUsedInCurves(lineDetectors);
+        }
         
         // calculate intersections of curves with lines and curves
         // ASK< does this belong into process E or another process? >
@@ -290,6 +311,43 @@ public class ProcessG {
         }
     }
     
+    /**
+     * looks up the neighbor lines of the removed lines in the intersection graph
+     *
+     * the graph is a snapshot, so the intersections of the lines can be changed while the neighbors are iterated
+     */
+    private static void removeLinedetectorsWhichWereUsedInCurves(ArrayList<SingleLineDetector> lineDetectors, IntersectionGraph intersectionGraph) {
+        ObjectIntHashMap<SingleLineDetector> lineIndexByLineDetector = new ObjectIntHashMap<>(intersectionGraph.getNumberOfLines());
+        for( int lineI = 0; lineI < intersectionGraph.getNumberOfLines(); lineI++ ) {
+            final SingleLineDetector iterationLineDetector = intersectionGraph.getPrimitive(lineI).line;
+            if( iterationLineDetector != null ) {
+                lineIndexByLineDetector.put(iterationLineDetector, lineI);
+            }
+        }
+
+        for( int lineDetectorI = 0; lineDetectorI < lineDetectors.size(); lineDetectorI++ ) {
+
+            SingleLineDetector currentLineDetector = lineDetectors.get(lineDetectorI);
+
+            if( currentLineDetector.markedPartOfCurve ) {
+                final int lineI = lineIndexByLineDetector.getIfAbsent(currentLineDetector, -1);
+                if( lineI == -1 ) {
+                    // line is not in the graph
+                    removeLineDetectorFromNeightborIntersections(currentLineDetector);
+                }
+                else {
+                    for( int entry = intersectionGraph.getEntriesBegin(lineI); entry < intersectionGraph.getEntriesEnd(lineI); entry++ ) {
+                        final SingleLineDetector neighborLineDetector = intersectionGraph.getPrimitive(intersectionGraph.getOtherLine(entry)).line;
+                        removeIntersectionBetweenLines(neighborLineDetector, currentLineDetector);
+                    }
+                }
+
+                lineDetectors.remove(lineDetectorI);
+                lineDetectorI--;
+            }
+        }
+    }
+
     private static void removeLineDetectorFromNeightborIntersections(SingleLineDetector lineDetector) {
         for( Intersection iterationIntersection : lineDetector.intersections ) {
             Assert.Assert(iterationIntersection.p0.primitive.type == RetinaPrimitive.EnumType.LINESEGMENT, "must be line");
@@ -391,32 +449,35 @@ public class ProcessG {
     
     
     
-    private static boolean examineVincityOfSegmentPoint(int pointIndex, ProcessM.LineParsing lineParsing, Iterable<ProcessA.Sample> samples) {
+    private boolean examineVincityOfSegmentPoint(int pointIndex, ProcessM.LineParsing lineParsing) {
         ArrayRealVector centerPoint = lineParsing.lineParsing.get(pointIndex).getBProjected();
-        List<ProcessA.Sample> endosceletonSamplesInVicinity = queryEndosceletonPointsInVicinityOf(samples, centerPoint);
+        List<ProcessA.Sample> endosceletonSamplesInVicinity = queryEndosceletonPointsInVicinityOf(centerPoint);
         List<SingleLineDetector> neightborLinesOfPoint = getNeightborLinesOfPoint(pointIndex, lineParsing);
         boolean atLeastOneSampleNotNearLine = !areAllSamplesNearLines(endosceletonSamplesInVicinity, neightborLinesOfPoint, HardParameters.ProcessG.MAXIMALDISTANCEOFENDOSCELETONTOLINE);
         
         return atLeastOneSampleNotNearLine;
     }
     
-    private static List<ProcessA.Sample> queryEndosceletonPointsInVicinityOf(Iterable<ProcessA.Sample> samples, ArrayRealVector centerPoint) {
-        return queryPointsInRadius(samples, centerPoint, HardParameters.ProcessG.VICINITYRADIUS, new ProcessA.Sample.EnumType[]{ProcessA.Sample.EnumType.ENDOSCELETON});
-    }
-    
-    private static List<ProcessA.Sample> queryPointsInRadius(Iterable<ProcessA.Sample> samples, ArrayRealVector centerPoint, double radius, ProcessA.Sample.EnumType[] typeFilterCriteria) {
+    /**
+     * queries the endosceleton samples in the vicinity with the spatial index
+     *
+     * \return the samples in the order of the samples of the call of process
+     */
+    List<ProcessA.Sample> queryEndosceletonPointsInVicinityOf(ArrayRealVector centerPoint) {
+        final double radius = HardParameters.ProcessG.VICINITYRADIUS;
 
-        Set<ProcessA.Sample.EnumType> filterCriteria = ImmutableSet.copyOf(typeFilterCriteria);
+        queriedSampleIndices.clear();
+        vicinityIndex.queryRadius(centerPoint.getDataRef()[0], centerPoint.getDataRef()[1], radius, queriedSampleIndices);
+        queriedSampleIndices.sortThis();
 
         List<ProcessA.Sample> samplesInRadius = new ArrayList<>();
+        for( int i = 0; i < queriedSampleIndices.size(); i++ ) {
+            ProcessA.Sample iterationSample = endosceletonSamples.get(queriedSampleIndices.get(i));
 
-        // TODO< query the points in the radius with a optimized spartial scheme >
-        for( ProcessA.Sample iterationSample : samples ) {
-            double distance = distance(iterationSample.position, centerPoint);
-
-            if( distance < radius && filterCriteria.contains(iterationSample.type))
+            // the index includes the samples on the radius
+            if( distance(iterationSample.position, centerPoint) < radius ) {
                 samplesInRadius.add(iterationSample);
-
+            }
         }
         
         return samplesInRadius;
@@ -473,141 +534,102 @@ public class ProcessG {
     
     
     
-    private static Curve calculatePolynominalsAndReturnCurve(List<ArrayRealVector> points) {
+    // the fitter is shared by all curves which are fitted by one thread
+    private static Curve calculatePolynominalsAndReturnCurve(List<ArrayRealVector> points, SplineCurveFitter fitter) {
+        return fitter.fit(points);
+    }
 
-        RealVector solvedA_2_i = ProcessG.solveLinearEquationFor2ForPoints(points, EnumAxis.X);
-        RealVector solvedA_1_i = ProcessG.calculate_1_i(points, solvedA_2_i, EnumAxis.X);
-        RealVector solvedA_3_i = ProcessG.calculate_2_i(points, solvedA_2_i);
-        RealVector solvedA_0_i = ProcessG.calculate_0_i(points, EnumAxis.X);
+    /**
+     * fits the curves of all protocurves, the parts of the protocurves are fitted in parallel
+     *
+     * \return the curves in the order of the protocurves
+     */
+    List<Curve> fitCurves(final List<List<ArrayRealVector>> protocurves) {
+        final Curve[] curves = new Curve[protocurves.size()];
 
-        RealVector solvedB_2_i = ProcessG.solveLinearEquationFor2ForPoints(points, EnumAxis.Y);
-        RealVector solvedB_1_i = ProcessG.calculate_1_i(points, solvedB_2_i, EnumAxis.Y);
-        RealVector solvedB_3_i = ProcessG.calculate_2_i(points, solvedB_2_i);
-        RealVector solvedB_0_i = ProcessG.calculate_0_i(points, EnumAxis.Y);
-        
-        return new Curve(createCurves(solvedA_0_i, solvedA_1_i, solvedA_2_i, solvedA_3_i, solvedB_0_i, solvedB_1_i, solvedB_2_i, solvedB_3_i));
-    }
-    
-    // builds a linear equation for the a|b_2,i values and returns the coefficients
-    // NOTE< points must be for sure sorted by x axis? >
-    private static RealVector solveLinearEquationFor2ForPoints(List<ArrayRealVector> points, EnumAxis axis) {
-        int i;
-        
-        // math libary usage see http://commons.apache.org/proper/commons-math/userguide/linear.html
+        final int numberOfParts = Math.max(Math.min(numberOfThreads, protocurves.size()), 1);
+        if( fittersOfParts.length < numberOfParts ) {
+            fittersOfParts = Arrays.copyOf(fittersOfParts, numberOfParts);
+        }
+        for( int partI = 0; partI < numberOfParts; partI++ ) {
+            if( fittersOfParts[partI] == null ) {
+                fittersOfParts[partI] = new SplineCurveFitter();
+            }
+        }
 
-        Array2DRowRealMatrix matrix = new Array2DRowRealMatrix(points.size(), points.size());
-        
-        // populate matrix
-        
-        //  top and bottom
-        matrix.setEntry(0, 0, 1.0);
-        matrix.setEntry(points.size()-1, points.size()-1, 1.0);
-        
-        // middle
-        for( i = 1; i < points.size()-1; i++ ) {
-            matrix.setEntry(i, i-1, 1.0);
-            matrix.setEntry(i, i-1+1, 4.0);
-            matrix.setEntry(i, i-1+2, 1.0);
+        if( numberOfParts == 1 ) {
+            fitCurvesRange(protocurves, curves, 0, protocurves.size(), fittersOfParts[0]);
+            return Arrays.asList(curves);
         }
-        
-        // populate constants
 
-        RealVector constants = new ArrayRealVector(points.size());
-        constants.setEntry(0, 0.0);
-        constants.setEntry(points.size()-1, 0.0);
-        
-        for( i = 0; i < points.size()-2; i++ ) {
+        List<Callable<Void>> tasks = new ArrayList<>(numberOfParts);
+        for( int partI = 0; partI < numberOfParts; partI++ ) {
+            final int begin = ParallelHelper.calcPartBegin(protocurves.size(), numberOfParts, partI);
+            final int end = ParallelHelper.calcPartBegin(protocurves.size(), numberOfParts, partI + 1);
+            final SplineCurveFitter fitter = fittersOfParts[partI];
 
-            double value = 3.0 * getAxisValueForPointOfArray(points, i, axis) - 6.0 * getAxisValueForPointOfArray(points, i + 1, axis) + 3.0 * getAxisValueForPointOfArray(points, i + 2, axis);
-            constants.setEntry(i+1, value);
+            tasks.add(() -> {
+                fitCurvesRange(protocurves, curves, begin, end, fitter);
+                return null;
+            });
         }
-        
-        
-        // solve system
-        DecompositionSolver solver = new LUDecomposition(matrix).getSolver();
-        RealVector solution = solver.solve(constants);
-        
-        return solution;
-    }
-    
-    // calculates the (A|B)_1_i after Formula (9a) (foundalis dissertation page 422)
-    // note that the result vector is one shorter than the input vector
-    private static RealVector calculate_1_i(List<ArrayRealVector> points, RealVector a_2_i, EnumAxis axis) {
 
-        RealVector result = new ArrayRealVector(a_2_i.getDimension() - 1);
-        for( int i = 0; i < a_2_i.getDimension()-1; i++ ) {
+        ParallelHelper.invokeAllAndWait(ParallelHelper.getExecutorOrDefault(executor), tasks);
 
-            double result_1_i = getAxisValueForPointOfArray(points, i + 1, axis) - getAxisValueForPointOfArray(points, i, axis) - (1.0 / 3.0) * (2.0 * a_2_i.getEntry(i) + a_2_i.getEntry(i + 1));
-            result.setEntry(i, result_1_i);
-        }
-        
-        return result;
+        return Arrays.asList(curves);
     }
-    
-    // calculate the (A|B)_3_i after formula (7)
-    private static RealVector calculate_2_i(List<ArrayRealVector> points, RealVector solved_2_i) {
 
-        RealVector result = new ArrayRealVector(solved_2_i.getDimension() - 1);
-        for( int i = 0; i < solved_2_i.getDimension()-1; i++ ) {
-            double result_3_i = (solved_2_i.getEntry(i+1)-solved_2_i.getEntry(i))*0.3333333333333333333333333;
-            result.setEntry(i, result_3_i);
+    // only writes the curves of the range
+    private static void fitCurvesRange(final List<List<ArrayRealVector>> protocurves, Curve[] curves, final int begin, final int end, SplineCurveFitter fitter) {
+        for( int i = begin; i < end; i++ ) {
+            curves[i] = calculatePolynominalsAndReturnCurve(protocurves.get(i), fitter);
         }
-        
-        return result;
     }
-    
-    // "calculate" the (A|B)_0_i after formula (4)
-    private static RealVector calculate_0_i(List<ArrayRealVector> points, EnumAxis axis) {
 
-        RealVector result = new ArrayRealVector(points.size());
-        
-        for( int i = 0; i < points.size(); i++ ) {
-            double result_0_i = getAxisValueForPointOfArray(points, i, axis);
-            result.setEntry(i, result_0_i);
+    /**
+     * builds the spatial index of the endosceleton samples for the vicinity queries
+     *
+     * the index has the size of the image and is reused by the next calls for images of the same size
+     * samples outside of the image are put into the cells at the border, the radius queries find them there
+     */
+    void buildVicinityIndex(Iterable<ProcessA.Sample> samples, IMap2d<Boolean> image) {
+        endosceletonSamples.clear();
+        for( ProcessA.Sample iterationSample : samples ) {
+            if( iterationSample.type == ProcessA.Sample.EnumType.ENDOSCELETON ) {
+                endosceletonSamples.add(iterationSample);
+            }
         }
-        
-        return result;
-    }
-    
-    
-    private static List<CurveElement> createCurves(RealVector solvedA_0_i, RealVector solvedA_1_i, RealVector solvedA_2_i, RealVector solvedA_3_i, RealVector solvedB_0_i, RealVector solvedB_1_i, RealVector solvedB_2_i, RealVector solvedB_3_i) {
-        int curveI;
 
-        int numberOfPoints = solvedA_0_i.getDimension();
+        final int numberOfSamples = endosceletonSamples.size();
+        if( samplesXs.length < numberOfSamples ) {
+            samplesXs = new int[numberOfSamples];
+            samplesYs = new int[numberOfSamples];
+        }
 
-        List<CurveElement> resultCurves = new ArrayList<>();
-        
-        for( curveI = 0; curveI < numberOfPoints-1; curveI++ ) {
-            resultCurves.add(new CurveElement(
-                    (float)solvedA_0_i.getEntry(curveI),
-                    (float)solvedA_1_i.getEntry(curveI),
-                    (float)solvedA_2_i.getEntry(curveI),
-                    (float)solvedA_3_i.getEntry(curveI),
-                    
-                    (float)solvedB_0_i.getEntry(curveI),
-                    (float)solvedB_1_i.getEntry(curveI),
-                    (float)solvedB_2_i.getEntry(curveI),
-                    (float)solvedB_3_i.getEntry(curveI)
-                )
-            );
+        for( int i = 0; i < numberOfSamples; i++ ) {
+            samplesXs[i] = endosceletonSamples.get(i).position.getOne();
+            samplesYs[i] = endosceletonSamples.get(i).position.getTwo();
         }
-        
-        return resultCurves;
-    }
-    
-    
-    private static double getAxisValueForPointOfArray(List<ArrayRealVector> points, int index, EnumAxis axis) {
-        return getAxisValueForPoint(points.get(index), axis);
-    }
-    
-    private static double getAxisValueForPoint(ArrayRealVector point, EnumAxis axis) {
-        return axis == EnumAxis.X ? point.getDataRef()[0] : point.getDataRef()[1];
-    }
 
-    private enum EnumAxis {
-        X,
-        Y
+        if( vicinityIndex == null || vicinityIndexWidth != image.getWidth() || vicinityIndexLength != image.getLength() ) {
+            vicinityIndex = new SpatialGridIndex(image.getWidth(), image.getLength(), (int)Math.ceil(HardParameters.ProcessG.VICINITYRADIUS));
+            vicinityIndexWidth = image.getWidth();
+            vicinityIndexLength = image.getLength();
+        }
+
+        vicinityIndex.build(samplesXs, samplesYs, null, numberOfSamples);
     }
-    
+
+    private SplineCurveFitter[] fittersOfParts = new SplineCurveFitter[0];
+
+    // endosceleton samples of the current call of process and their grid
+    private final List<ProcessA.Sample> endosceletonSamples = new ArrayList<>();
+    private int[] samplesXs = new int[0];
+    private int[] samplesYs = new int[0];
+    private SpatialGridIndex vicinityIndex;
+    private int vicinityIndexWidth;
+    private int vicinityIndexLength;
+    private final IntArrayList queriedSampleIndices = new IntArrayList();
+
     private final List<Curve> resultCurves = new ArrayList<>();
 }
@@ -10,6 +10,7 @@
 package ptrman.levels.retina;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 import ptrman.Datastructures.IMap2d;
 import ptrman.Datastructures.Map2d;
@@ -18,11 +19,16 @@ import ptrman.bpsolver.HardParameters;
 import ptrman.levels.retina.helper.ProcessConnector;
 import ptrman.math.NalTvFunctions;
 import ptrman.misc.Assert;
+import ptrman.misc.ParallelHelper;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import static ptrman.bpsolver.Helper.createMapByObjectIdsFromListOfRetinaPrimitives;
 
@@ -32,9 +38,24 @@ import static ptrman.bpsolver.Helper.createMapByObjectIdsFromListOfRetinaPrimiti
  * combines detectors only of the same objectId
  */
 public class ProcessH implements IProcess {
+    public enum EnumFusionMode {
+        ITERATIVE, // scans all pairs, fuses at most maxFusionsPerCycle of the detectors
+        INDEXED // fuses to a fixed point, only the pairs in neighbouring buckets of a LineFusionIndex are tested
+    }
+
+    public EnumFusionMode fusionMode = EnumFusionMode.INDEXED;
 
     public float maxFusionsPerCycle = 0.15f; //adjustable
 
+    // parameters of the LineFusionIndex of the indexed fusion
+    public int fusionIndexNumberOfAngleBuckets = 16;
+    public double fusionIndexOffsetBucketSize = 8.0;
+
+    // the objects are distributed to this many parts which are fused in parallel, the largest objects are distributed first
+    public int numberOfThreads = 1;
+    // executor of the parallel fusion, the common ForkJoinPool is used if it is null
+    public ExecutorService executor = null;
+
     public ProcessConnector<RetinaPrimitive> resultPrimitiveConnector;
     public ProcessConnector<RetinaPrimitive> inputPrimitiveConnection;
 
@@ -43,6 +64,9 @@ public class ProcessH implements IProcess {
     public int GRIDSIZE = 8;
     public IMap2d<Boolean> accelerationMap;
 
+    // buffers of the indexed fusion of each part
+    private final List<FusionBuffers> fusionBuffersOfParts = new ArrayList<>();
+
     public void set(ProcessConnector<RetinaPrimitive> inputPrimitiveConnection, ProcessConnector<RetinaPrimitive> resultPrimitiveConnector) {
         this.inputPrimitiveConnection = inputPrimitiveConnection;
         this.resultPrimitiveConnector = resultPrimitiveConnector;
@@ -58,7 +82,9 @@ public class ProcessH implements IProcess {
         Assert.Assert((imageSize.x % GRIDSIZE) == 0, "");
         Assert.Assert((imageSize.y % GRIDSIZE) == 0, "");
 
-        accelerationMap = new Map2d<>(imageSize.x / GRIDSIZE, imageSize.y / GRIDSIZE);
+        if( accelerationMap == null || accelerationMap.getWidth() != imageSize.x / GRIDSIZE || accelerationMap.getLength() != imageSize.y / GRIDSIZE ) {
+            accelerationMap = new Map2d<>(imageSize.x / GRIDSIZE, imageSize.y / GRIDSIZE);
+        }
 
         for( int y = 0; y < accelerationMap.getLength(); y++ ) {
             for( int x = 0; x < accelerationMap.getWidth(); x++ ) {
@@ -78,13 +104,67 @@ public class ProcessH implements IProcess {
 
         IntObjectHashMap<Deque<RetinaPrimitive>> objectIdToRetinaPrimitivesMap = createMapByObjectIdsFromListOfRetinaPrimitives(allInputDetectors);
 
-        objectIdToRetinaPrimitivesMap.forEachKeyValue( (k, v) -> {
-            combineOfObjectId(v, k, maxFusionsPerCycle);
+        final int[] objectIds = objectIdToRetinaPrimitivesMap.keysView().toArray();
+        final int numberOfParts = Math.max(Math.min(numberOfThreads, objectIds.length), 1);
+
+        while( fusionBuffersOfParts.size() < numberOfParts ) {
+            fusionBuffersOfParts.add(new FusionBuffers());
+        }
+
+        if( numberOfParts == 1 ) {
+            for( final int iterationObjectId : objectIds ) {
+                // transfer the detectors into the result
+                resultPrimitiveConnector.addAll(fuseObject(objectIdToRetinaPrimitivesMap.get(iterationObjectId), iterationObjectId, fusionBuffersOfParts.get(0)));
+            }
+            return;
+        }
+
+        // the objects are independent, each task writes only the results of its objects
+        final List<Collection<RetinaPrimitive>> resultsOfObjects = new ArrayList<>(Collections.nCopies(objectIds.length, null));
+
+        int[] numberOfPrimitivesOfObjects = new int[objectIds.length];
+        for( int i = 0; i < objectIds.length; i++ ) {
+            numberOfPrimitivesOfObjects[i] = objectIdToRetinaPrimitivesMap.get(objectIds[i]).size();
+        }
 
-            // transfer the detectors into the result
-            resultPrimitiveConnector.addAll(v);
-        });
+        final int[][] indicesOfParts = ParallelHelper.distributeLargestFirst(numberOfPrimitivesOfObjects, numberOfParts);
+
+        List<Callable<Void>> tasks = new ArrayList<>(numberOfParts);
+        for( int partI = 0; partI < indicesOfParts.length; partI++ ) {
+            final int[] iterationIndicesOfPart = indicesOfParts[partI];
+            final FusionBuffers buffersOfPart = fusionBuffersOfParts.get(partI);
+
+            tasks.add(() -> {
+                for( final int iterationIndex : iterationIndicesOfPart ) {
+                    resultsOfObjects.set(iterationIndex, fuseObject(objectIdToRetinaPrimitivesMap.get(objectIds[iterationIndex]), objectIds[iterationIndex], buffersOfPart));
+                }
+                return null;
+            });
+        }
 
+        ParallelHelper.invokeAllAndWait(ParallelHelper.getExecutorOrDefault(executor), tasks);
+
+        // transfer the detectors into the result in the same order as the serial fusion
+        for( final Collection<RetinaPrimitive> iterationResult : resultsOfObjects ) {
+            resultPrimitiveConnector.addAll(iterationResult);
+        }
+    }
+
+    /**
+     * fuses the detectors of one object with the fusionMode
+     *
+     * \return the detectors after the fusion
+     */
+    private Collection<RetinaPrimitive> fuseObject(Deque<RetinaPrimitive> primitivesOfObject, final int objectId, FusionBuffers buffers) {
+        if( fusionMode == EnumFusionMode.INDEXED ) {
+            if( buffers.index == null || buffers.numberOfAngleBuckets != fusionIndexNumberOfAngleBuckets || buffers.offsetBucketSize != fusionIndexOffsetBucketSize ) {
+                buffers.allocateIndex(fusionIndexNumberOfAngleBuckets, fusionIndexOffsetBucketSize);
+            }
+            return fuseToFixedPoint(primitivesOfObject, objectId, buffers);
+        }
+
+        combineOfObjectId(primitivesOfObject, objectId, maxFusionsPerCycle);
+        return primitivesOfObject;
     }
 
     @Override
@@ -167,6 +247,107 @@ public class ProcessH implements IProcess {
         }
     }
 
+    /**
+     * fuses the detectors until no pair can be fused anymore
+     *
+     * the detectors are processed with a worklist, a fused detector is put onto the worklist again and is tested against the remaining detectors
+     * the pairs are tested in the order of the serials like in combineOfObjectId()
+     *
+     * \return the detectors which weren't fused in the order of the input, followed by the fused detectors in the order of their creation
+     */
+    public static List<RetinaPrimitive> fuseToFixedPoint(Collection<RetinaPrimitive> detectors, final int objectId, final int numberOfAngleBuckets, final double offsetBucketSize) {
+        FusionBuffers buffers = new FusionBuffers();
+        buffers.allocateIndex(numberOfAngleBuckets, offsetBucketSize);
+        return fuseToFixedPoint(detectors, objectId, buffers);
+    }
+
+    private static List<RetinaPrimitive> fuseToFixedPoint(Collection<RetinaPrimitive> detectors, final int objectId, FusionBuffers buffers) {
+        final LineFusionIndex index = buffers.index;
+        final List<RetinaPrimitive> primitivesById = buffers.primitivesById;
+        final IntArrayList worklist = buffers.worklist;
+        final IntArrayList candidateIds = buffers.candidateIds;
+
+        index.clear();
+        primitivesById.clear();
+        worklist.clear();
+
+        for( final RetinaPrimitive iterationPrimitive : detectors ) {
+            index.add(iterationPrimitive.line);
+            primitivesById.add(iterationPrimitive);
+        }
+
+        for( int id = 0; id < index.size(); id++ ) {
+            worklist.add(id);
+        }
+
+        for( int worklistI = 0; worklistI < worklist.size(); worklistI++ ) {
+            final int id = worklist.get(worklistI);
+            if( !index.isAlive(id) ) {
+                continue;
+            }
+
+            candidateIds.clear();
+            index.queryCandidates(id, candidateIds);
+
+            for( int i = 0; i < candidateIds.size(); i++ ) {
+                final int otherId = candidateIds.get(i);
+
+                final boolean isLow = index.getLine(id).serial < index.getLine(otherId).serial;
+                final SingleLineDetector detectorLow = index.getLine(isLow ? id : otherId);
+                final SingleLineDetector detectorHigh = index.getLine(isLow ? otherId : id);
+
+                SingleLineDetector fusedLineDetector = null;
+                if( canDetectorsBeFusedOverlap(detectorLow, detectorHigh) ) {
+                    fusedLineDetector = fuseLineDetectorsOverlap(detectorLow, detectorHigh);
+                }
+                else if( canDetectorsBeFusedInside(detectorLow, detectorHigh) ) {
+                    fusedLineDetector = fuseLineDetectorsInside(detectorLow, detectorHigh);
+                }
+
+                if( fusedLineDetector != null ) {
+                    index.remove(id);
+                    index.remove(otherId);
+
+                    RetinaPrimitive fusedPrimitive = RetinaPrimitive.makeLine(fusedLineDetector);
+                    fusedPrimitive.objectId = objectId;
+
+                    worklist.add(index.add(fusedLineDetector));
+                    primitivesById.add(fusedPrimitive);
+                    break;
+                }
+            }
+        }
+
+        List<RetinaPrimitive> result = new ArrayList<>();
+        for( int id = 0; id < index.size(); id++ ) {
+            if( index.isAlive(id) ) {
+                result.add(primitivesById.get(id));
+            }
+        }
+
+        primitivesById.clear(); // the buffers don't keep the primitives alive
+        return result;
+    }
+
+    /**
+     * index and work lists of the indexed fusion, are reused for the objects of a part and for the following calls of processData()
+     */
+    private static class FusionBuffers {
+        public void allocateIndex(final int numberOfAngleBuckets, final double offsetBucketSize) {
+            this.numberOfAngleBuckets = numberOfAngleBuckets;
+            this.offsetBucketSize = offsetBucketSize;
+            index = new LineFusionIndex(numberOfAngleBuckets, offsetBucketSize, HardParameters.ProcessH.MAXDISTANCEFORCANDIDATEPOINT);
+        }
+
+        public LineFusionIndex index = null;
+        public int numberOfAngleBuckets;
+        public double offsetBucketSize;
+
+        public final List<RetinaPrimitive> primitivesById = new ArrayList<>();
+        public final IntArrayList worklist = new IntArrayList();
+        public final IntArrayList candidateIds = new IntArrayList();
+    }
+
     private static void addNewLine(Collection<RetinaPrimitive> workingDetectors, int objectId, SingleLineDetector fusedLineDetector) {
 
         RetinaPrimitive newLine = RetinaPrimitive.makeLine(fusedLineDetector);
@@ -9,11 +9,19 @@
  */
 package ptrman.levels.retina;
 
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import ptrman.misc.Assert;
+import ptrman.misc.ParallelHelper;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 /** identify M features
  *
@@ -34,12 +42,35 @@ public class ProcessM {
 
     public List<LineParsing> lineParsings = new ArrayList<>();
 
+    // number of random traces of each call to process(), identical parsings are only stored once
+    public int numberOfTraces = 1;
+    // the traces are split into this many parts which are traced in parallel
+    public int numberOfThreads = 1;
+    // executor of the parallel tracing, the common ForkJoinPool is used if it is null
+    public ExecutorService executor = null;
+
+    // buffers of the traces of each part, are reused by all calls
+    private TraceBuffers[] buffersOfParts = new TraceBuffers[0];
+
     public void process(List<RetinaPrimitive> lineDetectors) {
+        process(lineDetectors, IntersectionGraph.build(lineDetectors));
+    }
+
+    /**
+     * traces numberOfTraces random line parsings
+     *
+     * the result is deterministic for the seed of rng and the same for any numberOfThreads
+     *
+     * \param intersectionGraph graph of the intersections of the lineDetectors, as returned by process-E
+     */
+    public void process(List<RetinaPrimitive> lineDetectors, IntersectionGraph intersectionGraph) {
         if( lineDetectors.isEmpty() ) {
             return;
         }
+
+        Assert.Assert(intersectionGraph.getNumberOfLines() == lineDetectors.size(), "intersection graph must be built from the line detectors");
         
-        tryToFindLines(lineDetectors, 1);
+        tryToFindLines(intersectionGraph, numberOfTraces);
     }
     
     public List<LineParsing> getLineParsings()
@@ -47,102 +78,141 @@ public class ProcessM {
         return lineParsings;
     }
     
-    private void tryToFindLines(List<RetinaPrimitive> lineDetectors, int numberOfIterations) {
-        int iteration;
-        
+    private void tryToFindLines(final IntersectionGraph intersectionGraph, final int numberOfIterations) {
         lineParsings.clear();
-        
-        for( iteration = 0; iteration < numberOfIterations; iteration++ ) {
-            resetMarkingsWithLocking(lineDetectors);
-            selectRandomLineAndTryToTraceAndStoreItAwayWithLocking(lineDetectors);
+
+        // each trace has its own random generator, so the traces don't depend on the distribution to the parts
+        final long[] seedsOfTraces = new long[numberOfIterations];
+        for( int iteration = 0; iteration < numberOfIterations; iteration++ ) {
+            seedsOfTraces[iteration] = rng.nextLong();
         }
-    }
-    
-    private static void resetMarkingsWithLocking(Iterable<RetinaPrimitive> lineDetectors) {
-        // TODO< lock >
-        resetMarkingsSynchronous(lineDetectors);
-        // TODO< unlock >
-    }
-    
-    private static void resetMarkingsSynchronous(Iterable<RetinaPrimitive> lineDetectors) {
-        for( RetinaPrimitive iterationDetector : lineDetectors ) {
-            iterationDetector.line.marked = false;
+
+        // each trace writes only its own parsing, the visited lines are tracked by each trace
+        final IntArrayList[] parsingsOfTraces = new IntArrayList[numberOfIterations];
+
+        final int numberOfParts = Math.max(Math.min(numberOfThreads, numberOfIterations), 1);
+        allocateBuffers(numberOfParts);
+
+        if( numberOfParts == 1 ) {
+            traceRange(intersectionGraph, seedsOfTraces, parsingsOfTraces, 0, numberOfIterations, buffersOfParts[0]);
+        }
+        else {
+            List<Callable<Void>> tasks = new ArrayList<>(numberOfParts);
+            for( int partI = 0; partI < numberOfParts; partI++ ) {
+                final int begin = ParallelHelper.calcPartBegin(numberOfIterations, numberOfParts, partI);
+                final int end = ParallelHelper.calcPartBegin(numberOfIterations, numberOfParts, partI + 1);
+                final TraceBuffers buffers = buffersOfParts[partI];
+
+                tasks.add(() -> {
+                    traceRange(intersectionGraph, seedsOfTraces, parsingsOfTraces, begin, end, buffers);
+                    return null;
+                });
+            }
+
+            ParallelHelper.invokeAllAndWait(ParallelHelper.getExecutorOrDefault(executor), tasks);
+        }
+
+        // store the parsings in the order of the traces, identical parsings only once
+        Set<IntArrayList> storedParsings = new HashSet<>();
+        for( final IntArrayList iterationParsing : parsingsOfTraces ) {
+            if( !storedParsings.add(iterationParsing) ) {
+                continue;
+            }
+
+            List<SingleLineDetector> lineParsing = new ArrayList<>(iterationParsing.size());
+            for( int i = 0; i < iterationParsing.size(); i++ ) {
+                lineParsing.add(intersectionGraph.getPrimitive(iterationParsing.get(i)).line);
+            }
+            lineParsings.add(new LineParsing(lineParsing));
         }
     }
 
-    private void selectRandomLineAndTryToTraceAndStoreItAwayWithLocking(List<RetinaPrimitive> lineDetectors) {
+    private void allocateBuffers(final int numberOfParts) {
+        if( buffersOfParts.length < numberOfParts ) {
+            buffersOfParts = Arrays.copyOf(buffersOfParts, numberOfParts);
+        }
 
-        // TODO< lock >
-        
-        Assert.Assert(!lineDetectors.isEmpty(), "");
+        for( int partI = 0; partI < numberOfParts; partI++ ) {
+            if( buffersOfParts[partI] == null ) {
+                buffersOfParts[partI] = new TraceBuffers();
+            }
+        }
+    }
+
+    /**
+     * traces the traces [begin, end), only reads the graph and writes the parsings of the range
+     */
+    private static void traceRange(final IntersectionGraph intersectionGraph, final long[] seedsOfTraces, IntArrayList[] parsingsOfTraces, final int begin, final int end, TraceBuffers buffers) {
+        for( int traceI = begin; traceI < end; traceI++ ) {
+            final Random traceRng = new Random(seedsOfTraces[traceI]);
 
-        int startLineIndex = rng.nextInt(lineDetectors.size());
-        SingleLineDetector startLineDetector = lineDetectors.get(startLineIndex).line;
+            buffers.visitedLines.clear();
 
-        ArrayList<SingleLineDetector> lineParsing = findLineParsingForStartLine(startLineDetector);
-        lineParsings.add(new LineParsing(lineParsing));
-        
-        // TODO< unlock >
+            final int startLineIndex = traceRng.nextInt(intersectionGraph.getNumberOfLines());
+            parsingsOfTraces[traceI] = findLineParsingForStartLine(intersectionGraph, startLineIndex, traceRng, buffers);
+        }
     }
     
     /**
      * 
-     * \result returns the (possible rng) line parsing
-     * 
-     * --- the lines are locked
+     * \result returns the (possible rng) line parsing as the indices of the lines
      */
-    private ArrayList<SingleLineDetector> findLineParsingForStartLine(SingleLineDetector startLineDetector) {
+    private static IntArrayList findLineParsingForStartLine(final IntersectionGraph intersectionGraph, final int startLineIndex, final Random traceRng, TraceBuffers buffers) {
 
-        ArrayList<SingleLineDetector> resultLineParsing = new ArrayList<>();
-        SingleLineDetector currentLineDetector = startLineDetector;
+        IntArrayList resultLineParsing = new IntArrayList();
+        int currentLineIndex = startLineIndex;
         
         for(;;) {
 
-            List<Intersection> remainingIntersections = deepCopyIntersections(currentLineDetector.intersections);
+            // the entries of the intersections of the current line are copied, the order is the same as in line.intersections
+            final int walkedLineIndex = currentLineIndex;
+            final int entriesBegin = intersectionGraph.getEntriesBegin(currentLineIndex);
+            int numberOfRemainingEntries = intersectionGraph.getEntriesEnd(currentLineIndex) - entriesBegin;
+            if( buffers.remainingEntries.length < numberOfRemainingEntries ) {
+                buffers.remainingEntries = new int[numberOfRemainingEntries];
+            }
+            final int[] remainingEntries = buffers.remainingEntries;
+            for( int i = 0; i < numberOfRemainingEntries; i++ ) {
+                remainingEntries[i] = entriesBegin + i;
+            }
             
-            // choose from the remaining intersections one and check it if it leads to a nonmarked edge
+            // choose from the remaining intersections one and check it if it leads to a nonvisited edge
             for(;;) {
 
-                if( remainingIntersections.isEmpty() ) {
+                if( numberOfRemainingEntries == 0 ) {
                     // if we don't have any edges we can't go to any other edge/line, so the "search" is terminated
                     
                     return resultLineParsing;
                 }
                 
                 // take out
-                int indexOfChosenRemainingIntersections = rng.nextInt(remainingIntersections.size());
-                Intersection currentIntersection = remainingIntersections.get(indexOfChosenRemainingIntersections);
-                remainingIntersections.remove(indexOfChosenRemainingIntersections);
-                
-                Assert.Assert(currentIntersection.p0.primitive.type == RetinaPrimitive.EnumType.LINESEGMENT, "is not line");
-                Assert.Assert(currentIntersection.p1.primitive.type == RetinaPrimitive.EnumType.LINESEGMENT, "is not line");
+                int indexOfChosenRemainingEntries = traceRng.nextInt(numberOfRemainingEntries);
+                final int currentEntry = remainingEntries[indexOfChosenRemainingEntries];
+                System.arraycopy(remainingEntries, indexOfChosenRemainingEntries + 1, remainingEntries, indexOfChosenRemainingEntries, numberOfRemainingEntries - indexOfChosenRemainingEntries - 1);
+                numberOfRemainingEntries--;
+
+                // indices of the lines of the partners p0 and p1 of the intersection
+                final int firstPartnerLineIndex = intersectionGraph.isFirstPartner(currentEntry) ? walkedLineIndex : intersectionGraph.getOtherLine(currentEntry);
+                final int secondPartnerLineIndex = intersectionGraph.isFirstPartner(currentEntry) ? intersectionGraph.getOtherLine(currentEntry) : walkedLineIndex;
                 
-                // check out if the other side was already marked, if so, continue search for a unmarked edge/line
-                if( currentIntersection.p0.primitive.line.equals(currentLineDetector) ) {
-                    if( currentIntersection.p1.primitive.line.marked ) {
-                        continue;
-                    }
-                    // else we are here
-                    
-                    currentIntersection.p1.primitive.line.marked = true;
-                    resultLineParsing.add(currentIntersection.p1.primitive.line);
-                    currentLineDetector = currentIntersection.p1.primitive.line;
-                }
-                else {
-                    if( currentIntersection.p0.primitive.line.marked ) {
-                        continue;
-                    }
-                    // else we are here
-                    
-                    currentIntersection.p0.primitive.line.marked = true;
-                    resultLineParsing.add(currentIntersection.p0.primitive.line);
-                    currentLineDetector = currentIntersection.p0.primitive.line;
+                // check out if the other side was already visited, if so, continue search for a nonvisited edge/line
+                final int nextLineIndex = firstPartnerLineIndex == currentLineIndex ? secondPartnerLineIndex : firstPartnerLineIndex;
+                if( buffers.visitedLines.get(nextLineIndex) ) {
+                    continue;
                 }
+                // else we are here
+                
+                buffers.visitedLines.set(nextLineIndex);
+                resultLineParsing.add(nextLineIndex);
+                currentLineIndex = nextLineIndex;
             }
         }
     }
-    
-    private static List<Intersection> deepCopyIntersections(List<Intersection> intersections) {
-        return new ArrayList<>(intersections);
+
+    // buffers of the traces of one part
+    private static final class TraceBuffers {
+        public final BitSet visitedLines = new BitSet();
+        // indices of the entries of the intersection graph which were not chosen yet
+        public int[] remainingEntries = new int[0];
     }
 }
@@ -49,6 +49,17 @@ public class ProcessSampleFilter implements IProcess {
         }
     }
 
+    /**
+     * appends the samples of the input buffer with the type of the filter to the output buffer
+     */
+    public void processData(final SampleBuffer inputSampleBuffer, SampleBuffer outputSampleBuffer) {
+        for( int i = 0; i < inputSampleBuffer.size(); i++ ) {
+            if( inputSampleBuffer.isAlive(i) && inputSampleBuffer.readType(i) == filterType ) {
+                outputSampleBuffer.addFrom(inputSampleBuffer, i);
+            }
+        }
+    }
+
     @Override
     public void postProcessData() {
 
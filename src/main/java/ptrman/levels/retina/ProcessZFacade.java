@@ -9,14 +9,21 @@
  */
 package ptrman.levels.retina;
 
-import ptrman.Algorithms.FloodFill;
-import ptrman.Datastructures.HashableVector2dInteger;
+import ptrman.Algorithms.ConnectedComponentLabeling;
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.Datastructures.IBoolMap2d;
+import ptrman.Datastructures.IIntMap2d;
 import ptrman.Datastructures.IMap2d;
-import ptrman.Datastructures.Map2d;
+import ptrman.Datastructures.IntMap2d;
 import ptrman.Datastructures.Vector2d;
-import ptrman.misc.Assert;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+
+import static ptrman.levels.visual.Map2dConverter.copyAsBoolMap;
+import static ptrman.misc.ParallelHelper.getExecutorOrDefault;
 
 /**
  *
@@ -24,6 +31,7 @@ import java.util.*;
  * Segmentates the "objects" based on the rasterized image.
  * Too small segments get magnified with ProcessZ
  *
+ * the segments are the 8-connected components of the image, the ids are assigned in the raster order of the first pixel of the segments
  */
 public class ProcessZFacade implements IProcess {
     public static class Rect {
@@ -45,28 +53,20 @@ public class ProcessZFacade implements IProcess {
         public Vector2d<Integer> max;
     }
 
-    public void set(IMap2d<Boolean> image) {
-        this.alreadyCopiedImage = image.copy();
-    }
-
-    private static class PixelChangeListener implements FloodFill.IPixelSetListener {
-        public PixelChangeListener() {
-        }
-
-        @Override
-        public void seted(Vector2d<Integer> position) {
-            setPixelPositions.add(position);
-        }
+    // the image is split into this many strips which are labeled in parallel
+    public int numberOfThreads = 1;
+    // executor of the parallel labeling, the common ForkJoinPool is used if it is null
+    public ExecutorService executor = null;
 
-        public final List<Vector2d<Integer>> setPixelPositions = new ArrayList<>();
+    public void set(IMap2d<Boolean> image) {
+        this.alreadyCopiedImage = copyAsBoolMap(image, alreadyCopiedImage instanceof BoolMap2d ? (BoolMap2d)alreadyCopiedImage : null);
     }
 
-    public void preSetupSet(final int accelerationGridsize, int numberOfPixelsManificationThreshold) {
-        this.accelerationGridsize = accelerationGridsize;
+    public void preSetupSet(int numberOfPixelsManificationThreshold) {
         this.numberOfPixelsMagnificationThreshold = numberOfPixelsManificationThreshold;
     }
 
-    public IMap2d<Boolean> getNotMagnifiedOutput() {
+    public IBoolMap2d getNotMagnifiedOutput() {
         return notMagnifiedOutput;
     }
 
@@ -74,7 +74,7 @@ public class ProcessZFacade implements IProcess {
         return magnifiedOutput;
     }
 
-    public IMap2d<Integer> getNotMagnifiedOutputObjectIds() {
+    public IIntMap2d getNotMagnifiedOutputObjectIds() {
         return notMagnifiedOutputObjectIds;
     }
 
@@ -90,41 +90,25 @@ public class ProcessZFacade implements IProcess {
 
     @Override
     public void preProcessData() {
-        unprocessedPixelsMap = new Map2d<>(imageSize.x, imageSize.y);
-        for( int y = 0; y < unprocessedPixelsMap.getLength(); y++ ) {
-            for( int x = 0; x < unprocessedPixelsMap.getWidth(); x++ ) {
-                unprocessedPixelsMap.setAt(x, y, false);
-            }
-        }
+        if( labeling == null || labeling.getLabels().getWidth() != imageSize.x || labeling.getLabels().getLength() != imageSize.y ) {
+            labeling = new ConnectedComponentLabeling(imageSize.x, imageSize.y);
 
-        Assert.Assert(accelerationGridsize != 0, "gridsize must be nonzero");
-
-        unprocessedPixelsCellCount = new Map2d<>(imageSize.x / accelerationGridsize, imageSize.y / accelerationGridsize);
-        for( int y = 0; y < unprocessedPixelsCellCount.getLength(); y++ ) {
-            for( int x = 0; x < unprocessedPixelsCellCount.getWidth(); x++ ) {
-                unprocessedPixelsCellCount.setAt(x, y, 0);
-            }
+            notMagnifiedOutputObjectIds = new IntMap2d(imageSize.x, imageSize.y);
+            notMagnifiedOutput = new BoolMap2d(imageSize.x, imageSize.y);
+            toMagnify = new BoolMap2d(imageSize.x, imageSize.y);
         }
 
-        notMagnifiedOutputObjectIds = new Map2d<>(imageSize.x, imageSize.y);
-
         processZ.setImageSize(imageSize);
 
-
-
-        idCounter = 0;
         resetIdMaps();
     }
 
     @Override
     public void processData() {
-        storePixelsIntoAccelerationDatastructuresFromMap(alreadyCopiedImage);
+        notMagnifiedOutput.clear();
+        toMagnify.clear();
 
-        notMagnifiedOutput = new Map2d<>(imageSize.x, imageSize.y);
-        toMagnify = createBlankBooleanMap(imageSize);
-        magnifiedOutput = new Map2d<>(imageSize.x*2, imageSize.y*2);
-
-        takeRandomPixelFromHashmapUntilNoCandidatesAndFillAndDecide(alreadyCopiedImage);
+        labelAndDecide(alreadyCopiedImage);
 
         magnify();
     }
@@ -135,139 +119,50 @@ public class ProcessZFacade implements IProcess {
     }
 
     private void resetIdMaps() {
-        setMapToValue(notMagnifiedOutputObjectIds, -1);
+        Arrays.fill(notMagnifiedOutputObjectIds.data, -1);
     }
 
-
-    private static IMap2d<Boolean> createBlankBooleanMap(Vector2d<Integer> imageSize) {
-        IMap2d<Boolean> result = new Map2d<>(imageSize.x, imageSize.y);
-
-        for( int y = 0; y < result.getLength(); y++ ) {
-            for( int x = 0; x < result.getWidth(); x++ ) {
-                result.setAt(x, y, false);
-            }
+    /**
+     * labels all segments in one pass and decides for each segment if it gets magnified
+     */
+    private void labelAndDecide(final IBoolMap2d input) {
+        if( numberOfThreads > 1 ) {
+            labeling.label(input, true, getExecutorOrDefault(executor), numberOfThreads);
         }
-
-        return result;
-    }
-
-    private void takeRandomPixelFromHashmapUntilNoCandidatesAndFillAndDecide(IMap2d<Boolean> input) {
-
-        PixelChangeListener pixelChangeListener = new PixelChangeListener();
-
-        rects.clear();
-
-		while (!notCompletlyProcessedCells.isEmpty()) {
-
-			HashableVector2dInteger[] arrayOfNotCompletlyProcessedCells = notCompletlyProcessedCells.keySet().toArray(new HashableVector2dInteger[0]);
-			Vector2d<Integer> notCompletlyProcessedCellPosition = arrayOfNotCompletlyProcessedCells[random.nextInt(arrayOfNotCompletlyProcessedCells.length)];
-			Vector2d<Integer> randomPixelFromNotCompletlyProcessCell = getRandomPixelPositionOfCell(notCompletlyProcessedCellPosition);
-
-			FloodFill.fill(input, randomPixelFromNotCompletlyProcessCell, Boolean.TRUE, Boolean.FALSE, true, pixelChangeListener);
-
-			// TODO< decide with a propability if the filled patch should be magnified or not >
-			if (pixelChangeListener.setPixelPositions.size() < numberOfPixelsMagnificationThreshold) {
-				drawValuesIntoMap(pixelChangeListener.setPixelPositions, toMagnify, true);
-				//drawValuesIntoMap(pixelChangeListener.setPixelPositions, toMagnifiedOutputObjectIds, idCounter);
-			} else {
-				drawValuesIntoMap(pixelChangeListener.setPixelPositions, notMagnifiedOutput, true);
-				drawValuesIntoMap(pixelChangeListener.setPixelPositions, notMagnifiedOutputObjectIds, idCounter);
-			}
-
-			idCounter++;
-
-			removePixelsFromAccelerationDatastructures(pixelChangeListener.setPixelPositions);
-			rects.add(getRectForPixelPositions(pixelChangeListener.setPixelPositions));
-
-			pixelChangeListener.setPixelPositions.clear();
-
-		}
-    }
-
-    private static Rect getRectForPixelPositions(final List<Vector2d<Integer>> setPixelPositions) {
-        Rect rect = Rect.createFromSinglePoint(setPixelPositions.get(0));
-
-        for( Vector2d<Integer> iterationPosition : setPixelPositions )
-            rect.addPosition(iterationPosition);
-
-
-        return rect;
-    }
-
-    private Vector2d<Integer> getRandomPixelPositionOfCell(final Vector2d<Integer> cellPosition) {
-        List<Vector2d<Integer>> candidateList = new ArrayList<>();
-
-        for( int y = cellPosition.y * accelerationGridsize; y < (cellPosition.y+1) * accelerationGridsize; y++ ) {
-            for( int x = cellPosition.x * accelerationGridsize; x < (cellPosition.x+1) * accelerationGridsize; x++ ) {
-                if( unprocessedPixelsMap.readAt(x, y) ) {
-                    candidateList.add(new Vector2d<>(x, y));
-                }
-            }
+        else {
+            labeling.label(input, true);
         }
 
-        final int candidateIndex = random.nextInt(candidateList.size());
-        return candidateList.get(candidateIndex);
-    }
+        final int numberOfComponents = labeling.getNumberOfComponents();
 
-    private static<Type> void drawValuesIntoMap(final Iterable<Vector2d<Integer>> positions, IMap2d<Type> map, final Type value) {
-        for( Vector2d<Integer> iterationPosition : positions ) {
-            map.setAt(iterationPosition.x, iterationPosition.y, value);
+        // TODO< decide with a propability if the filled patch should be magnified or not >
+        boolean[] magnifyComponent = new boolean[numberOfComponents];
+        for( int componentI = 0; componentI < numberOfComponents; componentI++ ) {
+            magnifyComponent[componentI] = labeling.getPixelCount(componentI) < numberOfPixelsMagnificationThreshold;
         }
-    }
 
-    private static<Type> void setMapToValue(IMap2d<Type> map, final Type value) {
-        for( int y = 0; y < map.getLength(); y++ ) {
-            for( int x = 0; x < map.getWidth(); x++ ) {
-                map.setAt(x, y, value);
+        final int[] labels = labeling.getLabels().data;
+        for( int i = 0; i < labels.length; i++ ) {
+            final int component = labels[i];
+            if( component == -1 ) {
+                continue;
             }
-        }
-    }
-
-    private void storePixelsIntoAccelerationDatastructuresFromMap(final IMap2d<Boolean> input) {
-        for( int iy = 0; iy < input.getLength(); iy++ ) {
-            for( int ix = 0; ix < input.getWidth(); ix++ ) {
-                if( input.readAt(ix, iy) ) {
-                    unprocessedPixelsMap.setAt(ix, iy, true);
 
-                    final Vector2d<Integer> cellPositionOfPixel = pixelPositionToCellPosition(new Vector2d<>(ix, iy));
-                    unprocessedPixelsCellCount.setAt(cellPositionOfPixel.x, cellPositionOfPixel.y, unprocessedPixelsCellCount.readAt(cellPositionOfPixel.x, cellPositionOfPixel.y) + 1);
-                }
+            if( magnifyComponent[component] ) {
+                toMagnify.data[i] = true;
             }
-        }
-
-        // setup the hashmap
-        for( int y = 0; y < unprocessedPixelsCellCount.getLength(); y++ ) {
-            for( int x = 0; x < unprocessedPixelsCellCount.getWidth(); x++ ) {
-                final int cellCountForCell = unprocessedPixelsCellCount.readAt(x, y);
-
-                if( cellCountForCell > 0 ) {
-                    notCompletlyProcessedCells.put(HashableVector2dInteger.fromVector2dInteger(new Vector2d<>(x, y)), null);
-                }
+            else {
+                notMagnifiedOutput.data[i] = true;
+                notMagnifiedOutputObjectIds.data[i] = component;
             }
         }
-    }
-
-    private void removePixelsFromAccelerationDatastructures(final Iterable<Vector2d<Integer>> pixels) {
-        drawValuesIntoMap(pixels, unprocessedPixelsMap, false);
-
-        for( final Vector2d<Integer> iterationPixel : pixels ) {
-            final Vector2d<Integer> cellPositionOfPixel = pixelPositionToCellPosition(iterationPixel);
 
-            int numberOfSetPixelsInUnprocessedPixelsMapCell = unprocessedPixelsCellCount.readAt(cellPositionOfPixel.x, cellPositionOfPixel.y);
-            Assert.Assert(numberOfSetPixelsInUnprocessedPixelsMapCell > 0, "");
-            numberOfSetPixelsInUnprocessedPixelsMapCell--;
-            unprocessedPixelsCellCount.setAt(cellPositionOfPixel.x, cellPositionOfPixel.y, numberOfSetPixelsInUnprocessedPixelsMapCell);
-
-            if( numberOfSetPixelsInUnprocessedPixelsMapCell == 0 ) {
-                notCompletlyProcessedCells.remove(HashableVector2dInteger.fromVector2dInteger(cellPositionOfPixel));
-            }
+        rects.clear();
+        for( int componentI = 0; componentI < numberOfComponents; componentI++ ) {
+            rects.add(new Rect(new Vector2d<>(labeling.getMinX(componentI), labeling.getMinY(componentI)), new Vector2d<>(labeling.getMaxX(componentI), labeling.getMaxY(componentI))));
         }
     }
 
-    private Vector2d<Integer> pixelPositionToCellPosition(final Vector2d<Integer> pixelPosition) {
-        return new Vector2d<>(pixelPosition.x / accelerationGridsize, pixelPosition.y / accelerationGridsize);
-    }
-
     private void magnify() {
         processZ.inputMap = toMagnify;
         processZ.processData();
@@ -277,30 +172,21 @@ public class ProcessZFacade implements IProcess {
     private Vector2d<Integer> imageSize;
     private int numberOfPixelsMagnificationThreshold;
 
-    // each cell contains the count of unprocessedPixels in that cell
-    private IMap2d<Integer> unprocessedPixelsCellCount;
-    // map which contains all pixels which are not processed
-    private IMap2d<Boolean> unprocessedPixelsMap;
-    // map which stores the adresses of the cells in unprocessedPixelsCellCount which are non-zero
-    private final Map<HashableVector2dInteger, Boolean> notCompletlyProcessedCells = new HashMap<>();
-
-    private int accelerationGridsize;
+    // are reused as long as the size of the image doesn't change
+    private ConnectedComponentLabeling labeling;
 
 
-    private IMap2d<Boolean> notMagnifiedOutput;
+    private BoolMap2d notMagnifiedOutput;
     private IMap2d<Boolean> magnifiedOutput;
 
-    private IMap2d<Integer> notMagnifiedOutputObjectIds;
-    private int idCounter;
+    private IntMap2d notMagnifiedOutputObjectIds;
 
-    private IMap2d<Boolean> toMagnify;
+    private BoolMap2d toMagnify;
 
     private final ProcessZ processZ = new ProcessZ();
 
-    private final Random random = new Random();
-
-    private IMap2d<Boolean> alreadyCopiedImage;
+    private IBoolMap2d alreadyCopiedImage;
 
-    // stores all rectangles of the filled regions
+    // stores all rectangles of the segments, in the order of the ids
     public final Collection<Rect> rects = new ArrayList<>();
-}
\ No newline at end of file
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.retina;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import ptrman.levels.retina.helper.ProcessConnector;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * stores samples as structure of arrays, a sample is addressed by its index
+ *
+ * is used instead of ProcessA.Sample objects to avoid allocating a object for each sample
+ * the adapter methods convert between the buffer and ProcessA.Sample for processes which still work with ProcessConnector<ProcessA.Sample>
+ *
+ * removed samples leave a hole which is reused by the next added sample, so the index of a sample stays valid until it is removed
+ */
+public class SampleBuffer {
+    public static final byte TYPE_NONE = 0;
+    public static final byte TYPE_ENDOSCELETON = 1;
+    public static final byte TYPE_EXOSCELETON = 2;
+
+    public int[] x;
+    public int[] y;
+    public int[] objectId;
+    public int[] refCount;
+    public float[] altitude;
+    public float[] conf;
+    public byte[] type;
+    public boolean[] alive; // is false for removed samples
+
+    private int size = 0;
+    private final IntArrayList freeIndices = new IntArrayList(); // indices of removed samples
+
+    public SampleBuffer() {
+        this(1024);
+    }
+
+    public SampleBuffer(final int initialCapacity) {
+        final int capacity = Math.max(initialCapacity, 1);
+
+        x = new int[capacity];
+        y = new int[capacity];
+        objectId = new int[capacity];
+        refCount = new int[capacity];
+        altitude = new float[capacity];
+        conf = new float[capacity];
+        type = new byte[capacity];
+        alive = new boolean[capacity];
+    }
+
+    /**
+     * \return index of the added sample
+     */
+    public int add(final int x, final int y, final int objectId, final float conf) {
+        final int index;
+        if( freeIndices.notEmpty() ) {
+            index = freeIndices.removeAtIndex(freeIndices.size() - 1);
+        }
+        else {
+            ensureCapacity(size + 1);
+            index = size;
+            size++;
+        }
+
+        this.x[index] = x;
+        this.y[index] = y;
+        this.objectId[index] = objectId;
+        this.refCount[index] = 0;
+        this.altitude[index] = Float.NaN;
+        this.conf[index] = conf;
+        this.type[index] = TYPE_NONE;
+        this.alive[index] = true;
+
+        return index;
+    }
+
+    /**
+     * removes the sample, the index is reused by a later added sample
+     */
+    public void remove(final int index) {
+        if( !alive[index] ) {
+            return;
+        }
+
+        alive[index] = false;
+        freeIndices.add(index);
+    }
+
+    public boolean isAlive(final int index) {
+        return alive[index];
+    }
+
+    /**
+     * copies the sample at index of source into this buffer
+     *
+     * \return index of the added sample
+     */
+    public int addFrom(final SampleBuffer source, final int index) {
+        final int resultIndex = add(source.x[index], source.y[index], source.objectId[index], source.conf[index]);
+        refCount[resultIndex] = source.refCount[index];
+        altitude[resultIndex] = source.altitude[index];
+        type[resultIndex] = source.type[index];
+        return resultIndex;
+    }
+
+    /**
+     * \return number of used indices, including the indices of removed samples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * removes all samples, keeps the allocated arrays
+     */
+    public void clear() {
+        size = 0;
+        freeIndices.clear();
+    }
+
+    public boolean isAltitudeValid(final int index) {
+        return Float.isFinite(altitude[index]);
+    }
+
+    public boolean isObjectIdValid(final int index) {
+        return objectId[index] != -1;
+    }
+
+    public ProcessA.Sample.EnumType readType(final int index) {
+        return convertTypeToEnum(type[index]);
+    }
+
+    public void writeType(final int index, final ProcessA.Sample.EnumType value) {
+        type[index] = convertEnumToType(value);
+    }
+
+    public void ensureCapacity(final int capacity) {
+        if( capacity <= x.length ) {
+            return;
+        }
+
+        final int newCapacity = Math.max(capacity, x.length * 2);
+
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        objectId = Arrays.copyOf(objectId, newCapacity);
+        refCount = Arrays.copyOf(refCount, newCapacity);
+        altitude = Arrays.copyOf(altitude, newCapacity);
+        conf = Arrays.copyOf(conf, newCapacity);
+        type = Arrays.copyOf(type, newCapacity);
+        alive = Arrays.copyOf(alive, newCapacity);
+    }
+
+    // adapter to ProcessA.Sample
+
+    /**
+     * \return index of the added sample
+     */
+    public int addSample(final ProcessA.Sample sample) {
+        final int index = add(sample.position.getOne(), sample.position.getTwo(), sample.objectId, (float)sample.conf);
+        refCount[index] = sample.refCount;
+        altitude[index] = (float)sample.altitude;
+        type[index] = convertEnumToType(sample.type);
+        return index;
+    }
+
+    public void addSamples(final Iterable<ProcessA.Sample> samples) {
+        for( final ProcessA.Sample iterationSample : samples ) {
+            addSample(iterationSample);
+        }
+    }
+
+    /**
+     * creates a new sample object with the content of the sample at index
+     */
+    public ProcessA.Sample toSample(final int index) {
+        ProcessA.Sample result = new ProcessA.Sample(x[index], y[index]);
+        result.altitude = altitude[index];
+        result.type = readType(index);
+        result.objectId = objectId[index];
+        result.conf = conf[index];
+        result.refCount = refCount[index];
+        return result;
+    }
+
+    /**
+     * adds all samples as new sample objects to the connector
+     */
+    public void writeTo(final ProcessConnector<ProcessA.Sample> connector) {
+        for( int i = 0; i < size; i++ ) {
+            if( alive[i] ) {
+                connector.add(toSample(i));
+            }
+        }
+    }
+
+    /**
+     * writes the refCount of the samples back which were created by writeTo
+     *
+     * \param samples must be in the same order as the buffer
+     */
+    public void readRefCountsFrom(final List<ProcessA.Sample> samples) {
+        int sampleI = 0;
+        for( int i = 0; i < size; i++ ) {
+            if( alive[i] ) {
+                refCount[i] = samples.get(sampleI++).refCount;
+            }
+        }
+    }
+
+    public static SampleBuffer fromSamples(final List<ProcessA.Sample> samples) {
+        SampleBuffer result = new SampleBuffer(samples.size());
+        result.addSamples(samples);
+        return result;
+    }
+
+    private static ProcessA.Sample.EnumType convertTypeToEnum(final byte type) {
+        switch (type) {
+            case TYPE_ENDOSCELETON: return ProcessA.Sample.EnumType.ENDOSCELETON;
+            case TYPE_EXOSCELETON: return ProcessA.Sample.EnumType.EXOSCELETON;
+            default: return null;
+        }
+    }
+
+    private static byte convertEnumToType(final ProcessA.Sample.EnumType type) {
+        if( type == null ) {
+            return TYPE_NONE;
+        }
+
+        return type == ProcessA.Sample.EnumType.ENDOSCELETON ? TYPE_ENDOSCELETON : TYPE_EXOSCELETON;
+    }
+}
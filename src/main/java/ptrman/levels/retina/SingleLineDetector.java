@@ -262,4 +262,17 @@ public class SingleLineDetector {
 
         return distanceBegin < distanceEnd ? Intersection.IntersectionPartner.EnumIntersectionEndpointType.BEGIN : Intersection.IntersectionPartner.EnumIntersectionEndpointType.END;
     }
+
+    /**
+     * same result as getIntersectionEndpoint(ArrayRealVector) without a vector of the point
+     */
+    public Intersection.IntersectionPartner.EnumIntersectionEndpointType getIntersectionEndpoint(final double x, final double y) {
+        final double[] aData = a.getDataRef();
+        final double[] bData = b.getDataRef();
+
+        final double distanceBegin = Math.sqrt((aData[0] - x) * (aData[0] - x) + (aData[1] - y) * (aData[1] - y));
+        final double distanceEnd = Math.sqrt((bData[0] - x) * (bData[0] - x) + (bData[1] - y) * (bData[1] - y));
+
+        return distanceBegin < distanceEnd ? Intersection.IntersectionPartner.EnumIntersectionEndpointType.BEGIN : Intersection.IntersectionPartner.EnumIntersectionEndpointType.END;
+    }
 }
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.retina;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * fits a natural cubic spline through points, after the formulas of the foundalis dissertation (page 422)
+ *
+ * the tridiagonal system of the (A|B)_2_i values is solved with the thomas algorithm
+ * the coefficients of the forward elimination only depend on the row, so they are cached for all fits
+ * the buffers are reused, an instance must not be used concurrently
+ */
+public class SplineCurveFitter {
+    public ProcessG.Curve fit(final List<ArrayRealVector> points) {
+        final int numberOfPoints = points.size();
+        allocateBuffers(numberOfPoints);
+
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            final double[] pointData = points.get(i).getDataRef();
+            xs[i] = pointData[0];
+            ys[i] = pointData[1];
+        }
+
+        solveFor2(xs, numberOfPoints, a2);
+        solveFor2(ys, numberOfPoints, b2);
+
+        List<ProcessG.CurveElement> curveElements = new ArrayList<>(Math.max(numberOfPoints - 1, 0));
+        for( int i = 0; i < numberOfPoints - 1; i++ ) {
+            curveElements.add(new ProcessG.CurveElement(
+                (float)xs[i],
+                (float)calculate1(xs, a2, i),
+                (float)a2[i],
+                (float)calculate3(a2, i),
+
+                (float)ys[i],
+                (float)calculate1(ys, b2, i),
+                (float)b2[i],
+                (float)calculate3(b2, i)
+            ));
+        }
+
+        return new ProcessG.Curve(curveElements);
+    }
+
+    /**
+     * solves the system of the (A|B)_2_i values
+     *
+     * the first and the last row are the identity with a constant of zero (natural spline)
+     * the rows between are (1, 4, 1) with the constant 3*v[i-1] - 6*v[i] + 3*v[i+1]
+     */
+    private void solveFor2(final double[] values, final int numberOfPoints, double[] result) {
+        if( numberOfPoints == 0 ) {
+            return;
+        }
+
+        // forward elimination, the eliminated constant of the first row is zero
+        eliminatedConstants[0] = 0.0;
+        for( int i = 1; i < numberOfPoints - 1; i++ ) {
+            final double constant = 3.0 * values[i-1] - 6.0 * values[i] + 3.0 * values[i+1];
+            eliminatedConstants[i] = (constant - eliminatedConstants[i-1]) * inverseDiagonals[i];
+        }
+
+        // back substitution, the value of the last row is zero
+        result[numberOfPoints-1] = 0.0;
+        for( int i = numberOfPoints - 2; i >= 1; i-- ) {
+            result[i] = eliminatedConstants[i] - inverseDiagonals[i] * result[i+1];
+        }
+        result[0] = 0.0;
+    }
+
+    // (A|B)_1_i after formula (9a)
+    private static double calculate1(final double[] values, final double[] solved2, final int i) {
+        return values[i+1] - values[i] - (1.0 / 3.0) * (2.0 * solved2[i] + solved2[i+1]);
+    }
+
+    // (A|B)_3_i after formula (7)
+    private static double calculate3(final double[] solved2, final int i) {
+        return (solved2[i+1] - solved2[i]) * 0.3333333333333333333333333;
+    }
+
+    private void allocateBuffers(final int numberOfPoints) {
+        if( xs.length >= numberOfPoints ) {
+            return;
+        }
+
+        final int oldSize = xs.length;
+
+        xs = new double[numberOfPoints];
+        ys = new double[numberOfPoints];
+        a2 = new double[numberOfPoints];
+        b2 = new double[numberOfPoints];
+        eliminatedConstants = new double[numberOfPoints];
+
+        // the eliminated upper diagonal of row i is 1/diagonal, so only the inverse of the eliminated diagonal is cached
+        double[] newInverseDiagonals = new double[numberOfPoints];
+        System.arraycopy(inverseDiagonals, 0, newInverseDiagonals, 0, oldSize);
+        for( int i = Math.max(oldSize, 1); i < numberOfPoints; i++ ) {
+            // the eliminated upper diagonal of the first row is zero
+            final double previousUpper = i == 1 ? 0.0 : newInverseDiagonals[i-1];
+            newInverseDiagonals[i] = 1.0 / (4.0 - previousUpper);
+        }
+        inverseDiagonals = newInverseDiagonals;
+    }
+
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private double[] a2 = new double[0];
+    private double[] b2 = new double[0];
+
+    private double[] eliminatedConstants = new double[0];
+    private double[] inverseDiagonals = new double[0]; // is only valid for the rows 1 .. n-2 of a system of size n
+}
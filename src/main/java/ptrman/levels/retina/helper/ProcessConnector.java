@@ -10,9 +10,12 @@
 package ptrman.levels.retina.helper;
 
 import org.eclipse.collections.impl.list.mutable.FastList;
+import ptrman.meter.event.QueueMeter;
 import ptrman.misc.Assert;
 
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.function.Consumer;
 
 import static ptrman.levels.retina.helper.ProcessConnector.EnumMode.*;
@@ -21,19 +24,45 @@ import static ptrman.levels.retina.helper.ProcessConnector.EnumMode.*;
  * Connector between two Processes.
  *
  * Can be either in WORKSPACE or QUEUE mode.
+ *
+ * In BOUNDED_QUEUE, SPSC_QUEUE and MPSC_QUEUE mode the connector can connect processes which run on different threads.
  */
 public class ProcessConnector<Type> {
 
     public enum EnumMode {
         WORKSPACE,
         QUEUE,
-        PRIMARY_QUEUE // workspace is used as a "logger", behaves like a queue
+        PRIMARY_QUEUE, // workspace is used as a "logger", behaves like a queue
+        BOUNDED_QUEUE, // thread safe queue with a capacity, add() blocks while the queue is full and take() blocks while it is empty
+        SPSC_QUEUE, // lock-free ring buffer for one producer thread and one consumer thread, add() and take() wait with the wait strategy
+        MPSC_QUEUE // lock-free ring buffer for multiple producer threads and one consumer thread, add() and take() wait with the wait strategy
     }
 
     public static <T> ProcessConnector<T> createWithDefaultQueues(final EnumMode mode) {
         return new ProcessConnector<>(new ArrayDeque<>(), new FastList<>(), mode);
     }
 
+    /**
+     * \param capacity maximal number of elements in the queue, the producer is blocked if the consumer falls behind
+     */
+    public static <T> ProcessConnector<T> createBounded(final int capacity) {
+        return new ProcessConnector<>(new ArrayBlockingQueue<>(capacity), new FastList<>(), BOUNDED_QUEUE);
+    }
+
+    /**
+     * \param capacity maximal number of elements in the ring buffer, is rounded up to a power of two
+     */
+    public static <T> ProcessConnector<T> createSpsc(final int capacity, final RingBufferQueue.EnumWaitStrategy waitStrategy) {
+        return new ProcessConnector<>(new RingBufferQueue<>(capacity, RingBufferQueue.EnumProducers.SINGLE, waitStrategy), new FastList<>(), SPSC_QUEUE);
+    }
+
+    /**
+     * \param capacity maximal number of elements in the ring buffer, is rounded up to a power of two
+     */
+    public static <T> ProcessConnector<T> createMpsc(final int capacity, final RingBufferQueue.EnumWaitStrategy waitStrategy) {
+        return new ProcessConnector<>(new RingBufferQueue<>(capacity, RingBufferQueue.EnumProducers.MULTIPLE, waitStrategy), new FastList<>(), MPSC_QUEUE);
+    }
+
     private ProcessConnector(Queue<Type> queueImplementation, List<Type> workspaceImplementation, EnumMode mode) {
         this.in = queueImplementation;
         this.out = workspaceImplementation;
@@ -47,6 +76,18 @@ public class ProcessConnector<Type> {
     }
 
     public void addAll(Collection<Type> elements) {
+        if( isRingBuffer() ) {
+            ((RingBufferQueue<Type>)in).putAll(elements instanceof List ? (List<Type>)elements : new ArrayList<>(elements));
+            return;
+        }
+
+        if( mode == BOUNDED_QUEUE ) {
+            for( final Type iterationElement : elements ) {
+                add(iterationElement);
+            }
+            return;
+        }
+
         if( mode == WORKSPACE || mode == PRIMARY_QUEUE ) {
             out.addAll(elements);
         }
@@ -58,6 +99,21 @@ public class ProcessConnector<Type> {
     }
 
     public void add(Type element) {
+        if( isRingBuffer() ) {
+            ((RingBufferQueue<Type>)in).put(element);
+            return;
+        }
+
+        if( mode == BOUNDED_QUEUE ) {
+            try {
+                ((BlockingQueue<Type>)in).put(element);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            return;
+        }
 
         if( mode == WORKSPACE || mode == PRIMARY_QUEUE ) {
             out.add(element);
@@ -69,10 +125,63 @@ public class ProcessConnector<Type> {
     }
 
     public Type poll() {
-        Assert.Assert( mode == QUEUE || mode == PRIMARY_QUEUE, "");
+        Assert.Assert( mode != WORKSPACE, "");
         return in.poll();
     }
 
+    /**
+     * waits until an element is available
+     */
+    public Type take() {
+        Assert.Assert(mode == BOUNDED_QUEUE || isRingBuffer(), "only supported in BOUNDED_QUEUE, SPSC_QUEUE and MPSC_QUEUE mode");
+
+        if( isRingBuffer() ) {
+            return ((RingBufferQueue<Type>)in).take();
+        }
+
+        try {
+            return ((BlockingQueue<Type>)in).take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * moves up to maxElements elements which are available without waiting to the target
+     *
+     * \return number of moved elements
+     */
+    public int drainTo(Collection<? super Type> target, int maxElements) {
+        Assert.Assert(mode != WORKSPACE, "");
+
+        if( isRingBuffer() ) {
+            return ((RingBufferQueue<Type>)in).drainTo(target, maxElements);
+        }
+
+        if( mode == BOUNDED_QUEUE ) {
+            return ((BlockingQueue<Type>)in).drainTo(target, maxElements);
+        }
+
+        int numberOfElements = 0;
+        while( numberOfElements < maxElements && !in.isEmpty() ) {
+            target.add(in.poll());
+            numberOfElements++;
+        }
+        return numberOfElements;
+    }
+
+    /**
+     * \return meter of the occupancy and the throughput of the ring buffer, can be added to a Metrics
+     */
+    public QueueMeter createMeter(String id) {
+        Assert.Assert(isRingBuffer(), "only supported in SPSC_QUEUE and MPSC_QUEUE mode");
+
+        RingBufferQueue<Type> ringBuffer = (RingBufferQueue<Type>)in;
+        return new QueueMeter(id, ringBuffer::size, ringBuffer::getEnqueuedCount, ringBuffer::getDequeuedCount);
+    }
+
     public int inSize() {
         return in.size();
     }
@@ -86,6 +195,10 @@ public class ProcessConnector<Type> {
         out.clear();
     }
 
+    private boolean isRingBuffer() {
+        return mode == SPSC_QUEUE || mode == MPSC_QUEUE;
+    }
+
     public final EnumMode mode;
 
     public final Queue<Type> in;
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.retina.helper;
+
+import ptrman.misc.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * chain of stages where each stage runs on its own thread
+ *
+ * the stages are connected with bounded connectors, a stage which is faster than the following stage is blocked when the connector is full
+ * so multiple elements are processed at the same time by different stages and the throughput approaches the rate of the slowest stage
+ *
+ * the elements leave the pipeline in the order in which they were submitted
+ * an element whose stage failed is passed through the remaining stages without processing, take() rethrows the failure
+ */
+public class ProcessPipeline<Type> {
+    public interface IStage<Type> {
+        void process(Type element);
+    }
+
+    /**
+     * \param capacity capacity of each connector between the stages
+     */
+    public ProcessPipeline(final int capacity) {
+        Assert.Assert(capacity >= 1, "capacity must be at least 1");
+        this.capacity = capacity;
+    }
+
+    /**
+     * must be called before start()
+     */
+    public void addStage(final String name, final IStage<Type> stage) {
+        Assert.Assert(threads.isEmpty(), "pipeline is already started");
+
+        stageNames.add(name);
+        stages.add(stage);
+    }
+
+    public void start() {
+        Assert.Assert(threads.isEmpty(), "pipeline is already started");
+        Assert.Assert(!stages.isEmpty(), "pipeline has no stages");
+
+        // the input and the output are used by the threads of the caller, the connectors between the stages by exactly two threads
+        connectors.add(ProcessConnector.createBounded(capacity));
+        for( int i = 1; i < stages.size(); i++ ) {
+            connectors.add(ProcessConnector.createSpsc(capacity, RingBufferQueue.EnumWaitStrategy.BLOCKING));
+        }
+        connectors.add(ProcessConnector.createBounded(capacity));
+
+        for( int i = 0; i < stages.size(); i++ ) {
+            final int stageIndex = i;
+
+            Thread thread = new Thread(() -> runStage(stageIndex), "pipeline-" + stageNames.get(stageIndex));
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+
+        for( final Thread iterationThread : threads ) {
+            iterationThread.start();
+        }
+    }
+
+    /**
+     * blocks while the first stage is behind by capacity elements
+     */
+    public void submit(final Type element) {
+        Assert.Assert(!threads.isEmpty(), "pipeline is not started");
+        Assert.Assert(element != null, "element must not be null");
+
+        connectors.get(0).add(new Slot<>(element));
+    }
+
+    /**
+     * waits until the next element went through all stages
+     *
+     * \return the element, in the order of submission
+     */
+    public Type take() {
+        final Slot<Type> slot = connectors.get(stages.size()).take();
+        Assert.Assert(slot.element != null, "pipeline is closed");
+
+        if( slot.failure != null ) {
+            throw new RuntimeException("stage " + slot.failedStageName + " failed", slot.failure);
+        }
+
+        return slot.element;
+    }
+
+    /**
+     * waits until all submitted elements are processed by all stages and stops the threads
+     *
+     * the elements which were not taken are discarded
+     */
+    public void close() {
+        connectors.get(0).add(new Slot<>(null));
+
+        // drain the output so the last stage isn't blocked
+        while( connectors.get(stages.size()).take().element != null ) {
+        }
+
+        for( final Thread iterationThread : threads ) {
+            try {
+                iterationThread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void runStage(final int stageIndex) {
+        final IStage<Type> stage = stages.get(stageIndex);
+        final ProcessConnector<Slot<Type>> input = connectors.get(stageIndex);
+        final ProcessConnector<Slot<Type>> output = connectors.get(stageIndex + 1);
+
+        for(;;) {
+            final Slot<Type> slot = input.take();
+
+            if( slot.element != null && slot.failure == null ) {
+                try {
+                    stage.process(slot.element);
+                }
+                catch (RuntimeException | Error e) {
+                    slot.failure = e;
+                    slot.failedStageName = stageNames.get(stageIndex);
+                }
+            }
+
+            output.add(slot);
+
+            if( slot.element == null ) {
+                return; // end of the stream
+            }
+        }
+    }
+
+    /**
+     * element together with the state of its processing, the element is null for the end of the stream
+     */
+    private static class Slot<Type> {
+        public Slot(final Type element) {
+            this.element = element;
+        }
+
+        public final Type element;
+        public Throwable failure = null;
+        public String failedStageName = null;
+    }
+
+    private final int capacity;
+
+    private final List<String> stageNames = new ArrayList<>();
+    private final List<IStage<Type>> stages = new ArrayList<>();
+
+    // connector i is the input of stage i, the last connector is the output of the pipeline
+    private final List<ProcessConnector<Slot<Type>>> connectors = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+}
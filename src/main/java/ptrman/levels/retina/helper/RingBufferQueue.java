@@ -0,0 +1,317 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.retina.helper;
+
+import ptrman.misc.Assert;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * lock-free bounded queue for one consumer thread and one or multiple producer threads
+ *
+ * the elements are stored in a ring buffer, the producers and the consumer only synchronize with the slots and the indices
+ * a slot is empty if it is null, so null elements are not allowed
+ * the single producer variant doesn't need any atomic read-modify-write operation
+ *
+ * the queue can't be iterated
+ */
+public class RingBufferQueue<Type> extends AbstractQueue<Type> {
+    public enum EnumProducers {
+        SINGLE,
+        MULTIPLE
+    }
+
+    /**
+     * how put() and take() wait for space or elements
+     */
+    public enum EnumWaitStrategy {
+        SPINNING, // busy waiting, lowest latency but occupies the core
+        YIELDING, // yields the thread between the tries
+        BLOCKING // parks the thread with increasing durations, for waits which can be long
+    }
+
+    /**
+     * \param capacity is rounded up to the next power of two
+     */
+    public RingBufferQueue(final int capacity, final EnumProducers producers, final EnumWaitStrategy waitStrategy) {
+        Assert.Assert(capacity >= 1, "capacity must be at least 1");
+
+        int roundedCapacity = 1;
+        while( roundedCapacity < capacity ) {
+            roundedCapacity *= 2;
+        }
+
+        this.capacity = roundedCapacity;
+        this.mask = roundedCapacity - 1;
+        this.producers = producers;
+        this.waitStrategy = waitStrategy;
+
+        slots = new AtomicReferenceArray<>(roundedCapacity);
+    }
+
+    /**
+     * \return false if the queue is full
+     */
+    @Override
+    public boolean offer(final Type element) {
+        Assert.Assert(element != null, "element must not be null");
+
+        if( producers == EnumProducers.SINGLE ) {
+            final long t = tail.get();
+            final int index = (int)t & mask;
+
+            // the slot is still occupied from the last round if the consumer is behind by the capacity
+            if( slots.get(index) != null ) {
+                return false;
+            }
+
+            slots.lazySet(index, element);
+            tail.lazySet(t + 1);
+            return true;
+        }
+        else {
+            long t;
+            for(;;) {
+                t = tail.get();
+                if( t - head.get() >= capacity ) {
+                    return false;
+                }
+                if( tail.compareAndSet(t, t + 1) ) {
+                    break;
+                }
+            }
+
+            slots.lazySet((int)t & mask, element);
+            return true;
+        }
+    }
+
+    /**
+     * inserts as many elements of the range as there is space, with one claim of the slots for multiple producers
+     *
+     * \return number of inserted elements, the elements are taken from the beginning of the range
+     */
+    public int offerBatch(final List<Type> elements, final int begin, final int end) {
+        if( producers == EnumProducers.SINGLE ) {
+            int numberOfInsertedElements = 0;
+            for( int i = begin; i < end; i++ ) {
+                if( !offer(elements.get(i)) ) {
+                    break;
+                }
+                numberOfInsertedElements++;
+            }
+            return numberOfInsertedElements;
+        }
+
+        long t;
+        int numberOfClaimedSlots;
+        for(;;) {
+            t = tail.get();
+            final long numberOfFreeSlots = capacity - (t - head.get());
+            if( numberOfFreeSlots <= 0 ) {
+                return 0;
+            }
+
+            numberOfClaimedSlots = (int)Math.min(numberOfFreeSlots, end - begin);
+            if( tail.compareAndSet(t, t + numberOfClaimedSlots) ) {
+                break;
+            }
+        }
+
+        for( int i = 0; i < numberOfClaimedSlots; i++ ) {
+            final Type element = elements.get(begin + i);
+            Assert.Assert(element != null, "element must not be null");
+            slots.lazySet((int)(t + i) & mask, element);
+        }
+        return numberOfClaimedSlots;
+    }
+
+    /**
+     * must only be called by the consumer
+     *
+     * \return null if the queue is empty
+     */
+    @Override
+    public Type poll() {
+        final long h = head.get();
+        final int index = (int)h & mask;
+
+        Type element = slots.get(index);
+        if( element == null ) {
+            if( producers == EnumProducers.SINGLE || h == tail.get() ) {
+                return null;
+            }
+
+            // a producer claimed the slot but didn't write it yet
+            do {
+                element = slots.get(index);
+            } while( element == null );
+        }
+
+        slots.lazySet(index, null);
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    /**
+     * must only be called by the consumer
+     *
+     * \return null if the queue is empty or the next element isn't written yet by its producer
+     */
+    @Override
+    public Type peek() {
+        return slots.get((int)head.get() & mask);
+    }
+
+    /**
+     * moves the available elements to the target, the head is advanced once for all elements
+     *
+     * must only be called by the consumer
+     *
+     * \return number of moved elements
+     */
+    public int drainTo(final Collection<? super Type> target, final int maxElements) {
+        final long h = head.get();
+
+        int numberOfElements = 0;
+        while( numberOfElements < maxElements ) {
+            final int index = (int)(h + numberOfElements) & mask;
+
+            final Type element = slots.get(index);
+            if( element == null ) {
+                break;
+            }
+
+            target.add(element);
+            slots.lazySet(index, null);
+            numberOfElements++;
+        }
+
+        if( numberOfElements > 0 ) {
+            head.lazySet(h + numberOfElements);
+        }
+        return numberOfElements;
+    }
+
+    /**
+     * waits with the wait strategy until there is space for the element
+     */
+    public void put(final Type element) {
+        for( int tryCounter = 0; !offer(element); tryCounter++ ) {
+            idle(tryCounter);
+        }
+    }
+
+    /**
+     * waits with the wait strategy until all elements are inserted
+     */
+    public void putAll(final List<Type> elements) {
+        int begin = 0;
+        for( int tryCounter = 0; begin < elements.size(); ) {
+            final int numberOfInsertedElements = offerBatch(elements, begin, elements.size());
+            begin += numberOfInsertedElements;
+
+            if( numberOfInsertedElements == 0 ) {
+                idle(tryCounter++);
+            }
+            else {
+                tryCounter = 0;
+            }
+        }
+    }
+
+    /**
+     * waits with the wait strategy until an element is available
+     *
+     * must only be called by the consumer
+     */
+    public Type take() {
+        for( int tryCounter = 0; ; tryCounter++ ) {
+            final Type element = poll();
+            if( element != null ) {
+                return element;
+            }
+            idle(tryCounter);
+        }
+    }
+
+    @Override
+    public int size() {
+        final long h = head.get();
+        final long t = tail.get();
+        return (int)Math.max(0, Math.min(t - h, capacity));
+    }
+
+    @Override
+    public Iterator<Type> iterator() {
+        throw new UnsupportedOperationException("a concurrent ring buffer can't be iterated");
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * \return number of elements which were inserted since the creation
+     */
+    public long getEnqueuedCount() {
+        return tail.get();
+    }
+
+    /**
+     * \return number of elements which were removed since the creation
+     */
+    public long getDequeuedCount() {
+        return head.get();
+    }
+
+    private void idle(final int tryCounter) {
+        switch( waitStrategy ) {
+            case SPINNING:
+                break;
+
+            case YIELDING:
+                Thread.yield();
+                break;
+
+            case BLOCKING:
+                if( tryCounter < NUMBEROFSPINSBEFOREPARKING ) {
+                    Thread.yield();
+                }
+                else {
+                    // 1 microsecond up to 1 millisecond
+                    LockSupport.parkNanos(1000L << Math.min(tryCounter - NUMBEROFSPINSBEFOREPARKING, 10));
+                }
+
+                if( Thread.currentThread().isInterrupted() ) {
+                    throw new RuntimeException(new InterruptedException());
+                }
+                break;
+        }
+    }
+
+    private static final int NUMBEROFSPINSBEFOREPARKING = 16;
+
+    private final int capacity;
+    private final int mask;
+    private final EnumProducers producers;
+    private final EnumWaitStrategy waitStrategy;
+
+    private final AtomicReferenceArray<Type> slots;
+
+    private final AtomicLong head = new AtomicLong(); // index of the next element which is removed, only written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // index of the next element which is inserted
+}
@@ -10,8 +10,8 @@
 package ptrman.levels.retina.nonFoundalis;
 
 //import ptrman.Algorithms.ai.gng.NeuralGasNet;
+import ptrman.Datastructures.BoolMap2d;
 import ptrman.Datastructures.IMap2d;
-import ptrman.Datastructures.Map2d;
 import ptrman.Datastructures.Vector2d;
 import ptrman.levels.retina.IProcess;
 import ptrman.levels.visual.Map2dBinary;
@@ -84,7 +84,7 @@ public class ProcessFastCalculateEndosceleton implements IProcess {
     }
 
     protected static IMap2d<Boolean> booleanOperationOrOnMaps(final List<IMap2d<Boolean>> inputs) {
-        IMap2d<Boolean> resultMap =  new Map2d<>(inputs.get(0).getWidth(), inputs.get(0).getLength());
+        IMap2d<Boolean> resultMap =  new BoolMap2d(inputs.get(0).getWidth(), inputs.get(0).getLength());
 
         for( final IMap2d<Boolean> currentInput : inputs ) {
             Map2dBinary.orInplace(resultMap, currentInput, resultMap);
@@ -10,165 +10,17 @@
 package ptrman.levels.visual;
 
 import ptrman.Datastructures.IMap2d;
-import ptrman.Datastructures.Map2d;
 
 /**
+ * convolution of a map with a kernel
  *
+ * the kernel is not flipped, the result is at the center of the kernel and the border where the kernel doesn't fit is zero
+ * uses the fastest strategy of ConvolutionEngine, Map2dApplyConvolution should be used for repeated convolutions with the same kernel
  */
 public enum Convolution2d {
 	;
 
 	public static IMap2d<Float> convolution(IMap2d<Float> input, IMap2d<Float> inputKernel) {
-		int x, y;
-        int i;
-
-		float[][] inputAsMatrix = convertMapToArray(input);
-		float[][] kernelAsMatrix = convertMapToArray(inputKernel);
-
-		IMap2d<Float> resultMap = new Map2d<>(input.getWidth(), input.getLength());
-
-        // TODO optimize for cpu? (opencl is senseless)
-		int area = input.getWidth() * input.getLength();
-		for(i = 0; i < area; i++ ) {
-            resultMap.setAt(i % input.getWidth(), i / input.getWidth(), 0.0f);
-        }
-
-		int H = input.getLength() - inputKernel.getLength();
-		int W = input.getWidth() - inputKernel.getWidth();
-		int wHalf = inputKernel.getWidth() / 2;
-		int hHalf = inputKernel.getLength() / 2;
-		for(y = 0; y < H; y++ ) {
-			for(x = 0; x < W; x++ ) {
-				resultMap.setAt(x+ wHalf, y+ hHalf, convolutionAt(inputAsMatrix, kernelAsMatrix, x, y));
-            }
-        }
-
-        return resultMap;
-    }
-
-    private static float convolutionAt(float[][] input, float[][] kernel, int startX, int startY) {
-		int x, y;
-
-		double result = 0.0f;
-
-		int w = kernel.length;
-		int h = kernel[0].length;
-		for(y = 0; y < w; y++ ) {
-			for(x = 0; x < h; x++ )
-                result += (input[x + startX][ y + startY] * kernel[x][y]);
-        }
-
-        return (float)result;
-    }
-
-    private static float[][] convertMapToArray(IMap2d<Float> map)
-    {
-		int x, y;
-
-		int W = map.getWidth();
-		int H = map.getLength();
-		float[][] result = new float[W][H];
-
-        for(y = 0; y < W; y++ )
-            result[y] = new float[H];
-
-		for(x = 0; x < W; x++ )
-	        for(y = 0; y < H; y++ )
-                result[x][y] = map.readAt(x, y);
-
-        return result;
-    }
-
-
-    /*
-    uncommented because its FFT code
-    private static IMap2d<Float> cutAndConvertToMap(float[][] values, int startX, int startY, int width, int height)
-    {
-        int x, y;
-        IMap2d<Float> result;
-
-        result = new Map2d<Float>(width, height);
-
-        for( y = 0; y < height; y++ )
-        {
-            for( x = 0; x < width; x++ )
-            {
-                float value;
-
-                value = values[x + startX][y + startY];
-                result.setAt(x, y, value);
-            }
-        }
-
-        return result;
-    }
-
-    private static float[][] getPadded(IMap2d<Float> map, int width, int height)
-    {
-        float[][] resultArray;
-        int x, y;
-
-        int mapWidth, mapHeight;
-
-        mapWidth = map.getWidth();
-        mapHeight = map.getLength();
-
-        resultArray = new float[width][height];
-
-        for( y = 0; y < mapHeight; y++ )
-        {
-            for( x = 0; x < mapWidth; x++ )
-            {
-                resultArray[x][y] = map.readAt(x, y);
-            }
-        }
-
-        return resultArray;
-    }
-
-
-
-    private static fft.ComplexNumber[,] multiplyComplexNumberArray(ref fft.ComplexNumber[,] a, ref fft.ComplexNumber[,] b)
-{
-    int x, y;
-    fft.ComplexNumber[,] result;
-
-    System.Diagnostics.Debug.Assert(a.GetLength(0) == b.GetLength(0));
-    System.Diagnostics.Debug.Assert(a.GetLength(1) == b.GetLength(1));
-
-    result = new fft.ComplexNumber[a.GetLength(0), a.GetLength(1)];
-
-    for( y = 0; y < a.GetLength(1); y++ )
-    {
-        for( x = 0; x < a.GetLength(0); x++ )
-        {
-            result[x, y] = a[x, y] * b[x, y];
-        }
-    }
-
-    return result;
-}
-
-    private static int calculateCombinedWidthPowerTwo(int a, int b)
-    {
-        int temp;
-        int factor;
-
-        temp = a + b;
-
-        factor = 1;
-
-        for(;;)
-        {
-            if (factor >=temp)
-            {
-                return factor;
-            }
-
-            // else we are here
-
-            factor *= 2;
-        }
-    }
-    */
+		return new ConvolutionEngine().convolution(input, new ConvolutionEngine.Kernel(inputKernel));
+	}
 }
@@ -0,0 +1,416 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.visual;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import ptrman.Algorithms.Fft;
+import ptrman.Datastructures.IFloatMap2d;
+import ptrman.Datastructures.IMap2d;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * convolution of images with kernels on flat row major float arrays
+ *
+ * has the same result as the former direct implementation of Convolution2d:
+ * the kernel is correlated with the image (not flipped), the result is written at the center of the kernel
+ * and the pixels at the border where the kernel doesn't fit into the image are zero
+ *
+ * the result is calculated with one of the strategies
+ * - DIRECT: sum over the kernel for each pixel
+ * - SEPARABLE: the kernel is decomposed with a SVD into a sum of rank-1 kernels which are applied as a horizontal and a vertical pass
+ * - FFT: pointwise product of the fourier transforms, the transform of the kernel is cached in the kernel
+ * AUTOMATIC chooses the strategy with the least estimated cost
+ */
+public class ConvolutionEngine {
+    public enum EnumStrategy {
+        AUTOMATIC,
+        DIRECT,
+        SEPARABLE,
+        FFT
+    }
+
+    /**
+     * kernel which is prepared for the convolution
+     *
+     * can be used by multiple threads
+     */
+    public static class Kernel {
+        public Kernel(final IMap2d<Float> kernel) {
+            width = kernel.getWidth();
+            length = kernel.getLength();
+
+            values = new float[width * length];
+            double[][] matrix = new double[length][width];
+            for( int y = 0; y < length; y++ ) {
+                for( int x = 0; x < width; x++ ) {
+                    values[x + y * width] = kernel.readAt(x, y);
+                    matrix[y][x] = values[x + y * width];
+                }
+            }
+
+            // kernel[y][x] = sum over r of columnFactors[r][y] * rowFactors[r][x]
+            SingularValueDecomposition decomposition = new SingularValueDecomposition(new Array2DRowRealMatrix(matrix, false));
+            final double[] singularValues = decomposition.getSingularValues();
+            final RealMatrix u = decomposition.getU();
+            final RealMatrix v = decomposition.getV();
+
+            int rank = 0;
+            while( rank < singularValues.length && singularValues[rank] > singularValues[0] * RANKTOLERANCE ) {
+                rank++;
+            }
+
+            columnFactors = new double[rank][length];
+            rowFactors = new double[rank][width];
+            for( int r = 0; r < rank; r++ ) {
+                for( int y = 0; y < length; y++ ) {
+                    columnFactors[r][y] = singularValues[r] * u.getEntry(y, r);
+                }
+                for( int x = 0; x < width; x++ ) {
+                    rowFactors[r][x] = v.getEntry(x, r);
+                }
+            }
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * \return number of rank-1 kernels of the separable decomposition
+         */
+        public int getRank() {
+            return rowFactors.length;
+        }
+
+        /**
+         * \return conjugated fourier transform of the kernel padded to the size, real parts at index 0, imaginary parts at index 1
+         */
+        synchronized double[][] getConjugatedTransform(final Fft fftOfRows, final Fft fftOfColumns) {
+            final int paddedWidth = fftOfRows.getSize();
+            final int paddedLength = fftOfColumns.getSize();
+            final long key = ((long)paddedWidth << 32) | paddedLength;
+
+            double[][] transform = transformsBySize.get(key);
+            if( transform == null ) {
+                double[] re = new double[paddedWidth * paddedLength];
+                double[] im = new double[paddedWidth * paddedLength];
+                for( int y = 0; y < length; y++ ) {
+                    for( int x = 0; x < width; x++ ) {
+                        re[x + y * paddedWidth] = values[x + y * width];
+                    }
+                }
+
+                Fft.transform2d(fftOfRows, fftOfColumns, re, im, false);
+
+                for( int i = 0; i < im.length; i++ ) {
+                    im[i] = -im[i];
+                }
+
+                transform = new double[][]{re, im};
+                transformsBySize.put(key, transform);
+            }
+            return transform;
+        }
+
+        private final int width;
+        private final int length;
+        private final float[] values; // row major
+
+        private final double[][] columnFactors;
+        private final double[][] rowFactors;
+
+        private final Map<Long, double[][]> transformsBySize = new HashMap<>();
+    }
+
+    /**
+     * fourier transform of an image, can be convolved with multiple kernels
+     */
+    public static class TransformedImage {
+        private TransformedImage(final int width, final int length, final Fft fftOfRows, final Fft fftOfColumns, final double[] re, final double[] im) {
+            this.width = width;
+            this.length = length;
+            this.fftOfRows = fftOfRows;
+            this.fftOfColumns = fftOfColumns;
+            this.re = re;
+            this.im = im;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * \return number of the padded values, size of the buffers of the products
+         */
+        public int getNumberOfValues() {
+            return re.length;
+        }
+
+        private final int width;
+        private final int length;
+        private final Fft fftOfRows;
+        private final Fft fftOfColumns;
+        private final double[] re;
+        private final double[] im;
+    }
+
+    public EnumStrategy strategy = EnumStrategy.AUTOMATIC;
+
+    public FloatMap2d convolution(final IMap2d<Float> input, final Kernel kernel) {
+        final int width = input.getWidth();
+        final int length = input.getLength();
+
+        FloatMap2d result = new FloatMap2d(width, length);
+        convolution(convertToArray(input), width, length, kernel, result.data);
+        return result;
+    }
+
+    /**
+     * \param result must have width*length elements, is overwritten
+     */
+    public void convolution(final float[] input, final int width, final int length, final Kernel kernel, final float[] result) {
+        switch( chooseStrategy(width, length, kernel) ) {
+            case SEPARABLE:
+                convolutionSeparable(input, width, length, kernel, result);
+                break;
+
+            case FFT:
+                convolution(transform(input, width, length), kernel, result);
+                break;
+
+            default:
+                convolutionDirect(input, width, length, kernel, result);
+                break;
+        }
+    }
+
+    /**
+     * calculates the fourier transform of the image to convolve it with multiple kernels
+     */
+    public static TransformedImage transform(final float[] input, final int width, final int length) {
+        return transform(input, width, length, null);
+    }
+
+    /**
+     * calculates the fourier transform of the image into the buffers of reuse if it has the same size
+     *
+     * \param reuse transformed image of a previous call, can be null, its values are overwritten
+     * \return reuse or a new transformed image if reuse is null or of another size
+     */
+    public static TransformedImage transform(final float[] input, final int width, final int length, final TransformedImage reuse) {
+        final Fft fftOfRows = getFft(Fft.calcNextPowerOfTwo(width));
+        final Fft fftOfColumns = getFft(Fft.calcNextPowerOfTwo(length));
+        final int paddedWidth = fftOfRows.getSize();
+
+        final double[] re;
+        final double[] im;
+        if( reuse == null || reuse.width != width || reuse.length != length ) {
+            re = new double[paddedWidth * fftOfColumns.getSize()];
+            im = new double[re.length];
+        }
+        else {
+            re = reuse.re;
+            im = reuse.im;
+            Arrays.fill(re, 0.0);
+            Arrays.fill(im, 0.0);
+        }
+
+        for( int y = 0; y < length; y++ ) {
+            for( int x = 0; x < width; x++ ) {
+                re[x + y * paddedWidth] = input[x + y * width];
+            }
+        }
+
+        Fft.transform2d(fftOfRows, fftOfColumns, re, im, false);
+
+        if( reuse != null && re == reuse.re ) {
+            return reuse;
+        }
+        return new TransformedImage(width, length, fftOfRows, fftOfColumns, re, im);
+    }
+
+    /**
+     * convolution of a transformed image with the kernel with the FFT strategy
+     *
+     * \param result must have width*length elements of the image, is overwritten
+     */
+    public static void convolution(final TransformedImage image, final Kernel kernel, final float[] result) {
+        convolution(image, kernel, result, new double[image.re.length], new double[image.re.length]);
+    }
+
+    /**
+     * convolution of a transformed image with the kernel with the FFT strategy without allocating the products
+     *
+     * \param result must have width*length elements of the image, is overwritten
+     * \param productRe buffer with image.getNumberOfValues() elements, is overwritten
+     * \param productIm buffer with image.getNumberOfValues() elements, is overwritten
+     */
+    public static void convolution(final TransformedImage image, final Kernel kernel, final float[] result, final double[] productRe, final double[] productIm) {
+        if( image.width <= kernel.width || image.length <= kernel.length ) {
+            // kernel doesn't fit anywhere, the kernel may also be larger than the padded size
+            Arrays.fill(result, 0, image.width * image.length, 0.0f);
+            return;
+        }
+
+        final double[][] kernelTransform = kernel.getConjugatedTransform(image.fftOfRows, image.fftOfColumns);
+        final double[] kernelRe = kernelTransform[0];
+        final double[] kernelIm = kernelTransform[1];
+
+        final int paddedWidth = image.fftOfRows.getSize();
+        final int numberOfValues = image.re.length;
+
+        for( int i = 0; i < numberOfValues; i++ ) {
+            productRe[i] = image.re[i] * kernelRe[i] - image.im[i] * kernelIm[i];
+            productIm[i] = image.re[i] * kernelIm[i] + image.im[i] * kernelRe[i];
+        }
+
+        Fft.transform2d(image.fftOfRows, image.fftOfColumns, productRe, productIm, true);
+
+        // the correlation is circular, the positions where the kernel fits into the image don't wrap around because the padded size is at least the size of the image
+        final double normalization = 1.0 / numberOfValues;
+        writeValidRegion(image.width, image.length, kernel, result, (x, y) -> productRe[x + y * paddedWidth] * normalization);
+    }
+
+    /**
+     * \return strategy which is used for the convolution of an image of the size with the kernel
+     */
+    public EnumStrategy chooseStrategy(final int width, final int length, final Kernel kernel) {
+        if( strategy != EnumStrategy.AUTOMATIC ) {
+            return strategy;
+        }
+
+        // estimated multiply-adds for each pixel
+        final double costDirect = kernel.width * kernel.length;
+        final double costSeparable = kernel.getRank() * (kernel.width + kernel.length);
+
+        final int paddedArea = Fft.calcNextPowerOfTwo(width) * Fft.calcNextPowerOfTwo(length);
+        final double log2OfPaddedArea = Math.log(paddedArea) / Math.log(2.0);
+        // forward and inverse transform of the image and the pointwise product, the transform of the kernel is cached
+        final double costFft = (2.0 * 2.5 * log2OfPaddedArea + 2.0) * paddedArea / Math.max(width * length, 1);
+
+        if( costFft < costDirect && costFft < costSeparable ) {
+            return EnumStrategy.FFT;
+        }
+        return costSeparable < costDirect ? EnumStrategy.SEPARABLE : EnumStrategy.DIRECT;
+    }
+
+    private static void convolutionDirect(final float[] input, final int width, final int length, final Kernel kernel, final float[] result) {
+        final int kernelWidth = kernel.width;
+        final int kernelLength = kernel.length;
+        final float[] kernelValues = kernel.values;
+
+        writeValidRegion(width, length, kernel, result, (startX, startY) -> {
+            double sum = 0.0;
+            for( int y = 0; y < kernelLength; y++ ) {
+                final int inputOffset = startX + (startY + y) * width;
+                final int kernelOffset = y * kernelWidth;
+                for( int x = 0; x < kernelWidth; x++ ) {
+                    sum += input[inputOffset + x] * kernelValues[kernelOffset + x];
+                }
+            }
+            return sum;
+        });
+    }
+
+    private static void convolutionSeparable(final float[] input, final int width, final int length, final Kernel kernel, final float[] result) {
+        final int kernelWidth = kernel.width;
+        final int kernelLength = kernel.length;
+        final int validWidth = width - kernelWidth;
+
+        // horizontal pass of each rank-1 kernel, only for the x where the kernel fits
+        final double[][] horizontal = new double[kernel.getRank()][Math.max(validWidth, 0) * length];
+        for( int r = 0; r < kernel.getRank(); r++ ) {
+            final double[] rowFactors = kernel.rowFactors[r];
+            final double[] horizontalOfRank = horizontal[r];
+
+            for( int y = 0; y < length; y++ ) {
+                for( int startX = 0; startX < validWidth; startX++ ) {
+                    double sum = 0.0;
+                    final int inputOffset = startX + y * width;
+                    for( int x = 0; x < kernelWidth; x++ ) {
+                        sum += input[inputOffset + x] * rowFactors[x];
+                    }
+                    horizontalOfRank[startX + y * validWidth] = sum;
+                }
+            }
+        }
+
+        // vertical pass
+        writeValidRegion(width, length, kernel, result, (startX, startY) -> {
+            double sum = 0.0;
+            for( int r = 0; r < kernel.getRank(); r++ ) {
+                final double[] columnFactors = kernel.columnFactors[r];
+                final double[] horizontalOfRank = horizontal[r];
+                for( int y = 0; y < kernelLength; y++ ) {
+                    sum += horizontalOfRank[startX + (startY + y) * validWidth] * columnFactors[y];
+                }
+            }
+            return sum;
+        });
+    }
+
+    private interface IValueOfPosition {
+        double calc(int startX, int startY);
+    }
+
+    /**
+     * writes the value for each position where the kernel fits into the image at the center of the kernel, the other pixels are zero
+     */
+    private static void writeValidRegion(final int width, final int length, final Kernel kernel, final float[] result, final IValueOfPosition valueOfPosition) {
+        Arrays.fill(result, 0, width * length, 0.0f);
+
+        final int validWidth = width - kernel.width;
+        final int validLength = length - kernel.length;
+        final int halfWidth = kernel.width / 2;
+        final int halfLength = kernel.length / 2;
+
+        for( int startY = 0; startY < validLength; startY++ ) {
+            for( int startX = 0; startX < validWidth; startX++ ) {
+                result[(startX + halfWidth) + (startY + halfLength) * width] = (float)valueOfPosition.calc(startX, startY);
+            }
+        }
+    }
+
+    static float[] convertToArray(final IMap2d<Float> map) {
+        if( map instanceof FloatMap2d ) {
+            return ((FloatMap2d)map).data;
+        }
+
+        final IFloatMap2d floatMap = Map2dConverter.toFloatMap(map);
+        final int width = map.getWidth();
+        float[] result = new float[width * map.getLength()];
+        for( int y = 0; y < map.getLength(); y++ ) {
+            System.arraycopy(floatMap.row(y), floatMap.rowOffset(y), result, y * width, width);
+        }
+        return result;
+    }
+
+    private static synchronized Fft getFft(final int size) {
+        return FFTS.computeIfAbsent(size, Fft::new);
+    }
+
+    // singular values below this fraction of the largest are ignored by the separable decomposition
+    private static final double RANKTOLERANCE = 1e-6;
+
+    private static final Map<Integer, Fft> FFTS = new HashMap<>();
+}
@@ -10,23 +10,29 @@
 package ptrman.levels.visual;
 
 import boofcv.struct.image.GrayF32;
-import ptrman.Datastructures.IMap2d;
+import ptrman.Datastructures.IFloatMap2d;
 
 import java.util.Arrays;
 
 /**
  * Created by me on 7/17/15.
  */
-public class FloatMap2d implements IMap2d<Float> {
+public class FloatMap2d implements IFloatMap2d {
     private final int w;
     private final int h;
-    public final float[][] data;
+    public final float[] data; // row major, the value at x, y is at x + y*w
 
     public FloatMap2d(int w, int h) {
+        this(w, h, new float[w * h]);
+    }
+
+    /**
+     * uses the array as the values of the map without copying it
+     */
+    public FloatMap2d(int w, int h, float[] data) {
         this.w = w;
         this.h = h;
-        this.data = new float[h][];
-        for (int i = 0; i < h; i++) data[i] = new float[w];
+        this.data = data;
     }
 
     public FloatMap2d(FloatMap2d f) {
@@ -37,27 +43,28 @@ public class FloatMap2d implements IMap2d<Float> {
 
     @Override
     public void clear() {
-        for (float[] d : data)
-            Arrays.fill(d, 0);
+        Arrays.fill(data, 0);
     }
 
 
     @Override
-    public Float readAt(int x, int y) {
-        return get(x, y);
+    public float get(int x, int y) {
+        return data[x + y * w];
     }
 
-    public float get(int x, int y) {
-        return data[y][x];
+    @Override
+    public void set(int x, int y, float v) {
+        data[x + y * w] = v;
     }
 
     @Override
-    public void setAt(int x, int y, Float value) {
-        set(x, y, value);
+    public float[] row(int y) {
+        return data;
     }
 
-    public void set(int x, int y, float v) {
-        data[y][x] = v;
+    @Override
+    public int rowOffset(int y) {
+        return y * w;
     }
 
     @Override
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.visual;
+
+import ptrman.Datastructures.IMap2d;
+import ptrman.misc.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import static ptrman.misc.ParallelHelper.getExecutorOrDefault;
+import static ptrman.misc.ParallelHelper.invokeAllAndWait;
+
+/**
+ * gabor filters of equally spaced orientations which are applied to the same image
+ *
+ * the image is transformed only once, each orientation needs a pointwise product and an inverse transform
+ * the kernels with their transforms are shared by all banks with the same parameters
+ *
+ * the orientation i has the angle i/numberOfOrientations * 2 pi, as calculated by Convolution2dHelper.calcGaborKernel()
+ *
+ * the transform and the products are kept for the next image of the same size, so one bank must not process multiple images at the same time
+ */
+public class GaborFilterBank {
+    public boolean processInParallel = false;
+    // executor of the parallel processing, the common ForkJoinPool is used if it is null
+    public ExecutorService executor = null;
+
+    /**
+     * \param kernelWidth width and length of the kernels
+     * \param spartialRatioAspect ellipticity of the support of the Gabor function
+     */
+    public GaborFilterBank(final int numberOfOrientations, final int kernelWidth, final float lambda, final float phaseOffset, final float spartialRatioAspect) {
+        kernels = getKernels(numberOfOrientations, kernelWidth, lambda, phaseOffset, spartialRatioAspect);
+    }
+
+    public int getNumberOfOrientations() {
+        return kernels.length;
+    }
+
+    /**
+     * \return the responses of the image for all orientations, same result as Convolution2d.convolution() with the kernel of the orientation
+     */
+    public FloatMap2d[] process(final IMap2d<Float> image) {
+        FloatMap2d[] responses = new FloatMap2d[kernels.length];
+        for( int i = 0; i < kernels.length; i++ ) {
+            responses[i] = new FloatMap2d(image.getWidth(), image.getLength());
+        }
+
+        process(image, responses);
+        return responses;
+    }
+
+    /**
+     * calculates the responses of the image for all orientations into existing maps
+     *
+     * \param responses maps with the size of the image for each orientation, are overwritten
+     */
+    public void process(final IMap2d<Float> image, final FloatMap2d[] responses) {
+        final int width = image.getWidth();
+        final int length = image.getLength();
+
+        Assert.Assert(responses.length == kernels.length, "one response for each orientation expected");
+
+        transformedImage = ConvolutionEngine.transform(ConvolutionEngine.convertToArray(image), width, length, transformedImage);
+
+        final int numberOfValues = transformedImage.getNumberOfValues();
+        if( productsRe == null || productsRe[0].length != numberOfValues ) {
+            productsRe = new double[kernels.length][numberOfValues];
+            productsIm = new double[kernels.length][numberOfValues];
+        }
+
+        if( processInParallel ) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for( int i = 0; i < kernels.length; i++ ) {
+                final int orientationIndex = i;
+                tasks.add(() -> {
+                    ConvolutionEngine.convolution(transformedImage, kernels[orientationIndex], responses[orientationIndex].data, productsRe[orientationIndex], productsIm[orientationIndex]);
+                    return null;
+                });
+            }
+            invokeAllAndWait(getExecutorOrDefault(executor), tasks);
+        }
+        else {
+            for( int i = 0; i < kernels.length; i++ ) {
+                ConvolutionEngine.convolution(transformedImage, kernels[i], responses[i].data, productsRe[i], productsIm[i]);
+            }
+        }
+    }
+
+    private static synchronized ConvolutionEngine.Kernel[] getKernels(final int numberOfOrientations, final int kernelWidth, final float lambda, final float phaseOffset, final float spartialRatioAspect) {
+        final List<Object> key = Arrays.asList(numberOfOrientations, kernelWidth, lambda, phaseOffset, spartialRatioAspect);
+
+        ConvolutionEngine.Kernel[] kernels = KERNELS.get(key);
+        if( kernels == null ) {
+            kernels = new ConvolutionEngine.Kernel[numberOfOrientations];
+            for( int i = 0; i < numberOfOrientations; i++ ) {
+                final float angle = (float)i/(float)numberOfOrientations * 2.0f * (float)Math.PI;
+                kernels[i] = new ConvolutionEngine.Kernel(Convolution2dHelper.calcGaborKernel(kernelWidth, angle, lambda, phaseOffset, spartialRatioAspect));
+            }
+            KERNELS.put(key, kernels);
+        }
+        return kernels;
+    }
+
+    private final ConvolutionEngine.Kernel[] kernels;
+
+    // buffers of the last processed image
+    private ConvolutionEngine.TransformedImage transformedImage = null;
+    private double[][] productsRe = null;
+    private double[][] productsIm = null;
+
+    // kernels by the parameters of the bank
+    private static final Map<List<Object>, ConvolutionEngine.Kernel[]> KERNELS = new HashMap<>();
+}
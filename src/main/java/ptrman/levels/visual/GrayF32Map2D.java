@@ -1,10 +1,12 @@
 package ptrman.levels.visual;
 
 import boofcv.struct.image.GrayF32;
-import ptrman.Datastructures.IMap2d;
+import ptrman.Datastructures.IFloatMap2d;
+
+import java.util.Arrays;
 
 /** adapter to boofcv image */
-public class GrayF32Map2D implements IMap2d<Float> {
+public class GrayF32Map2D implements IFloatMap2d {
 
 	final GrayF32 img;
 
@@ -13,13 +15,23 @@ public class GrayF32Map2D implements IMap2d<Float> {
 	}
 
 	@Override
-	public Float readAt(int x, int y) {
+	public float get(int x, int y) {
 		return img.get(x, y);
 	}
 
 	@Override
-	public void setAt(int x, int y, Float value) {
-		throw new UnsupportedOperationException("TODO");
+	public void set(int x, int y, float value) {
+		img.set(x, y, value);
+	}
+
+	@Override
+	public float[] row(int y) {
+		return img.data;
+	}
+
+	@Override
+	public int rowOffset(int y) {
+		return img.startIndex + y * img.stride;
 	}
 
 	@Override
@@ -34,11 +46,19 @@ public class GrayF32Map2D implements IMap2d<Float> {
 
 	@Override
 	public void clear() {
-		throw new UnsupportedOperationException("TODO");
+		// the image can be a sub-image, so only the values of the rows are cleared
+		for( int y = 0; y < img.getHeight(); y++ ) {
+			final int offset = rowOffset(y);
+			Arrays.fill(img.data, offset, offset + img.getWidth(), 0.0f);
+		}
 	}
 
 	@Override
-	public IMap2d<Float> copy() {
-		throw new UnsupportedOperationException("TODO");
+	public GrayF32Map2D copy() {
+		GrayF32 copiedImg = new GrayF32(img.getWidth(), img.getHeight());
+		for( int y = 0; y < img.getHeight(); y++ ) {
+			System.arraycopy(img.data, rowOffset(y), copiedImg.data, y * copiedImg.getWidth(), img.getWidth());
+		}
+		return new GrayF32Map2D(copiedImg);
 	}
 }
@@ -13,15 +13,31 @@ import ptrman.Datastructures.IMap2d;
 
 /**
  * applies a convolution
+ *
+ * the kernel is prepared once, so the decomposition and the fourier transforms of it are reused for all processed maps
  */
 public class Map2dApplyConvolution {
     public IMap2d<Float> kernel;
 
+    public final ConvolutionEngine engine = new ConvolutionEngine();
+
     public Map2dApplyConvolution(IMap2d<Float> kernel) {
         this.kernel = kernel;
     }
 
     public IMap2d<Float> process(IMap2d<Float> input) {
-        return Convolution2d.convolution(input, kernel);
+        return engine.convolution(input, getPreparedKernel());
     }
+
+    private synchronized ConvolutionEngine.Kernel getPreparedKernel() {
+        // kernel is public and can be exchanged
+        if( preparedKernel == null || preparedFrom != kernel ) {
+            preparedKernel = new ConvolutionEngine.Kernel(kernel);
+            preparedFrom = kernel;
+        }
+        return preparedKernel;
+    }
+
+    private IMap2d<Float> preparedFrom;
+    private ConvolutionEngine.Kernel preparedKernel;
 }
@@ -9,164 +9,162 @@
  */
 package ptrman.levels.visual;
 
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.Datastructures.FastBooleanMap2d;
+import ptrman.Datastructures.IBoolMap2d;
+import ptrman.Datastructures.IFloatMap2d;
 import ptrman.Datastructures.IMap2d;
-import ptrman.Datastructures.Map2d;
 
+import static ptrman.levels.visual.Map2dConverter.toBoolMap;
+import static ptrman.levels.visual.Map2dConverter.toFloatMap;
+
+/**
+ * binary image operations
+ *
+ * the morphological operations work on 64 pixels at once on the words of a FastBooleanMap2d,
+ * other maps are converted and the result is converted back to a map of the size of the input
+ * the neighbors of the pixels of a word are read by shifting the word and carrying the bit of the neighboring word
+ */
 public enum Map2dBinary {
 	;
 
-	public static IMap2d<Boolean> negate(IMap2d<Boolean> input) {
-        IMap2d<Boolean> result = new Map2d<>(input.getWidth(), input.getLength());
+	public static IBoolMap2d negate(IMap2d<Boolean> input) {
+        final FastBooleanMap2d fastInput = asFastMap(input);
+        FastBooleanMap2d result = new FastBooleanMap2d(fastInput.getWidth(), fastInput.getLength());
 
-        for (int y = 0; y < input.getLength(); y++) {
-            for (int x = 0; x < input.getWidth(); x++) {
-                result.setAt(x, y, !input.readAt(x, y));
+        for( int y = 0; y < fastInput.getLength(); y++ ) {
+            for( int wordX = 0; wordX < fastInput.getWordsPerRow(); wordX++ ) {
+                result.writeWord(wordX, y, ~fastInput.readWord(wordX, y));
             }
         }
 
-        return result;
+        return convertResult(input, result);
     }
 
-    public static IMap2d<Boolean> corode(IMap2d<Boolean> input) {
-        IMap2d<Boolean> result = new Map2d<>(input.getWidth(), input.getLength());
+    /**
+     * a pixel is set if it and all 8 neighbors are set, the pixels at the border are not set
+     */
+    public static IBoolMap2d corode(IMap2d<Boolean> input) {
+        final FastBooleanMap2d fastInput = asFastMap(input);
+        FastBooleanMap2d result = new FastBooleanMap2d(fastInput.getWidth(), fastInput.getLength());
 
         for( int y = 1; y < input.getLength() - 1; y++ ) {
-            for( int x = 1; x < input.getWidth() - 1; x++ ) {
-                // optimized
-
-                if(
-                        !input.readAt(x-1,y-1) ||
-                                !input.readAt(x,y-1) ||
-                                !input.readAt(x+1,y-1) ||
-
-                                !input.readAt(x-1,y) ||
-                                !input.readAt(x,y) ||
-                                !input.readAt(x+1,y) ||
-
-                                !input.readAt(x-1,y+1) ||
-                                !input.readAt(x,y+1) ||
-                                !input.readAt(x+1,y+1)
-                        ) {
-                    continue;
-                }
-
-                result.setAt(x, y, true);
+            for( int wordX = 0; wordX < fastInput.getWordsPerRow(); wordX++ ) {
+                // pixels which are set together with the left and right neighbor in the rows y-1, y and y+1
+                final long word = calcHorizontalAnd(fastInput, wordX, y-1) & calcHorizontalAnd(fastInput, wordX, y) & calcHorizontalAnd(fastInput, wordX, y+1);
+                result.writeWord(wordX, y, word & calcColumnMask(wordX, 1, input.getWidth() - 2));
             }
         }
 
-        return result;
+        return convertResult(input, result);
     }
 
     // edge thinning
     // http://fourier.eng.hmc.edu/e161/lectures/morphology/node2.html
-    public static IMap2d<Boolean> edgeThinning(IMap2d<Boolean> input) {
-        boolean[] neightbors = new boolean[8];
+    public static IBoolMap2d edgeThinning(IMap2d<Boolean> input) {
+        final FastBooleanMap2d fastInput = asFastMap(input);
+        FastBooleanMap2d result = new FastBooleanMap2d(fastInput.getWidth(), fastInput.getLength());
 
-        IMap2d<Boolean> result = new Map2d<>(input.getWidth(), input.getLength());
+        long[] neighbors = new long[8];
+        long[] zeroCrossings = new long[8-1];
+        long[] negatedNeighbors = new long[8];
 
         for( int y = 1; y < input.getLength() - 1; y++ ) {
-            for( int x = 1; x < input.getWidth() - 1; x++ ) {
-
-                neightbors[0] = input.readAt(x-1,y-1);
-                neightbors[1] = input.readAt(x,y-1);
-                neightbors[2] = input.readAt(x+1,y-1);
-
-                neightbors[3] = input.readAt(x+1,y);
-                neightbors[4] = input.readAt(x+1,y+1);
+            for( int wordX = 0; wordX < fastInput.getWordsPerRow(); wordX++ ) {
+                // clockwise, beginning at the upper left neighbor
+                neighbors[0] = readWestWord(fastInput, wordX, y-1);
+                neighbors[1] = readWordOrZero(fastInput, wordX, y-1);
+                neighbors[2] = readEastWord(fastInput, wordX, y-1);
 
-                neightbors[5] = input.readAt(x,y+1);
-                neightbors[6] = input.readAt(x-1,y+1);
+                neighbors[3] = readEastWord(fastInput, wordX, y);
+                neighbors[4] = readEastWord(fastInput, wordX, y+1);
 
-                neightbors[7] = input.readAt(x-1,y);
+                neighbors[5] = readWordOrZero(fastInput, wordX, y+1);
+                neighbors[6] = readWestWord(fastInput, wordX, y+1);
 
-                // count zero crossing
-                int zeroCrossing = 0;
+                neighbors[7] = readWestWord(fastInput, wordX, y);
 
                 for( int i = 0; i < 8-1; i++ ) {
-                    if( neightbors[i] && !neightbors[i+1] ) {
-                        zeroCrossing++;
-                    }
+                    zeroCrossings[i] = neighbors[i] & ~neighbors[i+1];
                 }
 
-                // count set pixels
-                int setPixels = 0;
-
                 for( int i = 0; i < 8; i++ ) {
-                    if( neightbors[i] ) {
-                        setPixels++;
-                    }
+                    negatedNeighbors[i] = ~neighbors[i];
                 }
 
-                boolean deletePixel = setPixels == 0 ||
-                    setPixels == 1 ||
-                    setPixels == 7 ||
-                    setPixels == 8 ||
-                    zeroCrossing >= 2;
+                // the pixel is deleted if 0, 1, 7 or 8 neighbors are set or if there are at least two zero crossings
+                final long keep = calcAtLeastTwo(neighbors) & calcAtLeastTwo(negatedNeighbors) & ~calcAtLeastTwo(zeroCrossings);
 
-                if( !deletePixel ) {
-                    result.setAt(x, y, true);
-                }
+                result.writeWord(wordX, y, keep & calcColumnMask(wordX, 1, input.getWidth() - 2));
             }
         }
 
-        return result;
+        return convertResult(input, result);
     }
 
-    // http://fourier.eng.hmc.edu/e161/lectures/morphology/node3.html
-    public static IMap2d<Boolean> skeletalize(IMap2d<Boolean> input) {
-        int x, y;
-
-        int[] minArray = new int[5];
-        int[] maxArray = new int[5];
-
-        IMap2d<Integer> counterMap = new Map2d<>(input.getWidth(), input.getLength());
-        IMap2d<Boolean> output = new Map2d<>(input.getWidth(), input.getLength());
-
-        for( y = 0; y < input.getLength(); y++ ) {
-            for( x = 0; x < input.getWidth(); x++ ) {
-                if( input.readAt(x, y) ) {
-                    counterMap.setAt(x, y, 1);
-                }
-            }
-        }
-
-        int k = 0;
+    /**
+     * thinning to a skeleton with a width of one pixel with the Zhang-Suen algorithm, pixels outside of the image are not set
+     *
+     * each subiteration calculates the pixels to remove for 64 pixels at once
+     */
+    // https://dl.acm.org/doi/10.1145/357994.358023
+    public static IBoolMap2d skeletalize(IMap2d<Boolean> input) {
+        FastBooleanMap2d current = asFastMap(input).copy();
+        FastBooleanMap2d next = new FastBooleanMap2d(current.getWidth(), current.getLength());
+
+        // neighbors p2 to p9, clockwise beginning at the upper neighbor
+        long[] neighbors = new long[8];
+        long[] negatedNeighbors = new long[8];
+        long[] transitions = new long[8];
 
         for(;;) {
-            k += 1;
-
             boolean changeMade = false;
 
-            for( y = 1; y < input.getLength() - 1; y++ ) {
-                for( x = 1; x < input.getWidth() - 1; x++ ) {
-
-                    if( counterMap.readAt(x, y) != k ) {
-                        continue;
+            for( int subiteration = 0; subiteration < 2; subiteration++ ) {
+                for( int y = 0; y < current.getLength(); y++ ) {
+                    for( int wordX = 0; wordX < current.getWordsPerRow(); wordX++ ) {
+                        final long center = current.readWord(wordX, y);
+                        if( center == 0 ) {
+                            next.writeWord(wordX, y, 0);
+                            continue;
+                        }
+
+                        neighbors[0] = readWordOrZero(current, wordX, y-1); // p2
+                        neighbors[1] = readEastWord(current, wordX, y-1); // p3
+                        neighbors[2] = readEastWord(current, wordX, y); // p4
+                        neighbors[3] = readEastWord(current, wordX, y+1); // p5
+                        neighbors[4] = readWordOrZero(current, wordX, y+1); // p6
+                        neighbors[5] = readWestWord(current, wordX, y+1); // p7
+                        neighbors[6] = readWestWord(current, wordX, y); // p8
+                        neighbors[7] = readWestWord(current, wordX, y-1); // p9
+
+                        long anyTransition = 0;
+                        for( int i = 0; i < 8; i++ ) {
+                            negatedNeighbors[i] = ~neighbors[i];
+                            transitions[i] = ~neighbors[i] & neighbors[(i+1) % 8];
+                            anyTransition |= transitions[i];
+                        }
+
+                        // 2 <= number of set neighbors <= 6
+                        final long numberOfNeighborsInRange = calcAtLeastTwo(neighbors) & calcAtLeastTwo(negatedNeighbors);
+                        // exactly one 01 pattern in the sequence p2, p3, ..., p9, p2
+                        final long oneTransition = anyTransition & ~calcAtLeastTwo(transitions);
+
+                        final long p2 = neighbors[0], p4 = neighbors[2], p6 = neighbors[4], p8 = neighbors[6];
+                        final long directionalCondition = subiteration == 0 ?
+                            ~(p2 & p4 & p6) & ~(p4 & p6 & p8) :
+                            ~(p2 & p4 & p8) & ~(p2 & p6 & p8);
+
+                        final long remove = center & numberOfNeighborsInRange & oneTransition & directionalCondition;
+
+                        changeMade |= remove != 0;
+                        next.writeWord(wordX, y, center & ~remove);
                     }
-                    // we are here if it is the case
-
-                    changeMade = true;
-
-                    //minArray[0] = counterMap.readAt(x-1, y-1);
-                    minArray[0] = counterMap.readAt(x, y-1);
-                    //minArray[2] = counterMap.readAt(x+1, y-1);
-
-                    minArray[1] = counterMap.readAt(x-1, y);
-                    minArray[2] = counterMap.readAt(x, y);
-                    //minArray[2] = counterMap.readAt(x, y);
-                    minArray[3] = counterMap.readAt(x+1, y);
-
-                    //minArray[6] = counterMap.readAt(x-1, y+1);
-                    minArray[4] = counterMap.readAt(x, y+1);
-                    //minArray[8] = counterMap.readAt(x+1, y+1);
-
-                    int min = minOfArray(minArray);
-                    int newValue = min + 1;
-
-                    counterMap.setAt(x, y, newValue);
-
-                    //output.writeAt(x, y, true);
                 }
+
+                final FastBooleanMap2d temp = current;
+                current = next;
+                next = temp;
             }
 
             if( !changeMade ) {
@@ -174,90 +172,155 @@ public enum Map2dBinary {
             }
         }
 
-        for (y = 1; y < input.getLength()-1; y++) {
-            for (x = 1; x < input.getWidth()-1; x++) {
-
-                int compare = counterMap.readAt(x, y);
-
-                if( compare == 0 ) {
-                    continue;
-                }
-
-                maxArray[0] = counterMap.readAt(x+1, y);
-                maxArray[1] = counterMap.readAt(x-1, y);
-                maxArray[2] = counterMap.readAt(x, y+1);
-                maxArray[3] = counterMap.readAt(x, y-1);
-                maxArray[4] = counterMap.readAt(x, y);
-
-                if( compare == maxOfArray(maxArray) ) {
-                    output.setAt(x, y, true);
-                }
-            }
-        }
+        return convertResult(input, current);
+    }
 
-        return output;
+    public static IBoolMap2d threshold(IMap2d<Float> input, float threshold) {
+        BoolMap2d result = new BoolMap2d(input.getWidth(), input.getLength());
+        threshold(input, threshold, result);
+        return result;
     }
 
-    public static IMap2d<Boolean> threshold(IMap2d<Float> input, float threshold) {
-        IMap2d<Boolean> result = new Map2d<>(input.getWidth(), input.getLength());
+    /**
+     * \param result map with the size of the input, is overwritten
+     */
+    public static void threshold(IMap2d<Float> input, float threshold, IBoolMap2d result) {
+        final IFloatMap2d floatInput = toFloatMap(input);
 
         for( int y = 0; y < input.getLength(); y++ ) {
+            final float[] inputRow = floatInput.row(y);
+            final int inputOffset = floatInput.rowOffset(y);
             for( int x = 0; x < input.getWidth(); x++ ) {
-                boolean val = input.readAt(x, y) > threshold;
-                result.setAt(x, y, val);
+                boolean val = inputRow[inputOffset + x] > threshold;
+                result.set(x, y, val);
             }
         }
-
-        return result;
     }
 
     public static void orInplace(final IMap2d<Boolean> a, final IMap2d<Boolean> b, IMap2d<Boolean> result) {
-        for( int y = 0; y < a.getLength(); y++ ) {
-            for( int x = 0; x < a.getWidth(); x++ ) {
-                result.setAt(x, y, a.readAt(x, y) || b.readAt(x, y));
-            }
-        }
+        combineInplace(a, b, result, EnumBooleanOperation.OR);
     }
 
     public static void andInplace(final IMap2d<Boolean> a, final IMap2d<Boolean> b, IMap2d<Boolean> result) {
-        for( int y = 0; y < a.getLength(); y++ ) {
-            for( int x = 0; x < a.getWidth(); x++ ) {
-                result.setAt(x, y, a.readAt(x, y) && b.readAt(x, y));
+        combineInplace(a, b, result, EnumBooleanOperation.AND);
+    }
+
+    public static void xorInplace(final IMap2d<Boolean> a, final IMap2d<Boolean> b, IMap2d<Boolean> result) {
+        combineInplace(a, b, result, EnumBooleanOperation.XOR);
+    }
+
+    private enum EnumBooleanOperation {
+        OR,
+        AND,
+        XOR;
+
+        long apply(final long a, final long b) {
+            switch( this ) {
+                case OR: return a | b;
+                case AND: return a & b;
+                default: return a ^ b;
             }
         }
     }
 
-    public static void xorInplace(final IMap2d<Boolean> a, final IMap2d<Boolean> b, IMap2d<Boolean> result) {
+    /**
+     * combines the words if all maps are FastBooleanMap2d, else the pixels
+     */
+    private static void combineInplace(final IMap2d<Boolean> a, final IMap2d<Boolean> b, IMap2d<Boolean> result, final EnumBooleanOperation operation) {
+        if( a instanceof FastBooleanMap2d && b instanceof FastBooleanMap2d && result instanceof FastBooleanMap2d ) {
+            final FastBooleanMap2d fastA = (FastBooleanMap2d)a;
+            final FastBooleanMap2d fastB = (FastBooleanMap2d)b;
+            final FastBooleanMap2d fastResult = (FastBooleanMap2d)result;
+
+            for( int y = 0; y < a.getLength(); y++ ) {
+                for( int wordX = 0; wordX < fastA.getWordsPerRow(); wordX++ ) {
+                    fastResult.writeWord(wordX, y, operation.apply(fastA.readWord(wordX, y), fastB.readWord(wordX, y)));
+                }
+            }
+            return;
+        }
+
+        final IBoolMap2d boolA = toBoolMap(a);
+        final IBoolMap2d boolB = toBoolMap(b);
+
         for( int y = 0; y < a.getLength(); y++ ) {
             for( int x = 0; x < a.getWidth(); x++ ) {
-                result.setAt(x, y, a.readAt(x, y) ^ b.readAt(x, y));
+                final boolean value = operation.apply(boolA.get(x, y) ? 1 : 0, boolB.get(x, y) ? 1 : 0) != 0;
+                result.setAt(x, y, value);
             }
         }
     }
 
+    private static FastBooleanMap2d asFastMap(final IMap2d<Boolean> map) {
+        return map instanceof FastBooleanMap2d ? (FastBooleanMap2d)map : FastBooleanMap2d.createRoundedUpCopy(map);
+    }
 
+    /**
+     * \return the result if the input is a FastBooleanMap2d, else the result cut to the size of the input
+     */
+    private static IBoolMap2d convertResult(final IMap2d<Boolean> input, final FastBooleanMap2d result) {
+        if( input instanceof FastBooleanMap2d ) {
+            return result;
+        }
 
-    private static int minOfArray(int[] array) {
-        int min = array[0];
-
-        for( int i = 1; i < array.length; i++ ) {
-            if( array[i] < min ) {
-                min = array[i];
+        BoolMap2d converted = new BoolMap2d(input.getWidth(), input.getLength());
+        for( int y = 0; y < input.getLength(); y++ ) {
+            for( int x = 0; x < input.getWidth(); x++ ) {
+                converted.set(x, y, result.get(x, y));
             }
         }
+        return converted;
+    }
 
-        return min;
+    private static long readWordOrZero(final FastBooleanMap2d map, final int wordX, final int y) {
+        if( y < 0 || y >= map.getLength() || wordX < 0 || wordX >= map.getWordsPerRow() ) {
+            return 0;
+        }
+        return map.readWord(wordX, y);
     }
 
-    private static int maxOfArray(int[] array) {
-        int max = array[0];
+    /**
+     * \return word where the bit i is the pixel to the left of the pixel i of the word
+     */
+    private static long readWestWord(final FastBooleanMap2d map, final int wordX, final int y) {
+        return (readWordOrZero(map, wordX, y) << 1) | (readWordOrZero(map, wordX-1, y) >>> 63);
+    }
 
-        for( int i = 1; i < array.length; i++) {
-            if (array[i] > max) {
-                max = array[i];
-            }
+    /**
+     * \return word where the bit i is the pixel to the right of the pixel i of the word
+     */
+    private static long readEastWord(final FastBooleanMap2d map, final int wordX, final int y) {
+        return (readWordOrZero(map, wordX, y) >>> 1) | (readWordOrZero(map, wordX+1, y) << 63);
+    }
+
+    private static long calcHorizontalAnd(final FastBooleanMap2d map, final int wordX, final int y) {
+        return readWestWord(map, wordX, y) & map.readWord(wordX, y) & readEastWord(map, wordX, y);
+    }
+
+    /**
+     * \return bits of the word which are set if at least two of the words have the bit set
+     */
+    private static long calcAtLeastTwo(final long[] words) {
+        long atLeastOne = 0;
+        long atLeastTwo = 0;
+        for( final long iterationWord : words ) {
+            atLeastTwo |= atLeastOne & iterationWord;
+            atLeastOne |= iterationWord;
+        }
+        return atLeastTwo;
+    }
+
+    /**
+     * \return mask of the pixels of the word which are in the range [firstX, lastX]
+     */
+    private static long calcColumnMask(final int wordX, final int firstX, final int lastX) {
+        final int begin = Math.max(firstX - wordX*64, 0);
+        final int end = Math.min(lastX - wordX*64 + 1, 64); // exclusive
+        if( begin >= end ) {
+            return 0;
         }
 
-        return max;
+        final long maskOfEnd = end == 64 ? -1L : (1L << end) - 1;
+        return maskOfEnd & (-1L << begin);
     }
 }
@@ -9,29 +9,148 @@
  */
 package ptrman.levels.visual;
 
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.Datastructures.IBoolMap2d;
+import ptrman.Datastructures.IFloatMap2d;
+import ptrman.Datastructures.IIntMap2d;
 import ptrman.Datastructures.IMap2d;
+import ptrman.Datastructures.IntMap2d;
 
 public enum Map2dConverter {
 	;
 
 	public static void booleanToFloat(final IMap2d<Boolean> i, IMap2d<Float> o) {
+        final IBoolMap2d input = toBoolMap(i);
         int H = i.getLength();
         int W = i.getWidth();
+
+        if( o instanceof IFloatMap2d ) {
+            final IFloatMap2d output = (IFloatMap2d)o;
+            for(int iy = 0; iy < H; iy++ ) {
+                final float[] outputRow = output.row(iy);
+                final int outputOffset = output.rowOffset(iy);
+                for(int ix = 0; ix < W; ix++ ) {
+                    outputRow[outputOffset + ix] = convertBooleanToFloat(input.get(ix, iy));
+                }
+            }
+            return;
+        }
+
         for(int iy = 0; iy < H; iy++ ) {
             for(int ix = 0; ix < W; ix++ ) {
-                o.setAt(ix, iy, convertBooleanToFloat(i.readAt(ix, iy)));
+                o.setAt(ix, iy, convertBooleanToFloat(input.get(ix, iy)));
             }
         }
     }
 
     public static void floatToBoolean(final IMap2d<Float> i, IMap2d<Boolean> o, final float threshold) {
+        final IFloatMap2d input = toFloatMap(i);
         int H = i.getLength();
         int W = i.getWidth();
+
+        if( o instanceof IBoolMap2d ) {
+            final IBoolMap2d output = (IBoolMap2d)o;
+            for(int iy = 0; iy < H; iy++ ) {
+                final float[] inputRow = input.row(iy);
+                final int inputOffset = input.rowOffset(iy);
+                for(int ix = 0; ix < W; ix++ ) {
+                    output.set(ix, iy, floatAboveThreshold(inputRow[inputOffset + ix], threshold));
+                }
+            }
+            return;
+        }
+
         for(int iy = 0; iy < H; iy++ ) {
+            final float[] inputRow = input.row(iy);
+            final int inputOffset = input.rowOffset(iy);
             for(int ix = 0; ix < W; ix++ ) {
-                o.setAt(ix, iy, floatAboveThreshold(i.readAt(ix, iy), threshold));
+                o.setAt(ix, iy, floatAboveThreshold(inputRow[inputOffset + ix], threshold));
+            }
+        }
+    }
+
+    /**
+     * \return the map if it has unboxed access, else a copy with unboxed access
+     */
+    public static IFloatMap2d toFloatMap(final IMap2d<Float> map) {
+        if( map instanceof IFloatMap2d ) {
+            return (IFloatMap2d)map;
+        }
+
+        FloatMap2d result = new FloatMap2d(map.getWidth(), map.getLength());
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                result.set(x, y, map.readAt(x, y));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * \return the map if it has unboxed access, else a copy with unboxed access where unset values are false
+     */
+    public static IBoolMap2d toBoolMap(final IMap2d<Boolean> map) {
+        if( map instanceof IBoolMap2d ) {
+            return (IBoolMap2d)map;
+        }
+
+        BoolMap2d result = new BoolMap2d(map.getWidth(), map.getLength());
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                result.set(x, y, Boolean.TRUE.equals(map.readAt(x, y)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * \return copy of the map with unboxed access where unset values are false
+     */
+    public static IBoolMap2d copyAsBoolMap(final IMap2d<Boolean> map) {
+        return map instanceof IBoolMap2d ? ((IBoolMap2d)map).copy() : toBoolMap(map);
+    }
+
+    /**
+     * copies the map into target if it has the same size
+     *
+     * \param target map of a previous copy, can be null
+     * \return target or a new copy if target is null or of another size
+     */
+    public static IBoolMap2d copyAsBoolMap(final IMap2d<Boolean> map, final BoolMap2d target) {
+        if( target == null || target.getWidth() != map.getWidth() || target.getLength() != map.getLength() ) {
+            return copyAsBoolMap(map);
+        }
+
+        if( map instanceof BoolMap2d ) {
+            System.arraycopy(((BoolMap2d)map).data, 0, target.data, 0, target.data.length);
+            return target;
+        }
+
+        final IBoolMap2d input = toBoolMap(map);
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                target.set(x, y, input.get(x, y));
+            }
+        }
+        return target;
+    }
+
+    /**
+     * \return the map if it has unboxed access, else a copy with unboxed access where unset values are 0
+     */
+    public static IIntMap2d toIntMap(final IMap2d<Integer> map) {
+        if( map instanceof IIntMap2d ) {
+            return (IIntMap2d)map;
+        }
+
+        IntMap2d result = new IntMap2d(map.getWidth(), map.getLength());
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                final Integer value = map.readAt(x, y);
+                result.set(x, y, value != null ? value : 0);
             }
         }
+        return result;
     }
 
     private static float convertBooleanToFloat(final boolean value) {
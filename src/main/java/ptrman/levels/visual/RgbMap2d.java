@@ -0,0 +1,93 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.levels.visual;
+
+import ptrman.Datastructures.IMap2d;
+import ptrman.misc.Assert;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * map of packed rgb values, stored row major in one array
+ *
+ * is used as a buffer of the pixels of images of the same size, so a color map isn't allocated for each image
+ */
+public class RgbMap2d implements IMap2d<ColorRgb> {
+    public final int[] data; // the packed rgb value at x, y is at x + y*width
+
+    public RgbMap2d(int width, int length) {
+        this.width = width;
+        this.length = length;
+        this.data = new int[width * length];
+    }
+
+    /**
+     * copies the pixels of the image, the image must have the size of the map
+     */
+    public void setFromImage(final BufferedImage image) {
+        Assert.Assert(image.getWidth() == width && image.getHeight() == length, "image must have the size of the map");
+
+        final boolean isPacked = image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB;
+        if( isPacked && image.getRaster().getDataBuffer() instanceof DataBufferInt && image.getRaster().getDataBuffer().getSize() == data.length ) {
+            System.arraycopy(((DataBufferInt)image.getRaster().getDataBuffer()).getData(), 0, data, 0, data.length);
+            return;
+        }
+
+        image.getRGB(0, 0, width, length, data, 0, width);
+    }
+
+    /**
+     * \return packed rgb value, doesn't allocate a color
+     */
+    public int readRgbAt(int x, int y) {
+        return data[x + y * width];
+    }
+
+    @Override
+    public ColorRgb readAt(int x, int y) {
+        return new ColorRgb(readRgbAt(x, y));
+    }
+
+    @Override
+    public void setAt(int x, int y, ColorRgb value) {
+        data[x + y * width] = (convertChannelToInt(value.r) << 16) | (convertChannelToInt(value.g) << 8) | convertChannelToInt(value.b);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(data, 0);
+    }
+
+    @Override
+    public RgbMap2d copy() {
+        RgbMap2d result = new RgbMap2d(width, length);
+        System.arraycopy(data, 0, result.data, 0, data.length);
+        return result;
+    }
+
+    private static int convertChannelToInt(final float value) {
+        return Math.max(0, Math.min(255, Math.round(value * 255.0f)));
+    }
+
+    private final int width;
+    private final int length;
+}
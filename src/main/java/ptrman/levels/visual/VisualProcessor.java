@@ -121,9 +121,34 @@ public class VisualProcessor
 
             @Override
             public void apply(IMap2d<ColorRgb> input, IMap2d<Float> output) {
+                if( input instanceof RgbMap2d && output instanceof IFloatMap2d ) {
+                    applyUnboxed((RgbMap2d)input, (IFloatMap2d)output);
+                    return;
+                }
+
                 Map2dMapper.map(new ConvertToGrayImageMap2dMapperFunction(colorToGrayColorScale), input, output);
             }
 
+            /**
+             * same result as ColorRgb.getScaledNormalizedMagnitude() without allocating a color and a boxed value for each pixel
+             */
+            private void applyUnboxed(RgbMap2d input, IFloatMap2d output) {
+                final float scaleSum = colorToGrayColorScale.r + colorToGrayColorScale.g + colorToGrayColorScale.b;
+
+                for( int y = 0; y < input.getLength(); y++ ) {
+                    final float[] outputRow = output.row(y);
+                    final int outputOffset = output.rowOffset(y);
+
+                    for( int x = 0; x < input.getWidth(); x++ ) {
+                        final int rgb = input.readRgbAt(x, y);
+                        final float r = (float)((rgb >> 16) & 255) / 255.0f;
+                        final float g = (float)((rgb >> 8) & 255) / 255.0f;
+                        final float b = (float)(rgb & 255) / 255.0f;
+                        outputRow[outputOffset + x] = (r*colorToGrayColorScale.r + g*colorToGrayColorScale.g + b*colorToGrayColorScale.b) / scaleSum;
+                    }
+                }
+            }
+
             private final ColorRgb colorToGrayColorScale;
         }
 
@@ -193,6 +218,11 @@ public class VisualProcessor
             public ChainElementColorFloat(IFilter<ColorRgb, Float> filter, String meterName, Vector2d<Integer> imageSize) {
                 super(EnumMapType.COLOR, EnumMapType.FLOAT, meterName, imageSize, filter);
             }
+
+            @Override
+            protected IMap2d<Float> newResultMap(int w, int h) {
+                return new FloatMap2d(w, h);
+            }
         }
 
 
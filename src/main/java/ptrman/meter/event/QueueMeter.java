@@ -0,0 +1,63 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.meter.event;
+
+
+import ptrman.meter.FunctionMeter;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Samples the occupancy of a queue and the number of elements which were
+ * enqueued and dequeued since the previous sample, which is the throughput per sample
+ */
+public class QueueMeter extends FunctionMeter<Long> {
+
+    private final LongSupplier occupancy;
+    private final LongSupplier enqueuedCount;
+    private final LongSupplier dequeuedCount;
+
+    private long lastEnqueuedCount;
+    private long lastDequeuedCount;
+
+    /**
+     * @param enqueuedCount number of enqueued elements since the creation of the queue
+     * @param dequeuedCount number of dequeued elements since the creation of the queue
+     */
+    public QueueMeter(String id, LongSupplier occupancy, LongSupplier enqueuedCount, LongSupplier dequeuedCount) {
+        super(id, true, "occupancy", "enqueued", "dequeued");
+        this.occupancy = occupancy;
+        this.enqueuedCount = enqueuedCount;
+        this.dequeuedCount = dequeuedCount;
+
+        lastEnqueuedCount = enqueuedCount.getAsLong();
+        lastDequeuedCount = dequeuedCount.getAsLong();
+    }
+
+    @Override
+    protected Long getValue(Object key, int index) {
+        switch (index) {
+            case 0: return occupancy.getAsLong();
+            case 1: {
+                long c = enqueuedCount.getAsLong();
+                long delta = c - lastEnqueuedCount;
+                lastEnqueuedCount = c;
+                return delta;
+            }
+            case 2: {
+                long c = dequeuedCount.getAsLong();
+                long delta = c - lastDequeuedCount;
+                lastDequeuedCount = c;
+                return delta;
+            }
+        }
+        return null;
+    }
+}
@@ -9,14 +9,17 @@
  */
 package ptrman.misc;
 
+import ptrman.Datastructures.IFloatMap2d;
 import ptrman.Datastructures.IMap2d;
-import ptrman.Datastructures.Map2d;
+import ptrman.levels.visual.FloatMap2d;
+
+import static ptrman.levels.visual.Map2dConverter.toFloatMap;
 
 public enum GaussianBlur
 {
 	;
 
-	public static IMap2d<Float> blur(int radius, IMap2d<Float> input)
+	public static IFloatMap2d blur(int radius, IMap2d<Float> input)
     {
 		int i;
         int di;
@@ -36,19 +39,21 @@ public enum GaussianBlur
             kernel[radius - 1 - di] = normalizedResult;
         }
 
-		IMap2d<Float> resultMap = new Map2d<>(input.getWidth(), input.getLength());
-		IMap2d<Float> tempMap = new Map2d<>(input.getWidth(), input.getLength());
-        blurX(input, tempMap, kernel);
+		FloatMap2d resultMap = new FloatMap2d(input.getWidth(), input.getLength());
+		FloatMap2d tempMap = new FloatMap2d(input.getWidth(), input.getLength());
+        blurX(toFloatMap(input), tempMap, kernel);
         blurY(tempMap, resultMap, kernel);
         return resultMap;
     }
 
-    public static void blurX(IMap2d<Float> input, IMap2d<Float> output, float[] kernel)
+    public static void blurX(IFloatMap2d input, IFloatMap2d output, float[] kernel)
     {
         int x, y;
         int radius = 1 + (kernel.length - 1) / 2;
         for (y = 0;y < input.getLength();y++)
         {
+            final float[] inputRow = input.row(y);
+            final int inputOffset = input.rowOffset(y);
             for (x = 0;x < input.getWidth();x++)
             {
                 int ir;
@@ -60,14 +65,14 @@ public enum GaussianBlur
                         continue;
                     }
                      
-                    temp += (input.readAt(x + ir, y) * kernel[radius + ir]);
+                    temp += (inputRow[inputOffset + x + ir] * kernel[radius + ir]);
                 }
-                output.setAt(x, y, temp);
+                output.set(x, y, temp);
             }
         }
     }
 
-    public static void blurY(IMap2d<Float> input, IMap2d<Float> output, float[] kernel)
+    public static void blurY(IFloatMap2d input, IFloatMap2d output, float[] kernel)
     {
         int x, y;
         int radius = 1 + (kernel.length - 1) / 2;
@@ -85,9 +90,9 @@ public enum GaussianBlur
                         continue;
                     }
                      
-                    temp += (input.readAt(x, y + ir) * kernel[radius + ir]);
+                    temp += (input.get(x, y + ir) * kernel[radius + ir]);
                 }
-                output.setAt(x, y, temp);
+                output.set(x, y, temp);
             }
         }
     }
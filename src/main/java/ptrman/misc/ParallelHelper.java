@@ -0,0 +1,100 @@
+/**
+ * Copyright 2019 The SymVision authors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ptrman.misc;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public enum ParallelHelper {
+	;
+
+    /**
+     * executes all tasks and waits until all are done
+     *
+     * an exception of a task is rethrown as a RuntimeException
+     */
+    public static void invokeAllAndWait(final ExecutorService executor, final List<? extends Callable<Void>> tasks) {
+        try {
+            for( final Future<Void> iterationFuture : executor.invokeAll(tasks) ) {
+                iterationFuture.get(); // rethrows exceptions of the task
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * \return the executor or the common ForkJoinPool if it is null
+     */
+    public static ExecutorService getExecutorOrDefault(final ExecutorService executor) {
+        return executor != null ? executor : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * \return first index of the part if size elements are split into numberOfParts nearly equal parts
+     */
+    public static int calcPartBegin(final int size, final int numberOfParts, final int partIndex) {
+        return (int)((long)size * partIndex / numberOfParts);
+    }
+
+    /**
+     * distributes the items to the parts, the largest items are distributed first, each to the part with the smallest sum of sizes
+     *
+     * the largest item bounds the time of its part, so the parts finish in nearly the same time if there are enough small items
+     *
+     * \param sizes estimated work of the items
+     * \return indices of the items of each part, ordered by the size descending and by the index for equal sizes
+     */
+    public static int[][] distributeLargestFirst(final int[] sizes, final int numberOfParts) {
+        Assert.Assert(numberOfParts >= 1, "at least one part is required");
+
+        Integer[] indicesBySize = new Integer[sizes.length];
+        for( int i = 0; i < sizes.length; i++ ) {
+            indicesBySize[i] = i;
+        }
+        Arrays.sort(indicesBySize, (a, b) -> Integer.compare(sizes[b], sizes[a])); // stable, so equal sizes stay ordered by the index
+
+        IntArrayList[] indicesOfParts = new IntArrayList[numberOfParts];
+        long[] sumOfSizesOfParts = new long[numberOfParts];
+        for( int partI = 0; partI < numberOfParts; partI++ ) {
+            indicesOfParts[partI] = new IntArrayList();
+        }
+
+        for( final int iterationIndex : indicesBySize ) {
+            int smallestPartI = 0;
+            for( int partI = 1; partI < numberOfParts; partI++ ) {
+                if( sumOfSizesOfParts[partI] < sumOfSizesOfParts[smallestPartI] ) {
+                    smallestPartI = partI;
+                }
+            }
+
+            indicesOfParts[smallestPartI].add(iterationIndex);
+            sumOfSizesOfParts[smallestPartI] += sizes[iterationIndex];
+        }
+
+        int[][] result = new int[numberOfParts][];
+        for( int partI = 0; partI < numberOfParts; partI++ ) {
+            result[partI] = indicesOfParts[partI].toArray();
+        }
+        return result;
+    }
+}
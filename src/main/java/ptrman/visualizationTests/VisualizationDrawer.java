@@ -201,7 +201,8 @@ public class VisualizationDrawer {
         }
 
         // * draw primitives for endoskeleton
-        for(RetinaPrimitive iLinePrimitive : solver.cntrFinalProcessing.out) {
+        for(int lineI = 0; lineI < solver.cntrFinalProcessing.out.size(); lineI++) {
+            RetinaPrimitive iLinePrimitive = solver.cntrFinalProcessing.out.get(lineI);
             applet.stroke(255.0f, 255.0f, 255.0f);
 
             double x0 = iLinePrimitive.line.a.getDataRef()[0];
@@ -214,9 +215,14 @@ public class VisualizationDrawer {
             // draw intersections as small triangles
             applet.stroke(255.0f, 0.0f, 0.0f);
 
-            for (Intersection iIntersection : iLinePrimitive.line.intersections) {
-                int x = (int)iIntersection.intersectionPosition.getDataRef()[0];
-                int y = (int)iIntersection.intersectionPosition.getDataRef()[1];
+            // the graph is null before the first frame was intersected
+            if (solver.intersectionGraph == null) {
+                continue;
+            }
+
+            for (int entryI = solver.intersectionGraph.getEntriesBegin(lineI); entryI < solver.intersectionGraph.getEntriesEnd(lineI); entryI++) {
+                int x = (int)solver.intersectionGraph.getPositionX(entryI);
+                int y = (int)solver.intersectionGraph.getPositionY(entryI);
 
                 applet.line(x,y-1,x-1,y+1);
                 applet.line(x,y-1,x+1,y+1);
@@ -0,0 +1,150 @@
+package ptrman.Algorithms;
+
+import org.junit.Test;
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.Datastructures.IntMap2d;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConnectedComponentLabelingTest {
+    @Test
+    public void labelsCompareToBreadthFirstFill() {
+        final Random random = new Random(42);
+
+        BoolMap2d image = new BoolMap2d(70, 50);
+        for( int y = 0; y < 50; y++ ) {
+            for( int x = 0; x < 70; x++ ) {
+                image.set(x, y, random.nextInt(10) < 5);
+            }
+        }
+
+        for( final boolean cross : new boolean[]{false, true} ) {
+            IntMap2d expectedLabels = labelBreadthFirst(image, cross);
+
+            ConnectedComponentLabeling labeling = new ConnectedComponentLabeling(70, 50);
+            labeling.label(image, cross);
+            assertLabelingEquals(expectedLabels, labeling);
+        }
+    }
+
+    @Test
+    public void parallelEqualsSequential() {
+        final Random random = new Random(43);
+
+        BoolMap2d image = new BoolMap2d(61, 47);
+        for( int y = 0; y < 47; y++ ) {
+            for( int x = 0; x < 61; x++ ) {
+                image.set(x, y, random.nextInt(10) < 6);
+            }
+        }
+
+        for( final boolean cross : new boolean[]{false, true} ) {
+            ConnectedComponentLabeling sequential = new ConnectedComponentLabeling(61, 47);
+            sequential.label(image, cross);
+
+            for( final int numberOfParts : new int[]{2, 3, 7, 60} ) {
+                ConnectedComponentLabeling parallel = new ConnectedComponentLabeling(61, 47);
+                parallel.label(image, cross, ForkJoinPool.commonPool(), numberOfParts);
+
+                assertEquals(sequential.getNumberOfComponents(), parallel.getNumberOfComponents());
+                for( int i = 0; i < sequential.getLabels().data.length; i++ ) {
+                    assertEquals(sequential.getLabels().data[i], parallel.getLabels().data[i]);
+                }
+                for( int componentI = 0; componentI < sequential.getNumberOfComponents(); componentI++ ) {
+                    assertEquals(sequential.getPixelCount(componentI), parallel.getPixelCount(componentI));
+                    assertEquals(sequential.getMinX(componentI), parallel.getMinX(componentI));
+                    assertEquals(sequential.getMinY(componentI), parallel.getMinY(componentI));
+                    assertEquals(sequential.getMaxX(componentI), parallel.getMaxX(componentI));
+                    assertEquals(sequential.getMaxY(componentI), parallel.getMaxY(componentI));
+                }
+            }
+        }
+    }
+
+    private static void assertLabelingEquals(IntMap2d expectedLabels, ConnectedComponentLabeling labeling) {
+        int numberOfComponents = 0;
+        for( final int label : expectedLabels.data ) {
+            numberOfComponents = Math.max(numberOfComponents, label + 1);
+        }
+        assertEquals(numberOfComponents, labeling.getNumberOfComponents());
+
+        for( int componentI = 0; componentI < numberOfComponents; componentI++ ) {
+            int pixelCount = 0;
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+
+            for( int y = 0; y < expectedLabels.getLength(); y++ ) {
+                for( int x = 0; x < expectedLabels.getWidth(); x++ ) {
+                    assertEquals(expectedLabels.get(x, y), labeling.getLabels().get(x, y));
+
+                    if( expectedLabels.get(x, y) == componentI ) {
+                        pixelCount++;
+                        minX = Math.min(minX, x);
+                        minY = Math.min(minY, y);
+                        maxX = Math.max(maxX, x);
+                        maxY = Math.max(maxY, y);
+                    }
+                }
+            }
+
+            assertEquals(pixelCount, labeling.getPixelCount(componentI));
+            assertEquals(minX, labeling.getMinX(componentI));
+            assertEquals(minY, labeling.getMinY(componentI));
+            assertEquals(maxX, labeling.getMaxX(componentI));
+            assertEquals(maxY, labeling.getMaxY(componentI));
+        }
+    }
+
+    // labels the components in raster order of their first pixel
+    private static IntMap2d labelBreadthFirst(BoolMap2d image, boolean cross) {
+        final int width = image.getWidth();
+        final int length = image.getLength();
+
+        IntMap2d labels = new IntMap2d(width, length);
+        Arrays.fill(labels.data, -1);
+
+        int nextLabel = 0;
+        for( int startY = 0; startY < length; startY++ ) {
+            for( int startX = 0; startX < width; startX++ ) {
+                if( !image.get(startX, startY) || labels.get(startX, startY) != -1 ) {
+                    continue;
+                }
+
+                final int label = nextLabel++;
+
+                Deque<int[]> queue = new ArrayDeque<>();
+                queue.add(new int[]{startX, startY});
+                labels.set(startX, startY, label);
+
+                while( !queue.isEmpty() ) {
+                    final int[] position = queue.poll();
+
+                    for( int dy = -1; dy <= 1; dy++ ) {
+                        for( int dx = -1; dx <= 1; dx++ ) {
+                            if( (dx == 0 && dy == 0) || (!cross && dx != 0 && dy != 0) ) {
+                                continue;
+                            }
+
+                            final int x = position[0] + dx;
+                            final int y = position[1] + dy;
+                            if( x < 0 || y < 0 || x >= width || y >= length || !image.get(x, y) || labels.get(x, y) != -1 ) {
+                                continue;
+                            }
+
+                            labels.set(x, y, label);
+                            queue.add(new int[]{x, y});
+                        }
+                    }
+                }
+            }
+        }
+
+        return labels;
+    }
+}
@@ -0,0 +1,81 @@
+package ptrman.Algorithms;
+
+import org.junit.Test;
+import ptrman.Datastructures.FastBooleanMap2d;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DistanceTransformTest {
+    @Test
+    public void compareToBruteForce() {
+        final Random random = new Random(42);
+
+        FastBooleanMap2d map = new FastBooleanMap2d(64, 37);
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                map.setAt(x, y, random.nextFloat() > 0.03f);
+            }
+        }
+
+        DistanceTransform distanceTransform = new DistanceTransform(map.getWidth(), map.getLength());
+        distanceTransform.calculate(map, false);
+
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                assertEquals(calcSquaredDistanceBruteForce(map, x, y), distanceTransform.readSquaredDistanceAt(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void parallelEqualsSequential() {
+        final Random random = new Random(43);
+
+        FastBooleanMap2d map = new FastBooleanMap2d(192, 71);
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                map.setAt(x, y, random.nextFloat() > 0.01f);
+            }
+        }
+
+        DistanceTransform sequential = new DistanceTransform(map.getWidth(), map.getLength());
+        sequential.calculate(map, false);
+
+        DistanceTransform parallel = new DistanceTransform(map.getWidth(), map.getLength());
+        parallel.calculate(map, false, ForkJoinPool.commonPool(), 5);
+
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                assertEquals(sequential.readSquaredDistanceAt(x, y), parallel.readSquaredDistanceAt(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void noPixelFound() {
+        FastBooleanMap2d map = new FastBooleanMap2d(64, 8);
+
+        DistanceTransform distanceTransform = new DistanceTransform(map.getWidth(), map.getLength());
+        distanceTransform.calculate(map, true);
+
+        assertFalse(distanceTransform.isDistanceValidAt(5, 5));
+    }
+
+    private static int calcSquaredDistanceBruteForce(FastBooleanMap2d map, int px, int py) {
+        int best = Integer.MAX_VALUE;
+
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                if( !map.readAt(x, y) ) {
+                    best = Math.min(best, (x-px)*(x-px) + (y-py)*(y-py));
+                }
+            }
+        }
+
+        return best;
+    }
+}
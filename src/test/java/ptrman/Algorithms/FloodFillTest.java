@@ -0,0 +1,80 @@
+package ptrman.Algorithms;
+
+import org.junit.Test;
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.Datastructures.Vector2d;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FloodFillTest {
+    @Test
+    public void scanlineFillComparesToBreadthFirstFill() {
+        final Random random = new Random(42);
+
+        BoolMap2d image = new BoolMap2d(70, 50);
+        for( int y = 0; y < 50; y++ ) {
+            for( int x = 0; x < 70; x++ ) {
+                image.set(x, y, random.nextInt(10) < 6);
+            }
+        }
+
+        for( final boolean cross : new boolean[]{false, true} ) {
+            for( int trial = 0; trial < 20; trial++ ) {
+                final int startX = random.nextInt(70);
+                final int startY = random.nextInt(50);
+
+                BoolMap2d expected = fillBreadthFirst(image, startX, startY, cross);
+
+                BoolMap2d filled = image.copy();
+                BoolMap2d reported = new BoolMap2d(70, 50);
+                FloodFill.fill(filled, new Vector2d<>(startX, startY), Boolean.TRUE, Boolean.FALSE, cross, position -> {
+                    assertTrue(!reported.get(position.x, position.y)); // each pixel is reported once
+                    reported.set(position.x, position.y, true);
+                });
+
+                for( int y = 0; y < 50; y++ ) {
+                    for( int x = 0; x < 70; x++ ) {
+                        assertEquals(expected.get(x, y), reported.get(x, y));
+                        assertEquals(image.get(x, y) && !expected.get(x, y), filled.get(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    private static BoolMap2d fillBreadthFirst(BoolMap2d image, int startX, int startY, boolean cross) {
+        BoolMap2d result = new BoolMap2d(image.getWidth(), image.getLength());
+        if( !image.get(startX, startY) ) {
+            return result;
+        }
+
+        Deque<int[]> queue = new ArrayDeque<>();
+        queue.add(new int[]{startX, startY});
+        result.set(startX, startY, true);
+
+        while( !queue.isEmpty() ) {
+            final int[] position = queue.poll();
+            for( int dy = -1; dy <= 1; dy++ ) {
+                for( int dx = -1; dx <= 1; dx++ ) {
+                    if( (dx == 0 && dy == 0) || (!cross && dx != 0 && dy != 0) ) {
+                        continue;
+                    }
+
+                    final int x = position[0] + dx;
+                    final int y = position[1] + dy;
+                    if( image.inBounds(x, y) && image.get(x, y) && !result.get(x, y) ) {
+                        result.set(x, y, true);
+                        queue.add(new int[]{x, y});
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+package ptrman.Datastructures;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrimitiveMap2dTest {
+    @Test
+    public void boolMapsReadWhatWasWrittenAndCopyIndependently() {
+        for( final IBoolMap2d map : new IBoolMap2d[]{new BoolMap2d(70, 9), new FastBooleanMap2d(128, 9)} ) {
+            boolean[][] expected = new boolean[map.getLength()][map.getWidth()];
+            Random random = new Random(3);
+            for( int y = 0; y < map.getLength(); y++ ) {
+                for( int x = 0; x < map.getWidth(); x++ ) {
+                    expected[y][x] = random.nextBoolean();
+                    map.set(x, y, expected[y][x]);
+                }
+            }
+
+            IBoolMap2d copy = map.copy();
+            map.clear();
+
+            for( int y = 0; y < map.getLength(); y++ ) {
+                for( int x = 0; x < map.getWidth(); x++ ) {
+                    assertFalse(map.get(x, y));
+                    assertEquals(expected[y][x], copy.get(x, y));
+                    assertEquals(expected[y][x], copy.readAt(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void intMapRowAccessMatchesGet() {
+        IntMap2d map = new IntMap2d(13, 7);
+        for( int y = 0; y < map.getLength(); y++ ) {
+            for( int x = 0; x < map.getWidth(); x++ ) {
+                map.set(x, y, x * 100 + y);
+            }
+        }
+
+        IntMap2d copy = map.copy();
+        map.clear();
+
+        for( int y = 0; y < copy.getLength(); y++ ) {
+            final int[] row = copy.row(y);
+            final int offset = copy.rowOffset(y);
+            for( int x = 0; x < copy.getWidth(); x++ ) {
+                assertEquals(x * 100 + y, row[offset + x]);
+                assertEquals(Integer.valueOf(x * 100 + y), copy.readAt(x, y));
+                assertEquals(0, map.get(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void roundedUpCopyReusesTargetOfSameSize() {
+        BoolMap2d map = new BoolMap2d(70, 5);
+        map.set(69, 4, true);
+        map.set(3, 0, true);
+
+        FastBooleanMap2d copy = FastBooleanMap2d.createRoundedUpCopy(map);
+        assertEquals(128, copy.getWidth());
+
+        // stale values of the target are cleared
+        copy.set(100, 2, true);
+        map.set(3, 0, false);
+        assertTrue(FastBooleanMap2d.createRoundedUpCopy(map, copy) == copy);
+
+        for( int y = 0; y < copy.getLength(); y++ ) {
+            for( int x = 0; x < copy.getWidth(); x++ ) {
+                assertEquals(x == 69 && y == 4, copy.get(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ptrman.Datastructures;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SpatialGridIndexTest {
+    @Test
+    public void nearestCompareToBruteForce() {
+        final Random random = new Random(42);
+
+        final int numberOfPoints = 300;
+        int[] xs = new int[numberOfPoints];
+        int[] ys = new int[numberOfPoints];
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            xs[i] = random.nextInt(100);
+            ys[i] = random.nextInt(70);
+        }
+
+        SpatialGridIndex index = new SpatialGridIndex(100, 70, 8);
+        index.build(xs, ys, null, numberOfPoints);
+
+        SpatialGridIndex.NeighborHeap heap = new SpatialGridIndex.NeighborHeap(8);
+
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            index.queryNearest(xs[i], ys[i], i, false, heap);
+
+            double[] bruteForceDistances = new double[numberOfPoints - 1];
+            int bruteForceI = 0;
+            for( int j = 0; j < numberOfPoints; j++ ) {
+                if( j != i ) {
+                    bruteForceDistances[bruteForceI++] = Math.sqrt((xs[j]-xs[i])*(xs[j]-xs[i]) + (ys[j]-ys[i])*(ys[j]-ys[i]));
+                }
+            }
+            Arrays.sort(bruteForceDistances);
+
+            assertEquals(8, heap.size());
+
+            double[] distances = new double[heap.size()];
+            for( int heapI = 0; heapI < heap.size(); heapI++ ) {
+                distances[heapI] = heap.distanceAt(heapI);
+            }
+            Arrays.sort(distances);
+
+            assertArrayEquals(Arrays.copyOf(bruteForceDistances, 8), distances, 0.0);
+        }
+    }
+
+    @Test
+    public void radiusCompareToBruteForce() {
+        final Random random = new Random(43);
+
+        final int numberOfPoints = 200;
+        int[] xs = new int[numberOfPoints];
+        int[] ys = new int[numberOfPoints];
+        boolean[] enabled = new boolean[numberOfPoints];
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            xs[i] = random.nextInt(64);
+            ys[i] = random.nextInt(64);
+            enabled[i] = random.nextBoolean();
+        }
+
+        SpatialGridIndex index = new SpatialGridIndex(64, 64, 5);
+        index.build(xs, ys, enabled, numberOfPoints);
+
+        IntArrayList result = new IntArrayList();
+        index.queryRadius(30.5, 20.0, 11.0, result);
+
+        IntArrayList expected = new IntArrayList();
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            final double dx = xs[i] - 30.5;
+            final double dy = ys[i] - 20.0;
+            if( enabled[i] && dx*dx + dy*dy <= 11.0*11.0 ) {
+                expected.add(i);
+            }
+        }
+
+        assertArrayEquals(expected.toSortedArray(), result.toSortedArray());
+    }
+
+    @Test
+    public void nearLineCompareToBruteForce() {
+        final Random random = new Random(44);
+
+        final int numberOfPoints = 500;
+        int[] xs = new int[numberOfPoints];
+        int[] ys = new int[numberOfPoints];
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            xs[i] = random.nextInt(80);
+            ys[i] = random.nextInt(60);
+        }
+
+        SpatialGridIndex index = new SpatialGridIndex(80, 60, 8);
+        index.build(xs, ys, null, numberOfPoints);
+
+        for( final double m : new double[]{0.0, 0.4, -1.5, 7.0} ) {
+            final double n = 12.0;
+            final double maxDistance = 3.0;
+
+            IntArrayList result = new IntArrayList();
+            index.queryNearLine(m, n, maxDistance, result);
+
+            IntArrayList expected = new IntArrayList();
+            for( int i = 0; i < numberOfPoints; i++ ) {
+                if( Math.abs(m * xs[i] - ys[i] + n) / Math.sqrt(1.0 + m*m) <= maxDistance ) {
+                    expected.add(i);
+                }
+            }
+
+            assertArrayEquals(expected.toSortedArray(), result.toSortedArray());
+        }
+    }
+
+    @Test
+    public void insertAndRemoveCompareToBruteForce() {
+        final Random random = new Random(45);
+
+        final int numberOfPoints = 300;
+        int[] xs = new int[numberOfPoints];
+        int[] ys = new int[numberOfPoints];
+        boolean[] enabled = new boolean[numberOfPoints];
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            xs[i] = random.nextInt(64);
+            ys[i] = random.nextInt(64);
+            enabled[i] = i < numberOfPoints / 2;
+        }
+
+        SpatialGridIndex index = new SpatialGridIndex(64, 64, 8);
+        index.build(xs, ys, enabled, numberOfPoints);
+
+        // points are removed and moved to another position before they are inserted again
+        for( int iteration = 0; iteration < 2000; iteration++ ) {
+            final int i = random.nextInt(numberOfPoints);
+            if( enabled[i] ) {
+                index.remove(i);
+                enabled[i] = false;
+                xs[i] = random.nextInt(64);
+                ys[i] = random.nextInt(64);
+            }
+            else {
+                index.insert(xs, ys, i);
+                enabled[i] = true;
+            }
+        }
+
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            assertEquals(enabled[i], index.contains(i));
+        }
+
+        IntArrayList result = new IntArrayList();
+        index.queryRadius(30.5, 20.0, 15.0, result);
+
+        IntArrayList expected = new IntArrayList();
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            final double dx = xs[i] - 30.5;
+            final double dy = ys[i] - 20.0;
+            if( enabled[i] && dx*dx + dy*dy <= 15.0*15.0 ) {
+                expected.add(i);
+            }
+        }
+
+        assertArrayEquals(expected.toSortedArray(), result.toSortedArray());
+
+        SpatialGridIndex.NeighborHeap heap = new SpatialGridIndex.NeighborHeap(4);
+        index.queryNearest(10, 50, -1, false, heap);
+
+        double[] bruteForceDistances = new double[numberOfPoints];
+        int numberOfEnabled = 0;
+        for( int i = 0; i < numberOfPoints; i++ ) {
+            if( enabled[i] ) {
+                bruteForceDistances[numberOfEnabled++] = Math.sqrt((xs[i]-10)*(xs[i]-10) + (ys[i]-50)*(ys[i]-50));
+            }
+        }
+        bruteForceDistances = Arrays.copyOf(bruteForceDistances, numberOfEnabled);
+        Arrays.sort(bruteForceDistances);
+
+        double[] distances = new double[heap.size()];
+        for( int heapI = 0; heapI < heap.size(); heapI++ ) {
+            distances[heapI] = heap.distanceAt(heapI);
+        }
+        Arrays.sort(distances);
+
+        assertArrayEquals(Arrays.copyOf(bruteForceDistances, 4), distances, 0.0);
+    }
+}
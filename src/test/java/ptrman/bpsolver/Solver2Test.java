@@ -0,0 +1,285 @@
+package ptrman.bpsolver;
+
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.junit.Test;
+import ptrman.levels.retina.LineDetectorWithMultiplePoints;
+import ptrman.levels.retina.ProcessA;
+import ptrman.levels.retina.ProcessD;
+import ptrman.levels.retina.RetinaPrimitive;
+import ptrman.levels.retina.SampleBuffer;
+import ptrman.levels.retina.helper.ProcessPipeline;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class Solver2Test {
+    // only the samples of the changed block are sampled again, the result is the same as if all samples were processed again
+    @Test
+    public void temporalSamplingEqualsFullProcessingOfSamples() {
+        Solver2 solver = new Solver2();
+        solver.setSeed(3);
+        solver.temporalSampling = true;
+
+        ProcessPipeline<Solver2.Frame> pipeline = solver.createPipeline(1, 2);
+
+        final BufferedImage image = drawImage();
+        final Solver2.Frame frame = processFrame(solver, pipeline, image);
+        final SampleBuffer sampleBuffer = frame.sampleBufferEndosceleton;
+
+        int firstSampleId = 0;
+        while( !sampleBuffer.isAlive(firstSampleId) ) {
+            firstSampleId++;
+        }
+        final int blockX = sampleBuffer.x[firstSampleId] / 4;
+        final int blockY = sampleBuffer.y[firstSampleId] / 4;
+
+        // the block is cleared and restored in turns
+        final BufferedImage[] images = new BufferedImage[]{image, clearBlock(image, blockX, blockY)};
+
+        int numberOfAddedSamples = 0;
+        int numberOfChangedKeptSamples = 0;
+        for( int frameI = 1; frameI <= 8; frameI++ ) {
+            boolean[] wasInBlock = new boolean[sampleBuffer.size()];
+            float[] altitudesOfLastFrame = Arrays.copyOf(sampleBuffer.altitude, sampleBuffer.size());
+            int numberOfSamplesInBlock = 0;
+            for( int i = 0; i < sampleBuffer.size(); i++ ) {
+                if( sampleBuffer.isAlive(i) ) {
+                    wasInBlock[i] = sampleBuffer.x[i] / 4 == blockX && sampleBuffer.y[i] / 4 == blockY;
+                    numberOfSamplesInBlock += wasInBlock[i] ? 1 : 0;
+                }
+            }
+
+            Set<ProcessA.Sample> samplesOfLastFrame = Collections.newSetFromMap(new IdentityHashMap<>());
+            samplesOfLastFrame.addAll(frame.connectorSamplesForEndosceleton.getOut());
+
+            solver.releaseFrame(frame);
+            assertSame(frame, processFrame(solver, pipeline, images[frameI % 2]));
+
+            final ProcessA processA = frame.processA;
+            assertTrue(processA.isSampleDeltaOfPreviousFrame);
+
+            // only the samples of the block were removed and added
+            assertEquals(numberOfSamplesInBlock, processA.removedSampleIds.size());
+            for( int i = 0; i < processA.removedSampleIds.size(); i++ ) {
+                assertTrue(wasInBlock[processA.removedSampleIds.get(i)]);
+            }
+
+            final IntArrayList addedSampleIds = processA.addedSampleIds;
+            numberOfAddedSamples += addedSampleIds.size();
+            for( int i = 0; i < addedSampleIds.size(); i++ ) {
+                assertEquals(blockX, sampleBuffer.x[addedSampleIds.get(i)] / 4);
+                assertEquals(blockY, sampleBuffer.y[addedSampleIds.get(i)] / 4);
+            }
+
+            for( int i = 0; i < altitudesOfLastFrame.length; i++ ) {
+                if( sampleBuffer.isAlive(i) && !wasInBlock[i] && !addedSampleIds.contains(i) && sampleBuffer.altitude[i] != altitudesOfLastFrame[i] ) {
+                    numberOfChangedKeptSamples++;
+                }
+            }
+
+            // process-D keeps the sample objects of the other blocks
+            int numberOfKeptSamples = 0;
+            for( final ProcessA.Sample iterationSample : frame.connectorSamplesForEndosceleton.getOut() ) {
+                if( samplesOfLastFrame.contains(iterationSample) ) {
+                    numberOfKeptSamples++;
+                }
+            }
+            assertTrue(numberOfKeptSamples > 0);
+
+            // the altitudes, types and candidates for process-F are the same as if all samples were processed
+            final boolean[] alive = Arrays.copyOf(sampleBuffer.alive, sampleBuffer.size());
+            final float[] altitudes = Arrays.copyOf(sampleBuffer.altitude, sampleBuffer.size());
+            final byte[] types = Arrays.copyOf(sampleBuffer.type, sampleBuffer.size());
+            final int[] candidatesForProcessF = frame.processC.resultSampleIndicesToProcessF.toArray();
+            final List<String> inputSamplesOfProcessD = describeSamples(frame.connectorSamplesForEndosceleton.getOut());
+
+            frame.processB.set(frame.mapBoolean, sampleBuffer);
+            frame.processB.setup(frame.imageSize);
+            frame.processB.preProcessData();
+            frame.processB.processData();
+            frame.processB.postProcessData();
+
+            frame.processC.set(sampleBuffer);
+            frame.processC.processData();
+
+            assertArrayEquals(alive, Arrays.copyOf(sampleBuffer.alive, sampleBuffer.size()));
+            assertArrayEquals(altitudes, Arrays.copyOf(sampleBuffer.altitude, sampleBuffer.size()), 0.0f);
+            assertArrayEquals(types, Arrays.copyOf(sampleBuffer.type, sampleBuffer.size()));
+            assertArrayEquals(candidatesForProcessF, frame.processC.resultSampleIndicesToProcessF.toArray());
+
+            List<ProcessA.Sample> samplesOfBuffer = new ArrayList<>();
+            for( int i = 0; i < sampleBuffer.size(); i++ ) {
+                if( sampleBuffer.isAlive(i) ) {
+                    samplesOfBuffer.add(sampleBuffer.toSample(i));
+                }
+            }
+            assertEquals(describeSamples(samplesOfBuffer), inputSamplesOfProcessD);
+        }
+
+        pipeline.close();
+
+        assertTrue(numberOfAddedSamples > 0);
+        assertTrue(numberOfChangedKeptSamples > 0);
+    }
+
+    // the channels and objects which are processed in parallel give the same detectors as the sequential processing
+    @Test
+    public void parallelProcessingEqualsSequentialProcessing() {
+        final String sequentialDetectors = processFramesSynchronous(false, 1, false).get(0);
+
+        assertEquals(sequentialDetectors, processFramesSynchronous(true, 4, false).get(0));
+    }
+
+    // a pipeline with frames in flight in all stages gives the frames in order with the same detectors as the synchronous processing
+    @Test
+    public void pipelineEqualsSynchronousProcessing() {
+        final List<String> synchronousDetectors = processFramesSynchronous(false, 1, false);
+
+        Solver2 solver = new Solver2();
+        final ProcessPipeline<Solver2.Frame> pipeline = solver.createPipeline(2, NUMBER_OF_ANNEALING_STEPS);
+
+        // the frames are submitted by another thread, so the pipeline is filled while the frames are taken
+        Thread producer = new Thread(() -> {
+            for( int frameI = 0; frameI < NUMBER_OF_FRAMES; frameI++ ) {
+                solver.setSeed(7 + frameI);
+                pipeline.submit(solver.createFrame(drawMovingImage(frameI)));
+            }
+        });
+        producer.start();
+
+        List<String> pipelineDetectors = new ArrayList<>();
+        for( int frameI = 0; frameI < NUMBER_OF_FRAMES; frameI++ ) {
+            final Solver2.Frame frame = pipeline.take();
+            pipelineDetectors.add(describeDetectors(frame.processD, frame.processDEdge, frame.cntrFinalProcessing.getOut()));
+            solver.releaseFrame(frame);
+        }
+        pipeline.close();
+
+        assertEquals(synchronousDetectors, pipelineDetectors);
+    }
+
+    // the reused frames of a solver give the same detectors as the fresh frames of new solvers
+    @Test
+    public void reusedFrameEqualsFreshFrame() {
+        assertEquals(processFramesSynchronous(false, 1, true), processFramesSynchronous(false, 1, false));
+    }
+
+    private static final int NUMBER_OF_FRAMES = 4;
+    private static final int NUMBER_OF_ANNEALING_STEPS = 20;
+
+    /**
+     * \param freshSolvers is a new solver created for each frame? else the frames of one solver are reused
+     * \return detectors of each frame
+     */
+    private static List<String> processFramesSynchronous(final boolean inParallel, final int numberOfObjectThreads, final boolean freshSolvers) {
+        List<String> result = new ArrayList<>();
+        Solver2 solver = null;
+        ProcessD processDOfFirstFrame = null;
+        for( int frameI = 0; frameI < NUMBER_OF_FRAMES; frameI++ ) {
+            if( solver == null || freshSolvers ) {
+                solver = new Solver2();
+                solver.processChannelsInParallel = inParallel;
+                solver.numberOfObjectThreads = numberOfObjectThreads;
+            }
+            solver.setSeed(7 + frameI);
+
+            final BufferedImage image = drawMovingImage(frameI);
+            solver.imageDrawer = (Solver unused) -> image;
+            solver.preFrame();
+            for( int stepI = 0; stepI < NUMBER_OF_ANNEALING_STEPS; stepI++ ) {
+                solver.frameStep();
+            }
+            solver.postFrame();
+
+            if( frameI == 0 ) {
+                processDOfFirstFrame = solver.processD;
+            }
+            else {
+                // the frame of the last image is released and reused by preFrame()
+                assertEquals(!freshSolvers, processDOfFirstFrame == solver.processD);
+            }
+
+            assertTrue(solver.cntrFinalProcessing.getOut().size() > 0);
+            result.add(describeDetectors(solver.processD, solver.processDEdge, solver.cntrFinalProcessing.getOut()));
+        }
+        return result;
+    }
+
+    private static String describeDetectors(final ProcessD processD, final ProcessD[] processDEdge, final List<RetinaPrimitive> primitives) {
+        List<ProcessD> processesD = new ArrayList<>(Arrays.asList(processDEdge));
+        processesD.add(0, processD);
+
+        StringBuilder result = new StringBuilder();
+        for( final ProcessD iterationProcessD : processesD ) {
+            result.append(iterationProcessD.annealedCandidates.size()).append(':');
+            for( final LineDetectorWithMultiplePoints iterationDetector : iterationProcessD.annealedCandidates ) {
+                result.append(' ').append(iterationDetector.m).append(',').append(iterationDetector.samples.size());
+            }
+            result.append('\n');
+        }
+        for( final RetinaPrimitive iterationPrimitive : primitives ) {
+            result.append(iterationPrimitive.line.a).append(iterationPrimitive.line.b).append('\n');
+        }
+        return result.toString();
+    }
+
+    private static List<String> describeSamples(final List<ProcessA.Sample> samples) {
+        List<String> result = new ArrayList<>();
+        for( final ProcessA.Sample iterationSample : samples ) {
+            result.add(iterationSample.position.getOne() + " " + iterationSample.position.getTwo() + " " + iterationSample.type + " " + iterationSample.altitude);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private static Solver2.Frame processFrame(Solver2 solver, ProcessPipeline<Solver2.Frame> pipeline, BufferedImage image) {
+        pipeline.submit(solver.createFrame(image));
+        return pipeline.take();
+    }
+
+    private static BufferedImage drawImage() {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.BLACK);
+        g2.fillRect(0, 0, 64, 64);
+        g2.setColor(Color.WHITE);
+        g2.fillRect(8, 8, 40, 40);
+        g2.drawLine(2, 60, 60, 52);
+        g2.dispose();
+        return image;
+    }
+
+    // an oval which moves to the right and a line which moves up
+    private static BufferedImage drawMovingImage(int frameI) {
+        BufferedImage image = new BufferedImage(128, 128, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.BLACK);
+        g2.fillRect(0, 0, 128, 128);
+        g2.setColor(Color.WHITE);
+        g2.fillOval(20 + frameI * 3, 20, 60, 50);
+        g2.drawLine(10, 100 - frameI, 120, 80);
+        g2.dispose();
+        return image;
+    }
+
+    private static BufferedImage clearBlock(BufferedImage image, int blockX, int blockY) {
+        BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = result.createGraphics();
+        g2.drawImage(image, 0, 0, null);
+        g2.setColor(Color.BLACK);
+        g2.fillRect(blockX * 4, blockY * 4, 4, 4);
+        g2.dispose();
+        return result;
+    }
+}
@@ -178,7 +178,7 @@ public class SolverTest {
         
         
         
-        processE.process(lineDetectors, image);
+        processE.process(lineDetectors, image).registerIntersectionsOnLines();
         
         lineIntersections = getAllLineIntersections(lineDetectors);
         
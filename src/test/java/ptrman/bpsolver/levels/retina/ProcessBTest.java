@@ -4,6 +4,8 @@ import org.apache.commons.math3.linear.ArrayRealVector;
 import org.junit.Test;
 import ptrman.Datastructures.*;
 import ptrman.levels.retina.ProcessA;
+import ptrman.levels.retina.ProcessB;
+import ptrman.levels.retina.SampleBuffer;
 import ptrman.levels.visual.ColorRgb;
 import ptrman.levels.visual.Map2dImageConverter;
 import ptrman.levels.visual.VisualProcessor;
@@ -13,6 +15,9 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static ptrman.levels.retina.LineDetectorWithMultiplePoints.real;
 import static ptrman.math.ArrayRealVectorHelper.arrayRealVectorToInteger;
 import static ptrman.math.ArrayRealVectorHelper.integerToArrayRealVector;
@@ -96,6 +101,49 @@ public class ProcessBTest {
         */
     }
 
+    // the sample buffer path has to remove the samples without an altitude as the connector path drops them
+    @Test
+    public void testBufferRemovesSamplesWithoutAltitude() {
+        IMap2d<Boolean> filledMap = new Map2d<>(64, 64);
+        IMap2d<Boolean> partialMap = new Map2d<>(64, 64);
+        for( int y = 0; y < 64; y++ ) {
+            for( int x = 0; x < 64; x++ ) {
+                filledMap.setAt(x, y, true);
+                partialMap.setAt(x, y, x < 8);
+            }
+        }
+
+        for( ProcessB.EnumAltitudeMode altitudeMode : ProcessB.EnumAltitudeMode.values() ) {
+            SampleBuffer sampleBuffer = new SampleBuffer();
+            final int sampleIndex = sampleBuffer.add(3, 5, 0, 1.0f);
+
+            ProcessB processB = new ProcessB();
+            processB.altitudeMode = altitudeMode;
+            processB.setImageSize(new Vector2d<>(64, 64));
+            processB.set(partialMap, sampleBuffer);
+            processB.setup();
+            processB.processData();
+
+            assertTrue(sampleBuffer.isAlive(sampleIndex));
+            assertEquals(5.0f, sampleBuffer.altitude[sampleIndex], 0.001f);
+        }
+
+        SampleBuffer sampleBuffer = new SampleBuffer();
+        final int sampleIndex = sampleBuffer.add(3, 5, 0, 1.0f);
+        final int otherSampleIndex = sampleBuffer.add(62, 5, 0, 1.0f);
+
+        // the small image size limits the search radius, so only the sample near the unset border of the map finds an altitude
+        ProcessB processB = new ProcessB();
+        processB.setImageSize(new Vector2d<>(4, 4));
+        processB.set(filledMap, sampleBuffer);
+        processB.setup();
+        processB.processData();
+
+        assertFalse(sampleBuffer.isAlive(sampleIndex));
+        assertTrue(sampleBuffer.isAlive(otherSampleIndex));
+        assertEquals(2.0f, sampleBuffer.altitude[otherSampleIndex], 0.001f);
+    }
+
     // implementation of the slow correct old algorithm
     // used to compare the results
     private static class SlowCorrectAlgorithm {
@@ -2,11 +2,19 @@ package ptrman.bpsolver.levels.retina;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.junit.Test;
+import ptrman.Datastructures.Vector2d;
 import ptrman.levels.retina.ProcessA;
+import ptrman.levels.retina.ProcessC;
+import ptrman.levels.retina.SampleBuffer;
 import ptrman.misc.Assert;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  *
@@ -72,4 +80,48 @@ public class ProcessCTest {
 
 
     }
+
+    @Test
+    public void parallelEqualsSequential() {
+        final Random random = new Random(42);
+
+        SampleBuffer samples = new SampleBuffer();
+        for( int i = 0; i < 2000; i++ ) {
+            final int index = samples.add(random.nextInt(160), random.nextInt(120), -1, 1.0f);
+            samples.altitude[index] = random.nextInt(12);
+        }
+        samples.remove(17);
+
+        byte[] sequentialTypes = classify(samples, 1, 5);
+        byte[] parallelTypes = classify(samples, 7, 5);
+        assertArrayEquals(sequentialTypes, parallelTypes);
+
+        // the candidates for process-F depend only on the seed, not on the number of threads
+        ProcessC sequentialProcessC = createProcessC(1, 5);
+        sequentialProcessC.set(samples);
+        sequentialProcessC.processData();
+
+        ProcessC parallelProcessC = createProcessC(7, 5);
+        parallelProcessC.set(samples);
+        parallelProcessC.processData();
+
+        assertTrue(sequentialProcessC.resultSampleIndicesToProcessF.notEmpty());
+        assertArrayEquals(sequentialProcessC.resultSampleIndicesToProcessF.toArray(), parallelProcessC.resultSampleIndicesToProcessF.toArray());
+    }
+
+    private static byte[] classify(SampleBuffer samples, int numberOfThreads, long seed) {
+        ProcessC processC = createProcessC(numberOfThreads, seed);
+        processC.set(samples);
+        processC.processData();
+        return Arrays.copyOf(samples.type, samples.size());
+    }
+
+    private static ProcessC createProcessC(int numberOfThreads, long seed) {
+        ProcessC processC = new ProcessC();
+        processC.numberOfThreads = numberOfThreads;
+        processC.setSeed(seed);
+        processC.setImageSize(new Vector2d<>(160, 120));
+        processC.setup();
+        return processC;
+    }
 }
@@ -0,0 +1,95 @@
+package ptrman.levels.retina;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.junit.Test;
+import ptrman.Datastructures.BoolMap2d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class IntersectionGraphTest {
+    @Test
+    public void entriesMatchIntersectionsOfLines() {
+        BoolMap2d image = new BoolMap2d(32, 32);
+        for( int i = 0; i < 32; i++ ) {
+            image.set(i, 16, true);
+            image.set(16, i, true);
+        }
+
+        List<RetinaPrimitive> lines = new ArrayList<>();
+        lines.add(createLine(2.0, 16.0, 30.0, 16.5));
+        lines.add(createLine(15.0, 2.0, 16.5, 30.0));
+        lines.add(createLine(2.0, 2.0, 30.0, 30.0));
+
+        IntersectionGraph graph = ProcessE.process(lines, image);
+
+        assertEquals(lines.size(), graph.getNumberOfLines());
+        for( int lineI = 0; lineI < lines.size(); lineI++ ) {
+            final SingleLineDetector line = lines.get(lineI).line;
+
+            for( int entry = graph.getEntriesBegin(lineI); entry < graph.getEntriesEnd(lineI); entry++ ) {
+                final SingleLineDetector otherLine = lines.get(graph.getOtherLine(entry)).line;
+                final double x = graph.getPositionX(entry);
+                final double y = graph.getPositionY(entry);
+
+                // the position is calculated in the order of the partners
+                final ArrayRealVector expectedPosition = graph.isFirstPartner(entry) ? SingleLineDetector.intersectLineDetectors(line, otherLine) : SingleLineDetector.intersectLineDetectors(otherLine, line);
+                assertEquals(expectedPosition.getDataRef()[0], x, 0.0);
+                assertEquals(expectedPosition.getDataRef()[1], y, 0.0);
+                assertEquals(line.getIntersectionEndpoint(expectedPosition), graph.getEndpointType(entry));
+                assertEquals(otherLine.getIntersectionEndpoint(expectedPosition), graph.getOtherEndpointType(entry));
+            }
+        }
+
+        // each pair of the three lines intersects in both orders
+        assertEquals(12, graph.getEntriesEnd(lines.size() - 1));
+    }
+
+    // the graph which is built from the registered intersections has the same entries
+    @Test
+    public void graphOfRegisteredIntersectionsEqualsGraph() {
+        BoolMap2d image = new BoolMap2d(32, 32);
+        for( int i = 0; i < 32; i++ ) {
+            image.set(i, 16, true);
+            image.set(16, i, true);
+        }
+
+        List<RetinaPrimitive> lines = new ArrayList<>();
+        lines.add(createLine(2.0, 16.0, 30.0, 16.5));
+        lines.add(createLine(15.0, 2.0, 16.5, 30.0));
+        lines.add(createLine(2.0, 2.0, 30.0, 30.0));
+
+        IntersectionGraph graph = ProcessE.process(lines, image);
+        graph.registerIntersectionsOnLines();
+        IntersectionGraph graphOfRegisteredIntersections = IntersectionGraph.build(lines);
+
+        for( int lineI = 0; lineI < lines.size(); lineI++ ) {
+            final List<Intersection> intersections = lines.get(lineI).line.intersections;
+            assertEquals(graph.getEntriesEnd(lineI) - graph.getEntriesBegin(lineI), intersections.size());
+            assertEquals(graph.getEntriesBegin(lineI), graphOfRegisteredIntersections.getEntriesBegin(lineI));
+            assertEquals(graph.getEntriesEnd(lineI), graphOfRegisteredIntersections.getEntriesEnd(lineI));
+
+            for( int entry = graph.getEntriesBegin(lineI); entry < graph.getEntriesEnd(lineI); entry++ ) {
+                final Intersection intersection = intersections.get(entry - graph.getEntriesBegin(lineI));
+                assertSame(lines.get(lineI), graph.isFirstPartner(entry) ? intersection.p0.primitive : intersection.p1.primitive);
+                assertSame(lines.get(graph.getOtherLine(entry)), graph.isFirstPartner(entry) ? intersection.p1.primitive : intersection.p0.primitive);
+
+                assertEquals(graph.getOtherLine(entry), graphOfRegisteredIntersections.getOtherLine(entry));
+                assertEquals(graph.isFirstPartner(entry), graphOfRegisteredIntersections.isFirstPartner(entry));
+                assertEquals(graph.getEndpointType(entry), graphOfRegisteredIntersections.getEndpointType(entry));
+                assertEquals(graph.getOtherEndpointType(entry), graphOfRegisteredIntersections.getOtherEndpointType(entry));
+                assertEquals(graph.getPositionX(entry), graphOfRegisteredIntersections.getPositionX(entry), 0.0);
+                assertEquals(graph.getPositionY(entry), graphOfRegisteredIntersections.getPositionY(entry), 0.0);
+            }
+        }
+    }
+
+    private static RetinaPrimitive createLine(final double ax, final double ay, final double bx, final double by) {
+        RetinaPrimitive primitive = RetinaPrimitive.makeLine(SingleLineDetector.createFromFloatPositions(new ArrayRealVector(new double[]{ax, ay}), new ArrayRealVector(new double[]{bx, by}), 1.0));
+        primitive.objectId = 0;
+        return primitive;
+    }
+}
@@ -0,0 +1,77 @@
+package ptrman.levels.retina;
+
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LineFitStatisticsTest {
+    @Test
+    public void leastSquaresCompareToSimpleRegression() {
+        final Random random = new Random(42);
+
+        // shallow line, regression on the x axis
+        int[] xs = new int[30];
+        int[] ys = new int[30];
+        for( int i = 0; i < xs.length; i++ ) {
+            xs[i] = 10 + i * 3;
+            ys[i] = 20 + (int)Math.round(i * 0.7) + random.nextInt(3);
+        }
+
+        LineFitStatistics statistics = new LineFitStatistics();
+        for( int i = 0; i < xs.length; i++ ) {
+            statistics.add(xs[i], ys[i]);
+        }
+        // removed points must not have any influence
+        statistics.add(500, 3);
+        statistics.remove(500, 3);
+
+        statistics.calcFit(LineFitStatistics.EnumFitMode.LEASTSQUARES);
+
+        SimpleRegression regression = new SimpleRegression();
+        for( int i = 0; i < xs.length; i++ ) {
+            regression.addData(xs[i], ys[i]);
+        }
+
+        assertEquals(regression.getSlope(), statistics.m, 1e-9);
+        assertEquals(regression.getIntercept(), statistics.n, 1e-9);
+        assertEquals(regression.getMeanSquareError(), statistics.mse, 1e-9);
+    }
+
+    @Test
+    public void leastSquaresSwitchesAxisOfSteepLine() {
+        LineFitStatistics statistics = new LineFitStatistics();
+        for( int i = 0; i < 20; i++ ) {
+            statistics.add(40 + i / 4, 5 + i); // y = 4*x - 155
+        }
+
+        assertTrue(statistics.getOverlappingOnX() > statistics.getOverlappingOnY());
+
+        statistics.calcFit(LineFitStatistics.EnumFitMode.LEASTSQUARES);
+
+        SimpleRegression regression = new SimpleRegression();
+        for( int i = 0; i < 20; i++ ) {
+            regression.addData(5 + i, 40 + i / 4);
+        }
+
+        assertEquals(1.0 / regression.getSlope(), statistics.m, 1e-9);
+        assertEquals(regression.getMeanSquareError(), statistics.mse, 1e-9);
+    }
+
+    @Test
+    public void totalLeastSquares() {
+        LineFitStatistics statistics = new LineFitStatistics();
+        for( int i = 0; i < 10; i++ ) {
+            statistics.add(i * 2, 7 + i * 6); // y = 3*x + 7
+        }
+
+        statistics.calcFit(LineFitStatistics.EnumFitMode.TOTALLEASTSQUARES);
+
+        assertEquals(3.0, statistics.m, 1e-9);
+        assertEquals(7.0, statistics.n, 1e-9);
+        assertEquals(0.0, statistics.mse, 1e-9);
+    }
+}
@@ -0,0 +1,170 @@
+package ptrman.levels.retina;
+
+import org.junit.Test;
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.Datastructures.FastBooleanMap2d;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessATest {
+    // without throttling both paths sample all set pixels of the masks
+    @Test
+    public void wordParallelSamplingSamplesSamePixelsAsScalarSampling() {
+        BoolMap2d image = createRandomImage(128, 64, 7);
+
+        assertEquals(samplePositions(image, false, 1.0f, 1), samplePositions(image, true, 1.0f, 1));
+    }
+
+    // both paths keep each candidate pixel with the probability of the throttle
+    @Test
+    public void wordParallelSamplingKeepsSameFractionAsScalarSampling() {
+        BoolMap2d image = new BoolMap2d(256, 256);
+        fill(image, 0, 0, 256, 256);
+
+        final float throttle = 0.25f;
+
+        // MaskDetail0 has 8 candidates, MaskDetail1 has 4 candidates and one which is also in MaskDetail0
+        final double expectedNumberOfSamples = 64 * 64 * (8 * throttle + 4 * throttle + (1.0 - throttle) * throttle);
+
+        final int numberOfScalarSamples = samplePositions(image, false, throttle, 3).size();
+        final int numberOfWordSamples = samplePositions(image, true, throttle, 3).size();
+
+        assertEquals(1.0, numberOfScalarSamples / expectedNumberOfSamples, 0.03);
+        assertEquals(1.0, numberOfWordSamples / expectedNumberOfSamples, 0.03);
+    }
+
+    @Test
+    public void dirtyBlocksOfWordMarkAllBitsOfChangedBlocks() {
+        FastBooleanMap2d previousImage = new FastBooleanMap2d(128, 8);
+        previousImage.set(5, 2, true);
+        previousImage.set(70, 6, true);
+
+        FastBooleanMap2d image = previousImage.copy();
+        image.set(0, 1, true); // block 0
+        image.set(7, 3, true); // block 1
+        image.set(63, 2, true); // block 15
+        image.set(64, 0, true); // block 0 of the second word
+        image.set(70, 6, false); // block 1 of the second word in the second block row
+
+        assertEquals(0xFL | 0xF0L | 0xF000000000000000L, ProcessA.calcDirtyBlocksOfWord(image, previousImage, 0, 0));
+        assertEquals(0xFL, ProcessA.calcDirtyBlocksOfWord(image, previousImage, 1, 0));
+        assertEquals(0L, ProcessA.calcDirtyBlocksOfWord(image, previousImage, 0, 1));
+        assertEquals(0xF0L, ProcessA.calcDirtyBlocksOfWord(image, previousImage, 1, 1));
+    }
+
+    // the samples of the changed blocks are replaced, the other samples are kept
+    @Test
+    public void temporalSamplingResamplesOnlyChangedBlocks() {
+        BoolMap2d image = createRandomImage(128, 64, 11);
+
+        ProcessA processA = new ProcessA();
+        processA.temporalSampling = true;
+        processA.setSeed(5);
+
+        SampleBuffer sampleBuffer = new SampleBuffer();
+        processA.set(image, null, sampleBuffer);
+        processA.processData(1.0f);
+
+        assertFalse(processA.isSampleDeltaOfPreviousFrame);
+        assertEquals(samplePositions(image, true, 1.0f, 1), readPositions(sampleBuffer));
+
+        // positions of the samples before the indices are reused
+        int[] xsOfLastFrame = new int[sampleBuffer.size()];
+        int[] ysOfLastFrame = new int[sampleBuffer.size()];
+        for( int i = 0; i < sampleBuffer.size(); i++ ) {
+            xsOfLastFrame[i] = sampleBuffer.x[i];
+            ysOfLastFrame[i] = sampleBuffer.y[i];
+        }
+
+        BoolMap2d changedImage = createRandomImage(128, 64, 11);
+        fill(changedImage, 4, 8, 8, 12); // block (1, 2)
+        changedImage.setAt(127, 63, !changedImage.readAt(127, 63)); // block (31, 15)
+
+        processA.set(changedImage, null, sampleBuffer);
+        processA.processData(1.0f);
+
+        assertTrue(processA.isSampleDeltaOfPreviousFrame);
+        assertEquals(samplePositions(changedImage, true, 1.0f, 1), readPositions(sampleBuffer));
+
+        for( int i = 0; i < processA.removedSampleIds.size(); i++ ) {
+            final int sampleId = processA.removedSampleIds.get(i);
+            assertTrue(isInChangedBlock(xsOfLastFrame[sampleId], ysOfLastFrame[sampleId]));
+        }
+        for( int i = 0; i < processA.addedSampleIds.size(); i++ ) {
+            final int sampleId = processA.addedSampleIds.get(i);
+            assertTrue(isInChangedBlock(sampleBuffer.x[sampleId], sampleBuffer.y[sampleId]));
+        }
+
+        // all samples of the changed blocks were removed
+        int numberOfSamplesInChangedBlocks = 0;
+        for( int i = 0; i < xsOfLastFrame.length; i++ ) {
+            if( isInChangedBlock(xsOfLastFrame[i], ysOfLastFrame[i]) ) {
+                numberOfSamplesInChangedBlocks++;
+            }
+        }
+        assertEquals(numberOfSamplesInChangedBlocks, processA.removedSampleIds.size());
+        assertTrue(processA.addedSampleIds.size() > 0);
+
+        // the next frame of another size samples everything again
+        processA.set(createRandomImage(64, 64, 11), null, sampleBuffer);
+        processA.processData(1.0f);
+
+        assertFalse(processA.isSampleDeltaOfPreviousFrame);
+    }
+
+    private static boolean isInChangedBlock(final int x, final int y) {
+        final int blockX = x / 4;
+        final int blockY = y / 4;
+        return (blockX == 1 && blockY == 2) || (blockX == 31 && blockY == 15);
+    }
+
+    private static Set<Long> samplePositions(final BoolMap2d image, final boolean wordParallelSampling, final float throttle, final long seed) {
+        ProcessA processA = new ProcessA();
+        processA.wordParallelSampling = wordParallelSampling;
+        processA.setSeed(seed);
+
+        SampleBuffer sampleBuffer = new SampleBuffer();
+        processA.set(image, null, sampleBuffer);
+        processA.processData(throttle);
+
+        return readPositions(sampleBuffer);
+    }
+
+    private static Set<Long> readPositions(final SampleBuffer sampleBuffer) {
+        Set<Long> result = new HashSet<>();
+        for( int i = 0; i < sampleBuffer.size(); i++ ) {
+            if( sampleBuffer.isAlive(i) ) {
+                assertTrue(result.add(((long)sampleBuffer.x[i] << 32) | sampleBuffer.y[i]));
+            }
+        }
+        return result;
+    }
+
+    private static BoolMap2d createRandomImage(final int width, final int length, final long seed) {
+        Random random = new Random(seed);
+
+        BoolMap2d result = new BoolMap2d(width, length);
+        for( int y = 0; y < length; y++ ) {
+            for( int x = 0; x < width; x++ ) {
+                result.setAt(x, y, random.nextInt(3) != 0);
+            }
+        }
+        // filled blocks, all pixels of MaskDetail0 are hit there
+        fill(result, 32, 16, 48, 40);
+        return result;
+    }
+
+    private static void fill(BoolMap2d image, final int minX, final int minY, final int maxX, final int maxY) {
+        for( int y = minY; y < maxY; y++ ) {
+            for( int x = minX; x < maxX; x++ ) {
+                image.setAt(x, y, true);
+            }
+        }
+    }
+}
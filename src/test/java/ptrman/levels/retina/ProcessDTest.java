@@ -0,0 +1,53 @@
+package ptrman.levels.retina;
+
+import org.junit.Test;
+import ptrman.Datastructures.Vector2d;
+import ptrman.levels.retina.helper.ProcessConnector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ProcessDTest {
+    // the samples which are already used by lines must not use up the sampling attempts of the widening
+    @Test
+    public void lineWithManyReferencedSamplesIsWidened() {
+        ProcessConnector<ProcessA.Sample> inputSampleConnector = ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE);
+
+        List<ProcessA.Sample> referencedSamples = new ArrayList<>();
+        for( int x = 0; x < 200; x++ ) {
+            ProcessA.Sample sample = new ProcessA.Sample(x, 10);
+            sample.refCount = 1;
+            referencedSamples.add(sample);
+        }
+        inputSampleConnector.addAll(referencedSamples);
+
+        List<ProcessA.Sample> unreferencedSamples = new ArrayList<>();
+        for( int i = 0; i < 4; i++ ) {
+            unreferencedSamples.add(new ProcessA.Sample(210 + i * 8, 10));
+        }
+        inputSampleConnector.addAll(unreferencedSamples);
+
+        ProcessD processD = new ProcessD();
+        processD.setImageSize(new Vector2d<>(256, 32));
+        processD.set(inputSampleConnector, ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE));
+        processD.setSeed(42);
+        processD.setup();
+        processD.preProcessData();
+
+        LineDetectorWithMultiplePoints lineDetector = new LineDetectorWithMultiplePoints(processD.lineDetectorInitialXStep);
+        for( int i = 0; i < 3; i++ ) {
+            lineDetector.addSample(referencedSamples.get(i * 50));
+        }
+        lineDetector.recalcFit(processD.fitMode);
+        processD.annealedCandidates.add(lineDetector);
+
+        processD.tryWiden();
+
+        assertEquals(3 + unreferencedSamples.size(), lineDetector.samples.size());
+        for( ProcessA.Sample iterationSample : unreferencedSamples ) {
+            assertEquals(1, iterationSample.refCount);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package ptrman.levels.retina;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.junit.Test;
+import ptrman.Datastructures.BoolMap2d;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessETest {
+    @Test
+    public void broadPhaseFindsSameIntersections() {
+        final Random random = new Random(42);
+
+        final int width = 64;
+        final int length = 48;
+        BoolMap2d image = new BoolMap2d(width, length);
+        for( int i = 0; i < 40; i++ ) {
+            image.set(random.nextInt(width), random.nextInt(length), true);
+        }
+
+        List<double[]> coordinates = new ArrayList<>();
+        for( int i = 0; i < 120; i++ ) {
+            final double ax = random.nextDouble() * (width + 20) - 10;
+            final double ay = random.nextDouble() * (length + 20) - 10;
+            final double bx;
+            final double by = random.nextDouble() * (length + 20) - 10;
+
+            switch( i % 10 ) {
+                case 0: bx = ax; break; // singular
+                case 1: bx = ax + 1.0e-6; break; // steep, is tested with all lines
+                default: bx = random.nextDouble() * (width + 20) - 10; break;
+            }
+            coordinates.add(new double[]{ax, ay, bx, by});
+        }
+        // parallel to the last line
+        final double[] last = coordinates.get(coordinates.size() - 1);
+        coordinates.add(new double[]{last[0], last[1] + 3.0, last[2], last[3] + 3.0});
+
+        IntersectionGraph exhaustive = ProcessE.process(createLines(coordinates), image, ProcessE.EnumMode.EXHAUSTIVE);
+        IntersectionGraph broadPhase = ProcessE.process(createLines(coordinates), image, ProcessE.EnumMode.BROADPHASE);
+
+        assertEqualGraphs(exhaustive, broadPhase);
+        final int numberOfIntersections = exhaustive.getEntriesEnd(exhaustive.getNumberOfLines() - 1);
+
+        assertTrue(numberOfIntersections > 0);
+    }
+
+    @Test
+    public void parallelObjectsFindSameIntersections() {
+        final Random random = new Random(7);
+
+        BoolMap2d image = new BoolMap2d(64, 64);
+        for( int i = 0; i < 60; i++ ) {
+            image.set(random.nextInt(64), random.nextInt(64), true);
+        }
+
+        List<double[]> coordinates = new ArrayList<>();
+        for( int i = 0; i < 90; i++ ) {
+            coordinates.add(new double[]{random.nextDouble() * 64, random.nextDouble() * 64, random.nextDouble() * 64, random.nextDouble() * 64});
+        }
+
+        IntersectionGraph serial = ProcessE.process(createLines(coordinates), image, ProcessE.EnumMode.BROADPHASE);
+        IntersectionGraph parallel = ProcessE.process(createLines(coordinates), image, ProcessE.EnumMode.BROADPHASE, 4, null);
+
+        assertEqualGraphs(serial, parallel);
+    }
+
+    // the graphs are of lines with the same coordinates in the same order
+    private static void assertEqualGraphs(IntersectionGraph expected, IntersectionGraph actual) {
+        assertEquals(expected.getNumberOfLines(), actual.getNumberOfLines());
+
+        for( int lineI = 0; lineI < expected.getNumberOfLines(); lineI++ ) {
+            assertEquals(expected.getEntriesBegin(lineI), actual.getEntriesBegin(lineI));
+            assertEquals(expected.getEntriesEnd(lineI), actual.getEntriesEnd(lineI));
+
+            for( int entry = expected.getEntriesBegin(lineI); entry < expected.getEntriesEnd(lineI); entry++ ) {
+                assertEquals(expected.getOtherLine(entry), actual.getOtherLine(entry));
+                assertEquals(expected.isFirstPartner(entry), actual.isFirstPartner(entry));
+                assertEquals(expected.getEndpointType(entry), actual.getEndpointType(entry));
+                assertEquals(expected.getOtherEndpointType(entry), actual.getOtherEndpointType(entry));
+                assertEquals(expected.getPositionX(entry), actual.getPositionX(entry), 0.0);
+                assertEquals(expected.getPositionY(entry), actual.getPositionY(entry), 0.0);
+            }
+        }
+    }
+
+    // the lines belong to two objects
+    private static List<RetinaPrimitive> createLines(List<double[]> coordinates) {
+        List<RetinaPrimitive> result = new ArrayList<>();
+        for( int i = 0; i < coordinates.size(); i++ ) {
+            final double[] iterationCoordinates = coordinates.get(i);
+            SingleLineDetector line = SingleLineDetector.createFromFloatPositions(new ArrayRealVector(new double[]{iterationCoordinates[0], iterationCoordinates[1]}), new ArrayRealVector(new double[]{iterationCoordinates[2], iterationCoordinates[3]}), 1.0);
+
+            RetinaPrimitive primitive = RetinaPrimitive.makeLine(line);
+            primitive.objectId = i % 3 == 0 ? 1 : 0;
+            result.add(primitive);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,139 @@
+package ptrman.levels.retina;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.junit.Test;
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.bpsolver.HardParameters;
+import ptrman.math.ArrayRealVectorHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ProcessGTest {
+    @Test
+    public void lineUsedInCurveIsRemovedFromNeighborsOfGraph() {
+        BoolMap2d image = new BoolMap2d(32, 32);
+        for( int i = 0; i < 32; i++ ) {
+            image.set(i, 16, true);
+            image.set(16, i, true);
+        }
+
+        List<RetinaPrimitive> lines = new ArrayList<>();
+        lines.add(createLine(2.0, 16.0, 30.0, 16.5));
+        lines.add(createLine(15.0, 2.0, 16.5, 30.0));
+        lines.add(createLine(2.0, 2.0, 30.0, 30.0));
+
+        IntersectionGraph graph = ProcessE.process(lines, image);
+        graph.registerIntersectionsOnLines();
+
+        final SingleLineDetector usedLine = lines.get(0).line;
+        final int numberOfIntersectionsBetweenOtherLines = countIntersectionsWith(lines.get(1).line, lines.get(2).line);
+
+        ArrayList<SingleLineDetector> lineDetectors = new ArrayList<>();
+        for( RetinaPrimitive iterationPrimitive : lines ) {
+            lineDetectors.add(iterationPrimitive.line);
+        }
+        usedLine.markedPartOfCurve = true;
+
+        ProcessG processG = new ProcessG();
+        processG.process(lineDetectors, new ArrayList<>(), new ArrayList<>(), image, graph);
+
+        assertEquals(0, processG.getResultCurves().size());
+        assertEquals(2, lineDetectors.size());
+        for( SingleLineDetector iterationLineDetector : lineDetectors ) {
+            assertNotSame(usedLine, iterationLineDetector);
+            assertEquals(0, countIntersectionsWith(iterationLineDetector, usedLine));
+        }
+        assertSame(lines.get(1).line, lineDetectors.get(0));
+        assertEquals(numberOfIntersectionsBetweenOtherLines, countIntersectionsWith(lines.get(1).line, lines.get(2).line));
+        assertEquals(numberOfIntersectionsBetweenOtherLines, countIntersectionsWith(lines.get(2).line, lines.get(1).line));
+    }
+
+    // the grid finds the same samples as a scan of all samples, also samples outside of the image
+    @Test
+    public void vicinityQueryFindsSameSamplesAsLinearScan() {
+        final Random random = new Random(5);
+
+        List<ProcessA.Sample> samples = new ArrayList<>();
+        for( int i = 0; i < 500; i++ ) {
+            ProcessA.Sample sample = new ProcessA.Sample(random.nextInt(80) - 8, random.nextInt(80) - 8);
+            sample.type = random.nextInt(3) == 0 ? ProcessA.Sample.EnumType.EXOSCELETON : ProcessA.Sample.EnumType.ENDOSCELETON;
+            samples.add(sample);
+        }
+
+        ProcessG processG = new ProcessG();
+
+        // the second build reuses the index
+        for( int buildI = 0; buildI < 2; buildI++ ) {
+            processG.buildVicinityIndex(samples.subList(buildI * 100, samples.size()), new BoolMap2d(64, 64));
+
+            for( int queryI = 0; queryI < 200; queryI++ ) {
+                final ArrayRealVector centerPoint = new ArrayRealVector(new double[]{random.nextDouble() * 90.0 - 13.0, random.nextDouble() * 90.0 - 13.0});
+
+                List<ProcessA.Sample> expected = new ArrayList<>();
+                for( final ProcessA.Sample iterationSample : samples.subList(buildI * 100, samples.size()) ) {
+                    if( iterationSample.type == ProcessA.Sample.EnumType.ENDOSCELETON && ArrayRealVectorHelper.distance(iterationSample.position, centerPoint) < HardParameters.ProcessG.VICINITYRADIUS ) {
+                        expected.add(iterationSample);
+                    }
+                }
+
+                assertEquals(expected, processG.queryEndosceletonPointsInVicinityOf(centerPoint));
+            }
+        }
+    }
+
+    @Test
+    public void parallelFittingEqualsSerialFitting() {
+        final Random random = new Random(9);
+
+        List<List<ArrayRealVector>> protocurves = new ArrayList<>();
+        for( int curveI = 0; curveI < 23; curveI++ ) {
+            List<ArrayRealVector> points = new ArrayList<>();
+            for( int i = 0; i < 2 + curveI % 7; i++ ) {
+                points.add(new ArrayRealVector(new double[]{i * 5.0 + random.nextDouble() * 3.0, random.nextDouble() * 40.0}));
+            }
+            protocurves.add(points);
+        }
+
+        ProcessG serial = new ProcessG();
+        ProcessG parallel = new ProcessG();
+        parallel.numberOfThreads = 4;
+
+        final List<ProcessG.Curve> expected = serial.fitCurves(protocurves);
+        final List<ProcessG.Curve> actual = parallel.fitCurves(protocurves);
+
+        assertEquals(expected.size(), actual.size());
+        for( int curveI = 0; curveI < expected.size(); curveI++ ) {
+            final List<ProcessG.CurveElement> expectedElements = expected.get(curveI).curveElements;
+            final List<ProcessG.CurveElement> actualElements = actual.get(curveI).curveElements;
+
+            assertEquals(protocurves.get(curveI).size() - 1, actualElements.size());
+            for( int i = 0; i < expectedElements.size(); i++ ) {
+                for( final double t : new double[]{0.0, 0.37, 1.0} ) {
+                    assertEquals(expectedElements.get(i).calcPosition(t), actualElements.get(i).calcPosition(t));
+                }
+            }
+        }
+    }
+
+    private static int countIntersectionsWith(SingleLineDetector lineDetector, SingleLineDetector other) {
+        int count = 0;
+        for( Intersection iterationIntersection : lineDetector.intersections ) {
+            if( iterationIntersection.p0.primitive.line == other || iterationIntersection.p1.primitive.line == other ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static RetinaPrimitive createLine(final double ax, final double ay, final double bx, final double by) {
+        RetinaPrimitive primitive = RetinaPrimitive.makeLine(SingleLineDetector.createFromFloatPositions(new ArrayRealVector(new double[]{ax, ay}), new ArrayRealVector(new double[]{bx, by}), 1.0));
+        primitive.objectId = 0;
+        return primitive;
+    }
+}
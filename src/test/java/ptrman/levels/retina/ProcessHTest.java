@@ -0,0 +1,104 @@
+package ptrman.levels.retina;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.junit.Test;
+import ptrman.Datastructures.Vector2d;
+import ptrman.levels.retina.helper.ProcessConnector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessHTest {
+    @Test
+    public void chainIsFusedToFixedPoint() {
+        List<RetinaPrimitive> detectors = new ArrayList<>();
+        // chain of overlapping collinear lines
+        for( int i = 0; i < 6; i++ ) {
+            detectors.add(createLine(i * 8.0, 10.0, i * 8.0 + 10.0, 10.0));
+        }
+        RetinaPrimitive distantLine = createLine(0.0, 40.0, 30.0, 40.0);
+        detectors.add(distantLine);
+
+        List<RetinaPrimitive> result = ProcessH.fuseToFixedPoint(detectors, 3, 16, 8.0);
+
+        assertEquals(2, result.size());
+        assertSame(distantLine, result.get(0));
+
+        final SingleLineDetector fused = result.get(1).line;
+        assertTrue(fused.resultOfCombination);
+        assertEquals(3, result.get(1).objectId);
+        assertEquals(0.0, fused.a.getDataRef()[0], 1.0e-6);
+        assertEquals(50.0, fused.b.getDataRef()[0], 1.0e-6);
+        assertEquals(10.0, fused.a.getDataRef()[1], 1.0e-6);
+        assertEquals(10.0, fused.b.getDataRef()[1], 1.0e-6);
+    }
+
+    @Test
+    public void indexReturnsOnlyNearLines() {
+        LineFusionIndex index = new LineFusionIndex(16, 8.0, 5.0);
+        final int id = index.add(createLine(0.0, 10.0, 20.0, 10.0).line);
+        final int nearId = index.add(createLine(15.0, 11.0, 35.0, 11.0).line);
+        index.add(createLine(0.0, 60.0, 20.0, 60.0).line); // too far away along the normal
+        index.add(createLine(40.0, 10.0, 60.0, 10.0).line); // x extent doesn't overlap
+
+        IntArrayList candidates = new IntArrayList();
+        index.queryCandidates(id, candidates);
+        assertEquals(1, candidates.size());
+        assertEquals(nearId, candidates.get(0));
+
+        index.remove(nearId);
+        assertFalse(index.isAlive(nearId));
+
+        candidates.clear();
+        index.queryCandidates(id, candidates);
+        assertEquals(0, candidates.size());
+    }
+
+    @Test
+    public void parallelObjectsGiveSameResult() {
+        List<RetinaPrimitive> serial = fuseObjects(1);
+        List<RetinaPrimitive> parallel = fuseObjects(4);
+
+        assertTrue(serial.size() < 49); // lines were fused
+        assertEquals(serial.size(), parallel.size());
+        for( int i = 0; i < serial.size(); i++ ) {
+            assertEquals(serial.get(i).objectId, parallel.get(i).objectId);
+            assertEquals(serial.get(i).line.a, parallel.get(i).line.a);
+            assertEquals(serial.get(i).line.b, parallel.get(i).line.b);
+        }
+    }
+
+    // fuses chains of lines of objects of different size
+    private static List<RetinaPrimitive> fuseObjects(final int numberOfThreads) {
+        ProcessH processH = new ProcessH();
+        processH.numberOfThreads = numberOfThreads;
+        processH.setImageSize(new Vector2d<>(128, 128));
+        processH.set(ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE), ProcessConnector.createWithDefaultQueues(ProcessConnector.EnumMode.WORKSPACE));
+        processH.setup();
+
+        for( int objectId = 0; objectId < 7; objectId++ ) {
+            for( int i = 0; i <= objectId * 2; i++ ) {
+                RetinaPrimitive primitive = createLine(i * 8.0, objectId * 15.0, i * 8.0 + 10.0, objectId * 15.0 + i % 2);
+                primitive.objectId = objectId;
+                processH.inputPrimitiveConnection.add(primitive);
+            }
+        }
+
+        processH.preProcessData();
+        processH.processData();
+        processH.postProcessData();
+
+        return new ArrayList<>(processH.resultPrimitiveConnector.getOut());
+    }
+
+    private static RetinaPrimitive createLine(final double ax, final double ay, final double bx, final double by) {
+        SingleLineDetector line = SingleLineDetector.createFromFloatPositions(new ArrayRealVector(new double[]{ax, ay}), new ArrayRealVector(new double[]{bx, by}), 1.0);
+        return RetinaPrimitive.makeLine(line);
+    }
+}
@@ -0,0 +1,58 @@
+package ptrman.levels.retina;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.junit.Test;
+import ptrman.Datastructures.BoolMap2d;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessMTest {
+    @Test
+    public void parallelTracesGiveSameUniqueParsings() {
+        final Random random = new Random(5);
+
+        BoolMap2d image = new BoolMap2d(64, 64);
+        for( int i = 0; i < 200; i++ ) {
+            image.set(random.nextInt(64), random.nextInt(64), true);
+        }
+
+        List<RetinaPrimitive> lines = new ArrayList<>();
+        for( int i = 0; i < 60; i++ ) {
+            RetinaPrimitive primitive = RetinaPrimitive.makeLine(SingleLineDetector.createFromFloatPositions(new ArrayRealVector(new double[]{random.nextDouble() * 64, random.nextDouble() * 64}), new ArrayRealVector(new double[]{random.nextDouble() * 64, random.nextDouble() * 64}), 1.0));
+            primitive.objectId = 0;
+            lines.add(primitive);
+        }
+        IntersectionGraph graph = ProcessE.process(lines, image);
+
+        List<ProcessM.LineParsing> serial = trace(lines, graph, 1);
+        List<ProcessM.LineParsing> parallel = trace(lines, graph, 4);
+
+        assertTrue(serial.size() > 1);
+        assertEquals(serial.size(), parallel.size());
+
+        Set<List<SingleLineDetector>> uniqueParsings = new HashSet<>();
+        for( int i = 0; i < serial.size(); i++ ) {
+            assertEquals(serial.get(i).lineParsing, parallel.get(i).lineParsing);
+            assertTrue(uniqueParsings.add(serial.get(i).lineParsing));
+
+            // a trace visits each line once
+            assertEquals(serial.get(i).lineParsing.size(), new HashSet<>(serial.get(i).lineParsing).size());
+        }
+    }
+
+    private static List<ProcessM.LineParsing> trace(List<RetinaPrimitive> lines, IntersectionGraph graph, final int numberOfThreads) {
+        ProcessM processM = new ProcessM();
+        processM.rng = new Random(42);
+        processM.numberOfTraces = 64;
+        processM.numberOfThreads = numberOfThreads;
+        processM.process(lines, graph);
+        return processM.getLineParsings();
+    }
+}
@@ -0,0 +1,67 @@
+package ptrman.levels.retina;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SplineCurveFitterTest {
+    @Test
+    public void thomasSolverMatchesLuDecomposition() {
+        final Random random = new Random(11);
+        SplineCurveFitter fitter = new SplineCurveFitter();
+
+        // the sizes grow and shrink so the cached coefficients are reused and extended
+        for( final int numberOfPoints : new int[]{2, 9, 3, 17, 5, 40} ) {
+            List<ArrayRealVector> points = new ArrayList<>();
+            for( int i = 0; i < numberOfPoints; i++ ) {
+                points.add(new ArrayRealVector(new double[]{i * 4.0 + random.nextDouble(), random.nextDouble() * 30.0}));
+            }
+
+            final ProcessG.Curve curve = fitter.fit(points);
+            final RealVector expectedA2 = solveWithLuDecomposition(points, 0);
+            final RealVector expectedB2 = solveWithLuDecomposition(points, 1);
+
+            assertEquals(numberOfPoints - 1, curve.curveElements.size());
+            for( int i = 0; i < numberOfPoints - 1; i++ ) {
+                final ProcessG.CurveElement element = curve.curveElements.get(i);
+
+                // the curve passes through the points
+                assertEquals(points.get(i).getEntry(0), element.calcPosition(0.0).getEntry(0), 1.0e-4);
+                assertEquals(points.get(i+1).getEntry(1), element.calcPosition(1.0).getEntry(1), 1.0e-4);
+
+                // the second order coefficient is the solution of the system
+                final double t = 0.5;
+                final double expectedX = points.get(i).getEntry(0) + t * (points.get(i+1).getEntry(0) - points.get(i).getEntry(0) - (1.0 / 3.0) * (2.0 * expectedA2.getEntry(i) + expectedA2.getEntry(i+1))) + t*t * expectedA2.getEntry(i) + t*t*t * (expectedA2.getEntry(i+1) - expectedA2.getEntry(i)) / 3.0;
+                final double expectedY = points.get(i).getEntry(1) + t * (points.get(i+1).getEntry(1) - points.get(i).getEntry(1) - (1.0 / 3.0) * (2.0 * expectedB2.getEntry(i) + expectedB2.getEntry(i+1))) + t*t * expectedB2.getEntry(i) + t*t*t * (expectedB2.getEntry(i+1) - expectedB2.getEntry(i)) / 3.0;
+                assertEquals(expectedX, element.calcPosition(t).getEntry(0), 1.0e-4);
+                assertEquals(expectedY, element.calcPosition(t).getEntry(1), 1.0e-4);
+            }
+        }
+    }
+
+    // reference solution of the system of the natural spline
+    private static RealVector solveWithLuDecomposition(final List<ArrayRealVector> points, final int axis) {
+        final int n = points.size();
+        Array2DRowRealMatrix matrix = new Array2DRowRealMatrix(n, n);
+        RealVector constants = new ArrayRealVector(n);
+
+        matrix.setEntry(0, 0, 1.0);
+        matrix.setEntry(n-1, n-1, 1.0);
+        for( int i = 1; i < n-1; i++ ) {
+            matrix.setEntry(i, i-1, 1.0);
+            matrix.setEntry(i, i, 4.0);
+            matrix.setEntry(i, i+1, 1.0);
+            constants.setEntry(i, 3.0 * points.get(i-1).getEntry(axis) - 6.0 * points.get(i).getEntry(axis) + 3.0 * points.get(i+1).getEntry(axis));
+        }
+
+        return new LUDecomposition(matrix).getSolver().solve(constants);
+    }
+}
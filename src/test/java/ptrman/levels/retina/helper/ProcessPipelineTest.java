@@ -0,0 +1,99 @@
+package ptrman.levels.retina.helper;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProcessPipelineTest {
+    private static class Element {
+        public Element(int value) {
+            this.value = value;
+        }
+
+        public int value;
+    }
+
+    @Test
+    public void elementsLeaveInOrderOfSubmission() {
+        ProcessPipeline<Element> pipeline = new ProcessPipeline<>(2);
+        pipeline.addStage("add", element -> element.value += 1);
+        pipeline.addStage("multiply", element -> element.value *= 3);
+        pipeline.start();
+
+        Thread producer = new Thread(() -> {
+            for( int i = 0; i < 100; i++ ) {
+                pipeline.submit(new Element(i));
+            }
+        });
+        producer.start();
+
+        for( int i = 0; i < 100; i++ ) {
+            assertEquals((i + 1) * 3, pipeline.take().value);
+        }
+
+        pipeline.close();
+    }
+
+    @Test
+    public void stagesProcessDifferentElementsAtTheSameTime() {
+        final AtomicInteger numberOfBusyStages = new AtomicInteger();
+        final AtomicInteger maximalNumberOfBusyStages = new AtomicInteger();
+
+        ProcessPipeline<Element> pipeline = new ProcessPipeline<>(1);
+        for( int stageI = 0; stageI < 3; stageI++ ) {
+            pipeline.addStage("stage" + stageI, element -> {
+                maximalNumberOfBusyStages.accumulateAndGet(numberOfBusyStages.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                numberOfBusyStages.decrementAndGet();
+            });
+        }
+        pipeline.start();
+
+        for( int i = 0; i < 6; i++ ) {
+            pipeline.submit(new Element(i));
+        }
+        for( int i = 0; i < 6; i++ ) {
+            pipeline.take();
+        }
+        pipeline.close();
+
+        assertTrue(maximalNumberOfBusyStages.get() > 1);
+    }
+
+    @Test
+    public void failureIsRethrownForTheElement() {
+        ProcessPipeline<Element> pipeline = new ProcessPipeline<>(4);
+        pipeline.addStage("check", element -> {
+            if( element.value == 1 ) {
+                throw new IllegalStateException("bad element");
+            }
+        });
+        pipeline.addStage("increment", element -> element.value++);
+        pipeline.start();
+
+        for( int i = 0; i < 3; i++ ) {
+            pipeline.submit(new Element(i));
+        }
+
+        assertEquals(1, pipeline.take().value);
+        try {
+            pipeline.take();
+            fail();
+        }
+        catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(3, pipeline.take().value);
+
+        pipeline.close();
+    }
+}
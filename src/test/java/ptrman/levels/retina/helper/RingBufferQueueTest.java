@@ -0,0 +1,126 @@
+package ptrman.levels.retina.helper;
+
+import org.junit.Test;
+import ptrman.meter.event.QueueMeter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferQueueTest {
+    @Test
+    public void capacityIsLimited() {
+        for( final RingBufferQueue.EnumProducers producers : RingBufferQueue.EnumProducers.values() ) {
+            RingBufferQueue<Integer> queue = new RingBufferQueue<>(3, producers, RingBufferQueue.EnumWaitStrategy.SPINNING);
+            assertEquals(4, queue.getCapacity());
+
+            for( int i = 0; i < 4; i++ ) {
+                assertTrue(queue.offer(i));
+            }
+            assertFalse(queue.offer(4));
+            assertEquals(4, queue.size());
+
+            assertEquals(0, (int)queue.poll());
+            assertTrue(queue.offer(4));
+
+            List<Integer> drained = new ArrayList<>();
+            assertEquals(3, queue.drainTo(drained, 3));
+            assertEquals(1, (int)drained.get(0));
+            assertEquals(3, (int)drained.get(2));
+            assertEquals(4, (int)queue.poll());
+            assertNull(queue.poll());
+            assertEquals(0, queue.size());
+        }
+    }
+
+    @Test
+    public void singleProducerKeepsOrder() throws InterruptedException {
+        final int numberOfElements = 200000;
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(64, RingBufferQueue.EnumProducers.SINGLE, RingBufferQueue.EnumWaitStrategy.YIELDING);
+
+        Thread producer = new Thread(() -> {
+            for( int i = 0; i < numberOfElements; i++ ) {
+                queue.put(i);
+            }
+        });
+        producer.start();
+
+        for( int i = 0; i < numberOfElements; i++ ) {
+            assertEquals(i, (int)queue.take());
+        }
+        producer.join();
+
+        assertEquals(numberOfElements, queue.getEnqueuedCount());
+        assertEquals(numberOfElements, queue.getDequeuedCount());
+    }
+
+    @Test
+    public void multipleProducersKeepTheirOrder() throws InterruptedException {
+        final int numberOfProducers = 4;
+        final int numberOfElementsPerProducer = 50000;
+        ProcessConnector<int[]> connector = ProcessConnector.createMpsc(32, RingBufferQueue.EnumWaitStrategy.BLOCKING);
+
+        List<Thread> producers = new ArrayList<>();
+        for( int producerI = 0; producerI < numberOfProducers; producerI++ ) {
+            final int producerIndex = producerI;
+            producers.add(new Thread(() -> {
+                // alternate between single and batch insertion
+                for( int i = 0; i < numberOfElementsPerProducer; ) {
+                    if( i % 2 == 0 ) {
+                        connector.add(new int[]{producerIndex, i++});
+                    }
+                    else {
+                        List<int[]> batch = new ArrayList<>();
+                        for( int j = 0; j < 5 && i < numberOfElementsPerProducer; j++ ) {
+                            batch.add(new int[]{producerIndex, i++});
+                        }
+                        connector.addAll(batch);
+                    }
+                }
+            }));
+        }
+        for( final Thread iterationProducer : producers ) {
+            iterationProducer.start();
+        }
+
+        int[] nextValueOfProducers = new int[numberOfProducers];
+        for( int i = 0; i < numberOfProducers * numberOfElementsPerProducer; i++ ) {
+            final int[] element = connector.take();
+            assertEquals(nextValueOfProducers[element[0]], element[1]);
+            nextValueOfProducers[element[0]]++;
+        }
+
+        for( final Thread iterationProducer : producers ) {
+            iterationProducer.join();
+        }
+        assertNull(connector.poll());
+    }
+
+    @Test
+    public void meterReportsOccupancyAndThroughput() {
+        ProcessConnector<Integer> connector = ProcessConnector.createSpsc(16, RingBufferQueue.EnumWaitStrategy.SPINNING);
+        QueueMeter meter = connector.createMeter("samples");
+
+        for( int i = 0; i < 10; i++ ) {
+            connector.add(i);
+        }
+        for( int i = 0; i < 4; i++ ) {
+            connector.poll();
+        }
+
+        Object[] values = meter.sample(null);
+        assertEquals(6L, values[0]);
+        assertEquals(10L, values[1]);
+        assertEquals(4L, values[2]);
+
+        connector.poll();
+        values = meter.sample(null);
+        assertEquals(5L, values[0]);
+        assertEquals(0L, values[1]);
+        assertEquals(1L, values[2]);
+    }
+}
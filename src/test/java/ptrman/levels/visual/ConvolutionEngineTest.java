@@ -0,0 +1,84 @@
+package ptrman.levels.visual;
+
+import org.junit.Test;
+import ptrman.Datastructures.IMap2d;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConvolutionEngineTest {
+    @Test
+    public void strategiesCompareToDirect() {
+        final Random random = new Random(42);
+
+        final int width = 53;
+        final int length = 37;
+        FloatMap2d image = new FloatMap2d(width, length);
+        for( int i = 0; i < image.data.length; i++ ) {
+            image.data[i] = random.nextFloat();
+        }
+
+        // separable gabor kernel and a random kernel with full rank
+        FloatMap2d randomKernel = new FloatMap2d(5, 7);
+        for( int i = 0; i < randomKernel.data.length; i++ ) {
+            randomKernel.data[i] = random.nextFloat() - 0.5f;
+        }
+
+        for( final IMap2d<Float> kernelMap : new IMap2d[]{Convolution2dHelper.calcGaborKernel(8, 0.7f, 10.0f/64.0f, (float)Math.PI*0.5f, 0.4f), randomKernel} ) {
+            ConvolutionEngine.Kernel kernel = new ConvolutionEngine.Kernel(kernelMap);
+
+            float[] expected = calcDirect(image, kernelMap);
+
+            for( final ConvolutionEngine.EnumStrategy strategy : ConvolutionEngine.EnumStrategy.values() ) {
+                ConvolutionEngine engine = new ConvolutionEngine();
+                engine.strategy = strategy;
+
+                FloatMap2d result = engine.convolution(image, kernel);
+
+                for( int i = 0; i < expected.length; i++ ) {
+                    assertEquals(expected[i], result.data[i], 1e-4f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void kernelLargerThanImage() {
+        FloatMap2d image = new FloatMap2d(4, 4);
+        for( int i = 0; i < image.data.length; i++ ) {
+            image.data[i] = 1.0f;
+        }
+
+        ConvolutionEngine.Kernel kernel = new ConvolutionEngine.Kernel(Convolution2dHelper.calcGaborKernel(8, 0.0f, 10.0f/64.0f, 0.0f, 0.4f));
+
+        for( final ConvolutionEngine.EnumStrategy strategy : ConvolutionEngine.EnumStrategy.values() ) {
+            ConvolutionEngine engine = new ConvolutionEngine();
+            engine.strategy = strategy;
+
+            FloatMap2d result = engine.convolution(image, kernel);
+            for( final float value : result.data ) {
+                assertEquals(0.0f, value, 0.0f);
+            }
+        }
+    }
+
+    // former implementation of Convolution2d
+    private static float[] calcDirect(IMap2d<Float> input, IMap2d<Float> kernel) {
+        float[] result = new float[input.getWidth() * input.getLength()];
+
+        for( int y = 0; y < input.getLength() - kernel.getLength(); y++ ) {
+            for( int x = 0; x < input.getWidth() - kernel.getWidth(); x++ ) {
+                double sum = 0.0;
+                for( int ky = 0; ky < kernel.getLength(); ky++ ) {
+                    for( int kx = 0; kx < kernel.getWidth(); kx++ ) {
+                        sum += input.readAt(x + kx, y + ky) * kernel.readAt(kx, ky);
+                    }
+                }
+                result[(x + kernel.getWidth() / 2) + (y + kernel.getLength() / 2) * input.getWidth()] = (float)sum;
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,70 @@
+package ptrman.levels.visual;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class GaborFilterBankTest {
+    @Test
+    public void responsesCompareToConvolution() {
+        final Random random = new Random(42);
+
+        FloatMap2d image = new FloatMap2d(40, 30);
+        for( int i = 0; i < image.data.length; i++ ) {
+            image.data[i] = random.nextFloat();
+        }
+
+        GaborFilterBank bank = new GaborFilterBank(8, 8, 10.0f/64.0f, (float)Math.PI*0.5f, 0.4f);
+        bank.processInParallel = true;
+        FloatMap2d[] responses = bank.process(image);
+
+        assertEquals(8, responses.length);
+        for( int i = 0; i < 8; i++ ) {
+            final float angle = (float)i/8.0f * 2.0f * (float)Math.PI;
+
+            ConvolutionEngine engine = new ConvolutionEngine();
+            engine.strategy = ConvolutionEngine.EnumStrategy.DIRECT;
+            FloatMap2d expected = engine.convolution(image, new ConvolutionEngine.Kernel(Convolution2dHelper.calcGaborKernel(8, angle, 10.0f/64.0f, (float)Math.PI*0.5f, 0.4f)));
+
+            for( int j = 0; j < expected.data.length; j++ ) {
+                assertEquals(expected.data[j], responses[i].data[j], 1e-4f);
+            }
+        }
+    }
+
+    @Test
+    public void reusedBuffersGiveSameResponses() {
+        final Random random = new Random(43);
+
+        GaborFilterBank bank = new GaborFilterBank(8, 8, 10.0f/64.0f, (float)Math.PI*0.5f, 0.4f);
+
+        FloatMap2d[] responses = null;
+
+        // the second image has the size of the first, the third image another size
+        final int[][] sizes = {{40, 30}, {40, 30}, {24, 36}};
+        for( final int[] size : sizes ) {
+            FloatMap2d image = new FloatMap2d(size[0], size[1]);
+            for( int i = 0; i < image.data.length; i++ ) {
+                image.data[i] = random.nextFloat();
+            }
+
+            if( responses == null || responses[0].getWidth() != size[0] || responses[0].getLength() != size[1] ) {
+                responses = new FloatMap2d[8];
+                for( int i = 0; i < 8; i++ ) {
+                    responses[i] = new FloatMap2d(size[0], size[1]);
+                }
+            }
+
+            bank.process(image, responses);
+            FloatMap2d[] expected = new GaborFilterBank(8, 8, 10.0f/64.0f, (float)Math.PI*0.5f, 0.4f).process(image);
+
+            for( int i = 0; i < 8; i++ ) {
+                for( int j = 0; j < expected[i].data.length; j++ ) {
+                    assertEquals(expected[i].data[j], responses[i].data[j], 0.0f);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package ptrman.levels.visual;
+
+import org.junit.Test;
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.Datastructures.FastBooleanMap2d;
+import ptrman.Datastructures.IBoolMap2d;
+import ptrman.Datastructures.IMap2d;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Map2dBinaryTest {
+    @Test
+    public void corodeAndEdgeThinningCompareToPixelwise() {
+        for( final IMap2d<Boolean> image : new IMap2d[]{createRandomImage(new BoolMap2d(100, 40), 42), createRandomImage(new FastBooleanMap2d(128, 40), 43)} ) {
+            assertEqualMaps(calcCorodePixelwise(image), Map2dBinary.corode(image));
+            assertEqualMaps(calcEdgeThinningPixelwise(image), Map2dBinary.edgeThinning(image));
+
+            IBoolMap2d negated = Map2dBinary.negate(image);
+            for( int y = 0; y < image.getLength(); y++ ) {
+                for( int x = 0; x < image.getWidth(); x++ ) {
+                    assertEquals(!image.readAt(x, y), negated.get(x, y));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void combineWords() {
+        FastBooleanMap2d a = createRandomImage(new FastBooleanMap2d(128, 10), 44);
+        FastBooleanMap2d b = createRandomImage(new FastBooleanMap2d(128, 10), 45);
+        FastBooleanMap2d result = new FastBooleanMap2d(128, 10);
+
+        Map2dBinary.xorInplace(a, b, result);
+
+        for( int y = 0; y < 10; y++ ) {
+            for( int x = 0; x < 128; x++ ) {
+                assertEquals(a.get(x, y) ^ b.get(x, y), result.get(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void skeletalizeCompareToPixelwiseZhangSuen() {
+        // filled shapes, the skeleton must be inside of the shape and one pixel wide
+        BoolMap2d image = new BoolMap2d(90, 50);
+        for( int y = 0; y < 50; y++ ) {
+            for( int x = 0; x < 90; x++ ) {
+                final boolean inRectangle = x >= 5 && x < 40 && y >= 10 && y < 25;
+                final boolean inCircle = (x-65)*(x-65) + (y-28)*(y-28) < 15*15;
+                image.set(x, y, inRectangle || inCircle);
+            }
+        }
+
+        IBoolMap2d skeleton = Map2dBinary.skeletalize(image);
+
+        assertEqualMaps(calcZhangSuenPixelwise(image), skeleton);
+
+        int numberOfSetPixels = 0;
+        for( int y = 0; y < 50; y++ ) {
+            for( int x = 0; x < 90; x++ ) {
+                if( skeleton.get(x, y) ) {
+                    assertTrue(image.get(x, y));
+                    numberOfSetPixels++;
+                }
+            }
+        }
+        assertTrue(numberOfSetPixels > 0);
+    }
+
+    private static <T extends IBoolMap2d> T createRandomImage(T image, long seed) {
+        final Random random = new Random(seed);
+        for( int y = 0; y < image.getLength(); y++ ) {
+            for( int x = 0; x < image.getWidth(); x++ ) {
+                image.set(x, y, random.nextInt(10) < 7);
+            }
+        }
+        return image;
+    }
+
+    private static void assertEqualMaps(IBoolMap2d expected, IBoolMap2d actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getLength(), actual.getLength());
+        for( int y = 0; y < expected.getLength(); y++ ) {
+            for( int x = 0; x < expected.getWidth(); x++ ) {
+                assertEquals(expected.get(x, y), actual.get(x, y));
+            }
+        }
+    }
+
+    private static boolean read(IMap2d<Boolean> image, int x, int y) {
+        return image.inBounds(x, y) && image.readAt(x, y);
+    }
+
+    private static IBoolMap2d calcCorodePixelwise(IMap2d<Boolean> input) {
+        BoolMap2d result = new BoolMap2d(input.getWidth(), input.getLength());
+        for( int y = 1; y < input.getLength() - 1; y++ ) {
+            for( int x = 1; x < input.getWidth() - 1; x++ ) {
+                boolean all = true;
+                for( int dy = -1; dy <= 1; dy++ ) {
+                    for( int dx = -1; dx <= 1; dx++ ) {
+                        all &= input.readAt(x+dx, y+dy);
+                    }
+                }
+                result.set(x, y, all);
+            }
+        }
+        return result;
+    }
+
+    private static IBoolMap2d calcEdgeThinningPixelwise(IMap2d<Boolean> input) {
+        BoolMap2d result = new BoolMap2d(input.getWidth(), input.getLength());
+        final int[] dxs = {-1, 0, 1, 1, 1, 0, -1, -1};
+        final int[] dys = {-1, -1, -1, 0, 1, 1, 1, 0};
+        for( int y = 1; y < input.getLength() - 1; y++ ) {
+            for( int x = 1; x < input.getWidth() - 1; x++ ) {
+                boolean[] neighbors = new boolean[8];
+                int setPixels = 0;
+                for( int i = 0; i < 8; i++ ) {
+                    neighbors[i] = input.readAt(x + dxs[i], y + dys[i]);
+                    setPixels += neighbors[i] ? 1 : 0;
+                }
+                int zeroCrossing = 0;
+                for( int i = 0; i < 8-1; i++ ) {
+                    zeroCrossing += neighbors[i] && !neighbors[i+1] ? 1 : 0;
+                }
+                final boolean deletePixel = setPixels <= 1 || setPixels >= 7 || zeroCrossing >= 2;
+                result.set(x, y, !deletePixel);
+            }
+        }
+        return result;
+    }
+
+    private static IBoolMap2d calcZhangSuenPixelwise(IMap2d<Boolean> input) {
+        BoolMap2d current = new BoolMap2d(input.getWidth(), input.getLength());
+        for( int y = 0; y < input.getLength(); y++ ) {
+            for( int x = 0; x < input.getWidth(); x++ ) {
+                current.set(x, y, input.readAt(x, y));
+            }
+        }
+
+        final int[] dxs = {0, 1, 1, 1, 0, -1, -1, -1};
+        final int[] dys = {-1, -1, 0, 1, 1, 1, 0, -1};
+
+        boolean changeMade = true;
+        while( changeMade ) {
+            changeMade = false;
+            for( int subiteration = 0; subiteration < 2; subiteration++ ) {
+                BoolMap2d next = current.copy();
+                for( int y = 0; y < input.getLength(); y++ ) {
+                    for( int x = 0; x < input.getWidth(); x++ ) {
+                        if( !current.get(x, y) ) {
+                            continue;
+                        }
+                        boolean[] p = new boolean[8];
+                        int b = 0;
+                        for( int i = 0; i < 8; i++ ) {
+                            p[i] = read(current, x + dxs[i], y + dys[i]);
+                            b += p[i] ? 1 : 0;
+                        }
+                        int a = 0;
+                        for( int i = 0; i < 8; i++ ) {
+                            a += !p[i] && p[(i+1) % 8] ? 1 : 0;
+                        }
+                        final boolean directional = subiteration == 0 ?
+                            !(p[0] && p[2] && p[4]) && !(p[2] && p[4] && p[6]) :
+                            !(p[0] && p[2] && p[6]) && !(p[0] && p[4] && p[6]);
+                        if( b >= 2 && b <= 6 && a == 1 && directional ) {
+                            next.set(x, y, false);
+                            changeMade = true;
+                        }
+                    }
+                }
+                current = next;
+            }
+        }
+        return current;
+    }
+}
@@ -0,0 +1,113 @@
+package ptrman.levels.visual;
+
+import boofcv.struct.image.GrayF32;
+import org.junit.Test;
+import ptrman.Datastructures.BoolMap2d;
+import ptrman.Datastructures.IBoolMap2d;
+import ptrman.Datastructures.IFloatMap2d;
+import ptrman.Datastructures.IIntMap2d;
+import ptrman.Datastructures.Map2d;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Map2dConverterTest {
+    @Test
+    public void grayF32MapClearsAndCopiesOnlyValuesOfSubImage() {
+        // sub-image of 5x3 pixels starting at 2, 1 of an image with 8x5 pixels
+        GrayF32 img = new GrayF32(8, 5);
+        for( int i = 0; i < img.data.length; i++ ) {
+            img.data[i] = i + 1;
+        }
+        img.startIndex = 2 + 1 * 8;
+        img.width = 5;
+        img.height = 3;
+
+        GrayF32Map2D map = new GrayF32Map2D(img);
+        GrayF32Map2D copy = map.copy();
+        map.clear();
+
+        assertEquals(5, copy.getWidth());
+        assertEquals(3, copy.getLength());
+
+        for( int y = 0; y < 3; y++ ) {
+            for( int x = 0; x < 5; x++ ) {
+                final float valueOfImage = (x + 2) + (y + 1) * 8 + 1;
+                assertEquals(valueOfImage, copy.get(x, y), 0.0f);
+                assertEquals(valueOfImage, copy.row(y)[copy.rowOffset(y) + x], 0.0f);
+                assertEquals(0.0f, map.get(x, y), 0.0f);
+            }
+        }
+
+        // the pixels outside of the sub-image are untouched
+        assertEquals(1.0f, img.data[0], 0.0f);
+        assertEquals(2 + 1 * 8, img.data[1 + 1 * 8], 0.0f);
+        assertEquals(8 + 1 * 8, img.data[7 + 1 * 8], 0.0f);
+    }
+
+    @Test
+    public void conversionsKeepUnboxedMapsAndConvertBoxedMaps() {
+        FloatMap2d floatMap = new FloatMap2d(4, 3);
+        assertTrue(Map2dConverter.toFloatMap(floatMap) == floatMap);
+
+        Map2d<Float> boxedFloats = new Map2d<>(4, 3);
+        Map2d<Boolean> boxedBooleans = new Map2d<>(4, 3);
+        Map2d<Integer> boxedInts = new Map2d<>(4, 3);
+        for( int y = 0; y < 3; y++ ) {
+            for( int x = 0; x < 4; x++ ) {
+                boxedFloats.setAt(x, y, x * 0.5f + y);
+                if( x != y ) {
+                    // the diagonal stays unset
+                    boxedBooleans.setAt(x, y, (x + y) % 2 == 0);
+                    boxedInts.setAt(x, y, x - y);
+                }
+            }
+        }
+
+        IFloatMap2d floats = Map2dConverter.toFloatMap(boxedFloats);
+        IBoolMap2d booleans = Map2dConverter.toBoolMap(boxedBooleans);
+        IIntMap2d ints = Map2dConverter.toIntMap(boxedInts);
+        for( int y = 0; y < 3; y++ ) {
+            for( int x = 0; x < 4; x++ ) {
+                assertEquals(x * 0.5f + y, floats.get(x, y), 0.0f);
+                assertEquals(x != y && (x + y) % 2 == 0, booleans.get(x, y));
+                assertEquals(x - y, ints.get(x, y));
+            }
+        }
+
+        FloatMap2d converted = new FloatMap2d(4, 3);
+        Map2dConverter.booleanToFloat(booleans, converted);
+        BoolMap2d thresholded = new BoolMap2d(4, 3);
+        Map2dConverter.floatToBoolean(converted, thresholded, 0.5f);
+        for( int y = 0; y < 3; y++ ) {
+            for( int x = 0; x < 4; x++ ) {
+                assertEquals(booleans.get(x, y) ? 1.0f : 0.0f, converted.get(x, y), 0.0f);
+                assertEquals(booleans.get(x, y), thresholded.get(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void copyAsBoolMapReusesTargetOfSameSize() {
+        BoolMap2d map = new BoolMap2d(6, 4);
+        map.set(5, 3, true);
+
+        BoolMap2d target = new BoolMap2d(6, 4);
+        target.set(0, 0, true);
+        assertTrue(Map2dConverter.copyAsBoolMap(map, target) == target);
+        assertFalse(target.get(0, 0));
+        assertTrue(target.get(5, 3));
+
+        // a target of another size is not used
+        BoolMap2d otherTarget = new BoolMap2d(3, 4);
+        IBoolMap2d copy = Map2dConverter.copyAsBoolMap(map, otherTarget);
+        assertFalse(copy == otherTarget);
+        assertTrue(copy.get(5, 3));
+
+        // the copy is independent of the map
+        map.set(5, 3, false);
+        assertTrue(copy.get(5, 3));
+        assertFalse(Map2dConverter.copyAsBoolMap(map).get(5, 3));
+    }
+}
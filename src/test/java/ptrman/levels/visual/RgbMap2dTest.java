@@ -0,0 +1,43 @@
+package ptrman.levels.visual;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.assertEquals;
+
+public class RgbMap2dTest {
+    // the packed and the not packed image types give the same pixels
+    @Test
+    public void pixelsOfImageTypesAreEqual() {
+        RgbMap2d map = new RgbMap2d(20, 10);
+        map.setFromImage(drawImage(BufferedImage.TYPE_INT_ARGB));
+        RgbMap2d mapOfBgrImage = new RgbMap2d(20, 10);
+        mapOfBgrImage.setFromImage(drawImage(BufferedImage.TYPE_3BYTE_BGR));
+
+        for( int y = 0; y < 10; y++ ) {
+            for( int x = 0; x < 20; x++ ) {
+                final int expectedRgb = x >= 5 && x < 12 && y >= 2 && y < 7 ? 0x336699 : 0x000000;
+                assertEquals(expectedRgb, map.readRgbAt(x, y) & 0xFFFFFF);
+                assertEquals(expectedRgb, mapOfBgrImage.readRgbAt(x, y) & 0xFFFFFF);
+            }
+        }
+
+        // the color is converted back to the same packed value
+        RgbMap2d copy = map.copy();
+        copy.setAt(0, 0, map.readAt(6, 3));
+        assertEquals(0x336699, copy.readRgbAt(0, 0));
+    }
+
+    private static BufferedImage drawImage(final int imageType) {
+        BufferedImage image = new BufferedImage(20, 10, imageType);
+        Graphics2D g2 = image.createGraphics();
+        g2.setColor(Color.BLACK);
+        g2.fillRect(0, 0, 20, 10);
+        g2.setColor(new Color(0x336699));
+        g2.fillRect(5, 2, 7, 5);
+        g2.dispose();
+        return image;
+    }
+}